@@ -0,0 +1,100 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import controller.AlphaBetaEngine;
+import controller.GreedyEngine;
+import controller.ReversiController;
+import controller.ReversiEngine;
+import model.ReversiModel;
+
+/**
+ * Benchmarks of the controller methods called by the view on every turn, over the
+ * midgame corpus.
+ * 
+ * computerTurn() is measured with the default greedy engine and with a shallow
+ * alpha-beta search (the engine parameter), on a copy of each position since it
+ * makes the computer's move. The corpus positions have the human player to move about
+ * half the time, which does not matter to the computer's engine. The other methods
+ * only read the board, so they are called on a controller per position.
+ * 
+ * @author Jesse Liu
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerBenchmark {
+	
+	private MidgameCorpus corpus;
+	private ReversiController[] controllers; // One per position, for read-only calls
+	private int index;
+	
+	/**
+	 * State of the computerTurn() benchmark: a controller with the chosen engine,
+	 * whose model is reset to a corpus position before every turn.
+	 */
+	@State(Scope.Thread)
+	public static class Turn {
+		
+		@Param({ "greedy", "alphabeta4" })
+		public String engine;
+		
+		private final ReversiModel model = new ReversiModel();
+		private ReversiController controller;
+		
+		@Setup
+		public void setUp() {
+			ReversiEngine chosen = engine.equals("greedy") ? new GreedyEngine() : new AlphaBetaEngine(4);
+			controller = new ReversiController(model, chosen);
+		}
+		
+	}
+	
+	@Setup
+	public void setUp() {
+		corpus = new MidgameCorpus();
+		controllers = new ReversiController[corpus.size()];
+		for (int i = 0; i < corpus.size(); i++)
+			controllers[i] = new ReversiController(new ReversiModel(corpus.position(i)));
+	}
+	
+	// Moves on to the next position of the corpus
+	private int next() {
+		int i = index;
+		index = (i + 1 == corpus.size()) ? 0 : i + 1;
+		return i;
+	}
+	
+	@Benchmark
+	public String computerTurn(Turn turn) {
+		turn.model.copyFrom(corpus.position(next()));
+		return turn.controller.computerTurn();
+	}
+	
+	@Benchmark
+	public boolean isGameOver() {
+		return controllers[next()].isGameOver();
+	}
+	
+	@Benchmark
+	public char[][] reconstructBoard() {
+		return controllers[next()].reconstructBoard();
+	}
+	
+}
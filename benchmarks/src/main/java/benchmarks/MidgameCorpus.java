@@ -0,0 +1,131 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import controller.AlphaBetaEngine;
+import model.ReversiModel;
+
+/**
+ * Fixed corpus of realistic midgame positions that every benchmark runs over.
+ * 
+ * The positions are read from midgame-corpus.txt, one per line as the hexadecimal
+ * bitboards of the human player's ('W') and the computer's ('B') tokens followed by
+ * the player to move. Keeping them in a file rather than generating them on every
+ * run means that a change to the engines cannot change what is being measured.
+ * 
+ * The file was written by main(String[]): games of a shallow alpha-beta search
+ * against itself, with one move in ten played at random so that the games differ,
+ * sampled every few moves between 20 and 44 tokens on the board, keeping only
+ * positions where both players still have legal moves.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public final class MidgameCorpus {
+	
+	private static final String RESOURCE = "midgame-corpus.txt";
+	
+	private final ReversiModel[] positions;
+	private final char[] players;
+	
+	// Constructor (reads in the corpus from the benchmarks' resources)
+	public MidgameCorpus() {
+		List<ReversiModel> models = new ArrayList<>();
+		StringBuilder toMove = new StringBuilder();
+		try (InputStream in = MidgameCorpus.class.getResourceAsStream(RESOURCE)) {
+			if (in == null)
+				throw new IllegalStateException("Missing resource " + RESOURCE);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] fields = line.trim().split("\\s+");
+				models.add(new ReversiModel(Long.parseUnsignedLong(fields[0], 16),
+						Long.parseUnsignedLong(fields[1], 16)));
+				toMove.append(fields[2].charAt(0));
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read " + RESOURCE, e);
+		}
+		positions = models.toArray(new ReversiModel[0]);
+		players = toMove.toString().toCharArray();
+	}
+	
+	/**
+	 * size() returns the number of positions in the corpus.
+	 * 
+	 * @return the number of positions.
+	 */
+	public int size() {
+		return positions.length;
+	}
+	
+	/**
+	 * position(int) returns one of the positions, which must not be modified.
+	 * 
+	 * @param index is the index of the position, from 0 to size() - 1.
+	 * @return the model holding the position.
+	 */
+	public ReversiModel position(int index) {
+		return positions[index];
+	}
+	
+	/**
+	 * player(int) returns the player to move in one of the positions.
+	 * 
+	 * @param index is the index of the position, from 0 to size() - 1.
+	 * @return 'W' or 'B'.
+	 */
+	public char player(int index) {
+		return players[index];
+	}
+	
+	/**
+	 * main(String[]) writes a new corpus file, of the number of positions given as
+	 * the first argument (256 by default), to standard output.
+	 * 
+	 * @param args are the optional number of positions and random seed.
+	 */
+	public static void main(String[] args) {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 256;
+		Random random = new Random((args.length > 1) ? Long.parseLong(args[1]) : 335);
+		AlphaBetaEngine engine = new AlphaBetaEngine(3);
+		PrintWriter out = new PrintWriter(System.out);
+		out.println("# Midgame positions: W bitboard, B bitboard, player to move (see MidgameCorpus)");
+		int written = 0;
+		while (written < count) {
+			ReversiModel model = new ReversiModel();
+			char player = 'W';
+			while (!model.isGameOver() && written < count) {
+				long legal = model.getLegalMoves(player);
+				if (legal != 0) {
+					int tokens = model.getWScore() + model.getBScore();
+					char opponent = (player == 'W') ? 'B' : 'W';
+					if (tokens >= 20 && tokens <= 44 && tokens % 4 == 0
+							&& model.getLegalMoves(opponent) != 0) {
+						out.printf("%016x %016x %c%n", model.getBoard('W'), model.getBoard('B'), player);
+						written++;
+					}
+					int move = engine.chooseMove(model, player);
+					if (random.nextInt(10) == 0) {
+						for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--)
+							legal &= legal - 1;
+						move = Long.numberOfTrailingZeros(legal);
+					}
+					model.makeMove(player, move);
+				}
+				player = (player == 'W') ? 'B' : 'W';
+			}
+		}
+		out.flush();
+	}
+	
+}
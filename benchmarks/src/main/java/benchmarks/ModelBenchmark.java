@@ -0,0 +1,106 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import model.ReversiModel;
+
+/**
+ * Benchmarks of the model's per-move operations over the midgame corpus.
+ * 
+ * Each invocation works on the next position of the corpus in turn, so that branch
+ * prediction cannot learn a single board. setPosW and setPosB change the model, so
+ * their benchmarks copy the position into a scratch model first; copyFrom measures
+ * that copy alone, to be subtracted from them. The query benchmarks ask about every
+ * position of the board, and are reported per call.
+ * 
+ * @author Jesse Liu
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+	
+	private MidgameCorpus corpus;
+	private int[] wMoves; // A legal move of each player in each position
+	private int[] bMoves;
+	private final ReversiModel scratch = new ReversiModel();
+	private int index;
+	
+	@Setup
+	public void setUp() {
+		corpus = new MidgameCorpus();
+		wMoves = new int[corpus.size()];
+		bMoves = new int[corpus.size()];
+		for (int i = 0; i < corpus.size(); i++) {
+			wMoves[i] = Long.numberOfTrailingZeros(corpus.position(i).getLegalMovesW());
+			bMoves[i] = Long.numberOfTrailingZeros(corpus.position(i).getLegalMovesB());
+		}
+	}
+	
+	// Moves on to the next position of the corpus
+	private int next() {
+		int i = index;
+		index = (i + 1 == corpus.size()) ? 0 : i + 1;
+		return i;
+	}
+	
+	@Benchmark
+	public ReversiModel copyFrom() {
+		scratch.copyFrom(corpus.position(next()));
+		return scratch;
+	}
+	
+	@Benchmark
+	public ReversiModel setPosW() {
+		int i = next();
+		scratch.copyFrom(corpus.position(i));
+		scratch.setPosW(wMoves[i] >> 3, wMoves[i] & 7);
+		return scratch;
+	}
+	
+	@Benchmark
+	public ReversiModel setPosB() {
+		int i = next();
+		scratch.copyFrom(corpus.position(i));
+		scratch.setPosB(bMoves[i] >> 3, bMoves[i] & 7);
+		return scratch;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(64)
+	public void isLegalW(Blackhole blackhole) {
+		ReversiModel model = corpus.position(next());
+		for (int row = 0; row < 8; row++) {
+			for (int col = 0; col < 8; col++)
+				blackhole.consume(model.isLegalW(row, col));
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(64)
+	public void hypotheticalB(Blackhole blackhole) {
+		ReversiModel model = corpus.position(next());
+		for (int row = 0; row < 8; row++) {
+			for (int col = 0; col < 8; col++)
+				blackhole.consume(model.hypotheticalB(row, col));
+		}
+	}
+	
+}
@@ -1,27 +1,95 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import controller.AlphaBetaEngine;
+import controller.BookEngine;
+import controller.GreedyEngine;
+import controller.LazySmpEngine;
+import controller.MoveJournal;
+import controller.OpeningBook;
+import controller.PonderingEngine;
 import controller.ReversiController;
+import controller.ReversiEngine;
+import controller.VariantController;
 import model.ReversiModel;
+import model.SizedReversiModel;
 import view.ReversiView;
 
 /**
  * Class containing the main method for playing the Reversi game.
  * 
  * main creates the model, view, and controller objects to be used for a single game,
- * then calls some methods from view in order to begin playing.
+ * then calls some methods from view in order to begin playing. If a search depth is
+ * given as the first argument, the computer searches that many moves ahead instead
+ * of playing greedily, using as many threads as given by the second argument (one
+ * by default). With one thread, the computer ponders (see PonderingEngine) while the
+ * user is deciding on a move, and the share of its moves found that way is printed
+ * at the end. The third argument may name an opening book file (see
+ * OpeningBookTool), which the computer then plays from while the game is in it
+ * ("-" for none). The fourth argument may name a move journal (see MoveJournal): the
+ * game is journaled move by move, and if the program died during a game, that game
+ * is picked up where it was left the next time. Alternatively, a board size such as
+ * "10x10" as the only argument plays that variant (see VariantController), against
+ * a greedy computer.
  * 
  * @author Jesse Liu 
  *
  */
 public class Reversi {
 
-	public static void main(String[] args) {
+	private static final long JOURNAL_COMMIT_NANOS = 2_000_000; // Group commit interval of the journal
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 1 && args[0].matches("\\d+x\\d+")) {
+			String[] sides = args[0].split("x");
+			if (!sides[0].equals(sides[1]))
+				throw new IllegalArgumentException("Only square boards can be played");
+			ReversiView view = new ReversiView(new VariantController(new SizedReversiModel(Integer.parseInt(sides[0]))));
+			view.displayBoard();
+			view.displayScore();
+			view.playGame();
+			return;
+		}
 		ReversiModel model = new ReversiModel();
-		ReversiController controller = new ReversiController(model);
+		ReversiEngine engine = new GreedyEngine();
+		if (args.length > 1)
+			engine = new LazySmpEngine(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+		else if (args.length > 0)
+			engine = new PonderingEngine(new AlphaBetaEngine(Integer.parseInt(args[0])));
+		PonderingEngine pondering = (engine instanceof PonderingEngine) ? (PonderingEngine) engine : null;
+		if (args.length > 2 && !args[2].equals("-"))
+			engine = new BookEngine(new OpeningBook(Paths.get(args[2])), engine);
+		MoveJournal journal = null;
+		long game = 0;
+		if (args.length > 3) {
+			journal = new MoveJournal(Paths.get(args[3]), JOURNAL_COMMIT_NANOS);
+			if (journal.getRecovered().isEmpty()) {
+				game = journal.newGame();
+			} else { // Pick up the game left unfinished
+				game = journal.getRecovered().keySet().iterator().next();
+				model = journal.getRecovered().get(game);
+			}
+		}
+		ReversiController controller = new ReversiController(model, engine);
+		controller.setJournal(journal, game);
+		if (model.getMoveCount() > 0 && model.getPlayerAt(model.getMoveCount() - 1) == 'W')
+			controller.computerTurn(); // Died before the computer's reply
 		ReversiView view = new ReversiView(controller);
 		
 		// Display initial game board and score before game-play truly begins
 		view.displayBoard();
 		view.displayScore();
 		view.playGame();
+		if (pondering != null) {
+			System.out.printf("Pondering found %d of the computer's %d moves in advance (%.0f%%).%n",
+					pondering.getPonderHits(), pondering.getPonderHits() + pondering.getPonderMisses(),
+					100 * pondering.getPonderHitRate());
+			pondering.shutdown();
+		}
+		if (journal != null) {
+			journal.end(game);
+			journal.close();
+		}
 	}
 
 }
@@ -0,0 +1,509 @@
+package controller;
+
+import java.util.Arrays;
+
+import model.ReversiModel;
+import model.Zobrist;
+
+/**
+ * Engine that searches ahead a fixed number of moves using negamax with alpha-beta
+ * pruning.
+ * 
+ * The search is run with iterative deepening, from depth 1 up to the configured
+ * depth, so that the best line of play (principal variation) found at one depth can
+ * be tried first at the next. Moves are made and undone on the given model with
+ * makeMove(char, int) and undoMove(), and the move lists of each ply live in
+ * preallocated arrays, so the search does not allocate anything. A player without
+ * legal moves passes, which does not count towards the depth, and a position where
+ * neither player can move is scored by its final disc difference.
+ * 
+ * Positions already searched (possibly through a different order of moves) are
+ * looked up in a transposition table by the model's Zobrist hash. A stored score
+ * from a deep enough search can end the search of a position immediately, and
+ * otherwise the stored best move is tried early.
+ * 
+ * At every node the legal moves are ordered before being searched: first the move
+ * of the previous principal variation at that ply, then the transposition table's
+ * best move, then corners, then moves that
+ * leave the opponent with the fewest replies, with the positions next to empty
+ * corners tried last. Good ordering makes cutoffs happen early, which is what lets
+ * the search reach useful depths.
+ * 
+ * Positions at the end of the search are scored by a simple built-in heuristic
+ * (corners, X-squares, mobility, and late in the game discs), or by a
+ * PatternEvaluator if one is set.
+ * 
+ * A search can be stopped from another thread with stop(), in which case the best
+ * move found by the completed part of the search is returned. This is how several
+ * engines sharing one transposition table are run in parallel (see LazySmpEngine).
+ * A search can also be given a deadline, at which it stops by itself in the same
+ * way, so that a move is always ready in time, and it stops as well when its thread
+ * is interrupted, so that cancelling a search run by an executor (with
+ * Future.cancel(true)) frees the thread at once. The interrupt is left set.
+ * 
+ * Every search is recorded in the EngineMetrics of the thread running it (the
+ * searches run in parallel by a LazySmpEngine are recorded together, as one), and
+ * as a SearchEvent by the Java Flight Recorder, when that event is enabled.
+ * 
+ * Once few enough positions are left empty, the rest of the game is solved exactly
+ * by an EndgameSolver instead, which plays perfectly from there on and is much
+ * faster than searching to the end of the game with the model.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class AlphaBetaEngine implements ReversiEngine {
+	
+	// Final positions are scored by disc difference, scaled beyond any evaluation
+	static final int DISC_SCALE = 1000;
+	static final int INFINITY = 100 * DISC_SCALE;
+	
+	private static final int MAX_PLY = 128; // 60 moves plus passes
+	private static final int MAX_MOVES = 64;
+	private static final long CORNERS = 0x8100000000000081L;
+	private static final long X_SQUARES = 0x0042000000004200L;
+	private static final long C_SQUARES = 0x4281000000008142L;
+	private static final int DEFAULT_TABLE_MEGABYTES = 16;
+	private static final int DEFAULT_ENDGAME_EMPTIES = 16;
+	
+	private final int depth;
+	private final TranspositionTable table;
+	private final int[][] moveLists = new int[MAX_PLY][MAX_MOVES];
+	private final int[][] pv = new int[MAX_PLY][MAX_PLY];
+	private final int[] pvLength = new int[MAX_PLY];
+	private final int[] previousPv = new int[MAX_PLY];
+	private final EndgameSolver solver = new EndgameSolver();
+	private int endgameEmpties = DEFAULT_ENDGAME_EMPTIES;
+	private PatternEvaluator evaluator;
+	private long nodes;
+	private long tableProbes; // Lookups and hits of the current search, for EngineMetrics
+	private long tableHits;
+	private int depthReached;
+	private int bestScore;
+	private volatile boolean stopRequested;
+	private boolean aborted;
+	private boolean timed; // Whether the search stops at the deadline
+	private long deadline; // In System.nanoTime() time
+	
+	// Constructor (reads in the maximum search depth, in moves)
+	public AlphaBetaEngine(int depth) {
+		this(depth, new TranspositionTable(DEFAULT_TABLE_MEGABYTES));
+	}
+	
+	// Constructor (reads in the maximum search depth and the table to use, or null)
+	public AlphaBetaEngine(int depth, TranspositionTable table) {
+		if (depth < 1)
+			throw new IllegalArgumentException("Search depth must be at least 1");
+		this.depth = depth;
+		this.table = table;
+	}
+	
+	/**
+	 * chooseMove(ReversiModel, char) searches for the best move of the given player.
+	 * 
+	 * Iterative deepening is used: the position is searched to depth 1, 2, and so on
+	 * up to the configured depth (stopping early once the search reaches the end of
+	 * the game), and the first move of the deepest principal variation is returned.
+	 * If the search is stopped early, the best move of the deepest iteration searched
+	 * so far is returned, counting any root moves of an unfinished iteration that were
+	 * already searched completely.
+	 * 
+	 * With at most getEndgameEmpties() empty positions left, the position is solved
+	 * exactly instead, whatever the configured depth.
+	 * 
+	 * @param model is the model holding the current state of the game (unchanged
+	 * when this method returns).
+	 * @param player is 'W' or 'B', the player whose move is being chosen.
+	 * @return the square index of the chosen move, or -1 if the player has no legal
+	 * move.
+	 */
+	@Override
+	public int chooseMove(ReversiModel model, char player) {
+		prepare();
+		return search(model, player, depth);
+	}
+	
+	/**
+	 * chooseMove(ReversiModel, char, long) searches for the best move of the given
+	 * player like chooseMove(ReversiModel, char), but returns by the deadline.
+	 * 
+	 * The clock is read along with the check for stop(), every 1024 positions, so a
+	 * search overruns its deadline by well under a millisecond. Once it is reached,
+	 * the best move found so far is returned, as for a stopped search, including the
+	 * root moves of the unfinished iteration already searched, so the time spent on
+	 * it is not wasted.
+	 * 
+	 * @param model is the model holding the current state of the game (unchanged
+	 * when this method returns).
+	 * @param player is 'W' or 'B', the player whose move is being chosen.
+	 * @param deadline is the System.nanoTime() value by which to return.
+	 * @return the square index of the chosen move, or -1 if the player has no legal
+	 * move.
+	 */
+	@Override
+	public int chooseMove(ReversiModel model, char player, long deadline) {
+		prepare();
+		setDeadline(deadline);
+		return search(model, player, depth);
+	}
+	
+	/**
+	 * stop() asks a running search to return as soon as possible.
+	 * 
+	 * This method may be called from any thread. The search checks for it every 1024
+	 * positions, then returns the best move it has found so far. It has no effect on
+	 * searches started after it returns.
+	 */
+	public void stop() {
+		stopRequested = true;
+		solver.stop();
+	}
+	
+	/**
+	 * wasStopped() returns whether the most recent search was cut short by stop(), its
+	 * deadline, or an interrupt of its thread.
+	 * 
+	 * @return true if the last search returned before completing its deepest
+	 * iteration, false otherwise.
+	 */
+	public boolean wasStopped() {
+		return aborted;
+	}
+	
+	// Clears any earlier stop request and deadline, before a search is started by another thread
+	void prepare() {
+		stopRequested = false;
+		timed = false;
+		solver.prepare();
+	}
+	
+	// Makes the next search return by itself once System.nanoTime() reaches the deadline
+	void setDeadline(long deadline) {
+		this.deadline = deadline;
+		timed = true;
+		solver.setDeadline(deadline);
+	}
+	
+	// Iterative deepening up to maxDepth, without clearing any stop request, recorded in the thread's metrics
+	int search(ReversiModel model, char player, int maxDepth) {
+		long begin = System.nanoTime();
+		int move = searchUnrecorded(model, player, maxDepth);
+		EngineMetrics.current().recordSearch(nodes, depthReached, System.nanoTime() - begin, tableProbes,
+				tableHits);
+		return move;
+	}
+	
+	// Like search, but leaves recording it in EngineMetrics to the caller, for a search that is part of a larger one
+	int searchUnrecorded(ReversiModel model, char player, int maxDepth) {
+		SearchEvent event = new SearchEvent();
+		event.begin();
+		tableProbes = 0;
+		tableHits = 0;
+		int move = deepen(model, player, maxDepth);
+		if (event.shouldCommit()) {
+			event.player = player;
+			event.depth = depthReached;
+			event.nodes = nodes;
+			event.move = move;
+			event.stopped = aborted;
+			event.commit();
+		}
+		return move;
+	}
+	
+	// Transposition table lookups of the most recent search
+	long getTableProbes() {
+		return tableProbes;
+	}
+	
+	// Transposition table hits of the most recent search
+	long getTableHits() {
+		return tableHits;
+	}
+	
+	// Searches to depth 1, 2, and so on up to maxDepth, returns the best move of the deepest one
+	private int deepen(ReversiModel model, char player, int maxDepth) {
+		nodes = 0;
+		depthReached = 0;
+		bestScore = 0;
+		aborted = false;
+		long moves = model.getLegalMoves(player);
+		if (moves == 0)
+			return -1;
+		int empties = 64 - model.getWScore() - model.getBScore();
+		if (empties <= endgameEmpties)
+			return solve(model, player, empties);
+		Arrays.fill(previousPv, -1);
+		int bestMove = Long.numberOfTrailingZeros(moves); // In case nothing is searched
+		for (int d = 1; d <= maxDepth; d++) {
+			int score = negamax(model, player, d, 0, -INFINITY, INFINITY);
+			if (pvLength[0] > 0) { // Set once a root move is searched completely
+				bestMove = pv[0][0];
+				bestScore = score;
+			}
+			if (aborted)
+				break;
+			depthReached = d;
+			System.arraycopy(pv[0], 0, previousPv, 0, pvLength[0]);
+			if (d >= empties) // Searched to the end of the game already
+				break;
+		}
+		return bestMove;
+	}
+	
+	// Solves the rest of the game exactly, with scores scaled like finalScore
+	private int solve(ReversiModel model, char player, int empties) {
+		char opponent = (player == 'W') ? 'B' : 'W';
+		int move = solver.solve(model.getBoard(player), model.getBoard(opponent));
+		nodes = solver.getNodes();
+		bestScore = solver.getBestScore() * DISC_SCALE;
+		aborted = solver.wasStopped();
+		if (!aborted)
+			depthReached = empties;
+		return move;
+	}
+	
+	/**
+	 * setEndgameEmpties(int) sets how many empty positions must be left at most for
+	 * the rest of the game to be solved exactly instead of searched to a fixed depth.
+	 * 
+	 * Each extra empty position makes the exact solve several times slower; 0 turns
+	 * the solver off.
+	 * 
+	 * @param empties is the new threshold, from 0 to 64.
+	 */
+	public void setEndgameEmpties(int empties) {
+		if (empties < 0 || empties > 64)
+			throw new IllegalArgumentException("Endgame threshold must be from 0 to 64");
+		endgameEmpties = empties;
+	}
+	
+	/**
+	 * getEndgameEmpties() returns the number of empty positions from which the rest of
+	 * the game is solved exactly.
+	 * 
+	 * @return the endgame threshold, or 0 if the solver is turned off.
+	 */
+	public int getEndgameEmpties() {
+		return endgameEmpties;
+	}
+	
+	/**
+	 * setEvaluator(PatternEvaluator) sets the evaluation used at the end of the
+	 * search.
+	 * 
+	 * @param evaluator is the pattern evaluator to use, or null for the built-in one.
+	 */
+	public void setEvaluator(PatternEvaluator evaluator) {
+		this.evaluator = evaluator;
+	}
+	
+	/**
+	 * getEvaluator() returns the evaluation used at the end of the search.
+	 * 
+	 * @return the pattern evaluator, or null if the built-in one is used.
+	 */
+	public PatternEvaluator getEvaluator() {
+		return evaluator;
+	}
+	
+	/**
+	 * getDepth() returns the maximum depth this engine searches to.
+	 * 
+	 * @return the configured search depth, in moves.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * getTable() returns the transposition table used by this engine, so that its
+	 * statistics can be read.
+	 * 
+	 * @return the engine's transposition table, or null if it does not use one.
+	 */
+	public TranspositionTable getTable() {
+		return table;
+	}
+	
+	/**
+	 * getNodes() returns the number of positions visited by the most recent search.
+	 * 
+	 * @return the node count of the last call to chooseMove(ReversiModel, char).
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * getDepthReached() returns the deepest iteration completed by the most recent
+	 * search.
+	 * 
+	 * @return the depth of the search that produced the last chosen move.
+	 */
+	public int getDepthReached() {
+		return depthReached;
+	}
+	
+	/**
+	 * getBestScore() returns the score of the move chosen by the most recent search,
+	 * from the point of view of the player who moved.
+	 * 
+	 * Scores of at least DISC_SCALE in size are final results, equal to the disc
+	 * difference at the end of the game times DISC_SCALE.
+	 * 
+	 * @return the score of the last chosen move.
+	 */
+	public int getBestScore() {
+		return bestScore;
+	}
+	
+	// Negamax search with alpha-beta pruning, returns the score for player
+	private int negamax(ReversiModel model, char player, int depth, int ply, int alpha, int beta) {
+		if ((++nodes & 1023) == 0 && (stopRequested || Thread.currentThread().isInterrupted()
+				|| (timed && System.nanoTime() - deadline >= 0)))
+			aborted = true;
+		pvLength[ply] = ply;
+		if (aborted)
+			return 0;
+		char opponent = (player == 'W') ? 'B' : 'W';
+		long moves = model.getLegalMoves(player);
+		if (moves == 0) {
+			if (model.getLegalMoves(opponent) == 0)
+				return finalScore(model, player);
+			int score = -negamax(model, opponent, depth, ply + 1, -beta, -alpha);
+			if (aborted)
+				return 0;
+			updatePv(ply, -1); // A pass keeps its place in the principal variation
+			return score;
+		}
+		if (depth == 0)
+			return (evaluator != null) ? evaluator.evaluate(model.getBoard(player), model.getBoard(opponent))
+					: evaluate(model, player);
+		
+		long hash = (player == 'W') ? model.getHash() : model.getHash() ^ Zobrist.B_TO_MOVE;
+		int hashMove = -1;
+		if (table != null) {
+			long entry = table.probe(hash);
+			tableProbes++;
+			if (entry != 0) {
+				tableHits++;
+				hashMove = TranspositionTable.moveOf(entry);
+				if (ply > 0 && TranspositionTable.depthOf(entry) >= depth) {
+					int score = TranspositionTable.scoreOf(entry);
+					int type = TranspositionTable.typeOf(entry);
+					if (type == TranspositionTable.EXACT
+							|| (type == TranspositionTable.LOWER_BOUND && score >= beta)
+							|| (type == TranspositionTable.UPPER_BOUND && score <= alpha))
+						return score;
+				}
+			}
+		}
+		
+		int originalAlpha = alpha;
+		int count = orderMoves(model, player, opponent, moves, depth, ply, hashMove);
+		int[] moveList = moveLists[ply];
+		int best = -INFINITY;
+		int bestMove = -1;
+		for (int i = 0; i < count; i++) {
+			int square = moveList[i];
+			model.makeMove(player, square);
+			int score = -negamax(model, opponent, depth - 1, ply + 1, -beta, -alpha);
+			model.undoMove();
+			if (aborted)
+				return 0; // The score is meaningless, and nothing may be stored
+			if (score > best) {
+				best = score;
+				bestMove = square;
+				if (score > alpha) {
+					alpha = score;
+					updatePv(ply, square);
+					if (alpha >= beta)
+						break;
+				}
+			}
+		}
+		if (table != null) {
+			int type = (best >= beta) ? TranspositionTable.LOWER_BOUND
+					: (best > originalAlpha) ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND;
+			table.store(hash, depth, type, best, bestMove);
+		}
+		return best;
+	}
+	
+	// Fills the move list of the ply, best candidates first, and returns its length
+	private int orderMoves(ReversiModel model, char player, char opponent, long moves,
+			int depth, int ply, int hashMove) {
+		int[] moveList = moveLists[ply];
+		int count = 0;
+		while (moves != 0) {
+			int square = Long.numberOfTrailingZeros(moves);
+			long bit = moves & -moves;
+			moves ^= bit;
+			int key;
+			if (square == previousPv[ply]) {
+				key = 1 << 20;
+			} else if (square == hashMove) {
+				key = 1 << 19;
+			} else {
+				key = 0;
+				if ((bit & CORNERS) != 0)
+					key += 1 << 12;
+				else if ((bit & X_SQUARES) != 0)
+					key -= 1 << 10;
+				else if ((bit & C_SQUARES) != 0)
+					key -= 1 << 8;
+				if (depth > 1) { // Fewest opponent replies first, not worth it at the leaves
+					model.makeMove(player, square);
+					key -= Long.bitCount(model.getLegalMoves(opponent)) << 4;
+					model.undoMove();
+				}
+			}
+			// Key in the high bits and square in the low byte, so sorting sorts by key
+			int packed = (key << 8) | square;
+			int i = count++;
+			while (i > 0 && moveList[i - 1] < packed) {
+				moveList[i] = moveList[i - 1];
+				i--;
+			}
+			moveList[i] = packed;
+		}
+		for (int i = 0; i < count; i++)
+			moveList[i] &= 0xff;
+		return count;
+	}
+	
+	// Records the move at the ply followed by the principal variation below it
+	private void updatePv(int ply, int square) {
+		pv[ply][ply] = square;
+		int length = pvLength[ply + 1];
+		System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, length - ply - 1);
+		pvLength[ply] = Math.max(length, ply + 1);
+	}
+	
+	// Scores a position where neither player can move
+	static int finalScore(ReversiModel model, char player) {
+		int own = Long.bitCount(model.getBoard(player));
+		int opp = Long.bitCount(model.getBoard(player == 'W' ? 'B' : 'W'));
+		return (own - opp) * DISC_SCALE;
+	}
+	
+	// Heuristic score of a position for player, well within +-DISC_SCALE
+	static int evaluate(ReversiModel model, char player) {
+		char opponent = (player == 'W') ? 'B' : 'W';
+		long own = model.getBoard(player);
+		long opp = model.getBoard(opponent);
+		long emptyCorners = CORNERS & ~(own | opp);
+		long openX = X_SQUARES & ((emptyCorners << 9) | (emptyCorners << 7)
+				| (emptyCorners >>> 7) | (emptyCorners >>> 9));
+		int score = 30 * (Long.bitCount(own & CORNERS) - Long.bitCount(opp & CORNERS));
+		score -= 12 * (Long.bitCount(own & openX) - Long.bitCount(opp & openX));
+		score += 4 * (Long.bitCount(model.getLegalMoves(player))
+				- Long.bitCount(model.getLegalMoves(opponent)));
+		int empties = 64 - Long.bitCount(own | opp);
+		if (empties < 16) // Discs only start to matter near the end of the game
+			score += (Long.bitCount(own) - Long.bitCount(opp)) * (16 - empties) / 2;
+		return score;
+	}
+	
+}
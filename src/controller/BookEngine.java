@@ -0,0 +1,92 @@
+package controller;
+
+import model.ReversiModel;
+
+/**
+ * Engine that plays from an opening book while the game is in it, and hands over to
+ * another engine once it is not.
+ * 
+ * Book moves cost a binary search instead of a search of the game tree, so the
+ * opening is played instantly and as well as the book was built.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class BookEngine implements ReversiEngine {
+	
+	private final OpeningBook book;
+	private final ReversiEngine fallback;
+	private long bookMoves;
+	
+	// Constructor (reads in the book and the engine used for positions not in it)
+	public BookEngine(OpeningBook book, ReversiEngine fallback) {
+		this.book = book;
+		this.fallback = fallback;
+	}
+	
+	/**
+	 * chooseMove(ReversiModel, char) plays the book move of the position if there is
+	 * one, and asks the fallback engine otherwise.
+	 * 
+	 * @param model is the model holding the current state of the game (unchanged).
+	 * @param player is 'W' or 'B', the player whose move is being chosen.
+	 * @return the square index of the chosen move, or -1 if the player has no legal
+	 * move.
+	 */
+	@Override
+	public int chooseMove(ReversiModel model, char player) {
+		int move = bookMove(model, player);
+		return (move >= 0) ? move : fallback.chooseMove(model, player);
+	}
+	
+	/**
+	 * chooseMove(ReversiModel, char, long) plays the book move of the position if
+	 * there is one, and asks the fallback engine to choose by the deadline otherwise.
+	 */
+	@Override
+	public int chooseMove(ReversiModel model, char player, long deadline) {
+		int move = bookMove(model, player);
+		return (move >= 0) ? move : fallback.chooseMove(model, player, deadline);
+	}
+	
+	/**
+	 * ponder(ReversiModel, char) lets the fallback engine ponder, since it will be
+	 * asked for the move unless the position reached is in the book.
+	 */
+	@Override
+	public void ponder(ReversiModel model, char player) {
+		fallback.ponder(model, player);
+	}
+	
+	/**
+	 * getBookMoves() returns the number of moves played from the book so far.
+	 * 
+	 * @return the number of calls to chooseMove that were answered by the book.
+	 */
+	public long getBookMoves() {
+		return bookMoves;
+	}
+	
+	/**
+	 * getFallback() returns the engine used for positions that are not in the book.
+	 * 
+	 * @return the fallback engine.
+	 */
+	public ReversiEngine getFallback() {
+		return fallback;
+	}
+	
+	// Legal book move of the position, or -1 if there is none
+	private int bookMove(ReversiModel model, char player) {
+		long entry = book.probe(model.getBoard(player), model.getBoard(player == 'W' ? 'B' : 'W'));
+		if (entry != 0) {
+			int move = OpeningBook.moveOf(entry);
+			if (move >= 0 && (model.getLegalMoves(player) & (1L << move)) != 0) {
+				bookMoves++;
+				return move;
+			}
+		}
+		return -1;
+	}
+	
+}
@@ -0,0 +1,67 @@
+package controller;
+
+/**
+ * Static helper methods for the coordinates of positions as players write them: a
+ * column letter from 'a' followed by a row number from 1, such as "d3".
+ * 
+ * Boards larger than 8x8 carry on with the alphabet and with two-digit rows, so the
+ * bottom right corner of a 16x16 board is "p16", and the largest boards go up to
+ * column 'z'.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public final class Coordinates {
+	
+	// Utility class, not to be instantiated
+	private Coordinates() {
+	}
+	
+	/**
+	 * format(int, int) converts row and column indices into coordinates.
+	 * 
+	 * @param row is the row index of the position, from 0 (top).
+	 * @param col is the column index of the position, from 0 (left) to 25.
+	 * @return the coordinates, such as "a1" for (0, 0) or "j10" for (9, 9).
+	 */
+	public static String format(int row, int col) {
+		return String.valueOf((char) ('a' + col)) + (row + 1);
+	}
+	
+	/**
+	 * parseRow(String) returns the row index given by coordinates.
+	 * 
+	 * @param coordinates are the coordinates, in either case.
+	 * @return the row index, from 0, or -1 if the coordinates are not a letter
+	 * followed by a row number of one or two digits.
+	 */
+	public static int parseRow(String coordinates) {
+		if (parseColumn(coordinates) < 0)
+			return -1;
+		int row = 0;
+		for (int i = 1; i < coordinates.length(); i++)
+			row = row * 10 + coordinates.charAt(i) - '0';
+		return row - 1;
+	}
+	
+	/**
+	 * parseColumn(String) returns the column index given by coordinates.
+	 * 
+	 * @param coordinates are the coordinates, in either case.
+	 * @return the column index, from 0, or -1 if the coordinates are not a letter
+	 * followed by a row number of one or two digits.
+	 */
+	public static int parseColumn(String coordinates) {
+		int length = coordinates.length();
+		if (length < 2 || length > 3)
+			return -1;
+		char letter = Character.toLowerCase(coordinates.charAt(0));
+		if (letter < 'a' || letter > 'z' || coordinates.charAt(1) == '0')
+			return -1;
+		for (int i = 1; i < length; i++)
+			if (coordinates.charAt(i) < '0' || coordinates.charAt(i) > '9')
+				return -1;
+		return letter - 'a';
+	}
+	
+}
@@ -0,0 +1,364 @@
+package controller;
+
+import model.Bitboards;
+
+/**
+ * Exact solver for the end of the game, finding the move with the best final disc
+ * difference under perfect play by both players.
+ * 
+ * Near the end of the game there are few enough empty positions that the whole
+ * remaining game can be searched, so no evaluation is needed. The solver works
+ * directly on pairs of bitboards (the mover's tokens and the opponent's tokens) and
+ * does not touch any model, since even the small cost of a model's bookkeeping adds
+ * up over the many millions of positions of an exact search.
+ * 
+ * The position is first probed with a null window around zero, which only finds out
+ * whether it is a win, draw, or loss, but is much faster than an exact search because
+ * of the many cutoffs. The exact search then only needs to look on the side of zero
+ * that the probe found. Moves are ordered "fastest first" (fewest replies for the
+ * opponent) while many positions are empty, and by parity (moves in regions of the
+ * board with an odd number of empty positions first) close to the end, where
+ * computing the opponent's replies costs more than it saves. The last four empty
+ * positions are handled by specialised routines that try each empty position
+ * directly, without generating moves or move lists.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class EndgameSolver {
+	
+	// Above this many empty positions, moves are ordered by the opponent's replies
+	private static final int FASTEST_FIRST_EMPTIES = 7;
+	private static final int MAX_EMPTIES = 64;
+	private static final long CORNERS = 0x8100000000000081L;
+	private static final long[] QUADRANTS = { 0x000000000f0f0f0fL, 0x00000000f0f0f0f0L,
+			0x0f0f0f0f00000000L, 0xf0f0f0f000000000L };
+	
+	private final int[][] moveLists = new int[MAX_EMPTIES + 1][MAX_EMPTIES];
+	private long nodes;
+	private int bestMove;
+	private int bestScore;
+	private volatile boolean stopRequested;
+	private boolean aborted;
+	private boolean timed; // Whether the solve stops at the deadline
+	private long deadline; // In System.nanoTime() time
+	
+	/**
+	 * solve(long, long) finds the best move of the player to move and the final disc
+	 * difference it leads to.
+	 * 
+	 * A win/draw/loss probe is run first, followed by an exact search on the side of
+	 * zero found by the probe. The score can then be read with getBestScore().
+	 * 
+	 * @param own is the bitboard of the tokens of the player to move.
+	 * @param opp is the bitboard of the opponent's tokens.
+	 * @return the square index of the best move, or -1 if the player has no legal
+	 * move.
+	 */
+	public int solve(long own, long opp) {
+		nodes = 0;
+		aborted = false;
+		bestScore = 0;
+		bestMove = -1;
+		if (Bitboards.legalMoves(own, opp) == 0)
+			return -1;
+		int empties = Long.bitCount(~(own | opp));
+		int outcome = root(own, opp, -1, 1, empties);
+		if (outcome > 0 && !aborted)
+			root(own, opp, 0, 65, empties);
+		else if (outcome < 0 && !aborted)
+			root(own, opp, -65, 0, empties);
+		if (bestMove < 0) // Stopped before any move was searched
+			bestMove = moveLists[empties][0];
+		return bestMove;
+	}
+	
+	/**
+	 * stop() asks a running solve to return as soon as possible, with the best move
+	 * found so far. It may be called from any thread.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+	
+	// Clears any earlier stop request and deadline, before a solve is started
+	void prepare() {
+		stopRequested = false;
+		timed = false;
+	}
+	
+	// Makes the next solve stop by itself once System.nanoTime() reaches the deadline
+	void setDeadline(long deadline) {
+		this.deadline = deadline;
+		timed = true;
+	}
+	
+	/**
+	 * wasStopped() returns whether the most recent solve was cut short by stop(), its
+	 * deadline, or an interrupt of its thread, in which case its move is not necessarily the best one.
+	 * 
+	 * @return true if the last solve was stopped, false otherwise.
+	 */
+	public boolean wasStopped() {
+		return aborted;
+	}
+	
+	/**
+	 * getNodes() returns the number of positions visited by the most recent solve.
+	 * 
+	 * @return the node count of the last call to solve(long, long).
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * getBestScore() returns the final disc difference (from the point of view of the
+	 * player to move) reached with the move found by the most recent solve.
+	 * 
+	 * @return the exact score of the best move.
+	 */
+	public int getBestScore() {
+		return bestScore;
+	}
+	
+	// Searches the root moves, keeping track of the best one
+	private int root(long own, long opp, int alpha, int beta, int empties) {
+		int count = orderMoves(own, opp, Bitboards.legalMoves(own, opp), empties);
+		int[] moveList = moveLists[empties];
+		int best = -65;
+		int move = (bestMove >= 0) ? bestMove : moveList[0]; // Earlier probe's move first
+		for (int i = -1; i < count; i++) {
+			int square = (i < 0) ? move : moveList[i];
+			if (i >= 0 && square == move)
+				continue;
+			long bit = 1L << square;
+			long flipped = Bitboards.flips(own, opp, bit);
+			int score = -search(opp ^ flipped, own | flipped | bit, -beta, -alpha, empties - 1);
+			if (aborted)
+				break;
+			if (score > best) {
+				best = score;
+				bestMove = square;
+				bestScore = score;
+				if (score > alpha) {
+					alpha = score;
+					if (alpha >= beta)
+						break;
+				}
+			}
+		}
+		return best;
+	}
+	
+	// Exact alpha-beta search of the final disc difference for the player to move
+	private int search(long own, long opp, int alpha, int beta, int empties) {
+		if (empties <= 4)
+			return searchLast(own, opp, alpha, beta, empties);
+		if ((++nodes & 1023) == 0 && (stopRequested || Thread.currentThread().isInterrupted()
+				|| (timed && System.nanoTime() - deadline >= 0)))
+			aborted = true;
+		if (aborted)
+			return 0;
+		long moves = Bitboards.legalMoves(own, opp);
+		if (moves == 0) {
+			if (Bitboards.legalMoves(opp, own) == 0)
+				return Long.bitCount(own) - Long.bitCount(opp);
+			return -search(opp, own, -beta, -alpha, empties);
+		}
+		int count = orderMoves(own, opp, moves, empties);
+		int[] moveList = moveLists[empties];
+		int best = -65;
+		for (int i = 0; i < count; i++) {
+			long bit = 1L << moveList[i];
+			long flipped = Bitboards.flips(own, opp, bit);
+			int score = -search(opp ^ flipped, own | flipped | bit, -beta, -alpha, empties - 1);
+			if (aborted)
+				return 0;
+			if (score > best) {
+				best = score;
+				if (score > alpha) {
+					alpha = score;
+					if (alpha >= beta)
+						break;
+				}
+			}
+		}
+		return best;
+	}
+	
+	// Collects the last (at most four) empty positions, odd regions first, and solves
+	private int searchLast(long own, long opp, int alpha, int beta, int empties) {
+		long empty = ~(own | opp);
+		long odd = 0; // Empty positions in regions with an odd number of them
+		for (long quadrant : QUADRANTS) {
+			long inQuadrant = empty & quadrant;
+			if ((Long.bitCount(inQuadrant) & 1) != 0)
+				odd |= inQuadrant;
+		}
+		long even = empty & ~odd;
+		int[] squares = moveLists[empties];
+		int n = 0;
+		for (; odd != 0; odd &= odd - 1)
+			squares[n++] = Long.numberOfTrailingZeros(odd);
+		for (; even != 0; even &= even - 1)
+			squares[n++] = Long.numberOfTrailingZeros(even);
+		switch (empties) {
+		case 4:
+			return last4(own, opp, alpha, beta, squares[0], squares[1], squares[2], squares[3],
+					false);
+		case 3:
+			return last3(own, opp, alpha, beta, squares[0], squares[1], squares[2], false);
+		case 2:
+			return last2(own, opp, alpha, beta, squares[0], squares[1], false);
+		case 1:
+			return last1(own, opp, squares[0]);
+		default:
+			return Long.bitCount(own) - Long.bitCount(opp);
+		}
+	}
+	
+	// Four empty positions left: tries each directly, then hands over to last3
+	private int last4(long own, long opp, int alpha, int beta, int a, int b, int c, int d,
+			boolean passed) {
+		nodes++;
+		int best = -65;
+		long flipped;
+		if ((flipped = Bitboards.flips(own, opp, 1L << a)) != 0) {
+			best = -last3(opp ^ flipped, own | flipped | (1L << a), -beta, -alpha, b, c, d, false);
+			if (best >= beta)
+				return best;
+			alpha = Math.max(alpha, best);
+		}
+		if ((flipped = Bitboards.flips(own, opp, 1L << b)) != 0) {
+			int score = -last3(opp ^ flipped, own | flipped | (1L << b), -beta, -alpha, a, c, d, false);
+			if (score >= beta)
+				return score;
+			best = Math.max(best, score);
+			alpha = Math.max(alpha, score);
+		}
+		if ((flipped = Bitboards.flips(own, opp, 1L << c)) != 0) {
+			int score = -last3(opp ^ flipped, own | flipped | (1L << c), -beta, -alpha, a, b, d, false);
+			if (score >= beta)
+				return score;
+			best = Math.max(best, score);
+			alpha = Math.max(alpha, score);
+		}
+		if ((flipped = Bitboards.flips(own, opp, 1L << d)) != 0) {
+			int score = -last3(opp ^ flipped, own | flipped | (1L << d), -beta, -alpha, a, b, c, false);
+			best = Math.max(best, score);
+		}
+		if (best == -65) { // No legal move: pass, or the game is over
+			if (passed)
+				return Long.bitCount(own) - Long.bitCount(opp);
+			return -last4(opp, own, -beta, -alpha, a, b, c, d, true);
+		}
+		return best;
+	}
+	
+	// Three empty positions left: tries each directly, then hands over to last2
+	private int last3(long own, long opp, int alpha, int beta, int a, int b, int c,
+			boolean passed) {
+		nodes++;
+		int best = -65;
+		long flipped;
+		if ((flipped = Bitboards.flips(own, opp, 1L << a)) != 0) {
+			best = -last2(opp ^ flipped, own | flipped | (1L << a), -beta, -alpha, b, c, false);
+			if (best >= beta)
+				return best;
+			alpha = Math.max(alpha, best);
+		}
+		if ((flipped = Bitboards.flips(own, opp, 1L << b)) != 0) {
+			int score = -last2(opp ^ flipped, own | flipped | (1L << b), -beta, -alpha, a, c, false);
+			if (score >= beta)
+				return score;
+			best = Math.max(best, score);
+			alpha = Math.max(alpha, score);
+		}
+		if ((flipped = Bitboards.flips(own, opp, 1L << c)) != 0) {
+			int score = -last2(opp ^ flipped, own | flipped | (1L << c), -beta, -alpha, a, b, false);
+			best = Math.max(best, score);
+		}
+		if (best == -65) {
+			if (passed)
+				return Long.bitCount(own) - Long.bitCount(opp);
+			return -last3(opp, own, -beta, -alpha, a, b, c, true);
+		}
+		return best;
+	}
+	
+	// Two empty positions left: tries each directly, then hands over to last1
+	private int last2(long own, long opp, int alpha, int beta, int a, int b, boolean passed) {
+		nodes++;
+		int best = -65;
+		long flipped;
+		if ((flipped = Bitboards.flips(own, opp, 1L << a)) != 0) {
+			best = -last1(opp ^ flipped, own | flipped | (1L << a), b);
+			if (best >= beta)
+				return best;
+		}
+		if ((flipped = Bitboards.flips(own, opp, 1L << b)) != 0) {
+			int score = -last1(opp ^ flipped, own | flipped | (1L << b), a);
+			best = Math.max(best, score);
+		}
+		if (best == -65) {
+			if (passed)
+				return Long.bitCount(own) - Long.bitCount(opp);
+			return -last2(opp, own, -beta, -alpha, a, b, true);
+		}
+		return best;
+	}
+	
+	// One empty position left: the score follows from who (if anyone) can fill it
+	private int last1(long own, long opp, int a) {
+		nodes++;
+		long bit = 1L << a;
+		long flipped = Bitboards.flips(own, opp, bit);
+		int ownCount = Long.bitCount(own);
+		if (flipped != 0)
+			return 2 * (ownCount + Long.bitCount(flipped) + 1) - 64;
+		flipped = Bitboards.flips(opp, own, bit);
+		if (flipped != 0)
+			return 2 * (ownCount - Long.bitCount(flipped)) - 64;
+		return 2 * ownCount - 63; // Nobody can move, the position stays empty
+	}
+	
+	// Fills the move list for this many empties, best candidates first
+	private int orderMoves(long own, long opp, long moves, int empties) {
+		int[] moveList = moveLists[empties];
+		int count = 0;
+		long odd = 0;
+		if (empties <= FASTEST_FIRST_EMPTIES) {
+			long empty = ~(own | opp);
+			for (long quadrant : QUADRANTS) {
+				if ((Long.bitCount(empty & quadrant) & 1) != 0)
+					odd |= quadrant;
+			}
+		}
+		while (moves != 0) {
+			int square = Long.numberOfTrailingZeros(moves);
+			long bit = moves & -moves;
+			moves ^= bit;
+			int key;
+			if (empties > FASTEST_FIRST_EMPTIES) {
+				long flipped = Bitboards.flips(own, opp, bit);
+				int replies = Long.bitCount(Bitboards.legalMoves(opp ^ flipped, own | flipped | bit));
+				key = -replies * 4 + (((bit & CORNERS) != 0) ? 2 : 0);
+			} else {
+				key = ((bit & odd) != 0) ? 1 : 0;
+			}
+			// Key in the high bits and square in the low byte, so sorting sorts by key
+			int packed = (key << 8) | square;
+			int i = count++;
+			while (i > 0 && moveList[i - 1] < packed) {
+				moveList[i] = moveList[i - 1];
+				i--;
+			}
+			moveList[i] = packed;
+		}
+		for (int i = 0; i < count; i++)
+			moveList[i] &= 0xff;
+		return count;
+	}
+	
+}
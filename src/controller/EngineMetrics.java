@@ -0,0 +1,270 @@
+package controller;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of what the computer player is doing, kept for each controller and for
+ * the whole process, and readable over JMX (see EngineMetricsMBean) or as a
+ * MetricsSnapshot.
+ * 
+ * Every AlphaBetaEngine search, on whichever thread it runs, records the positions
+ * it visited, the depth it completed, how long it took, and its transposition table
+ * lookups and hits (a LazySmpEngine records the searches of all its threads for a
+ * move as one). A search run for a controller's turn is recorded in that
+ * controller's metrics (a PooledEngine carries them over to its own threads);
+ * other searches, such as pondering, only in the process-wide metrics of
+ * global(). A controller also records the moves played and the time taken by
+ * computerTurn and humanTurn, and of one isGameOver in sixteen (the check itself
+ * takes a few nanoseconds, so timing every one would cost far more than it does).
+ * Everything recorded in a controller's metrics is recorded in the process-wide
+ * metrics as well.
+ * 
+ * Counters are LongAdders and the times are LatencyHistograms, so recording takes no
+ * lock and threads hardly contend, and the engines only record once per search, not
+ * per position, so the metrics can be left on in production.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+	
+	private static final EngineMetrics GLOBAL = new EngineMetrics(null);
+	private static final ThreadLocal<EngineMetrics> CURRENT = new ThreadLocal<>();
+	
+	private final EngineMetrics parent;
+	private final LongAdder moves = new LongAdder();
+	private final LongAdder searches = new LongAdder();
+	private final LongAdder nodes = new LongAdder();
+	private final LongAdder searchNanos = new LongAdder();
+	private final LongAdder depths = new LongAdder(); // Sum of the depths reached
+	private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LatencyHistogram computerTurns = new LatencyHistogram();
+	private final LatencyHistogram humanTurns = new LatencyHistogram();
+	private final LatencyHistogram gameOverChecks = new LatencyHistogram();
+	
+	// Constructor (the metrics of one controller, also recorded in the process-wide metrics)
+	public EngineMetrics() {
+		this(GLOBAL);
+	}
+	
+	// Constructor (reads in the metrics everything is also recorded in, or null)
+	private EngineMetrics(EngineMetrics parent) {
+		this.parent = parent;
+	}
+	
+	/**
+	 * global() returns the metrics of the whole process.
+	 * 
+	 * @return the metrics every search and every controller's metrics are recorded in.
+	 */
+	public static EngineMetrics global() {
+		return GLOBAL;
+	}
+	
+	// Metrics the calling thread's searches are recorded in
+	static EngineMetrics current() {
+		EngineMetrics metrics = CURRENT.get();
+		return (metrics != null) ? metrics : GLOBAL;
+	}
+	
+	// Records the calling thread's searches in the given metrics (null for the global ones), returns the previous ones
+	static EngineMetrics bind(EngineMetrics metrics) {
+		EngineMetrics previous = current();
+		if (metrics == null || metrics == GLOBAL)
+			CURRENT.remove();
+		else
+			CURRENT.set(metrics);
+		return previous;
+	}
+	
+	// Wraps a task so that its searches are recorded in the calling thread's metrics, on whichever thread it runs
+	static <T> Callable<T> carry(Callable<T> task) {
+		EngineMetrics metrics = current();
+		return () -> {
+			EngineMetrics previous = bind(metrics);
+			try {
+				return task.call();
+			} finally {
+				bind(previous);
+			}
+		};
+	}
+	
+	// Records one search's positions, completed depth, time, and table lookups and hits
+	void recordSearch(long searchedNodes, int depth, long nanos, long tableProbes, long tableHits) {
+		for (EngineMetrics m = this; m != null; m = m.parent) {
+			m.searches.increment();
+			m.nodes.add(searchedNodes);
+			m.searchNanos.add(nanos);
+			m.depths.add(depth);
+			m.maxDepth.accumulate(depth);
+			m.probes.add(tableProbes);
+			m.hits.add(tableHits);
+		}
+	}
+	
+	// Records a move played by either player
+	void recordMove() {
+		for (EngineMetrics m = this; m != null; m = m.parent)
+			m.moves.increment();
+	}
+	
+	// Records the time taken by a computer turn
+	void recordComputerTurn(long nanos) {
+		for (EngineMetrics m = this; m != null; m = m.parent)
+			m.computerTurns.record(nanos);
+	}
+	
+	// Records the time taken by a human turn
+	void recordHumanTurn(long nanos) {
+		for (EngineMetrics m = this; m != null; m = m.parent)
+			m.humanTurns.record(nanos);
+	}
+	
+	// Records the time taken by a check for the end of the game
+	void recordGameOverCheck(long nanos) {
+		for (EngineMetrics m = this; m != null; m = m.parent)
+			m.gameOverChecks.record(nanos);
+	}
+	
+	/**
+	 * snapshot() returns a copy of the metrics as they are now.
+	 * 
+	 * The counters are read one after another while other threads may be recording,
+	 * so a snapshot taken during a search can count a search without all of its
+	 * nodes, but never anything twice.
+	 * 
+	 * @return the snapshot.
+	 */
+	public MetricsSnapshot snapshot() {
+		return new MetricsSnapshot(moves.sum(), searches.sum(), nodes.sum(), searchNanos.sum(), depths.sum(),
+				(int) maxDepth.get(), probes.sum(), hits.sum(), copyOf(computerTurns), copyOf(humanTurns),
+				copyOf(gameOverChecks));
+	}
+	
+	/**
+	 * register(String) makes the metrics readable over JMX, as the MBean
+	 * "Reversi:type=EngineMetrics,name=" followed by the given name.
+	 * 
+	 * @param name is the name distinguishing these metrics from others, such as
+	 * "global" or a session's id.
+	 * @return the name the MBean was registered under.
+	 * @throws IllegalStateException if the name is taken or cannot be used.
+	 */
+	public ObjectName register(String name) throws IllegalStateException {
+		try {
+			ObjectName objectName = new ObjectName("Reversi:type=EngineMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not register the metrics as " + name, e);
+		}
+	}
+	
+	/**
+	 * unregister(ObjectName) removes metrics registered with register(String) from
+	 * JMX, so that they can be let go of.
+	 * 
+	 * @param objectName is the name returned by register(String).
+	 */
+	public static void unregister(ObjectName objectName) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not unregister " + objectName, e);
+		}
+	}
+	
+	@Override
+	public long getMoves() {
+		return moves.sum();
+	}
+	
+	@Override
+	public long getSearches() {
+		return searches.sum();
+	}
+	
+	@Override
+	public long getNodes() {
+		return nodes.sum();
+	}
+	
+	@Override
+	public double getNodesPerSecond() {
+		long nanos = searchNanos.sum();
+		return (nanos == 0) ? 0 : nodes.sum() * 1e9 / nanos;
+	}
+	
+	@Override
+	public double getAverageDepth() {
+		long count = searches.sum();
+		return (count == 0) ? 0 : (double) depths.sum() / count;
+	}
+	
+	@Override
+	public int getMaxDepth() {
+		return (int) maxDepth.get();
+	}
+	
+	@Override
+	public double getTableHitRate() {
+		long lookups = probes.sum();
+		return (lookups == 0) ? 0 : (double) hits.sum() / lookups;
+	}
+	
+	@Override
+	public double getComputerTurnMeanMillis() {
+		return computerTurns.getMean() / 1e6;
+	}
+	
+	@Override
+	public double getComputerTurnP99Millis() {
+		return computerTurns.getPercentile(0.99) / 1e6;
+	}
+	
+	@Override
+	public double getHumanTurnP99Millis() {
+		return humanTurns.getPercentile(0.99) / 1e6;
+	}
+	
+	@Override
+	public double getGameOverCheckP99Micros() {
+		return gameOverChecks.getPercentile(0.99) / 1e3;
+	}
+	
+	/**
+	 * reset() sets every counter back to zero, for instance between load tests. Only
+	 * these metrics are reset, not the process-wide ones they are recorded in.
+	 */
+	@Override
+	public void reset() {
+		moves.reset();
+		searches.reset();
+		nodes.reset();
+		searchNanos.reset();
+		depths.reset();
+		maxDepth.reset();
+		probes.reset();
+		hits.reset();
+		computerTurns.reset();
+		humanTurns.reset();
+		gameOverChecks.reset();
+	}
+	
+	// Copy of a histogram, which later recording does not change
+	private static LatencyHistogram copyOf(LatencyHistogram histogram) {
+		LatencyHistogram copy = new LatencyHistogram();
+		copy.add(histogram);
+		return copy;
+	}
+	
+}
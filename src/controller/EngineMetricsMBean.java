@@ -0,0 +1,99 @@
+package controller;
+
+/**
+ * Attributes and operations of EngineMetrics as seen over JMX, for monitoring tools
+ * such as JConsole or an exporter alerting on falling nodes per second.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public interface EngineMetricsMBean {
+	
+	/**
+	 * getMoves() returns the number of moves played by either player.
+	 * 
+	 * @return the number of moves played.
+	 */
+	long getMoves();
+	
+	/**
+	 * getSearches() returns the number of searches run.
+	 * 
+	 * @return the number of searches recorded.
+	 */
+	long getSearches();
+	
+	/**
+	 * getNodes() returns the number of positions visited by every search.
+	 * 
+	 * @return the total node count.
+	 */
+	long getNodes();
+	
+	/**
+	 * getNodesPerSecond() returns the speed of the searches.
+	 * 
+	 * @return the positions visited per second spent searching, or 0 if nothing was
+	 * searched.
+	 */
+	double getNodesPerSecond();
+	
+	/**
+	 * getAverageDepth() returns the average depth the searches completed.
+	 * 
+	 * @return the mean depth reached, in moves, or 0 if nothing was searched.
+	 */
+	double getAverageDepth();
+	
+	/**
+	 * getMaxDepth() returns the deepest depth any search completed.
+	 * 
+	 * @return the greatest depth reached, in moves.
+	 */
+	int getMaxDepth();
+	
+	/**
+	 * getTableHitRate() returns how often the transposition table had the position
+	 * looked up.
+	 * 
+	 * @return hits divided by lookups, or 0 if there were no lookups.
+	 */
+	double getTableHitRate();
+	
+	/**
+	 * getComputerTurnMeanMillis() returns the mean time of a computer turn.
+	 * 
+	 * @return the mean time in milliseconds.
+	 */
+	double getComputerTurnMeanMillis();
+	
+	/**
+	 * getComputerTurnP99Millis() returns the 99th percentile of the time of a
+	 * computer turn.
+	 * 
+	 * @return the 99th percentile in milliseconds.
+	 */
+	double getComputerTurnP99Millis();
+	
+	/**
+	 * getHumanTurnP99Millis() returns the 99th percentile of the time taken to
+	 * process a human turn.
+	 * 
+	 * @return the 99th percentile in milliseconds.
+	 */
+	double getHumanTurnP99Millis();
+	
+	/**
+	 * getGameOverCheckP99Micros() returns the 99th percentile of the time of a check
+	 * for the end of the game.
+	 * 
+	 * @return the 99th percentile in microseconds.
+	 */
+	double getGameOverCheckP99Micros();
+	
+	/**
+	 * reset() sets every counter back to zero.
+	 */
+	void reset();
+	
+}
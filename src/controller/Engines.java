@@ -0,0 +1,87 @@
+package controller;
+
+import java.util.function.Supplier;
+
+/**
+ * Creates engines from short text descriptions, so that tools can be told which
+ * engines to run from the command line.
+ * 
+ * A description is the name of an engine followed by options, separated by colons:
+ * "greedy" for GreedyEngine, or "alphabeta" for AlphaBetaEngine, whose options are
+ * the search depth (a number, 4 if not given), "pattern" to evaluate with a
+ * PatternEvaluator, "end=N" to solve the endgame exactly from N empty positions
+ * (0 turns the solver off), and "tt=N" for an N megabyte transposition table. For
+ * example, "alphabeta:6:pattern:end=12".
+ * 
+ * Engines keep search state between moves, so a tool running games on several threads
+ * needs one engine per thread; this is why descriptions are turned into suppliers of
+ * new engines rather than into engines.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public final class Engines {
+	
+	// Utility class, not to be instantiated
+	private Engines() {
+	}
+	
+	/**
+	 * fromDescription(String) returns a supplier of new engines matching a
+	 * description.
+	 * 
+	 * Engines created by the same supplier share anything that is read-only, such as
+	 * the pattern evaluator's weights, but nothing else.
+	 * 
+	 * @param description is the description of the engine, as explained above.
+	 * @return a supplier creating a new engine on every call.
+	 * @throws IllegalArgumentException if the description is not understood.
+	 */
+	public static Supplier<ReversiEngine> fromDescription(String description)
+			throws IllegalArgumentException {
+		String[] parts = description.trim().split(":");
+		switch (parts[0]) {
+		case "greedy":
+			if (parts.length > 1)
+				throw new IllegalArgumentException("The greedy engine takes no options: " + description);
+			return GreedyEngine::new;
+		case "alphabeta":
+			int depth = 4;
+			int endgame = -1;
+			int megabytes = 16;
+			PatternEvaluator evaluator = null;
+			for (int i = 1; i < parts.length; i++) {
+				String option = parts[i];
+				try {
+					if (option.equals("pattern"))
+						evaluator = new PatternEvaluator();
+					else if (option.startsWith("end="))
+						endgame = Integer.parseInt(option.substring(4));
+					else if (option.startsWith("tt="))
+						megabytes = Integer.parseInt(option.substring(3));
+					else
+						depth = Integer.parseInt(option);
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Unknown option \"" + option + "\" in " + description);
+				}
+			}
+			if (depth < 1 || endgame > 64 || megabytes < 1)
+				throw new IllegalArgumentException("Option out of range in " + description);
+			int finalDepth = depth;
+			int finalEndgame = endgame;
+			int finalMegabytes = megabytes;
+			PatternEvaluator finalEvaluator = evaluator;
+			return () -> {
+				AlphaBetaEngine engine = new AlphaBetaEngine(finalDepth,
+						new TranspositionTable(finalMegabytes));
+				if (finalEndgame >= 0)
+					engine.setEndgameEmpties(finalEndgame);
+				engine.setEvaluator(finalEvaluator);
+				return engine;
+			};
+		default:
+			throw new IllegalArgumentException("Unknown engine: " + description);
+		}
+	}
+	
+}
@@ -0,0 +1,195 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import model.ReversiModel;
+
+/**
+ * Read-only archive of finished games, stored in two memory-mapped files: the games
+ * themselves, one after the other, and an index of where each game starts.
+ * 
+ * Both files start with a 16-byte header (a magic number, the format version, and
+ * eight reserved bytes). Each game in the game file is a 16-byte header (the time it
+ * was played in milliseconds since 1970, the ids of the player moving first and of
+ * the other player, the final disc difference of the player moving first, the number
+ * of moves, and two reserved bytes) followed by one byte per move: the square index,
+ * or PASS when the player to move had to pass. The index file holds the offset of
+ * every game in the game file as a long, so game n is found by reading one long at
+ * a fixed place, whatever the length of the games before it. What the player ids
+ * stand for is up to whoever writes the archive; ReversiController writes the human
+ * player as 0 and the computer as 1.
+ * 
+ * Since both files are mapped, opening an archive reads almost nothing, and every
+ * accessor reads straight from the mapped pages, without copying a game or creating
+ * any objects, so an archive of millions of games can be scanned as fast as the
+ * page cache can deliver it. An archive sees the games written before it was opened;
+ * games are added by GameArchiveWriter. An archive can be used by several threads
+ * at once.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class GameArchive {
+	
+	/**
+	 * Move byte written when the player to move has to pass.
+	 */
+	public static final int PASS = 64;
+	
+	static final int GAMES_MAGIC = 0x52564741; // "RVGA"
+	static final int INDEX_MAGIC = 0x52564749; // "RVGI"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 16; // Of either file, and of each game
+	static final int OFFSET_BYTES = 8;
+	
+	private final MappedByteBuffer games;
+	private final MappedByteBuffer index;
+	private final int size;
+	
+	// Constructor (reads in the paths of the game file and the index file, which are mapped)
+	public GameArchive(Path gameFile, Path indexFile) throws IOException {
+		games = map(gameFile, GAMES_MAGIC);
+		index = map(indexFile, INDEX_MAGIC);
+		size = (index.capacity() - HEADER_BYTES) / OFFSET_BYTES;
+		if (size > 0) {
+			long last = index.getLong(HEADER_BYTES + (size - 1) * OFFSET_BYTES);
+			if (last < HEADER_BYTES || last + HEADER_BYTES > games.capacity()
+					|| last + HEADER_BYTES + (games.get((int) last + 13) & 0xff) > games.capacity())
+				throw new IOException("Archive index does not match its games: " + indexFile);
+		}
+	}
+	
+	/**
+	 * getSize() returns the number of games in the archive.
+	 * 
+	 * @return the number of games written before the archive was opened.
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * getTimestamp(int) returns when a game was played.
+	 * 
+	 * @param game is the number of the game, from 0.
+	 * @return the time the game was written, in milliseconds since 1970.
+	 */
+	public long getTimestamp(int game) {
+		return games.getLong(offsetOf(game));
+	}
+	
+	/**
+	 * getFirstPlayer(int) returns the id of the player who moved first ('W').
+	 * 
+	 * @param game is the number of the game, from 0.
+	 * @return the player id, from 0 to 65535.
+	 */
+	public int getFirstPlayer(int game) {
+		return games.getShort(offsetOf(game) + 8) & 0xffff;
+	}
+	
+	/**
+	 * getSecondPlayer(int) returns the id of the player who moved second ('B').
+	 * 
+	 * @param game is the number of the game, from 0.
+	 * @return the player id, from 0 to 65535.
+	 */
+	public int getSecondPlayer(int game) {
+		return games.getShort(offsetOf(game) + 10) & 0xffff;
+	}
+	
+	/**
+	 * getResult(int) returns the final disc difference of a game.
+	 * 
+	 * @param game is the number of the game, from 0.
+	 * @return the first player's discs minus the second player's discs.
+	 */
+	public int getResult(int game) {
+		return games.get(offsetOf(game) + 12);
+	}
+	
+	/**
+	 * getMoveCount(int) returns the number of moves of a game, passes included.
+	 * 
+	 * @param game is the number of the game, from 0.
+	 * @return the number of move bytes of the game.
+	 */
+	public int getMoveCount(int game) {
+		return games.get(offsetOf(game) + 13) & 0xff;
+	}
+	
+	/**
+	 * getMove(int, int) returns one move of a game.
+	 * 
+	 * @param game is the number of the game, from 0.
+	 * @param ply is the number of the move, from 0.
+	 * @return the square index of the move, or PASS.
+	 * @throws IllegalArgumentException if the game has no such move.
+	 */
+	public int getMove(int game, int ply) throws IllegalArgumentException {
+		int offset = offsetOf(game);
+		if (ply < 0 || ply >= (games.get(offset + 13) & 0xff))
+			throw new IllegalArgumentException("Game " + game + " has no move " + ply);
+		return games.get(offset + HEADER_BYTES + ply);
+	}
+	
+	/**
+	 * getMoves(int) returns the moves of a game without copying them.
+	 * 
+	 * @param game is the number of the game, from 0.
+	 * @return a read-only buffer over the game's move bytes in the mapped file.
+	 */
+	public ByteBuffer getMoves(int game) {
+		int offset = offsetOf(game);
+		return games.slice(offset + HEADER_BYTES, games.get(offset + 13) & 0xff).asReadOnlyBuffer();
+	}
+	
+	/**
+	 * replay(int, ReversiModel) plays a game on a model from the initial position,
+	 * so that it can be stepped through with the model's undo stack.
+	 * 
+	 * @param game is the number of the game, from 0.
+	 * @param model is the model set to the game's final position.
+	 * @throws IllegalStateException if the game holds an illegal move.
+	 */
+	public void replay(int game, ReversiModel model) throws IllegalStateException {
+		model.copyFrom(new ReversiModel());
+		char player = 'W';
+		for (int ply = 0, moves = getMoveCount(game); ply < moves; ply++) {
+			int move = getMove(game, ply);
+			if (move != PASS) {
+				if (move < 0 || move > 63 || (model.getLegalMoves(player) & (1L << move)) == 0)
+					throw new IllegalStateException("Illegal move " + ply + " in game " + game);
+				model.makeMove(player, move);
+			}
+			player = (player == 'W') ? 'B' : 'W';
+		}
+	}
+	
+	// Offset of a game's header in the game file
+	private int offsetOf(int game) {
+		if (game < 0 || game >= size)
+			throw new IllegalArgumentException("No game " + game);
+		return (int) index.getLong(HEADER_BYTES + game * OFFSET_BYTES);
+	}
+	
+	// Maps a whole archive file after checking its header
+	private static MappedByteBuffer map(Path file, int magic) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length < HEADER_BYTES || length > Integer.MAX_VALUE)
+				throw new IOException("Not a game archive file: " + file);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+		}
+		if (buffer.getInt(0) != magic || buffer.getInt(4) != VERSION)
+			throw new IOException("Not a game archive file: " + file);
+		return buffer;
+	}
+	
+}
@@ -0,0 +1,168 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import model.ReversiModel;
+
+/**
+ * Appends finished games to a game archive (see GameArchive), creating its files if
+ * they do not exist yet.
+ * 
+ * Each game is written to the end of the game file first, and only then is its
+ * offset added to the index, so a game only becomes part of the archive once it is
+ * completely written. If the program stops in between, the next writer opened on
+ * the archive cuts off whatever was written past the last indexed game. Appending
+ * is synchronized, so several threads (such as the workers of a Tournament) can
+ * share one writer.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class GameArchiveWriter implements Closeable {
+	
+	private static final int MAX_MOVE_BYTES = 255; // The move count is one byte
+	
+	private final FileChannel games;
+	private final FileChannel index;
+	private final ByteBuffer record = ByteBuffer.allocateDirect(GameArchive.HEADER_BYTES + MAX_MOVE_BYTES);
+	private final ByteBuffer offset = ByteBuffer.allocateDirect(GameArchive.OFFSET_BYTES);
+	private int size;
+	
+	// Constructor (reads in the paths of the game file and the index file, created if missing)
+	public GameArchiveWriter(Path gameFile, Path indexFile) throws IOException {
+		games = FileChannel.open(gameFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			prepare(games, GameArchive.GAMES_MAGIC, gameFile);
+			prepare(index, GameArchive.INDEX_MAGIC, indexFile);
+			recover();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * append(ReversiModel, int, int) adds the game played on a model to the archive.
+	 * 
+	 * The moves are read from the model's undo stack (see ReversiModel.getMoveAt(int)),
+	 * so the model must hold the whole game, from the initial position; passes are
+	 * worked out from consecutive moves by the same player. The result is taken from
+	 * the model's board, so the game is normally over, but does not have to be.
+	 * 
+	 * @param model is the model the game was played on.
+	 * @param firstPlayer is the id of the player who moved first ('W').
+	 * @param secondPlayer is the id of the player who moved second ('B').
+	 * @return the number of the game in the archive.
+	 * @throws IOException if the game cannot be written.
+	 */
+	public synchronized int append(ReversiModel model, int firstPlayer, int secondPlayer)
+			throws IOException {
+		if (firstPlayer < 0 || firstPlayer > 0xffff || secondPlayer < 0 || secondPlayer > 0xffff)
+			throw new IllegalArgumentException("Player ids must be from 0 to 65535");
+		record.clear();
+		record.putLong(System.currentTimeMillis());
+		record.putShort((short) firstPlayer);
+		record.putShort((short) secondPlayer);
+		record.put((byte) (model.getWScore() - model.getBScore()));
+		record.position(GameArchive.HEADER_BYTES);
+		char player = 'W';
+		for (int i = 0; i < model.getMoveCount(); i++) {
+			if (model.getPlayerAt(i) != player) // The player to move passed
+				record.put((byte) GameArchive.PASS);
+			record.put((byte) model.getMoveAt(i));
+			player = (model.getPlayerAt(i) == 'W') ? 'B' : 'W';
+		}
+		record.put(13, (byte) (record.position() - GameArchive.HEADER_BYTES));
+		record.flip();
+		
+		long start = games.size();
+		while (record.hasRemaining())
+			games.write(record, start + record.position());
+		offset.clear();
+		offset.putLong(start).flip();
+		long slot = GameArchive.HEADER_BYTES + (long) size * GameArchive.OFFSET_BYTES;
+		while (offset.hasRemaining())
+			index.write(offset, slot + offset.position());
+		return size++;
+	}
+	
+	/**
+	 * getSize() returns the number of games in the archive.
+	 * 
+	 * @return the number of games, including those written before this writer was
+	 * opened.
+	 */
+	public synchronized int getSize() {
+		return size;
+	}
+	
+	/**
+	 * flush() makes sure that every game appended so far is stored on disk, not only
+	 * handed to the operating system.
+	 * 
+	 * @throws IOException if the files cannot be written.
+	 */
+	public synchronized void flush() throws IOException {
+		games.force(false);
+		index.force(false);
+	}
+	
+	/**
+	 * close() flushes the archive and closes its files.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			if (games.isOpen() && index.isOpen())
+				flush();
+		} finally {
+			games.close();
+			index.close();
+		}
+	}
+	
+	// Writes the header of a new file, or checks the header of an existing one
+	private static void prepare(FileChannel channel, int magic, Path file) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(GameArchive.HEADER_BYTES);
+		if (channel.size() == 0) {
+			header.putInt(magic).putInt(GameArchive.VERSION).rewind(); // All 16 bytes, the rest reserved
+			while (header.hasRemaining())
+				channel.write(header, header.position());
+			return;
+		}
+		while (header.hasRemaining() && channel.read(header, header.position()) >= 0)
+			;
+		if (header.hasRemaining() || header.getInt(0) != magic || header.getInt(4) != GameArchive.VERSION)
+			throw new IOException("Not a game archive file: " + file);
+	}
+	
+	// Cuts off any game or offset left half-written by a writer that did not finish
+	private void recover() throws IOException {
+		size = (int) ((index.size() - GameArchive.HEADER_BYTES) / GameArchive.OFFSET_BYTES);
+		long end = GameArchive.HEADER_BYTES;
+		if (size > 0) {
+			ByteBuffer last = ByteBuffer.allocate(GameArchive.OFFSET_BYTES);
+			long slot = GameArchive.HEADER_BYTES + (long) (size - 1) * GameArchive.OFFSET_BYTES;
+			while (last.hasRemaining() && index.read(last, slot + last.position()) >= 0)
+				;
+			long start = last.getLong(0);
+			ByteBuffer header = ByteBuffer.allocate(GameArchive.HEADER_BYTES);
+			while (header.hasRemaining() && start >= 0 && games.read(header, start + header.position()) >= 0)
+				;
+			end = start + GameArchive.HEADER_BYTES + (header.get(13) & 0xff);
+			if (header.hasRemaining() || start < GameArchive.HEADER_BYTES || end > games.size())
+				throw new IOException("Archive index does not match its games");
+		}
+		index.truncate(GameArchive.HEADER_BYTES + (long) size * GameArchive.OFFSET_BYTES);
+		games.truncate(end);
+	}
+	
+}
@@ -0,0 +1,122 @@
+package controller;
+
+import java.time.Duration;
+
+import model.ReversiModel;
+
+/**
+ * Clock of the time one player has for a whole game, which decides how much of it
+ * to spend on each move.
+ * 
+ * The time left (less a small reserve, so that the clock never runs out) is shared
+ * among the player's moves still to come, each weighted by the stage of the game it
+ * falls in: opening moves, which are quickly searched deep enough and matter least,
+ * get half as much as endgame moves, and midgame moves, where most games are won or
+ * lost and the tree is widest, get half as much again. No move gets more than half
+ * of the time left. An increment, if any, is added to the clock after every move
+ * and counted in the time to share.
+ * 
+ * The budget is meant for ReversiController.computerTurn(GameClock), which searches
+ * with it as the deadline and charges the time the move actually took.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class GameClock {
+	
+	private static final int OPENING_EMPTIES = 44; // More empty squares than this is the opening
+	private static final int ENDGAME_EMPTIES = 20; // This many or fewer is the endgame
+	private static final double OPENING_WEIGHT = 0.5;
+	private static final double MIDGAME_WEIGHT = 1.5;
+	private static final double ENDGAME_WEIGHT = 1.0;
+	private static final int RESERVE_DIVISOR = 50; // A fiftieth of the initial time is never spent
+	private static final long MIN_BUDGET_NANOS = 1_000_000;
+	
+	private final long increment;
+	private final long reserve;
+	private long remaining;
+	private int moves;
+	
+	// Constructor (reads in the time for the whole game)
+	public GameClock(Duration total) {
+		this(total, Duration.ZERO);
+	}
+	
+	// Constructor (reads in the time for the whole game and the time added after each move)
+	public GameClock(Duration total, Duration increment) {
+		if (total.isNegative() || total.isZero() || increment.isNegative())
+			throw new IllegalArgumentException("The game needs some time, and the increment cannot be negative");
+		remaining = total.toNanos();
+		this.increment = increment.toNanos();
+		reserve = remaining / RESERVE_DIVISOR;
+	}
+	
+	/**
+	 * budget(ReversiModel) returns how long the player should spend on the move in a
+	 * position.
+	 * 
+	 * @param model is the model holding the current state of the game, with the
+	 * clock's player to move.
+	 * @return the time to spend, in nanoseconds, at least a millisecond even if the
+	 * clock has run low.
+	 */
+	public long budget(ReversiModel model) {
+		int empties = 64 - model.getWScore() - model.getBScore();
+		double weights = 0;
+		int movesLeft = 0;
+		for (int e = empties; e > 0; e -= 2) { // The player moves every other turn
+			weights += weight(e);
+			movesLeft++;
+		}
+		long available = remaining - reserve + increment * Math.max(movesLeft - 1, 0);
+		long budget = (long) (available * weight(empties) / Math.max(weights, ENDGAME_WEIGHT));
+		budget = Math.min(budget, (remaining - reserve) / 2);
+		return Math.max(budget, MIN_BUDGET_NANOS);
+	}
+	
+	/**
+	 * charge(long) takes the time spent on a move off the clock, and adds the
+	 * increment.
+	 * 
+	 * @param nanos is the time the move took, in nanoseconds.
+	 */
+	public void charge(long nanos) {
+		remaining += increment - nanos;
+		moves++;
+	}
+	
+	/**
+	 * getRemaining() returns the time left on the clock.
+	 * 
+	 * @return the time left, in nanoseconds (negative if the clock ran out).
+	 */
+	public long getRemaining() {
+		return remaining;
+	}
+	
+	/**
+	 * getMoves() returns the number of moves charged to the clock.
+	 * 
+	 * @return the number of calls to charge(long).
+	 */
+	public int getMoves() {
+		return moves;
+	}
+	
+	/**
+	 * isFlagged() returns whether the clock ran out.
+	 * 
+	 * @return true if more time was spent than the clock had, false otherwise.
+	 */
+	public boolean isFlagged() {
+		return remaining < 0;
+	}
+	
+	// Share of the time given to a move with the given number of empty squares
+	private static double weight(int empties) {
+		if (empties > OPENING_EMPTIES)
+			return OPENING_WEIGHT;
+		return (empties > ENDGAME_EMPTIES) ? MIDGAME_WEIGHT : ENDGAME_WEIGHT;
+	}
+	
+}
@@ -0,0 +1,81 @@
+package controller;
+
+/**
+ * Turns of a game between the human player ('W', who moves first) and the computer
+ * ('B'), as the view plays them: ReversiController for the standard 8x8 game with
+ * any engine, or VariantController for boards of other sizes.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public interface GameController {
+	
+	/**
+	 * humanTurn(int, int) places the human player's token at the given position.
+	 * 
+	 * @param row is the row index of the position, from 0 (top).
+	 * @param col is the column index of the position, from 0 (left).
+	 * @throws IllegalArgumentException if the position is off the board or not a
+	 * legal move for the human player.
+	 */
+	void humanTurn(int row, int col) throws IllegalArgumentException;
+	
+	/**
+	 * computerTurn() makes the computer's move, if it has one.
+	 * 
+	 * @return the coordinates of the computer's move (see Coordinates), or null if
+	 * the computer could not move.
+	 */
+	String computerTurn();
+	
+	/**
+	 * isGameOver() returns whether neither player can move.
+	 * 
+	 * @return true if the game is over, false otherwise.
+	 */
+	boolean isGameOver();
+	
+	/**
+	 * humanCanMove() returns whether the human player has any legal move.
+	 * 
+	 * @return true if the human player can place a token anywhere, false otherwise.
+	 */
+	boolean humanCanMove();
+	
+	/**
+	 * ponder() lets the computer think ahead while the human player is deciding. It
+	 * returns at once, and does nothing unless the computer ponders.
+	 */
+	default void ponder() {
+	}
+	
+	/**
+	 * reconstructBoard() returns a copy of the game board.
+	 * 
+	 * @return the board as a square 2D array of 'W', 'B', and '_', rows first.
+	 */
+	char[][] reconstructBoard();
+	
+	/**
+	 * getWScore() returns the current score of the human player.
+	 * 
+	 * @return the number of the human player's tokens.
+	 */
+	int getWScore();
+	
+	/**
+	 * getBScore() returns the current score of the computer.
+	 * 
+	 * @return the number of the computer's tokens.
+	 */
+	int getBScore();
+	
+	/**
+	 * getWinner() returns the player currently ahead.
+	 * 
+	 * @return 'W' if the human player has more tokens, 'B' if the computer has, and
+	 * '_' if they are tied.
+	 */
+	char getWinner();
+	
+}
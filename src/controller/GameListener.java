@@ -0,0 +1,25 @@
+package controller;
+
+/**
+ * Receives each game of a Tournament as soon as it is finished, for example to stop
+ * the tournament early once its outcome is clear (see Sprt).
+ * 
+ * Games finish on the tournament's worker threads, several at a time and not in
+ * order, so listeners must be thread-safe, and should be quick, since the worker
+ * waits for them before starting its next game.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public interface GameListener {
+	
+	/**
+	 * gameFinished(int, int) is called once for every game played.
+	 * 
+	 * @param game is the number of the game, from 0; games 2k and 2k + 1 are played
+	 * from the same opening, with the engines' sides swapped.
+	 * @param difference is the first engine's discs minus the second engine's discs.
+	 */
+	void gameFinished(int game, int difference);
+	
+}
@@ -0,0 +1,31 @@
+package controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a check by ReversiController.isGameOver() for the end
+ * of the game.
+ * 
+ * Disabled by default (see model.MoveEvent); it is enabled as "reversi.GameOverCheck".
+ * 
+ * @author Jesse Liu
+ *
+ */
+@Name("reversi.GameOverCheck")
+@Label("Game Over Check")
+@Category({ "Reversi", "Game" })
+@Description("A check for the end of the game")
+@Enabled(false)
+@StackTrace(false)
+class GameOverCheckEvent extends Event {
+	
+	@Label("Over")
+	boolean over;
+	
+}
@@ -0,0 +1,48 @@
+package controller;
+
+import model.ReversiModel;
+
+/**
+ * Engine that picks the legal move with the greatest immediate increase in score.
+ * 
+ * This is the weak computer player described by the assignment: only the current
+ * move is considered, and if several moves capture the same number of tokens, the
+ * first of them in row-major order is chosen.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class GreedyEngine implements ReversiEngine {
+	
+	/**
+	 * chooseMove(ReversiModel, char) returns the legal move of the given player that
+	 * captures the most tokens.
+	 * 
+	 * The legal moves are obtained from model as a bitboard, and the potential score
+	 * increase of each is checked in row-major order, keeping the first move with the
+	 * highest increase.
+	 * 
+	 * @param model is the model holding the current state of the game (unchanged).
+	 * @param player is 'W' or 'B', the player whose move is being chosen.
+	 * @return the square index of the chosen move, or -1 if the player has no legal
+	 * move.
+	 */
+	@Override
+	public int chooseMove(ReversiModel model, char player) {
+		int maxScoreIncrease = 1;
+		int maxSquare = -1;
+		long moves = model.getLegalMoves(player);
+		while (moves != 0) {
+			int square = Long.numberOfTrailingZeros(moves);
+			moves &= moves - 1; // Clear the lowest set bit (the square just taken)
+			int scoreInc = (player == 'W') ? model.hypotheticalW(square >> 3, square & 7)
+					: model.hypotheticalB(square >> 3, square & 7);
+			if (scoreInc > maxScoreIncrease) {
+				maxScoreIncrease = scoreInc;
+				maxSquare = square;
+			}
+		}
+		return maxSquare;
+	}
+	
+}
@@ -0,0 +1,148 @@
+package controller;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, for reporting latency percentiles.
+ * 
+ * Keeping every measurement would take memory proportional to the number of moves
+ * played, so durations are counted in buckets instead. Each power of two is split
+ * into 16 buckets of equal width, so a bucket is never wider than a sixteenth of the
+ * durations in it, and a percentile read from the histogram is within about 6% of
+ * the exact one, from nanoseconds up to years, in under a thousand counters.
+ * 
+ * Recording is thread-safe and never blocks, so one histogram can be shared by
+ * several threads, although giving each thread its own and adding them together at
+ * the end avoids any contention.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class LatencyHistogram {
+	
+	private static final int SUB_BUCKETS = 16;
+	private static final int SUB_BITS = 4;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * record(long) adds one duration to the histogram.
+	 * 
+	 * @param nanos is the duration in nanoseconds (negative durations count as 0).
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		counts.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		for (long old = max.get(); nanos > old && !max.compareAndSet(old, nanos); old = max.get())
+			;
+	}
+	
+	/**
+	 * add(LatencyHistogram) adds every duration recorded in another histogram to
+	 * this one.
+	 * 
+	 * @param other is the histogram whose durations are added.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long n = other.counts.get(i);
+			if (n != 0)
+				counts.addAndGet(i, n);
+		}
+		count.addAndGet(other.count.get());
+		total.addAndGet(other.total.get());
+		for (long old = max.get(), nanos = other.max.get(); nanos > old
+				&& !max.compareAndSet(old, nanos); old = max.get())
+			;
+	}
+	
+	/**
+	 * reset() removes every recorded duration.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+	
+	/**
+	 * getCount() returns the number of durations recorded.
+	 * 
+	 * @return the number of calls to record(long), including those added from other
+	 * histograms.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+	
+	/**
+	 * getMean() returns the average of the recorded durations.
+	 * 
+	 * @return the exact mean in nanoseconds, or 0 if nothing was recorded.
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) total.get() / n;
+	}
+	
+	/**
+	 * getMax() returns the longest recorded duration.
+	 * 
+	 * @return the exact maximum in nanoseconds, or 0 if nothing was recorded.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * getPercentile(double) returns the duration below which the given fraction of
+	 * the recorded durations fall.
+	 * 
+	 * @param fraction is the fraction of durations, from 0 to 1 (0.99 for the 99th
+	 * percentile).
+	 * @return the upper end of the bucket holding that percentile (never more than
+	 * the maximum), in nanoseconds, or 0 if nothing was recorded.
+	 */
+	public long getPercentile(double fraction) {
+		long n = count.get();
+		if (n == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(Math.min(1, Math.max(0, fraction)) * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(upperBoundOf(i), max.get());
+		}
+		return max.get();
+	}
+	
+	// Index of the bucket holding a duration: 16 per power of two, exact below 16
+	private static int bucketOf(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int) nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos); // At least SUB_BITS
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+	
+	// Largest duration held by a bucket
+	private static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long low = (1L << exponent) | (sub << (exponent - SUB_BITS));
+		return low + (1L << (exponent - SUB_BITS)) - 1;
+	}
+	
+}
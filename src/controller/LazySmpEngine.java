@@ -0,0 +1,238 @@
+package controller;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import model.ReversiModel;
+
+/**
+ * Engine that runs several alpha-beta searches in parallel, sharing one
+ * transposition table ("Lazy SMP").
+ * 
+ * The calling thread runs the main search to the configured depth, while helper
+ * threads search the same position on their own copies of the model. The helpers do
+ * not divide the work between them explicitly: every search stores what it learns in
+ * the shared table, so the others find many positions already searched, and helpers
+ * with an odd index search one move deeper so that the threads do not all follow the
+ * same path through the tree. Once the main search finishes, the helpers are stopped
+ * and the main search's move is returned. Each move is recorded in EngineMetrics as
+ * one search, to the main search's depth, counting the positions visited by every
+ * thread.
+ * 
+ * Positions close enough to the end of the game to be solved exactly (see
+ * AlphaBetaEngine.getEndgameEmpties()) are solved on the calling thread alone, since
+ * the solver does not use the shared table.
+ * 
+ * The helper threads are daemon threads owned by the engine, and can be released
+ * with shutdown() once the engine is no longer needed.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class LazySmpEngine implements ReversiEngine {
+	
+	private static final int DEFAULT_TABLE_MEGABYTES = 64;
+	
+	private final AlphaBetaEngine[] searchers; // Index 0 runs on the calling thread
+	private final ReversiModel[] models;
+	private final Future<?>[] helpers;
+	private final ExecutorService pool;
+	private final TranspositionTable table;
+	private int active; // Number of searchers used by the most recent search
+	
+	// Constructor (reads in the search depth and the number of threads to use)
+	public LazySmpEngine(int depth, int threads) {
+		this(depth, threads, new TranspositionTable(DEFAULT_TABLE_MEGABYTES));
+	}
+	
+	// Constructor (reads in the search depth, the number of threads, and the shared table)
+	public LazySmpEngine(int depth, int threads, TranspositionTable table) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed");
+		this.table = table;
+		searchers = new AlphaBetaEngine[threads];
+		models = new ReversiModel[threads];
+		helpers = new Future<?>[threads];
+		for (int i = 0; i < threads; i++) {
+			searchers[i] = new AlphaBetaEngine(depth, table);
+			models[i] = new ReversiModel();
+		}
+		pool = (threads == 1) ? null : ThreadPools.newFixedPool(threads - 1, "reversi-search-helper");
+	}
+	
+	/**
+	 * chooseMove(ReversiModel, char) searches for the best move of the given player
+	 * using every thread of the engine.
+	 * 
+	 * Each helper copies the position into its own model and starts searching, then
+	 * the main search runs on the given model on the calling thread. When it is done,
+	 * the helpers are stopped, and this method waits for them to return before
+	 * returning the main search's move, so no thread is still using the shared table
+	 * or the engine's models afterwards. This holds even if the calling thread is
+	 * interrupted, which only cuts the main search short; the interrupt status is
+	 * kept.
+	 * 
+	 * @param model is the model holding the current state of the game (unchanged
+	 * when this method returns).
+	 * @param player is 'W' or 'B', the player whose move is being chosen.
+	 * @return the square index of the chosen move, or -1 if the player has no legal
+	 * move.
+	 */
+	@Override
+	public int chooseMove(ReversiModel model, char player) {
+		return choose(model, player, false, 0);
+	}
+	
+	/**
+	 * chooseMove(ReversiModel, char, long) searches for the best move of the given
+	 * player using every thread of the engine, returning by the deadline (see
+	 * AlphaBetaEngine.chooseMove(ReversiModel, char, long)). Only the main search
+	 * watches the clock; the helpers are stopped when it returns.
+	 */
+	@Override
+	public int chooseMove(ReversiModel model, char player, long deadline) {
+		return choose(model, player, true, deadline);
+	}
+	
+	/**
+	 * stop() asks a running search to return as soon as possible, with the best move
+	 * the main search has found so far. It may be called from any thread.
+	 */
+	public void stop() {
+		for (AlphaBetaEngine searcher : searchers)
+			searcher.stop();
+	}
+	
+	/**
+	 * setEndgameEmpties(int) sets how many empty positions must be left at most for
+	 * the rest of the game to be solved exactly (see AlphaBetaEngine).
+	 * 
+	 * @param empties is the new threshold, from 0 to 64 (0 turns the solver off).
+	 */
+	public void setEndgameEmpties(int empties) {
+		for (AlphaBetaEngine searcher : searchers)
+			searcher.setEndgameEmpties(empties);
+	}
+	
+	/**
+	 * setEvaluator(PatternEvaluator) sets the evaluation used by every thread (see
+	 * AlphaBetaEngine).
+	 * 
+	 * @param evaluator is the pattern evaluator to use, or null for the built-in one.
+	 */
+	public void setEvaluator(PatternEvaluator evaluator) {
+		for (AlphaBetaEngine searcher : searchers)
+			searcher.setEvaluator(evaluator);
+	}
+	
+	/**
+	 * shutdown() stops the helper threads once any running search has finished. The
+	 * engine must not be used afterwards.
+	 */
+	public void shutdown() {
+		if (pool != null)
+			pool.shutdown();
+	}
+	
+	/**
+	 * getThreads() returns the number of threads used by each search.
+	 * 
+	 * @return the number of searches run in parallel, including the main one.
+	 */
+	public int getThreads() {
+		return searchers.length;
+	}
+	
+	/**
+	 * getNodes() returns the number of positions visited by the most recent search,
+	 * over all threads.
+	 * 
+	 * @return the total node count of the last call to chooseMove(ReversiModel, char).
+	 */
+	public long getNodes() {
+		long nodes = 0;
+		for (int i = 0; i < active; i++)
+			nodes += searchers[i].getNodes();
+		return nodes;
+	}
+	
+	/**
+	 * getMainEngine() returns the engine running the main search, so that its depth,
+	 * node count, and score can be read.
+	 * 
+	 * @return the alpha-beta engine whose result is returned by chooseMove.
+	 */
+	public AlphaBetaEngine getMainEngine() {
+		return searchers[0];
+	}
+	
+	/**
+	 * getTable() returns the transposition table shared by every thread.
+	 * 
+	 * @return the shared transposition table.
+	 */
+	public TranspositionTable getTable() {
+		return table;
+	}
+	
+	// Runs the main search, with the helpers alongside it unless solving the endgame
+	private int choose(ReversiModel model, char player, boolean timed, long deadline) {
+		AlphaBetaEngine main = searchers[0];
+		if (64 - model.getWScore() - model.getBScore() <= main.getEndgameEmpties()) {
+			active = 1;
+			main.prepare();
+			if (timed)
+				main.setDeadline(deadline);
+			return main.search(model, player, main.getDepth());
+		}
+		active = searchers.length;
+		for (int i = 1; i < searchers.length; i++) {
+			AlphaBetaEngine helper = searchers[i];
+			ReversiModel copy = models[i];
+			int depth = main.getDepth() + (i & 1); // Odd helpers search one move deeper
+			copy.copyFrom(model);
+			helper.prepare();
+			helpers[i] = pool.submit(() -> helper.searchUnrecorded(copy, player, depth));
+		}
+		long begin = System.nanoTime();
+		main.prepare();
+		if (timed)
+			main.setDeadline(deadline);
+		int move = main.searchUnrecorded(model, player, main.getDepth());
+		for (int i = 1; i < searchers.length; i++)
+			searchers[i].stop();
+		// Every helper must be done before its model and engine are reused, even if interrupted
+		boolean interrupted = false;
+		Throwable failure = null;
+		for (int i = 1; i < searchers.length; i++) {
+			while (true) {
+				try {
+					helpers[i].get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (failure == null)
+						failure = e.getCause();
+					break;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (failure != null)
+			throw new IllegalStateException("Search helper failed", failure);
+		// One search for the move: the main search's depth, with every thread's positions and lookups
+		long probes = 0;
+		long hits = 0;
+		for (AlphaBetaEngine searcher : searchers) {
+			probes += searcher.getTableProbes();
+			hits += searcher.getTableHits();
+		}
+		EngineMetrics.current().recordSearch(getNodes(), main.getDepthReached(), System.nanoTime() - begin, probes,
+				hits);
+		return move;
+	}
+	
+}
@@ -0,0 +1,165 @@
+package controller;
+
+/**
+ * Copy of an EngineMetrics at one moment, which does not change as more is
+ * recorded, for reports, tests, and comparing one moment with another.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class MetricsSnapshot {
+	
+	private final long moves;
+	private final long searches;
+	private final long nodes;
+	private final long searchNanos;
+	private final long depths;
+	private final int maxDepth;
+	private final long probes;
+	private final long hits;
+	private final LatencyHistogram computerTurns;
+	private final LatencyHistogram humanTurns;
+	private final LatencyHistogram gameOverChecks;
+	
+	// Constructor (reads in the counters and copies of the histograms)
+	MetricsSnapshot(long moves, long searches, long nodes, long searchNanos, long depths, int maxDepth,
+			long probes, long hits, LatencyHistogram computerTurns, LatencyHistogram humanTurns,
+			LatencyHistogram gameOverChecks) {
+		this.moves = moves;
+		this.searches = searches;
+		this.nodes = nodes;
+		this.searchNanos = searchNanos;
+		this.depths = depths;
+		this.maxDepth = maxDepth;
+		this.probes = probes;
+		this.hits = hits;
+		this.computerTurns = computerTurns;
+		this.humanTurns = humanTurns;
+		this.gameOverChecks = gameOverChecks;
+	}
+	
+	/**
+	 * getMoves() returns the number of moves played by either player.
+	 * 
+	 * @return the number of moves played.
+	 */
+	public long getMoves() {
+		return moves;
+	}
+	
+	/**
+	 * getSearches() returns the number of searches run.
+	 * 
+	 * @return the number of searches recorded.
+	 */
+	public long getSearches() {
+		return searches;
+	}
+	
+	/**
+	 * getNodes() returns the number of positions visited by every search.
+	 * 
+	 * @return the total node count.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * getSearchNanos() returns the time spent searching, added up over every search
+	 * (so it can be more than the time elapsed, when searches run in parallel).
+	 * 
+	 * @return the total search time, in nanoseconds.
+	 */
+	public long getSearchNanos() {
+		return searchNanos;
+	}
+	
+	/**
+	 * getNodesPerSecond() returns the speed of the searches.
+	 * 
+	 * @return the positions visited per second spent searching, or 0 if nothing was
+	 * searched.
+	 */
+	public double getNodesPerSecond() {
+		return (searchNanos == 0) ? 0 : nodes * 1e9 / searchNanos;
+	}
+	
+	/**
+	 * getAverageDepth() returns the average depth the searches completed.
+	 * 
+	 * @return the mean depth reached, in moves, or 0 if nothing was searched.
+	 */
+	public double getAverageDepth() {
+		return (searches == 0) ? 0 : (double) depths / searches;
+	}
+	
+	/**
+	 * getMaxDepth() returns the deepest depth any search completed.
+	 * 
+	 * @return the greatest depth reached, in moves.
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+	
+	/**
+	 * getTableProbes() returns the number of transposition table lookups.
+	 * 
+	 * @return the number of lookups made by every search.
+	 */
+	public long getTableProbes() {
+		return probes;
+	}
+	
+	/**
+	 * getTableHitRate() returns how often the transposition table had the position
+	 * looked up.
+	 * 
+	 * @return hits divided by lookups, or 0 if there were no lookups.
+	 */
+	public double getTableHitRate() {
+		return (probes == 0) ? 0 : (double) hits / probes;
+	}
+	
+	/**
+	 * getComputerTurns() returns the time taken by each computer turn.
+	 * 
+	 * @return the histogram of computer turn times, in nanoseconds.
+	 */
+	public LatencyHistogram getComputerTurns() {
+		return computerTurns;
+	}
+	
+	/**
+	 * getHumanTurns() returns the time taken to process each human turn.
+	 * 
+	 * @return the histogram of human turn times, in nanoseconds.
+	 */
+	public LatencyHistogram getHumanTurns() {
+		return humanTurns;
+	}
+	
+	/**
+	 * getGameOverChecks() returns the time taken by each timed check for the end of
+	 * the game (one in sixteen is timed).
+	 * 
+	 * @return the histogram of isGameOver() times, in nanoseconds.
+	 */
+	public LatencyHistogram getGameOverChecks() {
+		return gameOverChecks;
+	}
+	
+	/**
+	 * toString() returns the main figures on one line, for logs.
+	 */
+	@Override
+	public String toString() {
+		return String.format("moves=%d searches=%d nodes=%d nps=%.0f depth=%.1f/%d ttHit=%.3f "
+				+ "computerP99=%.3fms humanP99=%.3fms gameOverP99=%.3fus", moves, searches, nodes,
+				getNodesPerSecond(), getAverageDepth(), maxDepth, getTableHitRate(),
+				computerTurns.getPercentile(0.99) / 1e6, humanTurns.getPercentile(0.99) / 1e6,
+				gameOverChecks.getPercentile(0.99) / 1e3);
+	}
+	
+}
@@ -0,0 +1,466 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+import model.ReversiModel;
+
+/**
+ * Write-ahead journal of the moves of any number of games, from which the games can
+ * be rebuilt after the process dies.
+ * 
+ * The journal file starts with a 16-byte header (a magic number, the format version,
+ * and eight reserved bytes), followed by 16-byte records: the game id, the kind of
+ * record, the player, the square of a move or the number of moves taken back, a
+ * reserved byte, and a CRC-32C checksum of the first twelve bytes. A game is made of
+ * its MOVE records, less the moves taken back by its UNDO records, until an END
+ * record says that it no longer needs to be kept.
+ * 
+ * Appending a record only copies it into a buffer in memory, so it takes well under
+ * a microsecond; the buffer is written and forced to the disk by a committer thread
+ * every commit interval, so that one force covers every record appended in the
+ * meantime, however many games they come from (group commit). A crash can therefore
+ * lose at most the last interval's records; sync() waits until every record appended
+ * so far is on the disk, sharing the force with any other thread waiting at the same
+ * time. If the buffer fills before the interval is up, the thread appending commits
+ * it.
+ * 
+ * Opening a journal reads it back: a record torn by a crash (which can only be the
+ * last one) fails its checksum and is cut off, and every game not ended is replayed
+ * through a ReversiModel, returned by getRecovered(). Once the file has grown to
+ * twice its size after the last compaction, the committer compacts it: the moves of
+ * the games still going are written, undos already applied, to a new file, which then
+ * atomically replaces the journal. The compacted journal is thus a snapshot of the
+ * games in progress, and opening it replays no more moves than those games hold.
+ * The new file is forced to the disk before the rename, and the directory after
+ * it, so a crash leaves either the old journal or the compacted one.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class MoveJournal implements Closeable {
+	
+	static final int MAGIC = 0x52564d4a; // "RVMJ"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 16;
+	static final int RECORD_BYTES = 16;
+	private static final int MOVE = 1;
+	private static final int UNDO = 2;
+	private static final int END = 3;
+	private static final int BATCH_RECORDS = 4096;
+	private static final long MIN_COMPACT_BYTES = 1 << 20;
+	
+	private final Path file;
+	private final Object appendLock = new Object();
+	private final Object commitLock = new Object(); // Taken before appendLock, never after
+	private final CRC32C checksum = new CRC32C(); // Guarded by appendLock
+	private final AtomicLong nextGame;
+	private final Map<Long, ReversiModel> recovered;
+	private final Thread committer;
+	private FileChannel channel; // Guarded by commitLock
+	private ByteBuffer filling = ByteBuffer.allocate(BATCH_RECORDS * RECORD_BYTES); // Guarded by appendLock
+	private ByteBuffer writing = ByteBuffer.allocate(BATCH_RECORDS * RECORD_BYTES); // Guarded by commitLock
+	private long appended; // Guarded by appendLock
+	private volatile long durable;
+	private volatile long commits;
+	private volatile long compactions;
+	private volatile boolean closed;
+	private volatile IOException failure;
+	private long compactAt; // Guarded by commitLock
+	
+	// Constructor (reads in the journal file, created if missing, and the commit interval, 0 to commit only on sync())
+	public MoveJournal(Path file, long commitNanos) throws IOException {
+		this.file = file;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			if (channel.size() == 0) {
+				writeHeader(channel);
+				channel.force(true);
+			}
+			Map<Long, MoveList> games = scan(channel, file);
+			Map<Long, ReversiModel> models = new LinkedHashMap<>();
+			long maxGame = -1;
+			for (Map.Entry<Long, MoveList> game : games.entrySet()) {
+				models.put(game.getKey(), game.getValue().replay(game.getKey()));
+				maxGame = Math.max(maxGame, game.getKey());
+			}
+			recovered = Collections.unmodifiableMap(models);
+			nextGame = new AtomicLong(maxGame + 1);
+			compactAt = Math.max(MIN_COMPACT_BYTES, 2 * channel.size());
+			channel.position(channel.size());
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		if (commitNanos > 0) {
+			committer = new Thread(() -> {
+				while (!closed) {
+					LockSupport.parkNanos(commitNanos);
+					try {
+						commit(Long.MAX_VALUE);
+						compactIfDue();
+					} catch (IOException e) {
+						failure = e;
+						return;
+					}
+				}
+			}, "reversi-journal");
+			committer.setDaemon(true);
+			committer.start();
+		} else {
+			committer = null;
+		}
+	}
+	
+	/**
+	 * getRecovered() returns the games found in the journal when it was opened.
+	 * 
+	 * @return a read-only map from game id to a model holding the game, with its moves
+	 * on the model's undo stack, in the order the games were started. The models are
+	 * not used by the journal, so a caller taking up a game can play on its model.
+	 */
+	public Map<Long, ReversiModel> getRecovered() {
+		return recovered;
+	}
+	
+	/**
+	 * newGame() returns an id for a new game, different from every game id in the
+	 * journal when it was opened and every id returned before.
+	 * 
+	 * @return the id of the new game.
+	 */
+	public long newGame() {
+		return nextGame.getAndIncrement();
+	}
+	
+	/**
+	 * move(long, char, int) appends a move of a game.
+	 * 
+	 * @param game is the id of the game.
+	 * @param player is 'W' or 'B', the player making the move.
+	 * @param square is the square index of the move.
+	 * @throws IOException if the journal can no longer be written.
+	 */
+	public void move(long game, char player, int square) throws IOException {
+		append(game, MOVE, player, square);
+	}
+	
+	/**
+	 * undo(long, int) appends the taking back of a game's most recent moves.
+	 * 
+	 * @param game is the id of the game.
+	 * @param moves is the number of moves taken back.
+	 * @throws IOException if the journal can no longer be written.
+	 */
+	public void undo(long game, int moves) throws IOException {
+		append(game, UNDO, 0, moves);
+	}
+	
+	/**
+	 * end(long) appends the end of a game, which is then no longer recovered.
+	 * 
+	 * @param game is the id of the game.
+	 * @throws IOException if the journal can no longer be written.
+	 */
+	public void end(long game) throws IOException {
+		append(game, END, 0, 0);
+	}
+	
+	/**
+	 * sync() waits until every record appended so far is forced to the disk.
+	 * 
+	 * @throws IOException if the journal cannot be written.
+	 */
+	public void sync() throws IOException {
+		long target;
+		synchronized (appendLock) {
+			target = appended;
+		}
+		commit(target);
+	}
+	
+	/**
+	 * compact() replaces the journal with the moves of the games not ended.
+	 * 
+	 * @throws IOException if the journal cannot be read or the new one written.
+	 */
+	public void compact() throws IOException {
+		synchronized (commitLock) {
+			commit(Long.MAX_VALUE);
+			Map<Long, MoveList> games = scan(channel, file);
+			Path temp = file.resolveSibling(file.getFileName() + ".compact");
+			try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				writeHeader(out);
+				ByteBuffer buffer = ByteBuffer.allocate(BATCH_RECORDS * RECORD_BYTES);
+				CRC32C crc = new CRC32C();
+				for (Map.Entry<Long, MoveList> game : games.entrySet()) {
+					MoveList moves = game.getValue();
+					for (int i = 0; i < moves.count; i++) {
+						if (!buffer.hasRemaining())
+							writeFully(out, buffer);
+						put(buffer, crc, game.getKey(), MOVE, moves.playerAt(i), moves.squareAt(i));
+					}
+				}
+				writeFully(out, buffer);
+				out.force(true);
+			}
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			forceDirectory(file.toAbsolutePath().getParent()); // So that a crash cannot undo the rename
+			channel.close();
+			channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			channel.position(channel.size());
+			compactAt = Math.max(MIN_COMPACT_BYTES, 2 * channel.size());
+			compactions++;
+		}
+	}
+	
+	/**
+	 * getAppended() returns the number of records appended since the journal was
+	 * opened.
+	 * 
+	 * @return the number of records appended, committed or not.
+	 */
+	public long getAppended() {
+		synchronized (appendLock) {
+			return appended;
+		}
+	}
+	
+	/**
+	 * getDurable() returns the number of records appended since the journal was opened
+	 * that are known to be on the disk.
+	 * 
+	 * @return the number of records forced to the disk.
+	 */
+	public long getDurable() {
+		return durable;
+	}
+	
+	/**
+	 * getCommits() returns the number of times the journal was forced to the disk.
+	 * 
+	 * @return the number of commits since the journal was opened.
+	 */
+	public long getCommits() {
+		return commits;
+	}
+	
+	/**
+	 * getCompactions() returns the number of times the journal was compacted.
+	 * 
+	 * @return the number of compactions since the journal was opened.
+	 */
+	public long getCompactions() {
+		return compactions;
+	}
+	
+	/**
+	 * close() stops the committer, commits every record appended, and closes the
+	 * journal file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		if (committer != null) {
+			LockSupport.unpark(committer);
+			try {
+				committer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (commitLock) {
+			try {
+				commit(Long.MAX_VALUE);
+			} finally {
+				channel.close();
+			}
+		}
+	}
+	
+	// Copies a record into the buffer, committing the buffer first if it is full
+	private void append(long game, int type, int player, int value) throws IOException {
+		while (true) {
+			if (failure != null)
+				throw new IOException("Journal commit failed", failure);
+			synchronized (appendLock) {
+				if (closed)
+					throw new IllegalStateException("Journal is closed");
+				if (filling.hasRemaining()) {
+					put(filling, checksum, game, type, player, value);
+					appended++;
+					return;
+				}
+			}
+			commit(Long.MAX_VALUE);
+		}
+	}
+	
+	// Writes and forces the buffered records, unless the given number of records is already durable
+	private void commit(long target) throws IOException {
+		synchronized (commitLock) {
+			if (durable >= target)
+				return; // Covered by another thread's commit
+			long upTo;
+			synchronized (appendLock) {
+				ByteBuffer full = filling;
+				filling = writing;
+				writing = full;
+				upTo = appended;
+			}
+			if (upTo == durable)
+				return;
+			writeFully(channel, writing);
+			channel.force(false);
+			durable = upTo;
+			commits++;
+		}
+	}
+	
+	// Compacts the journal if it has doubled in size since it was last compacted
+	private void compactIfDue() throws IOException {
+		synchronized (commitLock) {
+			if (channel.isOpen() && channel.size() >= compactAt)
+				compact();
+		}
+	}
+	
+	// Writes out a buffer being filled, leaving it empty
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+	
+	// Forces a directory's entries, such as a rename within it, to the disk
+	private static void forceDirectory(Path directory) throws IOException {
+		FileChannel entries;
+		try {
+			entries = FileChannel.open(directory, StandardOpenOption.READ);
+		} catch (IOException e) {
+			return; // Directories cannot be opened on this platform (Windows), whose renames are already durable
+		}
+		try (entries) {
+			entries.force(true);
+		}
+	}
+	
+	// Writes the file header at the start of an empty file
+	private static void writeHeader(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC).putInt(VERSION);
+		header.rewind();
+		while (header.hasRemaining())
+			channel.write(header, header.position());
+		channel.position(HEADER_BYTES);
+	}
+	
+	// Puts one record, with its checksum, into a buffer
+	private static void put(ByteBuffer buffer, CRC32C crc, long game, int type, int player, int value) {
+		int start = buffer.position();
+		buffer.putLong(game).put((byte) type).put((byte) player).put((byte) value).put((byte) 0);
+		crc.reset();
+		crc.update(buffer.array(), start, RECORD_BYTES - 4);
+		buffer.putInt((int) crc.getValue());
+	}
+	
+	// Reads the games of a journal, cutting off a torn record at the end
+	private static Map<Long, MoveList> scan(FileChannel channel, Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BATCH_RECORDS * RECORD_BYTES);
+		long size = channel.size();
+		if (size < HEADER_BYTES || channel.read(buffer, 0) < HEADER_BYTES || buffer.getInt(0) != MAGIC
+				|| buffer.getInt(4) != VERSION)
+			throw new IOException("Not a move journal: " + file);
+		Map<Long, MoveList> games = new LinkedHashMap<>();
+		CRC32C crc = new CRC32C();
+		long position = HEADER_BYTES;
+		while (position + RECORD_BYTES <= size) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), (size - position) / RECORD_BYTES * RECORD_BYTES));
+			while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0)
+				;
+			buffer.flip();
+			while (buffer.remaining() >= RECORD_BYTES) {
+				int start = buffer.position();
+				crc.reset();
+				crc.update(buffer.array(), start, RECORD_BYTES - 4);
+				if (buffer.getInt(start + RECORD_BYTES - 4) != (int) crc.getValue()) {
+					channel.truncate(position); // A record torn by a crash
+					return games;
+				}
+				long game = buffer.getLong();
+				int type = buffer.get();
+				int player = buffer.get();
+				int value = buffer.get() & 0xff;
+				buffer.position(start + RECORD_BYTES);
+				if (type == MOVE && (player == 'W' || player == 'B') && value < 64)
+					games.computeIfAbsent(game, id -> new MoveList()).add(player, value);
+				else if (type == UNDO && games.containsKey(game) && value <= games.get(game).count)
+					games.get(game).count -= value;
+				else if (type == END)
+					games.remove(game);
+				else
+					throw new IOException("Bad record at offset " + position + " of journal " + file);
+				position += RECORD_BYTES;
+			}
+		}
+		if (position < size)
+			channel.truncate(position); // Part of a record left by a crash
+		return games;
+	}
+	
+	/**
+	 * Moves of one game while a journal is read, one byte each: the square, plus 64 if
+	 * the move is the second player's.
+	 */
+	private static class MoveList {
+		
+		private byte[] moves = new byte[16];
+		private int count;
+		
+		void add(int player, int square) {
+			if (count == moves.length)
+				moves = Arrays.copyOf(moves, count * 2);
+			moves[count++] = (byte) (square | ((player == 'B') ? 64 : 0));
+		}
+		
+		int squareAt(int index) {
+			return moves[index] & 63;
+		}
+		
+		char playerAt(int index) {
+			return ((moves[index] & 64) != 0) ? 'B' : 'W';
+		}
+		
+		// Plays the moves on a new model, checking that each is legal
+		ReversiModel replay(long game) throws IOException {
+			ReversiModel model = new ReversiModel();
+			for (int i = 0; i < count; i++) {
+				if ((model.getLegalMoves(playerAt(i)) & (1L << squareAt(i))) == 0)
+					throw new IOException("Illegal move " + i + " of game " + game + " in journal");
+				model.makeMove(playerAt(i), squareAt(i));
+			}
+			return model;
+		}
+		
+	}
+	
+}
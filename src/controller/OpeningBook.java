@@ -0,0 +1,197 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import model.Bitboards;
+
+/**
+ * Read-only book of opening positions, each with its best move and score, stored in
+ * a file that is memory-mapped rather than read.
+ * 
+ * Every game starts from the same position, so the first moves of every game are the
+ * same few positions searched over and over. The book stores the result of searching
+ * them once. Positions are keyed by the bitboards of the player to move and of the
+ * opponent (so one entry serves both colours), folded together over the board's eight
+ * symmetries (see Bitboards): of the eight symmetric versions of a position, only the
+ * smallest is stored, and a lookup transforms the position the same way, then
+ * transforms the stored move back.
+ * 
+ * The file starts with a 16-byte header (a magic number, the format version, the
+ * number of entries, and a reserved int), followed by the entries sorted by position,
+ * each 24 bytes long: the mover's bitboard, the opponent's bitboard, the score, the
+ * move, the search depth, and two bytes of padding. Since the file is mapped, opening
+ * a book reads almost nothing, lookups are binary searches straight over the mapped
+ * pages, and every process using the same book file shares one copy of it in the
+ * operating system's page cache. A book can be used by several threads at once.
+ * 
+ * Books are written by OpeningBookBuilder.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class OpeningBook {
+	
+	static final int MAGIC = 0x52564b42; // "RVKB"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 16;
+	static final int ENTRY_BYTES = 24;
+	
+	private final MappedByteBuffer buffer;
+	private final int size;
+	
+	// Constructor (reads in the path of the book file, which is mapped, not read)
+	public OpeningBook(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length < HEADER_BYTES || length > Integer.MAX_VALUE)
+				throw new IOException("Not an opening book: " + file);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+		}
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IOException("Not an opening book: " + file);
+		size = buffer.getInt(8);
+		if (size < 0 || HEADER_BYTES + (long) size * ENTRY_BYTES > buffer.capacity())
+			throw new IOException("Truncated opening book: " + file);
+	}
+	
+	/**
+	 * probe(long, long) looks up the entry stored for a position.
+	 * 
+	 * The returned entry is a packed long, which can be read with the static methods
+	 * scoreOf(long), moveOf(long), and depthOf(long). Its move has already been
+	 * transformed back to the given position.
+	 * 
+	 * @param own is the bitboard of the tokens of the player to move.
+	 * @param opp is the bitboard of the opponent's tokens.
+	 * @return the packed entry for the position, or 0 if it is not in the book.
+	 */
+	public long probe(long own, long opp) {
+		int symmetry = canonicalSymmetry(own, opp);
+		int index = find(Bitboards.symmetric(own, symmetry), Bitboards.symmetric(opp, symmetry));
+		if (index < 0)
+			return 0;
+		int offset = HEADER_BYTES + index * ENTRY_BYTES;
+		int move = Bitboards.symmetricSquare(buffer.get(offset + 20),
+				Bitboards.inverseSymmetry(symmetry));
+		return pack(buffer.getInt(offset + 16), move, buffer.get(offset + 21) & 0xff);
+	}
+	
+	/**
+	 * getSize() returns the number of positions in the book.
+	 * 
+	 * @return the number of entries, each standing for up to eight symmetric positions.
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * scoreOf(long) reads the score of a packed entry returned by probe(long, long).
+	 * 
+	 * @param entry is a packed entry.
+	 * @return the score of the position for the player to move, scaled like the
+	 * scores of AlphaBetaEngine.
+	 */
+	public static int scoreOf(long entry) {
+		return (int) entry;
+	}
+	
+	/**
+	 * moveOf(long) reads the best move of a packed entry returned by probe(long, long).
+	 * 
+	 * @param entry is a packed entry.
+	 * @return the square index of the best move.
+	 */
+	public static int moveOf(long entry) {
+		return (int) ((entry >>> 32) & 0xff) - 1;
+	}
+	
+	/**
+	 * depthOf(long) reads the search depth of a packed entry returned by
+	 * probe(long, long).
+	 * 
+	 * @param entry is a packed entry.
+	 * @return the depth the position was searched to.
+	 */
+	public static int depthOf(long entry) {
+		return (int) ((entry >>> 40) & 0xff);
+	}
+	
+	/**
+	 * canonicalSymmetry(long, long) returns the symmetry that turns a position into
+	 * the version of it stored in books.
+	 * 
+	 * Of the eight symmetric versions of the position, the one whose bitboards are
+	 * smallest (comparing the mover's first, as unsigned numbers) is chosen, so every
+	 * symmetric version of a position is stored and looked up as the same entry.
+	 * 
+	 * @param own is the bitboard of the tokens of the player to move.
+	 * @param opp is the bitboard of the opponent's tokens.
+	 * @return the number of the symmetry to apply (see Bitboards.symmetric(long, int)).
+	 */
+	public static int canonicalSymmetry(long own, long opp) {
+		int best = 0;
+		long bestOwn = own;
+		long bestOpp = opp;
+		for (int symmetry = 1; symmetry < Bitboards.SYMMETRIES; symmetry++) {
+			long symmetricOwn = Bitboards.symmetric(own, symmetry);
+			long symmetricOpp = Bitboards.symmetric(opp, symmetry);
+			if (compare(symmetricOwn, symmetricOpp, bestOwn, bestOpp) < 0) {
+				best = symmetry;
+				bestOwn = symmetricOwn;
+				bestOpp = symmetricOpp;
+			}
+		}
+		return best;
+	}
+	
+	// Reads the mover's bitboard of an entry
+	long ownAt(int index) {
+		return buffer.getLong(HEADER_BYTES + index * ENTRY_BYTES);
+	}
+	
+	// Reads the opponent's bitboard of an entry
+	long oppAt(int index) {
+		return buffer.getLong(HEADER_BYTES + index * ENTRY_BYTES + 8);
+	}
+	
+	// Reads an entry as stored, with its move not transformed back
+	long entryAt(int index) {
+		int offset = HEADER_BYTES + index * ENTRY_BYTES;
+		return pack(buffer.getInt(offset + 16), buffer.get(offset + 20),
+				buffer.get(offset + 21) & 0xff);
+	}
+	
+	// Binary search for a canonical position, returns its index or -1
+	private int find(long own, long opp) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int order = compare(ownAt(middle), oppAt(middle), own, opp);
+			if (order < 0)
+				low = middle + 1;
+			else if (order > 0)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+	
+	// Orders positions by the mover's bitboard, then the opponent's, as unsigned numbers
+	static int compare(long own1, long opp1, long own2, long opp2) {
+		int order = Long.compareUnsigned(own1, own2);
+		return (order != 0) ? order : Long.compareUnsigned(opp1, opp2);
+	}
+	
+	// Packs an entry into a long: score, move + 1, and depth from the low bits up
+	static long pack(int score, int move, int depth) {
+		return (score & 0xffffffffL) | ((long) (move + 1) << 32) | ((long) depth << 40);
+	}
+	
+}
@@ -0,0 +1,224 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import model.Bitboards;
+import model.ReversiModel;
+
+/**
+ * Builds opening books (see OpeningBook) by searching the opening positions of games.
+ * 
+ * Positions are collected from games that are either given move by move (such as
+ * imported games) or played by the builder against itself. Each opening position
+ * reached is searched with an alpha-beta engine, and its best move, score, and search
+ * depth are kept, folded over the board's symmetries the same way a book stores them.
+ * A position that was already searched at least as deeply is not searched again, so
+ * an existing book can be loaded and grown with more games, then written back.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class OpeningBookBuilder {
+	
+	private final AlphaBetaEngine engine;
+	private final HashMap<Position, Position> positions = new HashMap<>();
+	private final ReversiModel model = new ReversiModel();
+	private long searches;
+	
+	// Constructor (reads in the depth every book position is searched to)
+	public OpeningBookBuilder(int depth) {
+		this(new AlphaBetaEngine(depth));
+	}
+	
+	// Constructor (reads in the engine searching every book position)
+	public OpeningBookBuilder(AlphaBetaEngine engine) {
+		this.engine = engine;
+	}
+	
+	/**
+	 * addAll(OpeningBook) adds every position of an existing book, so that it can be
+	 * grown and written again.
+	 * 
+	 * @param book is the book whose positions are added.
+	 */
+	public void addAll(OpeningBook book) {
+		for (int i = 0; i < book.getSize(); i++) {
+			long entry = book.entryAt(i);
+			add(new Position(book.ownAt(i), book.oppAt(i), OpeningBook.moveOf(entry),
+					OpeningBook.scoreOf(entry), OpeningBook.depthOf(entry)));
+		}
+	}
+	
+	/**
+	 * addGame(int[], int) adds the opening positions of a game given move by move.
+	 * 
+	 * The game starts from the initial position with the human player ('W') to move,
+	 * and players without legal moves pass automatically, as in the game itself.
+	 * 
+	 * @param moves is the square index of every move of the game, in order.
+	 * @param plies is the number of moves from the start of the game to add the
+	 * positions of.
+	 * @throws IllegalArgumentException if one of the moves is not legal.
+	 */
+	public void addGame(int[] moves, int plies) throws IllegalArgumentException {
+		model.copyFrom(new ReversiModel());
+		char player = 'W';
+		for (int i = 0; i < Math.min(plies, moves.length) && !model.isGameOver(); i++) {
+			if (model.getLegalMoves(player) == 0)
+				player = (player == 'W') ? 'B' : 'W';
+			if ((model.getLegalMoves(player) & (1L << moves[i])) == 0)
+				throw new IllegalArgumentException("Illegal move " + moves[i] + " at move " + (i + 1));
+			searchPosition(player);
+			model.makeMove(player, moves[i]);
+			player = (player == 'W') ? 'B' : 'W';
+		}
+	}
+	
+	/**
+	 * addSelfPlay(int, Random) plays a game of the engine against itself and adds its
+	 * opening positions.
+	 * 
+	 * The engine's best move is played in every position, except at one randomly
+	 * chosen move of the opening where a random legal move is played instead, so that
+	 * successive games reach different positions.
+	 * 
+	 * @param plies is the number of moves from the start of the game to play and add.
+	 * @param random is the source of the random moves.
+	 */
+	public void addSelfPlay(int plies, Random random) {
+		model.copyFrom(new ReversiModel());
+		char player = 'W';
+		int deviation = random.nextInt(Math.max(1, plies));
+		for (int i = 0; i < plies && !model.isGameOver(); i++) {
+			if (model.getLegalMoves(player) == 0)
+				player = (player == 'W') ? 'B' : 'W';
+			int move = searchPosition(player);
+			if (i == deviation) {
+				long legal = model.getLegalMoves(player);
+				for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--)
+					legal &= legal - 1;
+				move = Long.numberOfTrailingZeros(legal);
+			}
+			model.makeMove(player, move);
+			player = (player == 'W') ? 'B' : 'W';
+		}
+	}
+	
+	/**
+	 * getSize() returns the number of positions collected so far.
+	 * 
+	 * @return the number of distinct positions, symmetric positions counted once.
+	 */
+	public int getSize() {
+		return positions.size();
+	}
+	
+	/**
+	 * getSearches() returns the number of positions searched so far, not counting
+	 * those that were already known.
+	 * 
+	 * @return the number of searches run by the builder.
+	 */
+	public long getSearches() {
+		return searches;
+	}
+	
+	/**
+	 * write(Path) writes every collected position to a book file, replacing any
+	 * existing file.
+	 * 
+	 * The book is written to a temporary file next to the target first, then moved
+	 * over it, so that processes which have the old book mapped keep a complete copy.
+	 * 
+	 * @param file is the path of the book file.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void write(Path file) throws IOException {
+		List<Position> sorted = new ArrayList<>(positions.values());
+		sorted.sort((a, b) -> OpeningBook.compare(a.own, a.opp, b.own, b.opp));
+		ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.HEADER_BYTES
+				+ sorted.size() * OpeningBook.ENTRY_BYTES);
+		buffer.putInt(OpeningBook.MAGIC).putInt(OpeningBook.VERSION).putInt(sorted.size()).putInt(0);
+		for (Position position : sorted) {
+			buffer.putLong(position.own).putLong(position.opp).putInt(position.score);
+			buffer.put((byte) position.move).put((byte) position.depth).putShort((short) 0);
+		}
+		buffer.flip();
+		Path absolute = file.toAbsolutePath();
+		Path temporary = Files.createTempFile(absolute.getParent(), "book", ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+		Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	// Searches the model's position unless it is already known deeply enough, returns the best move
+	private int searchPosition(char player) {
+		char opponent = (player == 'W') ? 'B' : 'W';
+		long own = model.getBoard(player);
+		long opp = model.getBoard(opponent);
+		int symmetry = OpeningBook.canonicalSymmetry(own, opp);
+		Position key = new Position(Bitboards.symmetric(own, symmetry),
+				Bitboards.symmetric(opp, symmetry), -1, 0, 0);
+		Position known = positions.get(key);
+		if (known == null || known.depth < engine.getDepth()) {
+			int move = engine.chooseMove(model, player);
+			searches++;
+			add(new Position(key.own, key.opp, Bitboards.symmetricSquare(move, symmetry),
+					engine.getBestScore(), Math.max(1, engine.getDepthReached())));
+			return move;
+		}
+		return Bitboards.symmetricSquare(known.move, Bitboards.inverseSymmetry(symmetry));
+	}
+	
+	// Keeps the deeper search of a position seen twice
+	private void add(Position position) {
+		Position known = positions.get(position);
+		if (known == null || known.depth < position.depth)
+			positions.put(position, position);
+	}
+	
+	// A canonical position and what was learned about it, equal by position only
+	private static final class Position {
+		
+		final long own;
+		final long opp;
+		final int move;
+		final int score;
+		final int depth;
+		
+		// Constructor (reads in the canonical position and its search result)
+		Position(long own, long opp, int move, int score, int depth) {
+			this.own = own;
+			this.opp = opp;
+			this.move = move;
+			this.score = score;
+			this.depth = depth;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Position && ((Position) other).own == own
+					&& ((Position) other).opp == opp;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Long.hashCode(own * 31 + opp);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,279 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import model.Bitboards;
+
+/**
+ * Position evaluation from lookup tables of weights, one table per board pattern.
+ * 
+ * A pattern is a fixed group of positions, such as an edge with its two X-squares or
+ * the 3x3 block in a corner. The contents of its positions (empty, the mover's token,
+ * or the opponent's token) are read as the digits of a base-3 number, which indexes
+ * a table holding the weight of that exact configuration. The evaluation of a
+ * position is the sum of the weights of every pattern on the board, plus a weight for
+ * the difference in mobility. Each pattern appears several times on the board (an
+ * edge pattern on all four edges, for example), and every copy shares the same table,
+ * read through one of the board's symmetries (see Bitboards).
+ * 
+ * Indices are computed without looking at positions one by one. The board is
+ * transformed by each symmetry once, after which every pattern occupies whole rows,
+ * or a diagonal that a multiplication gathers into one row, so a pattern's index
+ * takes a few masks and shifts and two lookups per row in a table that converts the
+ * bits of a row to base 3.
+ * 
+ * Since what matters changes as the board fills up, there is a separate set of
+ * weights for each game phase, chosen by the number of empty positions. Weights are
+ * read from a binary file, so that they can be retrained without changing any code.
+ * The file starts with four ints (a magic number, the format version, the number of
+ * phases, and the number of patterns), followed, for each phase from the start of
+ * the game to the end, by the mobility weight and then every pattern table in order,
+ * all as shorts. Without a file, weights are built from a simple table of position
+ * values, so that the evaluator can be used before any training.
+ * 
+ * Evaluations are scaled so that 8 points are worth about one token of final disc
+ * difference, and are kept within the range AlphaBetaEngine allows for heuristic
+ * scores. An evaluator holds no state besides its weights, so one evaluator can be
+ * shared by any number of searches and threads.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class PatternEvaluator {
+	
+	static final int MAGIC = 0x52565057; // "RVPW"
+	static final int VERSION = 1;
+	static final int DEFAULT_PHASES = 12;
+	
+	// Patterns, each with its positions (in digit order) on the board as read
+	static final int EDGE_2X = 0;
+	static final int CORNER_3X3 = 1;
+	static final int CORNER_2X5 = 2;
+	static final int LINE_2 = 3;
+	static final int LINE_3 = 4;
+	static final int LINE_4 = 5;
+	static final int DIAGONAL_8 = 6;
+	static final int DIAGONAL_7 = 7;
+	static final int DIAGONAL_6 = 8;
+	static final int DIAGONAL_5 = 9;
+	static final int DIAGONAL_4 = 10;
+	static final int PATTERNS = 11;
+	static final int[][] SQUARES = { { 0, 1, 2, 3, 4, 5, 6, 7, 9, 14 },
+			{ 0, 1, 2, 8, 9, 10, 16, 17, 18 }, { 0, 1, 2, 3, 4, 8, 9, 10, 11, 12 },
+			{ 8, 9, 10, 11, 12, 13, 14, 15 }, { 16, 17, 18, 19, 20, 21, 22, 23 },
+			{ 24, 25, 26, 27, 28, 29, 30, 31 }, { 0, 9, 18, 27, 36, 45, 54, 63 },
+			{ 1, 10, 19, 28, 37, 46, 55 }, { 2, 11, 20, 29, 38, 47 }, { 3, 12, 21, 30, 39 },
+			{ 4, 13, 22, 31 } };
+	// The symmetries the board is read through for each copy of each pattern
+	static final int[][] SYMMETRIES = { { 0, 1, 4, 5 }, { 0, 1, 2, 3 },
+			{ 0, 1, 2, 3, 4, 5, 6, 7 }, { 0, 1, 4, 5 }, { 0, 1, 4, 5 }, { 0, 1, 4, 5 }, { 0, 2 },
+			{ 0, 1, 2, 3 }, { 0, 1, 2, 3 }, { 0, 1, 2, 3 }, { 0, 1, 2, 3 } };
+			
+	private static final int[] OFFSETS = new int[PATTERNS + 1]; // Of each table in a phase
+	private static final int[] TERNARY = new int[1 << 10]; // Bits read as base-3 digits
+	private static final long DIAGONAL = 0x8040201008040201L;
+	private static final long GATHER = 0x0101010101010101L; // Stacks a diagonal into one row
+	
+	static {
+		for (int i = 0; i < PATTERNS; i++)
+			OFFSETS[i + 1] = OFFSETS[i] + power3(SQUARES[i].length);
+		for (int bits = 1; bits < TERNARY.length; bits++) {
+			int low = Integer.numberOfTrailingZeros(bits);
+			TERNARY[bits] = TERNARY[bits & (bits - 1)] + power3(low);
+		}
+	}
+	
+	private final short[][] weights; // Indexed by phase, then by offset plus pattern index
+	private final short[] mobility;
+	
+	// Constructor (builds default weights from a table of position values)
+	public PatternEvaluator() {
+		weights = new short[DEFAULT_PHASES][OFFSETS[PATTERNS]];
+		mobility = new short[DEFAULT_PHASES];
+		fillDefaultWeights();
+	}
+	
+	// Constructor (reads in the path of a weight file)
+	public PatternEvaluator(Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		if (buffer.remaining() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			throw new IOException("Not a weight file: " + file);
+		int phases = buffer.getInt();
+		if (phases < 1 || phases > 61 || buffer.getInt() != PATTERNS
+				|| buffer.remaining() != 2L * phases * (1 + OFFSETS[PATTERNS]))
+			throw new IOException("Weight file does not match the patterns: " + file);
+		weights = new short[phases][OFFSETS[PATTERNS]];
+		mobility = new short[phases];
+		for (int phase = 0; phase < phases; phase++) {
+			mobility[phase] = buffer.getShort();
+			buffer.asShortBuffer().get(weights[phase]);
+			buffer.position(buffer.position() + 2 * OFFSETS[PATTERNS]);
+		}
+	}
+	
+	/**
+	 * evaluate(long, long) scores a position for the player to move.
+	 * 
+	 * @param own is the bitboard of the tokens of the player to move.
+	 * @param opp is the bitboard of the opponent's tokens.
+	 * @return the evaluation, positive if the position favours the player to move,
+	 * and always smaller in size than AlphaBetaEngine.DISC_SCALE.
+	 */
+	public int evaluate(long own, long opp) {
+		int phase = getPhase(64 - Long.bitCount(own | opp));
+		short[] w = weights[phase];
+		int score = mobility[phase]
+				* (Long.bitCount(Bitboards.legalMoves(own, opp)) - Long.bitCount(Bitboards.legalMoves(opp, own)));
+		// Each symmetric board is one step from another, so only one is transposed
+		long own1 = Long.reverseBytes(own);
+		long opp1 = Long.reverseBytes(opp);
+		long own4 = Bitboards.symmetric(own, 4);
+		long opp4 = Bitboards.symmetric(opp, 4);
+		long own5 = Long.reverseBytes(own4);
+		long opp5 = Long.reverseBytes(opp4);
+		score += addPatterns(w, own, opp, 0) + addPatterns(w, own1, opp1, 1)
+				+ addPatterns(w, Bitboards.symmetric(own, 2), Bitboards.symmetric(opp, 2), 2)
+				+ addPatterns(w, Bitboards.symmetric(own1, 2), Bitboards.symmetric(opp1, 2), 3)
+				+ addPatterns(w, own4, opp4, 4) + addPatterns(w, own5, opp5, 5)
+				+ addPatterns(w, Bitboards.symmetric(own4, 2), Bitboards.symmetric(opp4, 2), 6)
+				+ addPatterns(w, Bitboards.symmetric(own5, 2), Bitboards.symmetric(opp5, 2), 7);
+		int limit = AlphaBetaEngine.DISC_SCALE - 1;
+		return Math.max(-limit, Math.min(limit, score));
+	}
+	
+	/**
+	 * write(Path) saves the weights to a file in the format read by the constructor.
+	 * 
+	 * @param file is the path of the weight file, replaced if it exists.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void write(Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(16 + 2 * weights.length * (1 + OFFSETS[PATTERNS]));
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(weights.length).putInt(PATTERNS);
+		for (int phase = 0; phase < weights.length; phase++) {
+			buffer.putShort(mobility[phase]);
+			buffer.asShortBuffer().put(weights[phase]);
+			buffer.position(buffer.position() + 2 * OFFSETS[PATTERNS]);
+		}
+		Files.write(file, buffer.array());
+	}
+	
+	/**
+	 * getPhases() returns the number of game phases with their own weights.
+	 * 
+	 * @return the number of weight sets.
+	 */
+	public int getPhases() {
+		return weights.length;
+	}
+	
+	/**
+	 * getPhase(int) returns the game phase whose weights are used for a position.
+	 * 
+	 * The phases split the 60 moves of a game evenly, from phase 0 at the start.
+	 * 
+	 * @param empties is the number of empty positions on the board.
+	 * @return the phase, from 0 to getPhases() - 1.
+	 */
+	public int getPhase(int empties) {
+		int phase = (60 - empties) * weights.length / 61;
+		return Math.max(0, Math.min(weights.length - 1, phase));
+	}
+	
+	// Sums the weights of the patterns read through one symmetry of the board
+	private static int addPatterns(short[] w, long o, long p, int symmetry) {
+		int score = 0;
+		score += w[OFFSETS[CORNER_2X5] + corner2x5(o) + 2 * corner2x5(p)];
+		if ((symmetry & 2) == 0) { // Symmetries 0, 1, 4, and 5 reach the four edges
+			score += w[OFFSETS[EDGE_2X] + edge2x(o) + 2 * edge2x(p)];
+			score += w[OFFSETS[LINE_2] + TERNARY[(int) (o >>> 8) & 0xff]
+					+ 2 * TERNARY[(int) (p >>> 8) & 0xff]];
+			score += w[OFFSETS[LINE_3] + TERNARY[(int) (o >>> 16) & 0xff]
+					+ 2 * TERNARY[(int) (p >>> 16) & 0xff]];
+			score += w[OFFSETS[LINE_4] + TERNARY[(int) (o >>> 24) & 0xff]
+					+ 2 * TERNARY[(int) (p >>> 24) & 0xff]];
+		}
+		if (symmetry < 4) { // Symmetries 0 to 3 reach the four corners
+			score += w[OFFSETS[CORNER_3X3] + corner3x3(o) + 2 * corner3x3(p)];
+			if ((symmetry & 1) == 0)
+				score += w[OFFSETS[DIAGONAL_8] + diagonal(o, 0) + 2 * diagonal(p, 0)];
+			score += w[OFFSETS[DIAGONAL_7] + diagonal(o, 1) + 2 * diagonal(p, 1)];
+			score += w[OFFSETS[DIAGONAL_6] + diagonal(o, 2) + 2 * diagonal(p, 2)];
+			score += w[OFFSETS[DIAGONAL_5] + diagonal(o, 3) + 2 * diagonal(p, 3)];
+			score += w[OFFSETS[DIAGONAL_4] + diagonal(o, 4) + 2 * diagonal(p, 4)];
+		}
+		return score;
+	}
+	
+	// Edge with both X-squares: the top row, then b2 and g2
+	private static int edge2x(long b) {
+		return TERNARY[(int) b & 0xff] + 6561 * TERNARY[(int) (((b >>> 9) & 1) | ((b >>> 13) & 2))];
+	}
+	
+	// 3x3 block in the top left corner, row by row
+	private static int corner3x3(long b) {
+		return TERNARY[(int) b & 7] + 27 * TERNARY[(int) (b >>> 8) & 7]
+				+ 729 * TERNARY[(int) (b >>> 16) & 7];
+	}
+	
+	// 2x5 block in the top left corner, along the top edge
+	private static int corner2x5(long b) {
+		return TERNARY[(int) b & 31] + 243 * TERNARY[(int) (b >>> 8) & 31];
+	}
+	
+	// Diagonal down and to the right from the given column of the top row
+	private static int diagonal(long b, int col) {
+		return TERNARY[(int) ((((b >>> col) & (DIAGONAL & (-1L >>> (8 * col)))) * GATHER) >>> 56)];
+	}
+	
+	// Builds every phase's tables from position values, fading into the disc count
+	private void fillDefaultWeights() {
+		int[] values = { 40, -8, 6, 2, -20, -10, -2, 1, 0 }; // Corner, C, A, B, X, and inner
+		int[] kinds = { 0, 1, 2, 3, 1, 4, 5, 6, 2, 5, 7, 8, 3, 6, 8, 8 }; // Of a 4x4 quarter
+		int[] covered = new int[64];
+		for (int pattern = 0; pattern < PATTERNS; pattern++) {
+			for (int symmetry : SYMMETRIES[pattern]) {
+				for (int square : SQUARES[pattern])
+					covered[Bitboards.symmetricSquare(square, Bitboards.inverseSymmetry(symmetry))]++;
+			}
+		}
+		int phases = weights.length;
+		for (int phase = 0; phase < phases; phase++) {
+			double late = (double) phase / Math.max(1, phases - 1); // From 0 to 1
+			mobility[phase] = (short) Math.round(6 * (1 - late));
+			long[] perSquare = new long[64]; // In 120ths, so that sums are exact
+			for (int square = 0; square < 64; square++) {
+				int row = square >> 3;
+				int col = square & 7;
+				int kind = kinds[4 * Math.min(row, 7 - row) + Math.min(col, 7 - col)];
+				perSquare[square] = Math.round(120 * ((1 - late) * values[kind] + late * 8) / covered[square]);
+			}
+			for (int pattern = 0; pattern < PATTERNS; pattern++) {
+				int[] squares = SQUARES[pattern];
+				for (int index = 0; index < power3(squares.length); index++) {
+					long weight = 0;
+					for (int digit = 0, rest = index; digit < squares.length; digit++, rest /= 3) {
+						if (rest % 3 == 1)
+							weight += perSquare[squares[digit]];
+						else if (rest % 3 == 2)
+							weight -= perSquare[squares[digit]];
+					}
+					long rounded = (Math.abs(weight) + 60) / 120; // Same size for either player
+					weights[phase][OFFSETS[pattern] + index] = (short) ((weight < 0) ? -rounded : rounded);
+				}
+			}
+		}
+	}
+	
+	// Returns 3 to the given power
+	private static int power3(int exponent) {
+		int result = 1;
+		for (int i = 0; i < exponent; i++)
+			result *= 3;
+		return result;
+	}
+	
+}
@@ -0,0 +1,195 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.Bitboards;
+import model.ReversiModel;
+
+/**
+ * Move generation test ("perft"): counts every line of play of a given length.
+ * 
+ * The count of positions reached after exactly n moves from the initial position is
+ * known for every n up to 14, so comparing against it checks the legal move and
+ * capture code on hundreds of millions of positions, and timing it measures how fast
+ * that code is. As in the published counts, a player without legal moves passes,
+ * which counts as a move, and a position where neither player can move ends its
+ * line early and is counted once, whatever the remaining length.
+ * 
+ * The counts can be made directly on bitboards, through ReversiModel (so that its
+ * incremental bookkeeping is checked and timed as well), or in parallel, in which
+ * case the positions a few moves in are shared out among the threads.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public final class Perft {
+	
+	// Published counts from the initial position, index n for n moves
+	private static final long[] KNOWN_COUNTS = { 1L, 4L, 12L, 56L, 244L, 1396L, 8200L, 55092L,
+			390216L, 3005288L, 24571284L, 212258800L, 1939886636L, 18429641748L, 184042084512L };
+			
+	// Utility class, not to be instantiated
+	private Perft() {
+	}
+	
+	/**
+	 * count(long, long, int) counts the lines of play of the given length from a
+	 * position, working directly on bitboards.
+	 * 
+	 * @param own is the bitboard of the tokens of the player to move.
+	 * @param opp is the bitboard of the opponent's tokens.
+	 * @param depth is the number of moves (including passes) in each line.
+	 * @return the number of positions at the end of the lines.
+	 */
+	public static long count(long own, long opp, int depth) {
+		if (depth == 0)
+			return 1;
+		long moves = Bitboards.legalMoves(own, opp);
+		if (moves == 0) {
+			if (depth == 1 || Bitboards.legalMoves(opp, own) == 0)
+				return 1; // A pass, or the end of the game
+			return count(opp, own, depth - 1);
+		}
+		if (depth == 1)
+			return Long.bitCount(moves);
+		long total = 0;
+		for (; moves != 0; moves &= moves - 1) {
+			long bit = moves & -moves;
+			long flipped = Bitboards.flips(own, opp, bit);
+			total += count(opp ^ flipped, own | flipped | bit, depth - 1);
+		}
+		return total;
+	}
+	
+	/**
+	 * count(ReversiModel, char, int) counts the lines of play of the given length
+	 * from the model's position, making and undoing every move on the model.
+	 * 
+	 * @param model is the model holding the position (unchanged when this method
+	 * returns).
+	 * @param player is 'W' or 'B', the player to move.
+	 * @param depth is the number of moves (including passes) in each line.
+	 * @return the number of positions at the end of the lines.
+	 */
+	public static long count(ReversiModel model, char player, int depth) {
+		if (depth == 0)
+			return 1;
+		char opponent = (player == 'W') ? 'B' : 'W';
+		long moves = model.getLegalMoves(player);
+		if (moves == 0) {
+			if (depth == 1 || model.isGameOver())
+				return 1;
+			return count(model, opponent, depth - 1);
+		}
+		if (depth == 1)
+			return Long.bitCount(moves);
+		long total = 0;
+		for (; moves != 0; moves &= moves - 1) {
+			model.makeMove(player, Long.numberOfTrailingZeros(moves));
+			total += count(model, opponent, depth - 1);
+			model.undoMove();
+		}
+		return total;
+	}
+	
+	/**
+	 * countParallel(long, long, int, int) counts the lines of play of the given
+	 * length from a position, using several threads.
+	 * 
+	 * The position is expanded a few moves ahead, until there are enough positions
+	 * for every thread to have many of them, and the threads then take positions from
+	 * that list one at a time until it is exhausted, so that threads given quick
+	 * positions do not sit idle.
+	 * 
+	 * @param own is the bitboard of the tokens of the player to move.
+	 * @param opp is the bitboard of the opponent's tokens.
+	 * @param depth is the number of moves (including passes) in each line.
+	 * @param threads is the number of threads to count with.
+	 * @return the number of positions at the end of the lines.
+	 */
+	public static long countParallel(long own, long opp, int depth, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed");
+		long[] owns = { own };
+		long[] opps = { opp };
+		int size = 1;
+		long finished = 0; // Lines that ended before the split
+		int split = 0;
+		while (split < depth - 1 && size < 16 * threads) {
+			long[] nextOwns = new long[size * 16];
+			long[] nextOpps = new long[size * 16];
+			int nextSize = 0;
+			for (int i = 0; i < size; i++) {
+				if (nextSize + 33 > nextOwns.length) {
+					nextOwns = Arrays.copyOf(nextOwns, 2 * nextOwns.length);
+					nextOpps = Arrays.copyOf(nextOpps, 2 * nextOpps.length);
+				}
+				long moves = Bitboards.legalMoves(owns[i], opps[i]);
+				if (moves == 0) {
+					if (Bitboards.legalMoves(opps[i], owns[i]) == 0) {
+						finished++;
+					} else { // Pass: the opponent moves from the same board
+						nextOwns[nextSize] = opps[i];
+						nextOpps[nextSize++] = owns[i];
+					}
+				}
+				for (; moves != 0; moves &= moves - 1) {
+					long bit = moves & -moves;
+					long flipped = Bitboards.flips(owns[i], opps[i], bit);
+					nextOwns[nextSize] = opps[i] ^ flipped;
+					nextOpps[nextSize++] = owns[i] | flipped | bit;
+				}
+			}
+			owns = nextOwns;
+			opps = nextOpps;
+			size = nextSize;
+			split++;
+		}
+		
+		long[] splitOwns = owns;
+		long[] splitOpps = opps;
+		int splitSize = size;
+		int remaining = depth - split;
+		AtomicInteger next = new AtomicInteger();
+		ExecutorService pool = ThreadPools.newFixedPool(threads, "reversi-perft");
+		try {
+			List<Future<Long>> workers = new ArrayList<>(threads);
+			for (int t = 0; t < threads; t++) {
+				workers.add(pool.submit(() -> {
+					long total = 0;
+					for (int i = next.getAndIncrement(); i < splitSize; i = next.getAndIncrement())
+						total += count(splitOwns[i], splitOpps[i], remaining);
+					return total;
+				}));
+			}
+			long total = finished;
+			for (Future<Long> worker : workers)
+				total += worker.get();
+			return total;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while counting", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Counting thread failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * knownCount(int) returns the published count for the initial position.
+	 * 
+	 * @param depth is the number of moves in each line.
+	 * @return the published count, or -1 if none is known for this depth.
+	 */
+	public static long knownCount(int depth) {
+		return (depth >= 0 && depth < KNOWN_COUNTS.length) ? KNOWN_COUNTS[depth] : -1;
+	}
+	
+}
@@ -0,0 +1,264 @@
+package controller;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import model.ReversiModel;
+
+/**
+ * Engine that keeps searching while the opponent is thinking (pondering), so that
+ * its reply to the move the opponent then makes is often ready at once.
+ * 
+ * When asked to ponder, the engine copies the position and, on a background thread,
+ * searches its reply to each of the opponent's legal moves in turn, the moves
+ * leaving it the fewest replies first, since those are the moves a good opponent is
+ * likeliest to make. Every reply searched to the full depth is kept. When the
+ * opponent has moved and chooseMove(ReversiModel, char) is called, pondering is
+ * stopped, and if the position is one whose reply was kept (a ponder hit), that reply
+ * is returned without searching. Otherwise (a miss) the position is searched as
+ * usual, by the same AlphaBetaEngine, whose transposition table still holds what the
+ * pondering found, including any unfinished search of the very same position, so
+ * even a miss is usually quicker than a search from scratch.
+ * 
+ * A PonderingEngine serves one game at a time. Its thread is a daemon thread, and can
+ * be released with shutdown().
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class PonderingEngine implements ReversiEngine {
+	
+	private static final int MAX_REPLIES = 64;
+	private static final int NOT_KEPT = -2; // Not -1, which is a kept pass
+	
+	private final AlphaBetaEngine engine;
+	private final ExecutorService thread = ThreadPools.newFixedPool(1, "reversi-ponder");
+	private final Object lock = new Object();
+	private final long[] keptW = new long[MAX_REPLIES]; // Positions whose replies were searched fully
+	private final long[] keptB = new long[MAX_REPLIES];
+	private final int[] keptMoves = new int[MAX_REPLIES];
+	private int kept; // Guarded by lock, like the arrays above
+	private boolean cancelled; // Guarded by lock
+	private char ponderedPlayer;
+	private long ponderedW; // Position pondered on
+	private long ponderedB;
+	private Future<?> pondering;
+	private long hits;
+	private long misses;
+	
+	// Constructor (reads in the engine that searches, both while pondering and when asked for a move)
+	public PonderingEngine(AlphaBetaEngine engine) {
+		this.engine = engine;
+	}
+	
+	/**
+	 * ponder(ReversiModel, char) starts searching the replies to the opponent's moves
+	 * in the background, and returns at once.
+	 * 
+	 * Asking again to ponder on the same position (say, after the opponent tried an
+	 * illegal move) lets the pondering already started go on.
+	 * 
+	 * @param model is the model holding the current state of the game, with the
+	 * opponent to move. It is copied, so it can be changed once this method returns.
+	 * @param player is 'W' or 'B', the player whose move will be asked for next.
+	 */
+	@Override
+	public void ponder(ReversiModel model, char player) {
+		if (pondering != null && player == ponderedPlayer && model.getBoard('W') == ponderedW
+				&& model.getBoard('B') == ponderedB)
+			return;
+		stopPondering();
+		ReversiModel position = new ReversiModel(model);
+		synchronized (lock) {
+			kept = 0;
+			cancelled = false;
+		}
+		ponderedPlayer = player;
+		ponderedW = model.getBoard('W');
+		ponderedB = model.getBoard('B');
+		pondering = thread.submit(() -> ponderReplies(position, player));
+	}
+	
+	/**
+	 * chooseMove(ReversiModel, char) stops any pondering, and returns the reply kept
+	 * for the position if there is one, or searches the position otherwise.
+	 * 
+	 * @param model is the model holding the current state of the game (unchanged).
+	 * @param player is 'W' or 'B', the player whose move is being chosen.
+	 * @return the square index of the chosen move, or -1 if the player has no legal
+	 * move.
+	 */
+	@Override
+	public int chooseMove(ReversiModel model, char player) {
+		int move = keptMove(model, player);
+		return (move != NOT_KEPT) ? move : engine.chooseMove(model, player);
+	}
+	
+	/**
+	 * chooseMove(ReversiModel, char, long) stops any pondering, and returns the reply
+	 * kept for the position if there is one, or searches the position until the
+	 * deadline otherwise.
+	 */
+	@Override
+	public int chooseMove(ReversiModel model, char player, long deadline) {
+		int move = keptMove(model, player);
+		return (move != NOT_KEPT) ? move : engine.chooseMove(model, player, deadline);
+	}
+	
+	// Stops pondering, returns the reply kept for the position, or NOT_KEPT, counting hits and misses
+	private int keptMove(ReversiModel model, char player) {
+		if (stopPondering() && player == ponderedPlayer) {
+			synchronized (lock) {
+				for (int i = 0; i < kept; i++) {
+					if (keptW[i] == model.getBoard('W') && keptB[i] == model.getBoard('B')) {
+						hits++;
+						return keptMoves[i];
+					}
+				}
+			}
+			misses++;
+		}
+		return NOT_KEPT;
+	}
+	
+	/**
+	 * isPondering() returns whether the background search is still running.
+	 * 
+	 * @return true if some replies started by ponder(ReversiModel, char) are still
+	 * being searched, false if all are done or pondering was stopped.
+	 */
+	public boolean isPondering() {
+		return pondering != null && !pondering.isDone();
+	}
+	
+	/**
+	 * getPonderHits() returns the number of moves answered by a reply found while
+	 * pondering.
+	 * 
+	 * @return the number of ponder hits so far.
+	 */
+	public long getPonderHits() {
+		return hits;
+	}
+	
+	/**
+	 * getPonderMisses() returns the number of moves that had to be searched although
+	 * the engine had pondered, because the opponent's move was not one whose reply
+	 * was searched fully in time.
+	 * 
+	 * @return the number of ponder misses so far.
+	 */
+	public long getPonderMisses() {
+		return misses;
+	}
+	
+	/**
+	 * getPonderHitRate() returns the fraction of moves asked for after pondering that
+	 * were answered by a reply found while pondering.
+	 * 
+	 * @return the hits divided by the hits and misses, or 0 if the engine never
+	 * pondered.
+	 */
+	public double getPonderHitRate() {
+		return (hits + misses == 0) ? 0 : (double) hits / (hits + misses);
+	}
+	
+	/**
+	 * getEngine() returns the engine that does the searching.
+	 * 
+	 * @return the alpha-beta engine.
+	 */
+	public AlphaBetaEngine getEngine() {
+		return engine;
+	}
+	
+	/**
+	 * shutdown() stops any pondering and releases the background thread. The engine
+	 * cannot ponder afterwards.
+	 */
+	public void shutdown() {
+		stopPondering();
+		thread.shutdown();
+	}
+	
+	// Stops the background search and waits for it, returns whether there was any pondering since the last move
+	private boolean stopPondering() {
+		if (pondering == null)
+			return false;
+		synchronized (lock) {
+			cancelled = true;
+			engine.stop();
+		}
+		boolean interrupted = false;
+		try {
+			while (true) { // The engine must be left alone before it is used again, even if interrupted
+				try {
+					pondering.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Pondering failed", e.getCause());
+		} finally {
+			pondering = null;
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		return true;
+	}
+	
+	// Searches the player's reply to each of the opponent's moves, likeliest first, on the background thread
+	private void ponderReplies(ReversiModel position, char player) {
+		char opponent = (player == 'W') ? 'B' : 'W';
+		long legal = position.getLegalMoves(opponent);
+		if (legal == 0) { // The opponent has to pass, so the position itself comes next
+			ponderPosition(position, player);
+			return;
+		}
+		int count = 0;
+		int[] moves = new int[Long.bitCount(legal)];
+		int[] replies = new int[moves.length];
+		for (; legal != 0; legal &= legal - 1) {
+			int move = Long.numberOfTrailingZeros(legal);
+			position.makeMove(opponent, move);
+			int mobility = Long.bitCount(position.getLegalMoves(player));
+			position.undoMove();
+			int i = count++;
+			for (; i > 0 && replies[i - 1] > mobility; i--) { // Insertion sort by the player's mobility
+				moves[i] = moves[i - 1];
+				replies[i] = replies[i - 1];
+			}
+			moves[i] = move;
+			replies[i] = mobility;
+		}
+		for (int move : moves) {
+			position.makeMove(opponent, move);
+			boolean searched = ponderPosition(position, player);
+			position.undoMove();
+			if (!searched)
+				return;
+		}
+	}
+	
+	// Searches and keeps one reply, returns false if pondering was stopped first
+	private boolean ponderPosition(ReversiModel position, char player) {
+		synchronized (lock) {
+			if (cancelled)
+				return false;
+			engine.prepare(); // Under the lock, so that a stop cannot come between the check and the search
+		}
+		int reply = engine.search(position, player, engine.getDepth());
+		synchronized (lock) {
+			if (engine.wasStopped())
+				return false;
+			keptW[kept] = position.getBoard('W');
+			keptB[kept] = position.getBoard('B');
+			keptMoves[kept++] = reply;
+		}
+		return true;
+	}
+	
+}
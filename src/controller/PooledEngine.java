@@ -0,0 +1,101 @@
+package controller;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import model.ReversiModel;
+
+/**
+ * Engine that runs the searches of many games on a fixed number of threads, for
+ * serving many games at once.
+ * 
+ * A server with one thread per connection cannot let every connection search on its
+ * own thread: with more games than processors, the searches would crowd out the
+ * threads reading and writing the connections, and every game would slow down at
+ * once. Instead, every game's controller uses the same PooledEngine, which hands
+ * each search to a bounded pool of threads and waits for its move; searches beyond
+ * the pool's size wait their turn in a queue, so no more searches run at once than
+ * there are threads. Engines are not thread-safe and can be large (an alpha-beta
+ * engine has its own transposition table), so each pool thread has an engine of its
+ * own, created the first time that thread searches, rather than each game.
+ * 
+ * Unlike other engines, a PooledEngine can be used by several threads at once. Its
+ * threads are daemon threads, and can be released with shutdown(). Interrupting a
+ * thread waiting for a move cancels the search, freeing its pool thread at once.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class PooledEngine implements ReversiEngine {
+	
+	private final ThreadLocal<ReversiEngine> engines;
+	private final ExecutorService pool;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	
+	// Constructor (reads in the supplier of each thread's engine and the number of threads)
+	public PooledEngine(Supplier<ReversiEngine> engines, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed");
+		this.engines = ThreadLocal.withInitial(engines);
+		pool = ThreadPools.newFixedPool(threads, "reversi-engine");
+	}
+	
+	/**
+	 * chooseMove(ReversiModel, char) waits for one of the pool's engines to choose the
+	 * move. The calling thread does nothing in the meantime, and the model must not
+	 * be changed until the move is returned.
+	 */
+	@Override
+	public int chooseMove(ReversiModel model, char player) {
+		long begin = System.nanoTime();
+		return await(pool.submit(EngineMetrics.carry(() -> engines.get().chooseMove(model, player))), begin);
+	}
+	
+	/**
+	 * chooseMove(ReversiModel, char, long) waits for one of the pool's engines to
+	 * choose the move by the deadline. Time spent waiting for a free thread counts
+	 * against the deadline.
+	 */
+	@Override
+	public int chooseMove(ReversiModel model, char player, long deadline) {
+		long begin = System.nanoTime();
+		return await(pool.submit(EngineMetrics.carry(() -> engines.get().chooseMove(model, player, deadline))),
+				begin);
+	}
+	
+	/**
+	 * getLatency() returns the time each move took, from the request to the answer,
+	 * including any time spent waiting for a free thread.
+	 * 
+	 * @return the histogram of move times, shared by every game using the engine.
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+	
+	/**
+	 * shutdown() releases the pool's threads once the searches already asked for are
+	 * done. The engine cannot be used afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+	
+	// Waits for a search asked for at the given time, recording how long the move took
+	private int await(Future<Integer> move, long begin) {
+		try {
+			return move.get();
+		} catch (InterruptedException e) { // Stop the search, which checks for interrupts
+			move.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a move", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Search failed", e.getCause());
+		} finally {
+			latency.record(System.nanoTime() - begin);
+		}
+	}
+	
+}
@@ -0,0 +1,31 @@
+package controller;
+
+import model.ReversiModel;
+
+/**
+ * Receives the positions of games replayed by a WthorImporter, for example to count
+ * them, add them to an opening book, or collect them for training an evaluator.
+ * 
+ * An importer working on several threads gives each thread its own sink, so a sink
+ * is only ever called from one thread and does not need to be thread-safe. The model
+ * passed to a sink is reused for every position, so a sink must copy whatever it
+ * keeps, and must leave the model as it was given.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public interface PositionSink {
+	
+	/**
+	 * position(ReversiModel, char, int, int) is called for every position of a game
+	 * just before a move is made in it, in the order they were played.
+	 * 
+	 * @param model is the model holding the position.
+	 * @param player is 'W' or 'B', the player about to move.
+	 * @param move is the square index of the move played from the position.
+	 * @param result is the final disc difference of the game, from the side of the
+	 * player about to move.
+	 */
+	void position(ReversiModel model, char player, int move, int result);
+	
+}
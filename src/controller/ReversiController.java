@@ -1,5 +1,13 @@
 package controller;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import model.Bitboards;
+import model.MoveEvent;
 import model.ReversiModel;
 
 /**
@@ -12,18 +20,95 @@ import model.ReversiModel;
  * return the current scores of each player, as well as one that returns a 2D character
  * array of the game board, so that view can display them. This is done despite model
  * already having such data so that view can still print out said data in the same way
- * even if model's implementation changes.
+ * even if model's implementation changes. Turns are recorded by model, so they can
+ * also be taken back and made again. The computer's moves are chosen by an engine
+ * (see ReversiEngine), which is the greedy one-move player unless another is given.
+ * If given a game archive (see GameArchiveWriter), the controller adds each game to
+ * it as soon as the game is over. If given a move journal (see MoveJournal), it
+ * appends every move made and taken back, so that the game can be recovered if the
+ * process dies. The computer's turn can be given a time budget, or a clock for the
+ * whole game (see GameClock), and then always returns in time, or it can be run on
+ * an executor, returning at once with a future of the move that can be cancelled.
+ * The controller's engine searches, moves, and turn times are recorded in its
+ * EngineMetrics. The moves it plays, and its checks for the end of the game, are
+ * also recorded as Java Flight Recorder events (see model.MoveEvent), when those
+ * are enabled.
  * 
  * @author Jesse Liu
  *
  */
-public class ReversiController {
+public class ReversiController implements GameController {
+	
+	private static final int GAME_OVER_SAMPLING = 16; // Timing a check costs far more than the check
 	
 	private ReversiModel model;
+	private ReversiEngine engine;
+	private GameArchiveWriter archive;
+	private boolean archived; // Whether the game on the board is already archived
+	private MoveJournal journal;
+	private long game; // Id of the game in the journal
+	private long timedTurns;
+	private long cutShort; // Timed turns that reached their deadline
+	private final LatencyHistogram turnTimes = new LatencyHistogram();
+	private final EngineMetrics metrics = new EngineMetrics();
+	private int gameOverChecks; // Only one check in GAME_OVER_SAMPLING is timed
 	
-	// Constructor (reads in model object)
+	// Constructor (reads in model object, the computer plays greedily)
 	public ReversiController(ReversiModel model) {
+		this(model, new GreedyEngine());
+	}
+	
+	// Constructor (reads in model object and the engine deciding the computer's moves)
+	public ReversiController(ReversiModel model, ReversiEngine engine) {
+		this.model = model;
+		this.engine = engine;
+	}
+	
+	/**
+	 * setArchive(GameArchiveWriter) sets the archive that finished games are added to,
+	 * with the human player as player 0 and the computer as player 1.
+	 * 
+	 * @param archive is the archive, or null to keep no record of games.
+	 */
+	public void setArchive(GameArchiveWriter archive) {
+		this.archive = archive;
+	}
+	
+	/**
+	 * setJournal(MoveJournal, long) sets the journal that every move of the game is
+	 * appended to, from now on. The moves already on the board must be in the journal
+	 * (as they are for a game recovered from it, or a new game).
+	 * 
+	 * @param journal is the journal, or null to keep no journal.
+	 * @param game is the id of the game in the journal (see MoveJournal.newGame()).
+	 */
+	public void setJournal(MoveJournal journal, long game) {
+		this.journal = journal;
+		this.game = game;
+	}
+	
+	/**
+	 * setModel(ReversiModel) makes the controller play on another model holding the
+	 * same game, such as the game loaded back from a SessionStore. Everything else is
+	 * kept, including the metrics and whether the game has already been archived.
+	 * 
+	 * @param model is the model holding the game, or null to let go of the model
+	 * until the game is played again (no other method may be called until then).
+	 */
+	public void setModel(ReversiModel model) {
+		this.model = model;
+	}
+	
+	/**
+	 * newGame(ReversiModel) makes the controller play another game, on the given
+	 * model, which is archived in turn once it is over. The engine, archive, journal
+	 * and metrics are kept (see setJournal(MoveJournal, long) for the game's id).
+	 * 
+	 * @param model is the model holding the new game.
+	 */
+	public void newGame(ReversiModel model) {
 		this.model = model;
+		archived = false;
 	}
 	
 	/**
@@ -35,6 +120,7 @@ public class ReversiController {
 	 * 
 	 * @return an integer representing the current score of the human player.
 	 */
+	@Override
 	public int getWScore() {
 		return model.getWScore();
 	}
@@ -48,6 +134,7 @@ public class ReversiController {
 	 * 
 	 * @return an integer representing the current score of the computer.
 	 */
+	@Override
 	public int getBScore() {
 		return model.getBScore();
 	}
@@ -59,8 +146,9 @@ public class ReversiController {
 	 * Specifically, row and col are the indices at which the human would like to place
 	 * a token. humanTurn(int, int) checks if this given position is a legal place for
 	 * the human to place a token (by calling a method from model), adding the token
-	 * and converting all captured tokens if it is (again, with a method from model),
-	 * and throwing an IllegalArgumentException if it isn't.
+	 * and converting all captured tokens if it is (again, with a method from model,
+	 * which also records the move so that it can be undone), and throwing an
+	 * IllegalArgumentException if it isn't.
 	 * 
 	 * @param row is an integer representing the vertical position of the desired token
 	 * position, with 0 representing the top row and 7 representing the bottom row.
@@ -70,12 +158,22 @@ public class ReversiController {
 	 * move for the player (checks if said position is out of bounds here, the rest
 	 * of the check is done via a method from model).
 	 */
+	@Override
 	public void humanTurn(int row, int col) throws IllegalArgumentException {
-		if ((row >= 0) && (row < 8) && (col >= 0) && (col < 8) &&
-				model.isLegalW(row, col))
-			model.setPosW(row, col);
-		else
+		long begin = System.nanoTime();
+		if ((row >= 0) && (row < ReversiModel.SIZE) && (col >= 0) && (col < ReversiModel.SIZE) &&
+				model.isLegalW(row, col)) {
+			int square = Bitboards.square(row, col);
+			MoveEvent event = new MoveEvent();
+			event.begin();
+			event.record('W', square, model.makeMove('W', square));
+		} else {
 			throw new IllegalArgumentException();
+		}
+		metrics.recordMove();
+		journalLastMove();
+		archiveIfOver();
+		metrics.recordHumanTurn(System.nanoTime() - begin);
 	}
 	
 	/**
@@ -83,66 +181,181 @@ public class ReversiController {
 	 * position at which the computer placed a token (as a string coordinate), if
 	 * any.
 	 * 
-	 * This method iterates through each position in the board, checking the potential
-	 * score increase (for the computer) if the computer placed a token at the
-	 * position in question, and thus finding the move that will give the computer the
-	 * greatest amount of points. This check is not made if the position in question is
-	 * already occupied, and other illegal moves will not affect the search for the
-	 * highest-point-yielding move, as their potential score increases are equal to 1,
-	 * which is the starting point for the variable storing the current highest potential
-	 * point gain (maxScoreIncrease). If any legal moves are available, one of the
-	 * highest-point-yielding moves will be made, and the indices of the position of
-	 * said move will be converted to string coordinates and returned. Otherwise, null
-	 * will be returned.
+	 * The move is chosen by the controller's engine (see ReversiEngine), which by
+	 * default picks the legal move that gives the computer the greatest amount of
+	 * points (see GreedyEngine). If any legal moves are available, the chosen move
+	 * will be made, and the indices of the position of said move will be converted to
+	 * string coordinates and returned. Otherwise, null will be returned.
 	 * 
 	 * @return a string representing the position of the move made by the computer
-	 * (given by two characters: 'a'-'f' first, representing the column index, followed
+	 * (given by two characters: 'a'-'h' first, representing the column index, followed
 	 * by '1'-'8' to represent the row index, such that position (0, 0) in the board is
 	 * represented by "a1"), or null if no such move could be made.
 	 */
+	@Override
 	public String computerTurn() {
-		int maxScoreIncrease = 1;
-		int maxRow = -1;
-		int maxCol = -1;
-		for (int i = 0; i < 8; i++) {
-			for (int j = 0; j < 8; j++) {
-				if (model.getElementAt(i, j) == '_') {
-					int scoreInc = model.hypotheticalB(i, j);
-					if (scoreInc > maxScoreIncrease) {
-						maxScoreIncrease = scoreInc;
-						maxRow = i;
-						maxCol = j;
-					}
-				}
-			}
-		}
-		if (maxRow == -1)
-			return null;
-		model.setPosB(maxRow, maxCol);
-		String coordinates = String.valueOf((char) (maxCol + 'a')) + String.valueOf(maxRow + 1);
-		return coordinates;
+		long begin = System.nanoTime();
+		return playComputerMove(searchMove(model, false, 0), begin);
+	}
+	
+	/**
+	 * computerTurn(Duration) processes a single turn for the computer like
+	 * computerTurn(), but returns within the given time.
+	 * 
+	 * The engine searches until the deadline (see ReversiEngine.chooseMove(ReversiModel,
+	 * char, long)), so the move is the best one it found by then. Turns that reach the
+	 * deadline before the search is done are counted by getCutShort().
+	 * 
+	 * @param budget is the time the turn may take.
+	 * @return a string representing the position of the move made by the computer,
+	 * or null if no such move could be made.
+	 */
+	public String computerTurn(Duration budget) {
+		return timedTurn(budget.toNanos());
+	}
+	
+	/**
+	 * computerTurn(GameClock) processes a single turn for the computer like
+	 * computerTurn(Duration), with the time given by the computer's clock for the
+	 * game, which is then charged the time the turn took.
+	 * 
+	 * @param clock is the computer's clock, with which the turn's time is budgeted.
+	 * @return a string representing the position of the move made by the computer,
+	 * or null if no such move could be made.
+	 */
+	public String computerTurn(GameClock clock) {
+		long begin = System.nanoTime();
+		String move = timedTurn(clock.budget(model));
+		clock.charge(System.nanoTime() - begin);
+		return move;
+	}
+	
+	/**
+	 * computerTurnAsync(ExecutorService) processes a single turn for the computer like
+	 * computerTurn(), but on one of the executor's threads, and returns at once.
+	 * 
+	 * The engine searches a copy of the model, so a cancelled turn leaves the model
+	 * as it was; the move is made on the model by the executor's thread when the
+	 * search is done, just before the future completes. Neither the model nor this
+	 * controller may be used until then (completing the future publishes the move
+	 * and the turn's counters to any thread that gets its result). Cancelling
+	 * the future (say, because the human resigned or went away) interrupts the search,
+	 * which stops within a few microseconds and frees the executor's thread, and no
+	 * move is made. An engine given to several controllers (such as a PooledEngine)
+	 * must be one that can be used by several threads at once.
+	 * 
+	 * @param executor is the executor running the search, for instance one of
+	 * ThreadPools' pools.
+	 * @return a future of the position of the move made by the computer (as
+	 * computerTurn() returns it), completed with null if no move could be made, or
+	 * exceptionally if the search failed.
+	 */
+	public CompletableFuture<String> computerTurnAsync(ExecutorService executor) {
+		return turnAsync(executor, 0);
+	}
+	
+	/**
+	 * computerTurnAsync(ExecutorService, Duration) processes a single turn for the
+	 * computer like computerTurnAsync(ExecutorService), within the given time from the
+	 * call (see computerTurn(Duration)).
+	 * 
+	 * @param executor is the executor running the search.
+	 * @param budget is the time the turn may take, including any time waiting for a
+	 * free thread of the executor.
+	 * @return a future of the position of the move made by the computer.
+	 */
+	public CompletableFuture<String> computerTurnAsync(ExecutorService executor, Duration budget) {
+		return turnAsync(executor, Math.max(budget.toNanos(), 1));
+	}
+	
+	/**
+	 * getTimedTurns() returns the number of computer turns given a time budget.
+	 * 
+	 * @return the number of calls to computerTurn(Duration) and computerTurn(GameClock).
+	 */
+	public long getTimedTurns() {
+		return timedTurns;
+	}
+	
+	/**
+	 * getCutShort() returns the number of timed computer turns that reached their
+	 * deadline, so that the engine's search was cut short (or, for an engine that
+	 * cannot stop early, ran late).
+	 * 
+	 * @return the number of timed turns that took their whole budget.
+	 */
+	public long getCutShort() {
+		return cutShort;
+	}
+	
+	/**
+	 * getTurnTimes() returns the time taken by each timed computer turn.
+	 * 
+	 * @return the histogram of timed turn times, in nanoseconds.
+	 */
+	public LatencyHistogram getTurnTimes() {
+		return turnTimes;
+	}
+	
+	/**
+	 * getMetrics() returns the counters of the controller's searches, moves, and turn
+	 * times, which are also counted in EngineMetrics.global().
+	 * 
+	 * @return the controller's metrics, which can be registered with JMX.
+	 */
+	public EngineMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * ponder() lets the engine think about its replies while the human player is
+	 * deciding on a move (see ReversiEngine.ponder(ReversiModel, char)). It returns at
+	 * once, and does nothing if the engine does not ponder.
+	 */
+	@Override
+	public void ponder() {
+		if (!model.isGameOver())
+			engine.ponder(model, 'B');
 	}
 	
 	/**
 	 * isGameOver() returns a boolean indicating whether the game is over or not.
 	 * 
 	 * If any more moves can be made by either the human player or the computer, then
-	 * the game is not yet over. Obviously, it is otherwise over. In order to determine
-	 * this, this method checks every position in the board, calling methods from model
-	 * at each position in order to check whether either the human or the computer can
-	 * make a move at said position. False is returned if either can make a move at any
-	 * position. Otherwise, true is returned.
+	 * the game is not yet over. Obviously, it is otherwise over. Model keeps the legal
+	 * moves of both players up to date as moves are made, so this method simply asks
+	 * model, without scanning the board. False is returned if either player has any
+	 * legal move. Otherwise, true is returned.
 	 * 
 	 * @return false if any moves can be made by either player, true otherwise.
 	 */
+	@Override
 	public boolean isGameOver() {
-		for (int i = 0; i < 8; i++) {
-			for (int j = 0; j < 8; j++) {
-				if (model.isLegalW(i, j) || (model.hypotheticalB(i, j) > 1))
-					return false;
-			}
+		GameOverCheckEvent event = new GameOverCheckEvent();
+		event.begin();
+		boolean timed = gameOverChecks++ % GAME_OVER_SAMPLING == 0;
+		long begin = timed ? System.nanoTime() : 0;
+		boolean over = model.isGameOver();
+		if (timed)
+			metrics.recordGameOverCheck(System.nanoTime() - begin);
+		if (event.shouldCommit()) {
+			event.over = over;
+			event.commit();
 		}
-		return true;
+		return over;
+	}
+	
+	/**
+	 * humanCanMove() returns whether the human player has any legal move.
+	 * 
+	 * If not, the human has to pass, and the computer moves again (unless the game is
+	 * over, in which case neither player can move).
+	 * 
+	 * @return true if the human player can place a token anywhere, false otherwise.
+	 */
+	@Override
+	public boolean humanCanMove() {
+		return model.getLegalMovesW() != 0;
 	}
 	
 	/**
@@ -161,16 +374,69 @@ public class ReversiController {
 	 * 
 	 * @return a copy of the game board, represented as an 8x8 2D array of characters.
 	 */
+	@Override
 	public char[][] reconstructBoard() {
-		char[][] reconstructed = new char[8][8];
-		for (int i = 0; i < 8; i++) {
-			for (int j = 0; j < 8; j++) {
+		char[][] reconstructed = new char[ReversiModel.SIZE][ReversiModel.SIZE];
+		for (int i = 0; i < ReversiModel.SIZE; i++) {
+			for (int j = 0; j < ReversiModel.SIZE; j++) {
 				reconstructed[i][j] = model.getElementAt(i, j);
 			}
 		}
 		return reconstructed;
 	}
 	
+	/**
+	 * undoTurn() takes back the human player's most recent turn, along with any
+	 * computer turns made after it.
+	 * 
+	 * Moves are taken back one at a time with model's undo stack: first every computer
+	 * move made since the human's last turn, then the human's move itself, so that it
+	 * is the human's turn again afterwards.
+	 * 
+	 * @return true if any turn was taken back, false if there was nothing to undo.
+	 */
+	public boolean undoTurn() {
+		int undone = 0;
+		while (model.peekUndo() == 'B') {
+			model.undoMove();
+			undone++;
+		}
+		if (model.peekUndo() == 'W') {
+			model.undoMove();
+			undone++;
+		}
+		if (journal != null && undone > 0) {
+			try {
+				journal.undo(game, undone);
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not journal the undo", e);
+			}
+		}
+		archived &= undone == 0; // An undone ending may be played out differently
+		return undone > 0;
+	}
+	
+	/**
+	 * redoTurn() makes a turn taken back by undoTurn() again, along with the
+	 * computer turns that followed it.
+	 * 
+	 * @return true if any turn was made again, false if there was nothing to redo.
+	 */
+	public boolean redoTurn() {
+		boolean redone = false;
+		if (model.peekRedo() == 'W') {
+			model.redoMove();
+			journalLastMove();
+			redone = true;
+		}
+		while (model.peekRedo() == 'B') {
+			model.redoMove();
+			journalLastMove();
+			redone = true;
+		}
+		return redone;
+	}
+	
 	/**
 	 * getWinner() returns a character representing the winner of the game.
 	 * 
@@ -184,6 +450,7 @@ public class ReversiController {
 	 * @return 'W' if the human player has more points at the moment, 'B' if the computer
 	 * has more points, and '_' if they are tied.
 	 */
+	@Override
 	public char getWinner() {
 		if (model.getWScore() > model.getBScore())
 			return 'W';
@@ -193,4 +460,123 @@ public class ReversiController {
 			return 'B';
 	}
 	
+	// Chooses and plays the computer's move by a deadline, counting whether the deadline was reached
+	private String timedTurn(long budget) {
+		long begin = System.nanoTime();
+		long deadline = begin + budget;
+		int square = searchMove(model, true, deadline);
+		countTimedTurn(begin, deadline);
+		return playComputerMove(square, begin);
+	}
+	
+	// Counts a timed turn begun at the given time, and whether it reached its deadline
+	private void countTimedTurn(long begin, long deadline) {
+		long end = System.nanoTime();
+		timedTurns++;
+		if (end - deadline >= 0)
+			cutShort++;
+		turnTimes.record(end - begin);
+	}
+	
+	// Searches a copy of the model on the executor (by a deadline, unless budget is 0), then plays the move
+	private CompletableFuture<String> turnAsync(ExecutorService executor, long budget) {
+		long begin = System.nanoTime();
+		long deadline = begin + budget;
+		ReversiModel position = new ReversiModel(model);
+		TurnFuture turn = new TurnFuture();
+		turn.search = executor.submit(() -> {
+			if (turn.isDone()) // Cancelled before it started
+				return;
+			int square;
+			try {
+				square = searchMove(position, budget != 0, deadline);
+			} catch (Throwable e) { // The executor would keep even an Error to itself, leaving the future pending
+				turn.completeExceptionally(e);
+				return;
+			}
+			synchronized (turn) { // So that a cancel cannot interrupt the thread while the move is played
+				if (turn.isDone())
+					return;
+				try {
+					if (budget != 0)
+						countTimedTurn(begin, deadline);
+					turn.complete(playComputerMove(square, begin));
+				} catch (Throwable e) {
+					turn.completeExceptionally(e);
+				}
+			}
+		});
+		if (turn.isCancelled()) // Cancelled before the search was submitted
+			turn.search.cancel(true);
+		return turn;
+	}
+	
+	// Future of an asynchronous turn, whose cancelling interrupts the search
+	private static class TurnFuture extends CompletableFuture<String> {
+		
+		private volatile Future<?> search;
+		
+		@Override
+		public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled && search != null)
+				search.cancel(true);
+			return cancelled;
+		}
+		
+	}
+	
+	// Has the engine choose the computer's move in a position, recording its searches in the controller's metrics
+	private int searchMove(ReversiModel position, boolean timed, long deadline) {
+		EngineMetrics previous = EngineMetrics.bind(metrics);
+		try {
+			return timed ? engine.chooseMove(position, 'B', deadline) : engine.chooseMove(position, 'B');
+		} finally {
+			EngineMetrics.bind(previous);
+		}
+	}
+	
+	// Plays the computer's chosen move for a turn begun at the given time, returns its coordinates, or null for a pass
+	private String playComputerMove(int square, long begin) {
+		if (square >= 0) {
+			MoveEvent event = new MoveEvent();
+			event.begin();
+			event.record('B', square, model.makeMove('B', square));
+			metrics.recordMove();
+			journalLastMove();
+			archiveIfOver();
+		}
+		metrics.recordComputerTurn(System.nanoTime() - begin);
+		return (square >= 0) ? toCoordinates(square) : null;
+	}
+	
+	// Appends the move just made to the journal
+	private void journalLastMove() {
+		if (journal == null)
+			return;
+		int last = model.getMoveCount() - 1;
+		try {
+			journal.move(game, model.getPlayerAt(last), model.getMoveAt(last));
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not journal the move", e);
+		}
+	}
+	
+	// Adds the game to the archive the first time it is seen to be over
+	private void archiveIfOver() {
+		if (archive == null || archived || !model.isGameOver())
+			return;
+		try {
+			archive.append(model, 0, 1);
+			archived = true;
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not archive the game", e);
+		}
+	}
+	
+	// Converts a square index into string coordinates such as "a1"
+	private static String toCoordinates(int square) {
+		return Coordinates.format(square / ReversiModel.SIZE, square % ReversiModel.SIZE);
+	}
+	
 }
@@ -0,0 +1,59 @@
+package controller;
+
+import model.ReversiModel;
+
+/**
+ * Strategy used by the controller to decide the computer's moves.
+ * 
+ * An engine is given the model and the player to move, and returns the square
+ * index (row * 8 + col) of the move it chooses. Engines may make and undo moves on
+ * the model while deciding, but must leave it exactly as it was given, since the
+ * controller makes the chosen move itself. An engine may also be told to ponder
+ * while the opponent is thinking.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public interface ReversiEngine {
+	
+	/**
+	 * chooseMove(ReversiModel, char) decides which move the given player should make.
+	 * 
+	 * @param model is the model holding the current state of the game, which must
+	 * be unchanged when this method returns.
+	 * @param player is 'W' or 'B', the player whose move is being chosen.
+	 * @return the square index of the chosen move, or -1 if the player has no legal
+	 * move.
+	 */
+	int chooseMove(ReversiModel model, char player);
+	
+	/**
+	 * chooseMove(ReversiModel, char, long) decides which move the given player should
+	 * make, returning by the given deadline with the best move found so far. Engines
+	 * that cannot stop a search early (or never search for long) just choose the move
+	 * as usual.
+	 * 
+	 * @param model is the model holding the current state of the game, which must
+	 * be unchanged when this method returns.
+	 * @param player is 'W' or 'B', the player whose move is being chosen.
+	 * @param deadline is the System.nanoTime() value by which to return.
+	 * @return the square index of the chosen move, or -1 if the player has no legal
+	 * move.
+	 */
+	default int chooseMove(ReversiModel model, char player, long deadline) {
+		return chooseMove(model, player);
+	}
+	
+	/**
+	 * ponder(ReversiModel, char) lets the engine think ahead while the opponent is
+	 * choosing a move, for the next call to chooseMove(ReversiModel, char). Most
+	 * engines do nothing here (see PonderingEngine).
+	 * 
+	 * @param model is the model holding the current state of the game, with the
+	 * opponent to move, which the engine must not keep or change.
+	 * @param player is 'W' or 'B', the player whose move will be asked for next.
+	 */
+	default void ponder(ReversiModel model, char player) {
+	}
+	
+}
@@ -0,0 +1,49 @@
+package controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one AlphaBetaEngine search, on whichever thread it
+ * runs: a computer turn's search, a LazySmpEngine helper's, or one reply searched
+ * while pondering. Its duration is the search's, so that a recording lines the
+ * engine's time up with garbage collection and allocation on the same thread.
+ * 
+ * Disabled by default (see model.MoveEvent); it is enabled as "reversi.Search".
+ * 
+ * @author Jesse Liu
+ *
+ */
+@Name("reversi.Search")
+@Label("Search")
+@Category({ "Reversi", "Engine" })
+@Description("A search for the best move")
+@Enabled(false)
+@StackTrace(false)
+class SearchEvent extends Event {
+	
+	@Label("Player")
+	char player;
+	
+	@Label("Depth")
+	@Description("Deepest iteration completed, in moves")
+	int depth;
+	
+	@Label("Nodes")
+	@Description("Positions visited")
+	long nodes;
+	
+	@Label("Move")
+	@Description("Square index of the chosen move, or -1 for a pass")
+	int move;
+	
+	@Label("Stopped")
+	@Description("Whether the search was cut short by stop(), its deadline, or an interrupt")
+	boolean stopped;
+	
+}
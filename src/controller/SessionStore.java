@@ -0,0 +1,348 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import model.ReversiModel;
+
+/**
+ * Store for the games of many sessions, keeping each game in a few longs rather than
+ * in a ReversiModel, and moving the least recently used games out to a file when
+ * there are more than fit in memory.
+ * 
+ * A model keeps an undo stack of every move with the legal moves and hash before
+ * it, which is a few kilobytes, so a server keeping a model for every open game
+ * spends most of its memory on games nobody is playing at the moment. The store
+ * keeps each game as a record of eleven longs in one large long[]: the bitboards of
+ * both players, the side to move and number of moves, and the moves themselves, one
+ * byte each (the scores are the bit counts of the bitboards). A game is loaded into
+ * a model when it is played and saved back afterwards; loading replays its moves,
+ * so the model can undo them as before.
+ * 
+ * Besides the records, the store only keeps, for each game in memory, its id, its
+ * neighbours in the least-recently-used order, and an entry of the hash table
+ * finding it by id, all in arrays of primitives, for about 120 bytes per game, or
+ * some eight million games per gigabyte. Once the store is full, making room for
+ * another game writes the least recently used one to the spill file and frees its
+ * record; loading that game later reads it back in (making room in turn), so callers
+ * never see where a game is. Ids are handed out in order, so a game's place in the
+ * spill file is simply its id times the record size, and no index of the file has to
+ * be kept.
+ * 
+ * Every method is synchronized, so one store can serve every session of a server.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class SessionStore implements Closeable {
+	
+	private static final int RECORD_LONGS = 11; // Two bitboards, the state, and 64 move bytes
+	private static final int RECORD_BYTES = RECORD_LONGS * 8;
+	private static final int MAX_MOVES = 64;
+	private static final long STORED = 1L << 63; // State bit marking a record in use
+	private static final int NONE = -1;
+	
+	private final long[] records;
+	private final long[] ids; // Id of the game in each slot, -1 if the slot is free
+	private final int[] older; // Least-recently-used list, through slots
+	private final int[] newer;
+	private final int[] table; // Slots by hash of their id, open addressing, NONE if empty
+	private final int[] free;
+	private final FileChannel spill;
+	private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+	private final ReversiModel initial = new ReversiModel();
+	private int freeCount;
+	private int newest = NONE;
+	private int oldest = NONE;
+	private long nextId;
+	private long size;
+	private long spills;
+	private long reloads;
+	
+	// Constructor (reads in the number of games kept in memory and the path of the spill file)
+	public SessionStore(int capacity, Path spillFile) throws IOException {
+		if (capacity < 1)
+			throw new IllegalArgumentException("The store must hold at least one game");
+		records = new long[capacity * RECORD_LONGS];
+		ids = new long[capacity];
+		older = new int[capacity];
+		newer = new int[capacity];
+		table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+		free = new int[capacity];
+		for (int slot = 0; slot < capacity; slot++) {
+			ids[slot] = -1;
+			free[freeCount++] = capacity - 1 - slot;
+		}
+		Arrays.fill(table, NONE);
+		spill = FileChannel.open(spillFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+	
+	/**
+	 * create() adds a new game, at the initial position with 'W' to move.
+	 * 
+	 * @return the id of the new game.
+	 * @throws IOException if another game had to be spilled and could not be.
+	 */
+	public synchronized long create() throws IOException {
+		long id = nextId++;
+		int slot = allocate(id);
+		int base = slot * RECORD_LONGS;
+		records[base] = initial.getBoard('W');
+		records[base + 1] = initial.getBoard('B');
+		records[base + 2] = STORED | 'W';
+		size++;
+		return id;
+	}
+	
+	/**
+	 * load(long, ReversiModel) sets a model to a stored game, reading the game back
+	 * from the spill file if it was moved there.
+	 * 
+	 * @param id is the id of the game.
+	 * @param model is the model set to the game's position, with the game's moves on
+	 * its undo stack.
+	 * @return 'W' or 'B' for the player to move, or '_' if there is no such game.
+	 * @throws IOException if the game cannot be read back, or another game had to be
+	 * spilled and could not be.
+	 */
+	public synchronized char load(long id, ReversiModel model) throws IOException {
+		int slot = find(id);
+		if (slot == NONE) {
+			slot = reload(id);
+			if (slot == NONE)
+				return '_';
+		} else {
+			touch(slot);
+		}
+		int base = slot * RECORD_LONGS;
+		int moves = (int) (records[base + 2] >>> 8) & 0xff;
+		model.copyFrom(initial);
+		char player = 'W';
+		for (int i = 0; i < moves; i++) {
+			if (model.getLegalMoves(player) == 0) // Pass
+				player = (player == 'W') ? 'B' : 'W';
+			model.makeMove(player, (int) (records[base + 3 + i / 8] >>> (8 * (i % 8))) & 0xff);
+			player = (player == 'W') ? 'B' : 'W';
+		}
+		if (model.getBoard('W') != records[base] || model.getBoard('B') != records[base + 1])
+			model.copyFrom(new ReversiModel(records[base], records[base + 1])); // Not played from the start
+		return (char) (records[base + 2] & 0xff);
+	}
+	
+	/**
+	 * save(long, ReversiModel, char) stores a game's position and moves, so that the
+	 * model can be let go of until the game is played again.
+	 * 
+	 * @param id is the id of the game.
+	 * @param model is the model holding the game (its undo stack holds the moves).
+	 * @param player is 'W' or 'B', the player to move.
+	 * @throws IllegalArgumentException if there is no such game.
+	 * @throws IOException if the game had been spilled and could not be read back, or
+	 * another game had to be spilled and could not be.
+	 */
+	public synchronized void save(long id, ReversiModel model, char player)
+			throws IllegalArgumentException, IOException {
+		int slot = find(id);
+		if (slot == NONE && (slot = reload(id)) == NONE)
+			throw new IllegalArgumentException("No game " + id);
+		touch(slot);
+		int base = slot * RECORD_LONGS;
+		int moves = model.getMoveCount();
+		records[base] = model.getBoard('W');
+		records[base + 1] = model.getBoard('B');
+		records[base + 2] = STORED | (moves << 8) | player;
+		for (int i = 0; i < MAX_MOVES / 8; i++)
+			records[base + 3 + i] = 0;
+		for (int i = 0; i < moves; i++)
+			records[base + 3 + i / 8] |= (long) model.getMoveAt(i) << (8 * (i % 8));
+	}
+	
+	/**
+	 * remove(long) forgets a game.
+	 * 
+	 * @param id is the id of the game.
+	 * @return true if the game was stored, false if there was no such game.
+	 * @throws IOException if the spill file cannot be written.
+	 */
+	public synchronized boolean remove(long id) throws IOException {
+		int slot = find(id);
+		boolean found = slot != NONE;
+		if (found)
+			release(slot);
+		else
+			found = readSpilled(id);
+		if (found) {
+			size--;
+			if (id * RECORD_BYTES < spill.size())
+				writeSpilled(id, null, 0); // So that a spilled copy is not reloaded
+		}
+		return found;
+	}
+	
+	/**
+	 * getSize() returns the number of games stored, in memory or spilled.
+	 * 
+	 * @return the number of games created and not removed.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+	
+	/**
+	 * getResident() returns the number of games held in memory.
+	 * 
+	 * @return the number of games that can be loaded without reading the spill file.
+	 */
+	public synchronized int getResident() {
+		return ids.length - freeCount;
+	}
+	
+	/**
+	 * getSpills() returns the number of times a game was moved out to the spill file.
+	 * 
+	 * @return the number of games written to the spill file to make room.
+	 */
+	public synchronized long getSpills() {
+		return spills;
+	}
+	
+	/**
+	 * getReloads() returns the number of times a game was read back from the spill
+	 * file.
+	 * 
+	 * @return the number of games loaded or saved while spilled.
+	 */
+	public synchronized long getReloads() {
+		return reloads;
+	}
+	
+	/**
+	 * close() closes the spill file. The games spilled to it are lost.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		spill.close();
+	}
+	
+	// Takes a free slot for a game (spilling the least recently used one if needed)
+	private int allocate(long id) throws IOException {
+		if (freeCount == 0) {
+			int victim = oldest;
+			writeSpilled(ids[victim], records, victim * RECORD_LONGS);
+			spills++;
+			release(victim);
+		}
+		int slot = free[--freeCount];
+		ids[slot] = id;
+		int bucket = bucketOf(id);
+		while (table[bucket] != NONE)
+			bucket = (bucket + 1) & (table.length - 1);
+		table[bucket] = slot;
+		linkNewest(slot);
+		return slot;
+	}
+	
+	// Frees a slot, removing it from the hash table and the least-recently-used list
+	private void release(int slot) {
+		int bucket = bucketOf(ids[slot]);
+		while (table[bucket] != slot)
+			bucket = (bucket + 1) & (table.length - 1);
+		table[bucket] = NONE;
+		// Move back any later entries of the same run that could not be placed where the freed one was
+		for (int next = (bucket + 1) & (table.length - 1); table[next] != NONE; next = (next + 1)
+				& (table.length - 1)) {
+			int home = bucketOf(ids[table[next]]);
+			if (((next - home) & (table.length - 1)) >= ((next - bucket) & (table.length - 1))) {
+				table[bucket] = table[next];
+				table[next] = NONE;
+				bucket = next;
+			}
+		}
+		unlink(slot);
+		ids[slot] = -1;
+		free[freeCount++] = slot;
+	}
+	
+	// Slot of a game in memory, or NONE
+	private int find(long id) {
+		for (int bucket = bucketOf(id); table[bucket] != NONE; bucket = (bucket + 1) & (table.length - 1))
+			if (ids[table[bucket]] == id)
+				return table[bucket];
+		return NONE;
+	}
+	
+	// Reads a spilled game back into memory, returns its slot, or NONE if there is no such game
+	private int reload(long id) throws IOException {
+		if (!readSpilled(id))
+			return NONE;
+		int slot = allocate(id); // May spill another game, through the same buffer
+		buffer.clear();
+		readSpilled(id);
+		for (int i = 0; i < RECORD_LONGS; i++)
+			records[slot * RECORD_LONGS + i] = buffer.getLong(i * 8);
+		reloads++;
+		return slot;
+	}
+	
+	// Reads a game's record from the spill file into the buffer, returns whether it is stored there
+	private boolean readSpilled(long id) throws IOException {
+		if (id < 0 || id >= nextId || (id + 1) * RECORD_BYTES > spill.size())
+			return false;
+		buffer.clear();
+		while (buffer.hasRemaining() && spill.read(buffer, id * RECORD_BYTES + buffer.position()) >= 0)
+			;
+		return !buffer.hasRemaining() && (buffer.getLong(16) & STORED) != 0;
+	}
+	
+	// Writes a record (or zeros, if from is null) to a game's place in the spill file
+	private void writeSpilled(long id, long[] from, int base) throws IOException {
+		buffer.clear();
+		for (int i = 0; i < RECORD_LONGS; i++)
+			buffer.putLong((from == null) ? 0 : from[base + i]);
+		buffer.flip();
+		while (buffer.hasRemaining())
+			spill.write(buffer, id * RECORD_BYTES + buffer.position());
+	}
+	
+	// Marks a slot as the most recently used
+	private void touch(int slot) {
+		if (slot != newest) {
+			unlink(slot);
+			linkNewest(slot);
+		}
+	}
+	
+	private void linkNewest(int slot) {
+		older[slot] = newest;
+		newer[slot] = NONE;
+		if (newest != NONE)
+			newer[newest] = slot;
+		newest = slot;
+		if (oldest == NONE)
+			oldest = slot;
+	}
+	
+	private void unlink(int slot) {
+		if (older[slot] != NONE)
+			newer[older[slot]] = newer[slot];
+		else
+			oldest = newer[slot];
+		if (newer[slot] != NONE)
+			older[newer[slot]] = older[slot];
+		else
+			newest = older[slot];
+	}
+	
+	// Home bucket of an id in the hash table
+	private int bucketOf(long id) {
+		long h = id * 0x9e3779b97f4a7c15L;
+		return (int) (h >>> 40) & (table.length - 1);
+	}
+	
+}
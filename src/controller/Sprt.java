@@ -0,0 +1,213 @@
+package controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sequential probability ratio test between two Elo differences, for deciding as
+ * early as possible whether one engine is stronger than another.
+ * 
+ * The test weighs the hypothesis that the first engine is elo0 points stronger than
+ * the second (usually 0: no better) against the hypothesis that it is elo1 points
+ * stronger, after every game, and settles on one of them as soon as the
+ * log-likelihood ratio leaves the bounds given by the allowed error rates alpha
+ * (accepting elo1 when elo0 is true) and beta (accepting elo0 when elo1 is true). A
+ * clear difference is settled after a few hundred games, where a fixed-length match
+ * would have to be long enough for the closest cases.
+ * 
+ * Games are counted in pairs played from the same opening with the sides swapped,
+ * as a Tournament plays them, and each pair is scored as a whole (0, 1/4, 1/2, 3/4
+ * or 1). A lopsided opening then only adds to the variance when the engines handle
+ * it differently, so fewer games are needed than if every game counted alone. The
+ * log-likelihood ratio uses the usual normal approximation,
+ * n (s1 - s0) (2m - s0 - s1) / 2v, where m and v are the mean and variance of the
+ * pair scores, n the number of pairs, and s0 and s1 the expected scores for elo0 and
+ * elo1. Half a pair is added to the count of every pair score when working out m
+ * and v, so that the variance is never 0: otherwise an engine winning every pair, or
+ * two identical engines drawing every pair, would never be decided.
+ * 
+ * Sprt is a GameListener, so it can be given to a tournament directly; games may be
+ * reported from several threads and in any order.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class Sprt implements GameListener {
+	
+	/**
+	 * Outcome of the test so far.
+	 */
+	public enum Decision {
+		/** Not enough games yet to decide. */
+		UNDECIDED,
+		/** The first engine is no more than elo0 points stronger. */
+		ACCEPT_ELO0,
+		/** The first engine is at least elo1 points stronger. */
+		ACCEPT_ELO1
+	}
+	
+	private static final double PSEUDO_COUNT = 0.5; // Added to every pair score for the ratio
+	
+	private final double elo0;
+	private final double elo1;
+	private final double lowerBound;
+	private final double upperBound;
+	private final long[] pairCounts = new long[5]; // By pair score in quarters
+	private final Map<Integer, Integer> halves = new HashMap<>(); // Pair number to first game's quarters
+	
+	// Constructor (reads in the two Elo differences and the error rates alpha and beta)
+	public Sprt(double elo0, double elo1, double alpha, double beta) {
+		if (!(elo0 < elo1))
+			throw new IllegalArgumentException("elo0 must be below elo1");
+		if (!(alpha > 0 && alpha < 0.5 && beta > 0 && beta < 0.5))
+			throw new IllegalArgumentException("Error rates must be between 0 and 0.5");
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+		lowerBound = Math.log(beta / (1 - alpha));
+		upperBound = Math.log((1 - beta) / alpha);
+	}
+	
+	/**
+	 * gameFinished(int, int) counts one game, scored from the first engine's side.
+	 * The game is held back until the other game of its pair is reported.
+	 */
+	@Override
+	public synchronized void gameFinished(int game, int difference) {
+		int quarters = (difference > 0) ? 2 : (difference == 0) ? 1 : 0; // Half the game's points
+		Integer other = halves.remove(game / 2);
+		if (other == null)
+			halves.put(game / 2, quarters);
+		else
+			pairCounts[other + quarters]++;
+	}
+	
+	/**
+	 * getPairs() returns the number of complete pairs of games counted.
+	 * 
+	 * @return the number of pairs both of whose games have been reported.
+	 */
+	public synchronized long getPairs() {
+		long pairs = 0;
+		for (long count : pairCounts)
+			pairs += count;
+		return pairs;
+	}
+	
+	/**
+	 * getPairCounts() returns how many pairs ended with each score.
+	 * 
+	 * @return the number of pairs scoring 0, 1/4, 1/2, 3/4 and 1 for the first engine
+	 * (a copy).
+	 */
+	public synchronized long[] getPairCounts() {
+		return pairCounts.clone();
+	}
+	
+	/**
+	 * getLlr() returns the log-likelihood ratio of elo1 against elo0 so far.
+	 * 
+	 * @return the log-likelihood ratio (positive values favour elo1).
+	 */
+	public synchronized double getLlr() {
+		long pairs = getPairs();
+		if (pairs == 0)
+			return 0;
+		double mean = 0;
+		for (int quarters = 0; quarters < pairCounts.length; quarters++)
+			mean += (pairCounts[quarters] + PSEUDO_COUNT) * quarters / 4.0;
+		mean /= pairs + PSEUDO_COUNT * pairCounts.length;
+		double variance = 0;
+		for (int quarters = 0; quarters < pairCounts.length; quarters++)
+			variance += (pairCounts[quarters] + PSEUDO_COUNT) * (quarters / 4.0 - mean) * (quarters / 4.0 - mean);
+		variance /= pairs + PSEUDO_COUNT * pairCounts.length;
+		double s0 = expectedScore(elo0);
+		double s1 = expectedScore(elo1);
+		return pairs * (s1 - s0) * (2 * mean - s0 - s1) / (2 * variance);
+	}
+	
+	/**
+	 * getDecision() returns whether the test has settled on either hypothesis.
+	 * 
+	 * @return the decision so far.
+	 */
+	public synchronized Decision getDecision() {
+		double llr = getLlr();
+		if (llr >= upperBound)
+			return Decision.ACCEPT_ELO1;
+		if (llr <= lowerBound)
+			return Decision.ACCEPT_ELO0;
+		return Decision.UNDECIDED;
+	}
+	
+	/**
+	 * getLowerBound() returns the log-likelihood ratio at or below which elo0 is
+	 * accepted.
+	 * 
+	 * @return log(beta / (1 - alpha)).
+	 */
+	public double getLowerBound() {
+		return lowerBound;
+	}
+	
+	/**
+	 * getUpperBound() returns the log-likelihood ratio at or above which elo1 is
+	 * accepted.
+	 * 
+	 * @return log((1 - beta) / alpha).
+	 */
+	public double getUpperBound() {
+		return upperBound;
+	}
+	
+	/**
+	 * getElo() returns the estimated Elo difference between the engines, from the
+	 * games counted so far.
+	 * 
+	 * @return the first engine's estimated advantage in Elo points (infinite if it
+	 * won or lost every pair).
+	 */
+	public synchronized double getElo() {
+		return eloOf(getMean());
+	}
+	
+	/**
+	 * getEloMargin() returns the half-width of the 95% confidence interval of the
+	 * estimated Elo difference.
+	 * 
+	 * @return the margin in Elo points, or infinity before two pairs are counted or
+	 * while the estimate itself is infinite.
+	 */
+	public synchronized double getEloMargin() {
+		long pairs = getPairs();
+		double mean = getMean();
+		if (pairs < 2 || mean <= 0 || mean >= 1)
+			return Double.POSITIVE_INFINITY;
+		double variance = 0;
+		for (int quarters = 0; quarters < pairCounts.length; quarters++)
+			variance += pairCounts[quarters] * (quarters / 4.0 - mean) * (quarters / 4.0 - mean);
+		double error = 1.96 * Math.sqrt(variance / (pairs - 1) / pairs);
+		return (eloOf(Math.min(1, mean + error)) - eloOf(Math.max(0, mean - error))) / 2;
+	}
+	
+	// Mean pair score of the first engine, 0.5 before any pair is counted
+	private double getMean() {
+		long pairs = getPairs();
+		if (pairs == 0)
+			return 0.5;
+		double total = 0;
+		for (int quarters = 0; quarters < pairCounts.length; quarters++)
+			total += pairCounts[quarters] * quarters / 4.0;
+		return total / pairs;
+	}
+	
+	// Expected score of an engine the given number of Elo points stronger
+	private static double expectedScore(double elo) {
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+	
+	// Elo difference giving the expected score, the inverse of expectedScore
+	private static double eloOf(double score) {
+		return -400 * Math.log10(1 / score - 1);
+	}
+	
+}
@@ -0,0 +1,88 @@
+package controller;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the thread pools used by the engines and tools.
+ * 
+ * Every pool made here has daemon threads with a recognizable name, so that a pool
+ * left running never keeps the program alive, and shows up clearly in a thread dump.
+ * Tasks that mostly wait (on a socket, say) rather than compute can instead run on a
+ * virtual thread each, where the Java runtime has them (Java 21 and later); since
+ * this code also runs on older runtimes, virtual threads are looked up by
+ * reflection, and a pool of platform threads is used when they are not found.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public final class ThreadPools {
+	
+	// Utility class, not to be instantiated
+	private ThreadPools() {
+	}
+	
+	/**
+	 * newFixedPool(int, String) returns a pool with a fixed number of daemon threads.
+	 * 
+	 * @param threads is the number of threads.
+	 * @param name is the name given to every thread of the pool.
+	 * @return the new pool.
+	 */
+	public static ExecutorService newFixedPool(int threads, String name) {
+		return Executors.newFixedThreadPool(threads, task -> {
+			Thread thread = new Thread(task, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * newPerTaskPool(String) returns a pool that runs every task on a thread of its
+	 * own: a new virtual thread if the Java runtime has them, or otherwise a daemon
+	 * platform thread, reused once its task is done.
+	 * 
+	 * @param name is the name given to platform threads.
+	 * @return the new pool.
+	 */
+	public static ExecutorService newPerTaskPool(String name) {
+		ExecutorService virtual = newVirtualPool();
+		if (virtual != null)
+			return virtual;
+		return Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread(task, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * newVirtualPool() returns a pool running every task on a new virtual thread.
+	 * 
+	 * @return the new pool, or null if the Java runtime has no virtual threads.
+	 */
+	public static ExecutorService newVirtualPool() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null; // Not available on this runtime
+		}
+	}
+	
+	/**
+	 * hasVirtualThreads() returns whether the Java runtime has virtual threads.
+	 * 
+	 * @return true on Java 21 and later.
+	 */
+	public static boolean hasVirtualThreads() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+}
@@ -0,0 +1,208 @@
+package controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import model.ReversiModel;
+
+/**
+ * Plays many games between two engines as fast as possible, without any console
+ * input or output, and collects the results.
+ * 
+ * The games are shared out among worker threads, each of which creates its own pair
+ * of engines (engines are not thread-safe) and its own model, then takes game
+ * numbers from a shared counter until none are left, so the workers stay busy until
+ * the very end. Nothing is shared between workers while they play: each keeps its
+ * own results, which are added together once every game is done.
+ * 
+ * Each game starts with a few random moves, so that deterministic engines do not
+ * play the same game over and over. Games are played in pairs from the same random
+ * opening, the first engine playing the human player's side ('W', which moves
+ * first) in one game of the pair and the computer's side in the other, so that
+ * neither engine benefits from easier openings or colours.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class Tournament {
+	
+	private final Supplier<ReversiEngine> first;
+	private final Supplier<ReversiEngine> second;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean virtualThreads;
+	private int randomMoves = 4;
+	private long seed = 335;
+	private GameListener listener;
+	private GameArchiveWriter archive;
+	private volatile boolean stopRequested;
+	
+	// Constructor (reads in the suppliers of the two engines playing each other)
+	public Tournament(Supplier<ReversiEngine> first, Supplier<ReversiEngine> second) {
+		this.first = first;
+		this.second = second;
+	}
+	
+	/**
+	 * setThreads(int) sets the number of games played at the same time.
+	 * 
+	 * @param threads is the number of worker threads (every processor by default).
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed");
+		this.threads = threads;
+	}
+	
+	/**
+	 * setVirtualThreads(boolean) sets whether the workers run on virtual threads,
+	 * where the Java runtime has them, rather than on a pool of platform threads.
+	 * 
+	 * @param virtualThreads is true to use virtual threads when available.
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+	
+	/**
+	 * setRandomMoves(int) sets the number of random moves at the start of each game.
+	 * 
+	 * @param randomMoves is the length of the random openings (4 by default).
+	 */
+	public void setRandomMoves(int randomMoves) {
+		if (randomMoves < 0 || randomMoves > 60)
+			throw new IllegalArgumentException("Random moves must be from 0 to 60");
+		this.randomMoves = randomMoves;
+	}
+	
+	/**
+	 * setSeed(long) sets the seed the random openings are derived from, so that a
+	 * run can be repeated exactly.
+	 * 
+	 * @param seed is the seed of the random openings.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * setListener(GameListener) sets the listener told about each game as soon as it
+	 * is finished.
+	 * 
+	 * @param listener is the listener, or null for none.
+	 */
+	public void setListener(GameListener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * setArchive(GameArchiveWriter) sets the archive every game is added to, with the
+	 * first engine as player 1 and the second as player 2.
+	 * 
+	 * @param archive is the archive, or null to keep no record of games.
+	 */
+	public void setArchive(GameArchiveWriter archive) {
+		this.archive = archive;
+	}
+	
+	/**
+	 * stop() asks a running tournament to finish the games in progress and return
+	 * without starting any more. It may be called from any thread, including from a
+	 * listener.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+	
+	/**
+	 * run(int) plays the given number of games and returns their results.
+	 * 
+	 * @param games is the number of games to play (an odd number leaves the last
+	 * opening without its colour-swapped pair).
+	 * @return the results of every game played.
+	 */
+	public TournamentResult run(int games) {
+		stopRequested = false;
+		AtomicInteger next = new AtomicInteger();
+		ExecutorService pool = newExecutor();
+		long start = System.nanoTime();
+		try {
+			List<Future<TournamentResult>> workers = new ArrayList<>();
+			for (int t = 0; t < threads; t++)
+				workers.add(pool.submit(() -> playGames(next, games)));
+			TournamentResult total = new TournamentResult();
+			for (Future<TournamentResult> worker : workers)
+				total.add(worker.get());
+			total.setElapsedNanos(System.nanoTime() - start);
+			return total;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while playing", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Game worker failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	// Plays games until every game number is taken, returns this worker's results
+	private TournamentResult playGames(AtomicInteger next, int games) throws IOException {
+		ReversiEngine firstEngine = first.get();
+		ReversiEngine secondEngine = second.get();
+		ReversiModel start = new ReversiModel();
+		ReversiModel model = new ReversiModel();
+		TournamentResult result = new TournamentResult();
+		for (int game = next.getAndIncrement(); game < games && !stopRequested;
+				game = next.getAndIncrement()) {
+			model.copyFrom(start);
+			char player = playOpening(model, new Random(seed + game / 2));
+			char firstSide = (game % 2 == 0) ? 'W' : 'B';
+			while (!model.isGameOver()) {
+				if (model.getLegalMoves(player) != 0) {
+					boolean firstToMove = player == firstSide;
+					long begin = System.nanoTime();
+					int move = (firstToMove ? firstEngine : secondEngine).chooseMove(model, player);
+					result.recordMove(firstToMove, System.nanoTime() - begin);
+					model.makeMove(player, move);
+				}
+				player = (player == 'W') ? 'B' : 'W';
+			}
+			int firstDiscs = (firstSide == 'W') ? model.getWScore() : model.getBScore();
+			int secondDiscs = (firstSide == 'W') ? model.getBScore() : model.getWScore();
+			result.recordGame(firstDiscs - secondDiscs);
+			if (archive != null)
+				archive.append(model, (firstSide == 'W') ? 1 : 2, (firstSide == 'W') ? 2 : 1);
+			if (listener != null)
+				listener.gameFinished(game, firstDiscs - secondDiscs);
+		}
+		return result;
+	}
+	
+	// Plays the random opening moves, returns the player to move afterwards
+	private char playOpening(ReversiModel model, Random random) {
+		char player = 'W';
+		for (int i = 0; i < randomMoves && !model.isGameOver(); i++) {
+			long legal = model.getLegalMoves(player);
+			if (legal != 0) {
+				for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--)
+					legal &= legal - 1;
+				model.makeMove(player, Long.numberOfTrailingZeros(legal));
+			}
+			player = (player == 'W') ? 'B' : 'W';
+		}
+		return player;
+	}
+	
+	// Virtual threads if asked for and available (Java 21 and later), a fixed pool otherwise
+	private ExecutorService newExecutor() {
+		ExecutorService pool = virtualThreads ? ThreadPools.newVirtualPool() : null;
+		return (pool != null) ? pool : ThreadPools.newFixedPool(threads, "reversi-tournament");
+	}
+	
+}
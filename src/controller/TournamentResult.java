@@ -0,0 +1,149 @@
+package controller;
+
+/**
+ * Results of a Tournament: the games won, drawn and lost by the first engine, the
+ * total disc difference, and how long each engine took over its moves.
+ * 
+ * A result is filled in by one thread only; each worker of a tournament fills in its
+ * own, and they are added together at the end.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class TournamentResult {
+	
+	private int wins;
+	private int draws;
+	private int losses;
+	private long discDifference;
+	private long elapsedNanos;
+	private final LatencyHistogram firstLatency = new LatencyHistogram();
+	private final LatencyHistogram secondLatency = new LatencyHistogram();
+	
+	// Records the time taken over one move by the first or second engine
+	void recordMove(boolean first, long nanos) {
+		(first ? firstLatency : secondLatency).record(nanos);
+	}
+	
+	// Records a finished game, from the first engine's discs minus the second's
+	void recordGame(int difference) {
+		if (difference > 0)
+			wins++;
+		else if (difference < 0)
+			losses++;
+		else
+			draws++;
+		discDifference += difference;
+	}
+	
+	// Adds the games and moves of another result to this one
+	void add(TournamentResult other) {
+		wins += other.wins;
+		draws += other.draws;
+		losses += other.losses;
+		discDifference += other.discDifference;
+		firstLatency.add(other.firstLatency);
+		secondLatency.add(other.secondLatency);
+	}
+	
+	// Sets the time the whole tournament took
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	/**
+	 * getGames() returns the number of games played.
+	 * 
+	 * @return the number of finished games.
+	 */
+	public int getGames() {
+		return wins + draws + losses;
+	}
+	
+	/**
+	 * getWins() returns the number of games won by the first engine.
+	 * 
+	 * @return the first engine's wins (the second engine's losses).
+	 */
+	public int getWins() {
+		return wins;
+	}
+	
+	/**
+	 * getDraws() returns the number of drawn games.
+	 * 
+	 * @return the number of games ending with as many discs on each side.
+	 */
+	public int getDraws() {
+		return draws;
+	}
+	
+	/**
+	 * getLosses() returns the number of games lost by the first engine.
+	 * 
+	 * @return the first engine's losses (the second engine's wins).
+	 */
+	public int getLosses() {
+		return losses;
+	}
+	
+	/**
+	 * getScore() returns the first engine's share of the points, counting a win as
+	 * one point and a draw as half a point.
+	 * 
+	 * @return the score from 0 to 1, or 0.5 if no games were played.
+	 */
+	public double getScore() {
+		int games = getGames();
+		return games == 0 ? 0.5 : (wins + 0.5 * draws) / games;
+	}
+	
+	/**
+	 * getDiscDifference() returns the first engine's discs minus the second engine's
+	 * discs, summed over every game.
+	 * 
+	 * @return the total disc difference.
+	 */
+	public long getDiscDifference() {
+		return discDifference;
+	}
+	
+	/**
+	 * getMoves() returns the number of moves chosen by the engines (not counting the
+	 * random openings or passes).
+	 * 
+	 * @return the number of moves played by both engines.
+	 */
+	public long getMoves() {
+		return firstLatency.getCount() + secondLatency.getCount();
+	}
+	
+	/**
+	 * getElapsedNanos() returns how long the tournament took.
+	 * 
+	 * @return the wall-clock time of the whole run, in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+	
+	/**
+	 * getGamesPerSecond() returns the rate at which games were played.
+	 * 
+	 * @return the number of games per second of wall-clock time.
+	 */
+	public double getGamesPerSecond() {
+		return getGames() / Math.max(elapsedNanos / 1e9, 1e-9);
+	}
+	
+	/**
+	 * getLatency(boolean) returns the times taken by one engine over its moves.
+	 * 
+	 * @param first is true for the first engine, false for the second.
+	 * @return the histogram of the engine's move times.
+	 */
+	public LatencyHistogram getLatency(boolean first) {
+		return first ? firstLatency : secondLatency;
+	}
+	
+}
@@ -0,0 +1,226 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-capacity table of previously searched positions, keyed by Zobrist hash.
+ * 
+ * The same position is often reached through different orders of moves, so a search
+ * stores what it learned about each position (its score, whether that score is exact
+ * or only a bound, the depth it was searched to, and the best move) and looks it up
+ * again before searching the position another time. Entries are kept in two flat
+ * arrays, one for the hashes and one for the packed entry data, so a lookup never
+ * allocates.
+ * 
+ * The table is split into buckets of two entries. The first entry of a bucket keeps
+ * the deepest search stored in it (since it saved the most work), and the second
+ * entry is always replaced, so that recent positions are kept as well. The table
+ * also counts its lookups, hits, and collisions (lookups that found the bucket
+ * holding other positions), so that it can be sized for a given use.
+ * 
+ * One table can be shared by searches running on several threads without any locks.
+ * Each stored hash is the exclusive or of the position's hash with its entry, so an
+ * entry that was only partly overwritten by another thread no longer matches its
+ * hash, and is simply treated as missing. The statistics use LongAdder counters, so
+ * that counting does not make the threads contend with each other.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class TranspositionTable {
+	
+	// Kinds of stored scores (never 0, so that an empty entry is all zeros)
+	public static final int EXACT = 1;
+	public static final int LOWER_BOUND = 2;
+	public static final int UPPER_BOUND = 3;
+	
+	private static final int ENTRY_BYTES = 16;
+	
+	private final long[] hashes;
+	private final long[] entries;
+	private final int bucketMask;
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder collisions = new LongAdder();
+	private final LongAdder filled = new LongAdder();
+	
+	// Constructor (reads in the memory the table may use, in megabytes)
+	public TranspositionTable(int megabytes) {
+		if (megabytes < 1)
+			throw new IllegalArgumentException("Table size must be at least 1 megabyte");
+		long maxBuckets = ((long) megabytes << 20) / (2 * ENTRY_BYTES);
+		int buckets = (int) Long.highestOneBit(Math.min(maxBuckets, 1L << 29));
+		hashes = new long[2 * buckets];
+		entries = new long[2 * buckets];
+		bucketMask = buckets - 1;
+	}
+	
+	/**
+	 * probe(long) looks up the entry stored for the position with the given hash.
+	 * 
+	 * The returned entry is a packed long, which can be read with the static methods
+	 * scoreOf(long), moveOf(long), depthOf(long), and typeOf(long).
+	 * 
+	 * @param hash is the hash of the position (including the player to move).
+	 * @return the packed entry for the position, or 0 if none is stored.
+	 */
+	public long probe(long hash) {
+		probes.increment();
+		int slot = ((int) hash & bucketMask) << 1;
+		long first = entries[slot];
+		if (first != 0 && (hashes[slot] ^ first) == hash) {
+			hits.increment();
+			return first;
+		}
+		long second = entries[slot + 1];
+		if (second != 0 && (hashes[slot + 1] ^ second) == hash) {
+			hits.increment();
+			return second;
+		}
+		if (first != 0 || second != 0)
+			collisions.increment();
+		return 0;
+	}
+	
+	/**
+	 * store(long, int, int, int, int) stores what a search learned about a position.
+	 * 
+	 * The entry goes into the first entry of the bucket if it already holds this
+	 * position or a search that was no deeper, and into the second entry otherwise.
+	 * 
+	 * @param hash is the hash of the position (including the player to move).
+	 * @param depth is the depth the position was searched to (from 0 to 255).
+	 * @param type is EXACT, LOWER_BOUND, or UPPER_BOUND, describing the score.
+	 * @param score is the score found by the search.
+	 * @param move is the square index of the best move found, or -1 if none.
+	 */
+	public void store(long hash, int depth, int type, int score, int move) {
+		int slot = ((int) hash & bucketMask) << 1;
+		long old = entries[slot];
+		if (old != 0 && (hashes[slot] ^ old) != hash && depthOf(old) > depth)
+			slot++; // Keep the deeper entry, use the always-replace one instead
+		if (entries[slot] == 0)
+			filled.increment(); // Approximate if two threads fill the same entry at once
+		long entry = pack(depth, type, score, move);
+		hashes[slot] = hash ^ entry;
+		entries[slot] = entry;
+	}
+	
+	/**
+	 * clear() removes every entry from the table and resets its statistics.
+	 */
+	public void clear() {
+		Arrays.fill(hashes, 0);
+		Arrays.fill(entries, 0);
+		filled.reset();
+		resetStatistics();
+	}
+	
+	/**
+	 * resetStatistics() resets the counts of lookups, hits, and collisions, without
+	 * removing any entries.
+	 */
+	public void resetStatistics() {
+		probes.reset();
+		hits.reset();
+		collisions.reset();
+	}
+	
+	/**
+	 * getCapacity() returns the number of entries the table can hold.
+	 * 
+	 * @return the total number of entries, two per bucket.
+	 */
+	public int getCapacity() {
+		return entries.length;
+	}
+	
+	/**
+	 * getProbes() returns the number of lookups since the statistics were reset.
+	 * 
+	 * @return the number of calls to probe(long).
+	 */
+	public long getProbes() {
+		return probes.sum();
+	}
+	
+	/**
+	 * getHitRate() returns the fraction of lookups that found their position.
+	 * 
+	 * @return hits divided by lookups, or 0 if there were no lookups.
+	 */
+	public double getHitRate() {
+		long total = probes.sum();
+		return total == 0 ? 0 : (double) hits.sum() / total;
+	}
+	
+	/**
+	 * getCollisionRate() returns the fraction of lookups that missed because their
+	 * bucket was holding other positions.
+	 * 
+	 * A high collision rate means the table is too small for the searches using it.
+	 * 
+	 * @return collisions divided by lookups, or 0 if there were no lookups.
+	 */
+	public double getCollisionRate() {
+		long total = probes.sum();
+		return total == 0 ? 0 : (double) collisions.sum() / total;
+	}
+	
+	/**
+	 * getFillLevel() returns the fraction of entries in use.
+	 * 
+	 * @return the number of entries stored divided by the capacity.
+	 */
+	public double getFillLevel() {
+		return Math.min(1.0, (double) filled.sum() / entries.length);
+	}
+	
+	/**
+	 * scoreOf(long) reads the score of a packed entry returned by probe(long).
+	 * 
+	 * @param entry is a packed entry.
+	 * @return the stored score.
+	 */
+	public static int scoreOf(long entry) {
+		return (int) entry;
+	}
+	
+	/**
+	 * moveOf(long) reads the best move of a packed entry returned by probe(long).
+	 * 
+	 * @param entry is a packed entry.
+	 * @return the square index of the stored best move, or -1 if there is none.
+	 */
+	public static int moveOf(long entry) {
+		return (int) ((entry >>> 32) & 0xff) - 1;
+	}
+	
+	/**
+	 * depthOf(long) reads the search depth of a packed entry returned by probe(long).
+	 * 
+	 * @param entry is a packed entry.
+	 * @return the depth the stored position was searched to.
+	 */
+	public static int depthOf(long entry) {
+		return (int) ((entry >>> 40) & 0xff);
+	}
+	
+	/**
+	 * typeOf(long) reads the kind of score of a packed entry returned by probe(long).
+	 * 
+	 * @param entry is a packed entry.
+	 * @return EXACT, LOWER_BOUND, or UPPER_BOUND.
+	 */
+	public static int typeOf(long entry) {
+		return (int) ((entry >>> 48) & 0x3);
+	}
+	
+	// Packs an entry into a long: score, move + 1, depth, and type from the low bits up
+	private static long pack(int depth, int type, int score, int move) {
+		return (score & 0xffffffffL) | ((long) (move + 1) << 32) | ((long) depth << 40)
+				| ((long) type << 48);
+	}
+	
+}
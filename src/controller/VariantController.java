@@ -0,0 +1,101 @@
+package controller;
+
+import model.SizedReversiModel;
+
+/**
+ * Controller for Reversi on a board of another size than 8x8 (see
+ * SizedReversiModel), for the 6x6, 10x10, 16x16 and other variants.
+ * 
+ * The engines are built around the 8x8 board, so the computer plays greedily here,
+ * as GreedyEngine does on the standard board: it takes the legal move capturing the
+ * most tokens, the first in row-major order among equals. Coordinates go past 'h'
+ * and row 9 on larger boards (see Coordinates).
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class VariantController implements GameController {
+	
+	private final SizedReversiModel model;
+	
+	// Constructor (reads in model object)
+	public VariantController(SizedReversiModel model) {
+		this.model = model;
+	}
+	
+	/**
+	 * humanTurn(int, int) places the human player's token at the given position,
+	 * capturing as the rules say.
+	 * 
+	 * @throws IllegalArgumentException if the position is off the board or not a
+	 * legal move for the human player.
+	 */
+	@Override
+	public void humanTurn(int row, int col) throws IllegalArgumentException {
+		if (!model.isLegal('W', row, col))
+			throw new IllegalArgumentException();
+		model.makeMove('W', model.square(row, col));
+	}
+	
+	/**
+	 * computerTurn() makes the computer's greedy move, if it has one.
+	 */
+	@Override
+	public String computerTurn() {
+		int size = model.getSize();
+		int best = -1;
+		int bestIncrease = 1;
+		for (int square = model.nextLegalMove('B', 0); square >= 0; square = model.nextLegalMove('B', square + 1)) {
+			int increase = model.hypothetical('B', square / size, square % size);
+			if (increase > bestIncrease) {
+				bestIncrease = increase;
+				best = square;
+			}
+		}
+		if (best < 0)
+			return null;
+		model.makeMove('B', best);
+		return Coordinates.format(best / size, best % size);
+	}
+	
+	@Override
+	public boolean isGameOver() {
+		return model.isGameOver();
+	}
+	
+	@Override
+	public boolean humanCanMove() {
+		return model.getMobility('W') > 0;
+	}
+	
+	@Override
+	public char[][] reconstructBoard() {
+		int size = model.getSize();
+		char[][] reconstructed = new char[size][size];
+		for (int i = 0; i < size; i++)
+			for (int j = 0; j < size; j++)
+				reconstructed[i][j] = model.getElementAt(i, j);
+		return reconstructed;
+	}
+	
+	@Override
+	public int getWScore() {
+		return model.getWScore();
+	}
+	
+	@Override
+	public int getBScore() {
+		return model.getBScore();
+	}
+	
+	@Override
+	public char getWinner() {
+		if (model.getWScore() > model.getBScore())
+			return 'W';
+		else if (model.getWScore() == model.getBScore())
+			return '_'; // Signifies a tie
+		else
+			return 'B';
+	}
+	
+}
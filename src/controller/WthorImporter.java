@@ -0,0 +1,285 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import model.Bitboards;
+import model.ReversiModel;
+
+/**
+ * Replays the games of a WTHOR game database (.wtb file) through ReversiModel,
+ * handing every position to a PositionSink.
+ * 
+ * A WTHOR file is a 16-byte header, holding the number of games as a little-endian
+ * int at offset 4 and the board size at offset 12 (0 or 8 for 8x8 games), followed
+ * by one 68-byte record per game: three 2-byte ids (tournament, black player, white
+ * player), the number of black discs at the end, the theoretical score, and the 60
+ * moves, one byte each, written as 10 * row + column (both from 1), with 0 after the
+ * last move. Passes are not written; a player without a legal move simply passes.
+ * 
+ * In WTHOR files Black moves first, from the standard initial position, which is
+ * this game's initial position reflected left to right. Every move is reflected the
+ * same way, and Black's moves are played as 'W', which moves first here, so the
+ * games are replayed exactly, only mirrored.
+ * 
+ * The file is never read into memory: the records are split into chunks which are
+ * memory-mapped one at a time and decoded straight from the mapped pages, with one
+ * model per thread reset for each game, so nothing is allocated per game. Chunks are
+ * shared out among the threads as they ask for them, so every processor can be kept
+ * busy. A game with an illegal move is found before any of its positions are handed
+ * on, and is skipped.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class WthorImporter {
+	
+	static final int HEADER_BYTES = 16;
+	static final int RECORD_BYTES = 68;
+	static final int MOVES_OFFSET = 8; // Of the first move in a record
+	private static final int MAX_MOVES = 60;
+	private static final int MIRROR = 2; // Symmetry taking WTHOR's board to this game's
+	private static final int MAX_CHUNK_GAMES = 1 << 16; // 4.25 megabytes per mapping
+	
+	private final Path file;
+	private final int games;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long imported;
+	private long skipped;
+	private long positions;
+	private long elapsedNanos;
+	
+	// Constructor (reads in the path of the WTHOR file, of which only the header is read)
+	public WthorImporter(Path file) throws IOException {
+		this.file = file;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) >= 0)
+				;
+			if (header.hasRemaining())
+				throw new IOException("Not a WTHOR game file: " + file);
+			int boardSize = header.get(12);
+			if (boardSize != 0 && boardSize != 8)
+				throw new IOException("Not an 8x8 WTHOR game file: " + file);
+			games = header.getInt(4);
+			if (games < 0 || HEADER_BYTES + (long) games * RECORD_BYTES > channel.size())
+				throw new IOException("Truncated WTHOR game file: " + file);
+		}
+	}
+	
+	/**
+	 * setThreads(int) sets the number of threads replaying games.
+	 * 
+	 * @param threads is the number of threads (every processor by default).
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed");
+		this.threads = threads;
+	}
+	
+	/**
+	 * getGames() returns the number of games in the file.
+	 * 
+	 * @return the number of game records given by the file's header.
+	 */
+	public int getGames() {
+		return games;
+	}
+	
+	/**
+	 * importGames(Supplier) replays every game of the file, handing its positions to
+	 * the sinks.
+	 * 
+	 * @param sinks supplies one sink for each thread, which receives the positions of
+	 * the games replayed on that thread.
+	 * @throws IOException if the file cannot be mapped.
+	 */
+	public void importGames(Supplier<? extends PositionSink> sinks) throws IOException {
+		int chunkGames = (int) Math.max(1, Math.min(MAX_CHUNK_GAMES, (games + 4L * threads - 1) / (4L * threads)));
+		int chunks = (games + chunkGames - 1) / chunkGames;
+		AtomicInteger next = new AtomicInteger();
+		long start = System.nanoTime();
+		ExecutorService pool = ThreadPools.newFixedPool(threads, "reversi-wthor");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			List<Future<long[]>> workers = new ArrayList<>(threads);
+			for (int t = 0; t < threads; t++) {
+				workers.add(pool.submit(() -> {
+					PositionSink sink = sinks.get();
+					ReversiModel initial = new ReversiModel();
+					ReversiModel model = new ReversiModel();
+					long[] counts = new long[3]; // Imported games, skipped games, positions
+					for (int chunk = next.getAndIncrement(); chunk < chunks; chunk = next.getAndIncrement()) {
+						int first = chunk * chunkGames;
+						int count = Math.min(chunkGames, games - first);
+						MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY,
+								HEADER_BYTES + (long) first * RECORD_BYTES, (long) count * RECORD_BYTES);
+						for (int offset = 0; offset < count * RECORD_BYTES; offset += RECORD_BYTES) {
+							if (isLegalGame(records, offset)) {
+								counts[0]++;
+								counts[2] += replay(records, offset, initial, model, sink);
+							} else {
+								counts[1]++;
+							}
+						}
+					}
+					return counts;
+				}));
+			}
+			long[] totals = new long[3];
+			for (Future<long[]> worker : workers) {
+				long[] counts = worker.get();
+				for (int i = 0; i < totals.length; i++)
+					totals[i] += counts[i];
+			}
+			imported = totals[0];
+			skipped = totals[1];
+			positions = totals[2];
+			elapsedNanos = System.nanoTime() - start;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while importing", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException("Import thread failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * getImported() returns the number of games replayed by the last import.
+	 * 
+	 * @return the number of games whose positions were handed to the sinks.
+	 */
+	public long getImported() {
+		return imported;
+	}
+	
+	/**
+	 * getSkipped() returns the number of games the last import skipped.
+	 * 
+	 * @return the number of games with an illegal or unreadable move.
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+	
+	/**
+	 * getPositions() returns the number of positions handed on by the last import.
+	 * 
+	 * @return the number of calls made to the sinks.
+	 */
+	public long getPositions() {
+		return positions;
+	}
+	
+	/**
+	 * getGamesPerSecond() returns the rate at which the last import read games.
+	 * 
+	 * @return the number of games (replayed or skipped) per second.
+	 */
+	public double getGamesPerSecond() {
+		return (imported + skipped) / Math.max(elapsedNanos / 1e9, 1e-9);
+	}
+	
+	/**
+	 * getElapsedNanos() returns how long the last import took.
+	 * 
+	 * @return the wall-clock time of the import, in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+	
+	/**
+	 * toSquare(int) converts a move as written in a WTHOR record to a square index on
+	 * this game's board.
+	 * 
+	 * @param move is the move byte, 10 * row + column with both from 1 to 8.
+	 * @return the square index, or -1 if the byte is not a square.
+	 */
+	public static int toSquare(int move) {
+		int row = move / 10 - 1;
+		int col = move % 10 - 1;
+		if (row < 0 || row > 7 || col < 0 || col > 7)
+			return -1;
+		return Bitboards.symmetricSquare(Bitboards.square(row, col), MIRROR);
+	}
+	
+	/**
+	 * fromSquare(int) converts a square index on this game's board to a move as
+	 * written in a WTHOR record, undoing toSquare(int).
+	 * 
+	 * @param square is the square index, from 0 to 63.
+	 * @return the move byte, 10 * row + column with both from 1 to 8.
+	 */
+	public static int fromSquare(int square) {
+		int mirrored = Bitboards.symmetricSquare(square, MIRROR);
+		return 10 * ((mirrored >> 3) + 1) + (mirrored & 7) + 1;
+	}
+	
+	// Checks every move of a record on bare bitboards, before any position is handed on
+	private static boolean isLegalGame(ByteBuffer records, int offset) {
+		long own = (1L << Bitboards.square(3, 3)) | (1L << Bitboards.square(4, 4));
+		long opp = (1L << Bitboards.square(3, 4)) | (1L << Bitboards.square(4, 3));
+		for (int i = 0; i < MAX_MOVES; i++) {
+			int move = records.get(offset + MOVES_OFFSET + i) & 0xff;
+			if (move == 0)
+				return true;
+			int square = toSquare(move);
+			if (square < 0)
+				return false;
+			long legal = Bitboards.legalMoves(own, opp);
+			if (legal == 0) { // Pass
+				long swap = own;
+				own = opp;
+				opp = swap;
+				legal = Bitboards.legalMoves(own, opp);
+			}
+			long bit = 1L << square;
+			if ((legal & bit) == 0)
+				return false;
+			long flipped = Bitboards.flips(own, opp, bit);
+			long mover = own | flipped | bit;
+			own = opp ^ flipped;
+			opp = mover;
+		}
+		return true;
+	}
+	
+	// Replays a legal record through the model, returns the number of positions handed on
+	private static int replay(ByteBuffer records, int offset, ReversiModel initial, ReversiModel model,
+			PositionSink sink) {
+		model.copyFrom(initial);
+		int result = 2 * (records.get(offset + 6) & 0xff) - 64; // First player's discs minus the other's
+		char player = 'W';
+		int moves = 0;
+		for (; moves < MAX_MOVES; moves++) {
+			int move = records.get(offset + MOVES_OFFSET + moves) & 0xff;
+			if (move == 0)
+				break;
+			if (model.getLegalMoves(player) == 0)
+				player = (player == 'W') ? 'B' : 'W';
+			int square = toSquare(move);
+			sink.position(model, player, square, (player == 'W') ? result : -result);
+			model.makeMove(player, square);
+			player = (player == 'W') ? 'B' : 'W';
+		}
+		return moves;
+	}
+	
+}
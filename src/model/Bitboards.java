@@ -0,0 +1,180 @@
+package model;
+
+/**
+ * Static helper methods for working with bitboards, which are 64-bit masks where
+ * bit (row * 8 + col) represents the position at the given row and column of the
+ * game board.
+ * 
+ * A pair of bitboards (one for each player's tokens) describes an entire game board.
+ * Captures are computed with shifts and masks, one direction at a time: starting
+ * from the new token, the run of opposing tokens in a direction is collected, and
+ * it is only kept if it is closed off by one of the moving player's own tokens.
+ * Horizontal and diagonal directions are masked with the inner six columns so that
+ * runs never wrap from one edge of the board to the other.
+ * 
+ * The board also has eight symmetries (the rotations and reflections of a square),
+ * numbered from 0 (the identity) to 7. Symmetry s first reflects the board in its
+ * main diagonal if bit 2 of s is set, then turns it upside down if bit 0 is set, then
+ * reflects it left to right if bit 1 is set. Positions that are symmetries of each
+ * other are equally good for the same player, which opening books rely on.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public final class Bitboards {
+	
+	// Every column except the leftmost and rightmost (used to stop wrapping)
+	private static final long INNER_COLUMNS = 0x7e7e7e7e7e7e7e7eL;
+	
+	public static final int SYMMETRIES = 8;
+	
+	// Utility class, not to be instantiated
+	private Bitboards() {
+	}
+	
+	/**
+	 * square(int, int) converts row and column indices into a square index.
+	 * 
+	 * @param row is the row index of the position, from 0 (top) to 7 (bottom).
+	 * @param col is the column index of the position, from 0 (left) to 7 (right).
+	 * @return the index of the bit representing the given position, from 0 to 63.
+	 */
+	public static int square(int row, int col) {
+		return (row << 3) | col;
+	}
+	
+	/**
+	 * flips(long, long, long) returns the mask of opposing tokens that would be
+	 * captured if a token were placed at the given position.
+	 * 
+	 * All eight directions are checked. This method does not check if the position
+	 * is empty, so it can be used both for legality checks and for applying moves.
+	 * 
+	 * @param own is the bitboard of the moving player's tokens.
+	 * @param opp is the bitboard of the opposing player's tokens.
+	 * @param move is a bitboard with only the bit of the new token set.
+	 * @return a bitboard of every opposing token that would be captured (0 if none).
+	 */
+	public static long flips(long own, long opp, long move) {
+		long inner = opp & INNER_COLUMNS;
+		return line(own, inner, move, 1) | line(own, inner, move, -1)
+				| line(own, opp, move, 8) | line(own, opp, move, -8)
+				| line(own, inner, move, 9) | line(own, inner, move, -9)
+				| line(own, inner, move, 7) | line(own, inner, move, -7);
+	}
+	
+	/**
+	 * legalMoves(long, long) returns the mask of every empty position at which the
+	 * moving player could legally place a token.
+	 * 
+	 * Rather than checking each position separately, the moving player's tokens are
+	 * spread through adjacent opposing tokens one step at a time in each direction
+	 * (at most six steps are ever needed on an 8x8 board), and any empty position just
+	 * past such a run is a legal move.
+	 * 
+	 * @param own is the bitboard of the moving player's tokens.
+	 * @param opp is the bitboard of the opposing player's tokens.
+	 * @return a bitboard with a bit set for every legal move (0 if there are none).
+	 */
+	public static long legalMoves(long own, long opp) {
+		long empty = ~(own | opp);
+		long inner = opp & INNER_COLUMNS;
+		return reach(own, inner, empty, 1) | reach(own, inner, empty, -1)
+				| reach(own, opp, empty, 8) | reach(own, opp, empty, -8)
+				| reach(own, inner, empty, 9) | reach(own, inner, empty, -9)
+				| reach(own, inner, empty, 7) | reach(own, inner, empty, -7);
+	}
+	
+	/**
+	 * symmetric(long, int) applies one of the board's eight symmetries to a bitboard.
+	 * 
+	 * @param board is the bitboard to transform.
+	 * @param symmetry is the number of the symmetry, from 0 to 7.
+	 * @return the bitboard with every token moved to its symmetric position.
+	 */
+	public static long symmetric(long board, int symmetry) {
+		if ((symmetry & 4) != 0) { // Swap rows and columns, in three rounds of swaps
+			long t = 0x0f0f0f0f00000000L & (board ^ (board << 28));
+			board ^= t ^ (t >>> 28);
+			t = 0x3333000033330000L & (board ^ (board << 14));
+			board ^= t ^ (t >>> 14);
+			t = 0x5500550055005500L & (board ^ (board << 7));
+			board ^= t ^ (t >>> 7);
+		}
+		if ((symmetry & 1) != 0) // Rows are bytes, so reversing them turns the board over
+			board = Long.reverseBytes(board);
+		if ((symmetry & 2) != 0) { // Reverse the bits of every byte
+			board = ((board >>> 1) & 0x5555555555555555L) | ((board & 0x5555555555555555L) << 1);
+			board = ((board >>> 2) & 0x3333333333333333L) | ((board & 0x3333333333333333L) << 2);
+			board = ((board >>> 4) & 0x0f0f0f0f0f0f0f0fL) | ((board & 0x0f0f0f0f0f0f0f0fL) << 4);
+		}
+		return board;
+	}
+	
+	/**
+	 * symmetricSquare(int, int) applies one of the board's eight symmetries to a
+	 * single square index.
+	 * 
+	 * @param square is the square index to transform, from 0 to 63.
+	 * @param symmetry is the number of the symmetry, from 0 to 7.
+	 * @return the index of the symmetric square.
+	 */
+	public static int symmetricSquare(int square, int symmetry) {
+		int row = square >> 3;
+		int col = square & 7;
+		if ((symmetry & 4) != 0) {
+			int swap = row;
+			row = col;
+			col = swap;
+		}
+		if ((symmetry & 1) != 0)
+			row = 7 - row;
+		if ((symmetry & 2) != 0)
+			col = 7 - col;
+		return square(row, col);
+	}
+	
+	/**
+	 * inverseSymmetry(int) returns the symmetry that undoes the given one.
+	 * 
+	 * Reflections without the diagonal one undo themselves. With the diagonal
+	 * reflection, turning the board upside down and reflecting it left to right trade
+	 * places when undone.
+	 * 
+	 * @param symmetry is the number of the symmetry, from 0 to 7.
+	 * @return the number of the inverse symmetry.
+	 */
+	public static int inverseSymmetry(int symmetry) {
+		if ((symmetry & 4) == 0)
+			return symmetry;
+		return 4 | ((symmetry & 1) << 1) | ((symmetry & 2) >> 1);
+	}
+	
+	// Empty positions reached by running from own tokens over opponent tokens
+	private static long reach(long own, long opp, long empty, int dir) {
+		long x = shift(own, dir) & opp;
+		x |= shift(x, dir) & opp;
+		x |= shift(x, dir) & opp;
+		x |= shift(x, dir) & opp;
+		x |= shift(x, dir) & opp;
+		x |= shift(x, dir) & opp;
+		return shift(x, dir) & empty;
+	}
+	
+	// Collects the run of opponent tokens in one direction, keeping it only if closed
+	private static long line(long own, long opp, long move, int dir) {
+		long captured = 0;
+		long x = shift(move, dir);
+		while ((x & opp) != 0) {
+			captured |= x;
+			x = shift(x, dir);
+		}
+		return (x & own) != 0 ? captured : 0;
+	}
+	
+	// Shifts towards higher squares for a positive direction, lower squares otherwise
+	static long shift(long b, int dir) {
+		return dir > 0 ? b << dir : b >>> -dir;
+	}
+	
+}
@@ -0,0 +1,61 @@
+package model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a move applied to the board: by setPosW(int, int) or
+ * setPosB(int, int), or played in a game by the controller. Moves made and taken
+ * back by a search are not recorded (see controller.SearchEvent instead).
+ * 
+ * Like every Reversi event, it is disabled by default, even in a recording with the
+ * default settings; it is enabled by name ("reversi.Move") in a recording's settings
+ * or with Recording.enable(String). While it is disabled, begin() and record() do
+ * nothing, and the event object itself is optimized away, so the moves cost the same
+ * as without it.
+ * 
+ * @author Jesse Liu
+ *
+ */
+@Name("reversi.Move")
+@Label("Move")
+@Category({ "Reversi", "Game" })
+@Description("A move applied to the board")
+@Enabled(false)
+@StackTrace(false)
+public class MoveEvent extends Event {
+	
+	@Label("Player")
+	@Description("'W' for the human player, 'B' for the computer")
+	private char player;
+	
+	@Label("Square")
+	@Description("Square index of the move, row * 8 + col")
+	private int square;
+	
+	@Label("Flipped")
+	@Description("Number of tokens captured")
+	private int flipped;
+	
+	/**
+	 * record(char, int, long) ends the event and commits it, if it is enabled.
+	 * 
+	 * @param player is 'W' or 'B', the player who moved.
+	 * @param square is the square index of the move.
+	 * @param flipped is the bitboard of the tokens captured and placed by the move.
+	 */
+	public void record(char player, int square, long flipped) {
+		if (shouldCommit()) {
+			this.player = player;
+			this.square = square;
+			this.flipped = Long.bitCount(flipped & ~(1L << square));
+			commit();
+		}
+	}
+	
+}
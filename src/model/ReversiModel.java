@@ -4,50 +4,118 @@ package model;
  * Model for the Reversi game. Stores and provides methods for modifying the actual
  * data of the game.
  * 
- * Stores a 2D character array to act as the game board, as well as two integers to
- * track the current score of each player. Implements accessors for given positions
- * on the board and the two scores, as well as methods to make human or computer
- * moves at given positions, check if the human player can legally make a move at a
- * given position, and return the potential increase in score if the computer were to
- * make a move at a given position.
+ * Stores the game board as two bitboards (64-bit masks, see Bitboards), one for the
+ * human player's tokens and one for the computer's tokens, where bit (row * 8 + col)
+ * is set if that player has a token at the given position. The scores of each player
+ * are simply the number of bits set in their bitboard. Implements accessors for given
+ * positions on the board and the two scores, as well as methods to make human or
+ * computer moves at given positions, check if either player can legally make a move
+ * at a given position, return the potential increase in score if either player were
+ * to make a move at a given position, and return every legal move of either player
+ * at once as a bitboard.
+ * 
+ * The legal moves of both players are also stored, and are recomputed whenever a
+ * move is made, so that the mobility of each player and whether the game is over
+ * can be read without scanning the board again.
+ * 
+ * Moves applied with setPosW(int, int) and setPosB(int, int) are recorded as
+ * MoveEvents by the Java Flight Recorder, when that event is enabled.
+ * 
+ * Besides setPosW(int, int) and setPosB(int, int), which only ever move the game
+ * forward, moves can be made with makeMove(char, int) and taken back with
+ * undoMove(). Each such move is recorded in a fixed-size stack of primitive arrays
+ * (the position, the player, the captured tokens, and the legal moves before the
+ * move), so that searching ahead never has to copy the board or allocate anything.
+ * Undone moves stay on the stack until a new move is made, so they can be redone.
+ * 
+ * A Zobrist hash of the board (see Zobrist) is also kept up to date, one placed or
+ * captured token at a time, so that a search can look positions up in a
+ * transposition table without hashing the whole board.
  * 
  * @author Jesse Liu
  *
  */
 public class ReversiModel {
 	
-	private char[][] board;
-	private int wScore;
-	private int bScore;
+	public static final int SIZE = 8; // Other sizes are played with SizedReversiModel
+	
+	private long wBoard;
+	private long bBoard;
+	private long wMoves; // Legal moves of each player, kept up to date with the board
+	private long bMoves;
+	private long hash; // Zobrist hash of the board, kept up to date with the board
+	
+	// Undo stack: index undoTop is the next free entry, entries up to redoTop can be redone
+	private static final int MAX_MOVES = 64;
+	private final int[] undoSquares = new int[MAX_MOVES];
+	private final char[] undoPlayers = new char[MAX_MOVES];
+	private final long[] undoFlips = new long[MAX_MOVES];
+	private final long[] undoWMoves = new long[MAX_MOVES];
+	private final long[] undoBMoves = new long[MAX_MOVES];
+	private final long[] undoHashes = new long[MAX_MOVES];
+	private int undoTop;
+	private int redoTop;
 	
-	// Constructor, initializes game board and scores
+	// Constructor, initializes game board (scores are derived from the board)
 	public ReversiModel() {
-		board = new char[8][8]; // Game board is given to be 8x8
-		for (int i = 0; i < 8; i++) {
-			for (int j = 0; j < 8; j++) {
-				if ((i == 3 && j == 3) || (i == 4 && j == 4))
-					board[i][j] = 'W';
-				else if ((i == 3 && j == 4) || (i == 4 && j == 3))
-					board[i][j] = 'B';
-				else
-					board[i][j] = '_';
-			}
-		}
-		wScore = 2;
-		bScore = 2;
+		// Game board is given to be 8x8, with 'W' at d4 and e5 and 'B' at e4 and d5
+		wBoard = (1L << Bitboards.square(3, 3)) | (1L << Bitboards.square(4, 4));
+		bBoard = (1L << Bitboards.square(3, 4)) | (1L << Bitboards.square(4, 3));
+		hash = Zobrist.hash(wBoard, bBoard);
+		updateMoves();
+	}
+	
+	// Constructor, sets up a given board (from the bitboards of each player's tokens)
+	public ReversiModel(long wBoard, long bBoard) {
+		if ((wBoard & bBoard) != 0)
+			throw new IllegalArgumentException("Both players have a token on the same position");
+		this.wBoard = wBoard;
+		this.bBoard = bBoard;
+		hash = Zobrist.hash(wBoard, bBoard);
+		updateMoves();
+	}
+	
+	// Constructor, copies the board of another model (but not its undo stack)
+	public ReversiModel(ReversiModel other) {
+		copyFrom(other);
 	}
 	
 	/**
-	 * getElementAt(int, int) is a simple accessor that returns the character stored
-	 * in the game board array at the given indices.
+	 * copyFrom(ReversiModel) makes this model hold the same board as another model.
+	 * 
+	 * The board, legal moves, and hash are copied, while the undo stack is emptied,
+	 * since the moves that led to the other model's board were not made on this one.
+	 * Nothing is allocated, so a model can be reused to copy many positions (for
+	 * example, once per search thread).
+	 * 
+	 * @param other is the model whose board is copied.
+	 */
+	public void copyFrom(ReversiModel other) {
+		wBoard = other.wBoard;
+		bBoard = other.bBoard;
+		wMoves = other.wMoves;
+		bMoves = other.bMoves;
+		hash = other.hash;
+		clearHistory();
+	}
+	
+	/**
+	 * getElementAt(int, int) is a simple accessor that returns the character
+	 * representing the token at the given indices of the game board.
 	 * 
 	 * @param row is the row index (an integer) of the desired position
 	 * @param col is the column index (an integer) of the desired position
-	 * @return the character at the given position in the game board (presumably 'W',
-	 * 'B', or '_').
+	 * @return the character at the given position in the game board ('W', 'B', or
+	 * '_').
 	 */
 	public char getElementAt(int row, int col) {
-		return board[row][col];
+		long pos = 1L << Bitboards.square(row, col);
+		if ((wBoard & pos) != 0)
+			return 'W';
+		else if ((bBoard & pos) != 0)
+			return 'B';
+		else
+			return '_';
 	}
 	
 	/**
@@ -56,7 +124,7 @@ public class ReversiModel {
 	 * @return the integer representing the human player's current score.
 	 */
 	public int getWScore() {
-		return wScore;
+		return Long.bitCount(wBoard);
 	}
 	
 	/**
@@ -65,7 +133,7 @@ public class ReversiModel {
 	 * @return the integer representing the computer's current score.
 	 */
 	public int getBScore() {
-		return bScore;
+		return Long.bitCount(bBoard);
 	}
 	
 	/**
@@ -73,187 +141,29 @@ public class ReversiModel {
 	 * 
 	 * More specifically, it reads in the indices of the position (without checking
 	 * if such a move is legal or not, as that is taken care of in the controller),
-	 * and places a human-player token at that position (i.e. a 'W' character). Any
-	 * computer tokens (i.e. 'B' characters) caught between this position and another
-	 * 'W' character in a straight, unbroken line are captured and converted into
-	 * human-player tokens, as per the rules of Reversi. This is done by checking all
-	 * eight directions around the new token: if any number of computer tokens are
-	 * adjacent to the new token, this method checks the board positions in a straight
-	 * line in the direction of said adjacent computer token. If a human-player token
-	 * is detected in this line, then the computer tokens between the two human tokens
-	 * in question are captured. If the edge of the board is reached or an empty space
-	 * is encountered, then nothing is captured in this direction.
+	 * and places a human-player token at that position. Any computer tokens caught
+	 * between this position and another human-player token in a straight, unbroken
+	 * line are captured and converted into human-player tokens, as per the rules of
+	 * Reversi. The captured tokens in all eight directions are computed at once by
+	 * Bitboards.flips(long, long, long), and are then moved from the computer's
+	 * bitboard to the human player's bitboard. Since the given position may already
+	 * be occupied, moves made this way cannot be undone, and any moves recorded by
+	 * makeMove(char, int) are forgotten.
 	 * 
 	 * @param row is the integer representing the row index of the move being made.
 	 * @param col is the integer representing the column index of the move being made.
 	 */
 	public void setPosW(int row, int col) { // May not be legal move, checked elsewhere
-		board[row][col] = 'W';
-		wScore++;
-		int i = row;
-		int j = col;
-		
-		// Check if positions should be captured to the right
-		if (col < 7) {
-			j++;
-			while (j < 7 && (board[i][j] == 'B'))
-				j++;
-			if (board[i][j] == 'W') {
-				j--;
-				while (board[i][j] == 'B') {
-					board[i][j] = 'W';
-					wScore++;
-					bScore--;
-					j--;
-				}
-			}
-		}
-		
-		// Check if positions should be captured below and to the right
-		if (row < 7 && col < 7) {
-			i = row;
-			j = col;
-			i++;
-			j++;
-			while (i < 7 && j < 7 && (board[i][j] == 'B')) {
-				i++;
-				j++;
-			}
-			if (board[i][j] == 'W') {
-				i--;
-				j--;
-				while (board[i][j] == 'B') {
-					board[i][j] = 'W';
-					wScore++;
-					bScore--;
-					i--;
-					j--;
-				}
-			}
-		}
-		
-		// Check if positions should be captured below
-		if (row < 7) {
-			i = row;
-			j = col;
-			i++;
-			while (i < 7 && (board[i][j] == 'B'))
-				i++;
-			if (board[i][j] == 'W') {
-				i--;
-				while (board[i][j] == 'B') {
-					board[i][j] = 'W';
-					wScore++;
-					bScore--;
-					i--;
-				}
-			}
-		}
-		
-		// Check if positions should be captured below and to the left
-		if (row < 7 && col > 0) {
-			i = row;
-			j = col;
-			i++;
-			j--;
-			while (i < 7 && j > 0 && (board[i][j] == 'B')) {
-				i++;
-				j--;
-			}
-			if (board[i][j] == 'W') {
-				i--;
-				j++;
-				while (board[i][j] == 'B') {
-					board[i][j] = 'W';
-					wScore++;
-					bScore--;
-					i--;
-					j++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured to the left
-		if (col > 0) {
-			i = row;
-			j = col;
-			j--;
-			while (j > 0 && (board[i][j] == 'B'))
-				j--;
-			if (board[i][j] == 'W') {
-				j++;
-				while (board[i][j] == 'B') {
-					board[i][j] = 'W';
-					wScore++;
-					bScore--;
-					j++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured above and to the left
-		if (row > 0 && col > 0) {
-			i = row;
-			j = col;
-			i--;
-			j--;
-			while (i > 0 && j > 0 && (board[i][j] == 'B')) {
-				i--;
-				j--;
-			}
-			if (board[i][j] == 'W') {
-				i++;
-				j++;
-				while (board[i][j] == 'B') {
-					board[i][j] = 'W';
-					wScore++;
-					bScore--;
-					i++;
-					j++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured above
-		if (row > 0) {
-			i = row;
-			j = col;
-			i--;
-			while (i > 0 && (board[i][j] == 'B'))
-				i--;
-			if (board[i][j] == 'W') {
-				i++;
-				while (board[i][j] == 'B') {
-					board[i][j] = 'W';
-					wScore++;
-					bScore--;
-					i++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured above and to the right
-		if (row > 0 && col < 7) {
-			i = row;
-			j = col;
-			i--;
-			j++;
-			while (i > 0 && j < 7 && (board[i][j] == 'B')) {
-				i--;
-				j++;
-			}
-			if (board[i][j] == 'W') {
-				i++;
-				j--;
-				while (board[i][j] == 'B') {
-					board[i][j] = 'W';
-					wScore++;
-					bScore--;
-					i++;
-					j--;
-				}
-			}
-		}
+		MoveEvent event = new MoveEvent();
+		event.begin();
+		long move = 1L << Bitboards.square(row, col);
+		long flipped = Bitboards.flips(wBoard, bBoard, move) | move;
+		wBoard |= flipped;
+		bBoard &= ~flipped;
+		hash = Zobrist.hash(wBoard, bBoard); // The position may have been occupied
+		updateMoves();
+		clearHistory();
+		event.record('W', Bitboards.square(row, col), flipped);
 	}
 	
 	/**
@@ -261,199 +171,38 @@ public class ReversiModel {
 	 * 
 	 * More specifically, it reads in the indices of the position (without checking
 	 * if such a move is legal or not, as that is taken care of in the controller),
-	 * and places a computer-player token at that position (i.e. a 'B' character). Any
-	 * human tokens (i.e. 'W' characters) caught between this position and another
-	 * 'B' character in a straight, unbroken line are captured and converted into
-	 * computer tokens, as per the rules of Reversi. This is done by checking all
-	 * eight directions around the new token: if any number of human tokens are
-	 * adjacent to the new token, this method checks the board positions in a straight
-	 * line in the direction of said adjacent human token. If a computer token is
-	 * detected in this line, then the human tokens between the two computer tokens
-	 * in question are captured. If the edge of the board is reached or an empty space
-	 * is encountered, then nothing is captured in this direction.
+	 * and places a computer token at that position. Any human tokens caught between
+	 * this position and another computer token in a straight, unbroken line are
+	 * captured and converted into computer tokens, as per the rules of Reversi. This
+	 * is done in the same way as in setPosW(int, int) (see its documentation), with
+	 * the roles of the two bitboards swapped.
 	 * 
 	 * @param row is the integer representing the row index of the move being made.
 	 * @param col is the integer representing the column index of the move being made.
 	 */
 	public void setPosB(int row, int col) { // May not be legal move, checked elsewhere
-		board[row][col] = 'B';
-		bScore++;
-		int i = row;
-		int j = col;
-		
-		// Check if positions should be captured to the right
-		if (col < 7) {
-			j++;
-			while (j < 7 && (board[i][j] == 'W'))
-				j++;
-			if (board[i][j] == 'B') {
-				j--;
-				while (board[i][j] == 'W') {
-					board[i][j] = 'B';
-					bScore++;
-					wScore--;
-					j--;
-				}
-			}
-		}
-		
-		// Check if positions should be captured below and to the right
-		if (row < 7 && col < 7) {
-			i = row;
-			j = col;
-			i++;
-			j++;
-			while (i < 7 && j < 7 && (board[i][j] == 'W')) {
-				i++;
-				j++;
-			}
-			if (board[i][j] == 'B') {
-				i--;
-				j--;
-				while (board[i][j] == 'W') {
-					board[i][j] = 'B';
-					bScore++;
-					wScore--;
-					i--;
-					j--;
-				}
-			}
-		}
-		
-		// Check if positions should be captured below
-		if (row < 7) {
-			i = row;
-			j = col;
-			i++;
-			while (i < 7 && (board[i][j] == 'W'))
-				i++;
-			if (board[i][j] == 'B') {
-				i--;
-				while (board[i][j] == 'W') {
-					board[i][j] = 'B';
-					bScore++;
-					wScore--;
-					i--;
-				}
-			}
-		}
-		
-		// Check if positions should be captured below and to the left
-		if (row < 7 && col > 0) {
-			i = row;
-			j = col;
-			i++;
-			j--;
-			while (i < 7 && j > 0 && (board[i][j] == 'W')) {
-				i++;
-				j--;
-			}
-			if (board[i][j] == 'B') {
-				i--;
-				j++;
-				while (board[i][j] == 'W') {
-					board[i][j] = 'B';
-					bScore++;
-					wScore--;
-					i--;
-					j++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured to the left
-		if (col > 0) {
-			i = row;
-			j = col;
-			j--;
-			while (j > 0 && (board[i][j] == 'W'))
-				j--;
-			if (board[i][j] == 'B') {
-				j++;
-				while (board[i][j] == 'W') {
-					board[i][j] = 'B';
-					bScore++;
-					wScore--;
-					j++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured above and to the left
-		if (row > 0 && col > 0) {
-			i = row;
-			j = col;
-			i--;
-			j--;
-			while (i > 0 && j > 0 && (board[i][j] == 'W')) {
-				i--;
-				j--;
-			}
-			if (board[i][j] == 'B') {
-				i++;
-				j++;
-				while (board[i][j] == 'W') {
-					board[i][j] = 'B';
-					bScore++;
-					wScore--;
-					i++;
-					j++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured above
-		if (row > 0) {
-			i = row;
-			j = col;
-			i--;
-			while (i > 0 && (board[i][j] == 'W'))
-				i--;
-			if (board[i][j] == 'B') {
-				i++;
-				while (board[i][j] == 'W') {
-					board[i][j] = 'B';
-					bScore++;
-					wScore--;
-					i++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured above and to the right
-		if (row > 0 && col < 7) {
-			i = row;
-			j = col;
-			i--;
-			j++;
-			while (i > 0 && j < 7 && (board[i][j] == 'W')) {
-				i--;
-				j++;
-			}
-			if (board[i][j] == 'B') {
-				i++;
-				j--;
-				while (board[i][j] == 'W') {
-					board[i][j] = 'B';
-					bScore++;
-					wScore--;
-					i++;
-					j--;
-				}
-			}
-		}
+		MoveEvent event = new MoveEvent();
+		event.begin();
+		long move = 1L << Bitboards.square(row, col);
+		long flipped = Bitboards.flips(bBoard, wBoard, move) | move;
+		bBoard |= flipped;
+		wBoard &= ~flipped;
+		hash = Zobrist.hash(wBoard, bBoard); // The position may have been occupied
+		updateMoves();
+		clearHistory();
+		event.record('B', Bitboards.square(row, col), flipped);
 	}
 	
 	/**
 	 * isLegalW(int, int) checks if it is legal for the human player to put a token ('W')
 	 * at the given position or not, and returns a representative boolean for it.
 	 * 
-	 * This is done by checking all eight straight directions around the position in
-	 * question, as with the setPosW(int, int) method above (see its documentation).
-	 * If it is detected that any computer tokens would be captured in this way, then
-	 * true is returned. Otherwise, false is returned. If the position in question is
-	 * not empty, then false is automatically returned. Array bounds are not checked in
-	 * this method, as that is taken care of in the controller.
+	 * This is done by computing the computer tokens that would be captured by such a
+	 * move, as with the setPosW(int, int) method above (see its documentation). If any
+	 * computer tokens would be captured in this way, then true is returned. Otherwise,
+	 * false is returned. If the position in question is not empty, then false is
+	 * automatically returned. Array bounds are not checked in this method, as that is
+	 * taken care of in the controller.
 	 * 
 	 * @param row is the integer representing the row index of the position in question.
 	 * @param col is the integer representing the column index of the position in question.
@@ -461,125 +210,25 @@ public class ReversiModel {
 	 * false otherwise.
 	 */
 	public boolean isLegalW(int row, int col) {
-		if (board[row][col] != '_')
+		long move = 1L << Bitboards.square(row, col);
+		if (((wBoard | bBoard) & move) != 0)
 			return false;
-		int i = row;
-		int j = col;
-		
-		// Check if move is legal from the right
-		if (col < 7) {
-			j++;
-			while (j < 7 && (board[i][j] == 'B'))
-				j++;
-			if (board[i][j] == 'W' && (j != col + 1))
-				return true;
-		}
-		
-		// Check if move is legal from below and to the right
-		if (row < 7 && col < 7) {
-			i = row;
-			j = col;
-			i++;
-			j++;
-			while (i < 7 && j < 7 && (board[i][j] == 'B')) {
-				i++;
-				j++;
-			}
-			if (board[i][j] == 'W' && (i != row + 1))
-				return true;
-		}
-		
-		// Check if move is legal from below
-		if (row < 7) {
-			i = row;
-			j = col;
-			i++;
-			while (i < 7 && (board[i][j] == 'B'))
-				i++;
-			if (board[i][j] == 'W' && (i != row + 1))
-				return true;
-		}
-		
-		// Check if move is legal from below and to the left
-		if (row < 7 && col > 0) {
-			i = row;
-			j = col;
-			i++;
-			j--;
-			while (i < 7 && j > 0 && (board[i][j] == 'B')) {
-				i++;
-				j--;
-			}
-			if (board[i][j] == 'W' && (i != row + 1))
-				return true;
-		}
-		
-		// Check if move is legal from the left
-		if (col > 0) {
-			i = row;
-			j = col;
-			j--;
-			while (j > 0 && (board[i][j] == 'B'))
-				j--;
-			if (board[i][j] == 'W' && (j != col - 1))
-				return true;
-		}
-		
-		// Check if move is legal from above and to the left
-		if (row > 0 && col > 0) {
-			i = row;
-			j = col;
-			i--;
-			j--;
-			while (i > 0 && j > 0 && (board[i][j] == 'B')) {
-				i--;
-				j--;
-			}
-			if (board[i][j] == 'W' && (i != row - 1))
-				return true;
-		}
-		
-		// Check if move is legal from above
-		if (row > 0) {
-			i = row;
-			j = col;
-			i--;
-			while (i > 0 && (board[i][j] == 'B'))
-				i--;
-			if (board[i][j] == 'W' && (i != row - 1))
-				return true;
-		}
-		
-		// Check if move is legal from above and to the right
-		if (row > 0 && col < 7) {
-			i = row;
-			j = col;
-			i--;
-			j++;
-			while (i > 0 && j < 7 && (board[i][j] == 'B')) {
-				i--;
-				j++;
-			}
-			if (board[i][j] == 'W' && (i != row - 1))
-				return true;
-		}
-		
-		return false;
+		return Bitboards.flips(wBoard, bBoard, move) != 0;
 	}
 	
 	/**
 	 * hypotheticalB(int, int) returns an integer representing the increase in score if
 	 * the computer were to make a move at the given position.
 	 * 
-	 * This is done by once again checking all eight straight directions around the given
-	 * position, and counting the total number of human tokens that would be captured if
-	 * such a move were made by the computer. This method also functions as a way to
-	 * check the legality of a computer move, as 1 would be returned if the move were
-	 * illegal (since the only computer token gained would be the one just added). Thus,
-	 * if the position in question is already occupied, 1 is automatically returned.
-	 * This method does not check array bounds, as the controller takes care of that
-	 * (or, more accurately, this method will never be called with out-of-bounds indices
-	 * because of the way the controller uses this method).
+	 * This is done by counting the total number of human tokens that would be captured
+	 * if such a move were made by the computer (see setPosB(int, int)). This method
+	 * also functions as a way to check the legality of a computer move, as 1 would be
+	 * returned if the move were illegal (since the only computer token gained would be
+	 * the one just added). Thus, if the position in question is already occupied, 1 is
+	 * automatically returned. This method does not check array bounds, as the
+	 * controller takes care of that (or, more accurately, this method will never be
+	 * called with out-of-bounds indices because of the way the controller uses this
+	 * method).
 	 * 
 	 * @param row is the integer representing the row index of the move being checked.
 	 * @param col is the integer representing the column index of the move being checked.
@@ -587,158 +236,303 @@ public class ReversiModel {
 	 * a move at the given position.
 	 */
 	public int hypotheticalB(int row, int col) { // Return increase in score if move was made
-		if (board[row][col] != '_')
+		long move = 1L << Bitboards.square(row, col);
+		if (((wBoard | bBoard) & move) != 0)
 			return 1;
-		int scoreInc = 1;
-		int i = row;
-		int j = col;
-		
-		// Check if positions should be captured to the right
-		if (col < 7) {
-			j++;
-			while (j < 7 && (board[i][j] == 'W'))
-				j++;
-			if (board[i][j] == 'B') {
-				j--;
-				while (board[i][j] == 'W') {
-					scoreInc++;
-					j--;
-				}
-			}
-		}
-		
-		// Check if positions should be captured below and to the right
-		if (row < 7 && col < 7) {
-			i = row;
-			j = col;
-			i++;
-			j++;
-			while (i < 7 && j < 7 && (board[i][j] == 'W')) {
-				i++;
-				j++;
-			}
-			if (board[i][j] == 'B') {
-				i--;
-				j--;
-				while (board[i][j] == 'W') {
-					scoreInc++;
-					i--;
-					j--;
-				}
-			}
-		}
-		
-		// Check if positions should be captured below
-		if (row < 7) {
-			i = row;
-			j = col;
-			i++;
-			while (i < 7 && (board[i][j] == 'W'))
-				i++;
-			if (board[i][j] == 'B') {
-				i--;
-				while (board[i][j] == 'W') {
-					scoreInc++;
-					i--;
-				}
-			}
-		}
-		
-		// Check if positions should be captured below and to the left
-		if (row < 7 && col > 0) {
-			i = row;
-			j = col;
-			i++;
-			j--;
-			while (i < 7 && j > 0 && (board[i][j] == 'W')) {
-				i++;
-				j--;
-			}
-			if (board[i][j] == 'B') {
-				i--;
-				j++;
-				while (board[i][j] == 'W') {
-					scoreInc++;
-					i--;
-					j++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured to the left
-		if (col > 0) {
-			i = row;
-			j = col;
-			j--;
-			while (j > 0 && (board[i][j] == 'W'))
-				j--;
-			if (board[i][j] == 'B') {
-				j++;
-				while (board[i][j] == 'W') {
-					scoreInc++;
-					j++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured above and to the left
-		if (row > 0 && col > 0) {
-			i = row;
-			j = col;
-			i--;
-			j--;
-			while (i > 0 && j > 0 && (board[i][j] == 'W')) {
-				i--;
-				j--;
-			}
-			if (board[i][j] == 'B') {
-				i++;
-				j++;
-				while (board[i][j] == 'W') {
-					scoreInc++;
-					i++;
-					j++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured above
-		if (row > 0) {
-			i = row;
-			j = col;
-			i--;
-			while (i > 0 && (board[i][j] == 'W'))
-				i--;
-			if (board[i][j] == 'B') {
-				i++;
-				while (board[i][j] == 'W') {
-					scoreInc++;
-					i++;
-				}
-			}
-		}
-		
-		// Check if positions should be captured above and to the right
-		if (row > 0 && col < 7) {
-			i = row;
-			j = col;
-			i--;
-			j++;
-			while (i > 0 && j < 7 && (board[i][j] == 'W')) {
-				i--;
-				j++;
-			}
-			if (board[i][j] == 'B') {
-				i++;
-				j--;
-				while (board[i][j] == 'W') {
-					scoreInc++;
-					i++;
-					j--;
-				}
-			}
-		}
-		return scoreInc;
+		return 1 + Long.bitCount(Bitboards.flips(bBoard, wBoard, move));
+	}
+	
+	/**
+	 * isLegalB(int, int) checks if it is legal for the computer to put a token ('B')
+	 * at the given position or not, and returns a representative boolean for it.
+	 * 
+	 * This works exactly like isLegalW(int, int) (see its documentation), with the
+	 * roles of the two players swapped.
+	 * 
+	 * @param row is the integer representing the row index of the position in question.
+	 * @param col is the integer representing the column index of the position in question.
+	 * @return true if the computer can legally make a move at the given position,
+	 * false otherwise.
+	 */
+	public boolean isLegalB(int row, int col) {
+		long move = 1L << Bitboards.square(row, col);
+		if (((wBoard | bBoard) & move) != 0)
+			return false;
+		return Bitboards.flips(bBoard, wBoard, move) != 0;
+	}
+	
+	/**
+	 * hypotheticalW(int, int) returns an integer representing the increase in score if
+	 * the human player were to make a move at the given position.
+	 * 
+	 * This works exactly like hypotheticalB(int, int) (see its documentation), with
+	 * the roles of the two players swapped, so 1 is returned for an illegal move.
+	 * 
+	 * @param row is the integer representing the row index of the move being checked.
+	 * @param col is the integer representing the column index of the move being checked.
+	 * @return an integer representing the increase in the human player's score if they
+	 * made a move at the given position.
+	 */
+	public int hypotheticalW(int row, int col) {
+		long move = 1L << Bitboards.square(row, col);
+		if (((wBoard | bBoard) & move) != 0)
+			return 1;
+		return 1 + Long.bitCount(Bitboards.flips(wBoard, bBoard, move));
+	}
+	
+	/**
+	 * getLegalMovesW() returns every position at which the human player can currently
+	 * make a legal move.
+	 * 
+	 * The result is a bitboard where bit (row * 8 + col) is set if isLegalW(row, col)
+	 * would return true, but it is computed for the whole board at once (see
+	 * Bitboards.legalMoves(long, long)) whenever a move is made, so this method only
+	 * returns the stored result. The moves can be visited in row-major order by
+	 * repeatedly taking Long.numberOfTrailingZeros(moves) and clearing the lowest bit.
+	 * 
+	 * @return a bitboard of the human player's legal moves (0 if there are none).
+	 */
+	public long getLegalMovesW() {
+		return wMoves;
+	}
+	
+	/**
+	 * getLegalMovesB() returns every position at which the computer can currently make
+	 * a legal move.
+	 * 
+	 * This works exactly like getLegalMovesW() (see its documentation), with the roles
+	 * of the two players swapped.
+	 * 
+	 * @return a bitboard of the computer's legal moves (0 if there are none).
+	 */
+	public long getLegalMovesB() {
+		return bMoves;
+	}
+	
+	/**
+	 * getLegalMoves(char) returns every position at which the given player can
+	 * currently make a legal move, so that callers such as a search do not need to
+	 * branch on the player themselves.
+	 * 
+	 * @param player is 'W' for the human player or 'B' for the computer.
+	 * @return a bitboard of the given player's legal moves (0 if there are none).
+	 */
+	public long getLegalMoves(char player) {
+		return player == 'W' ? wMoves : bMoves;
+	}
+	
+	/**
+	 * getBoard(char) returns the bitboard of the given player's tokens, where bit
+	 * (row * 8 + col) is set if the player has a token at that position.
+	 * 
+	 * @param player is 'W' for the human player or 'B' for the computer.
+	 * @return the bitboard of the given player's tokens.
+	 */
+	public long getBoard(char player) {
+		return player == 'W' ? wBoard : bBoard;
+	}
+	
+	/**
+	 * getHash() returns the Zobrist hash of the current board (see Zobrist).
+	 * 
+	 * The hash only depends on the tokens on the board, so a search that needs to tell
+	 * positions apart by the player to move should combine it with Zobrist.B_TO_MOVE.
+	 * 
+	 * @return the 64-bit hash of the board.
+	 */
+	public long getHash() {
+		return hash;
+	}
+	
+	/**
+	 * getWMobility() returns the number of legal moves the human player currently has.
+	 * 
+	 * @return the number of positions at which the human player can legally move.
+	 */
+	public int getWMobility() {
+		return Long.bitCount(wMoves);
+	}
+	
+	/**
+	 * getBMobility() returns the number of legal moves the computer currently has.
+	 * 
+	 * @return the number of positions at which the computer can legally move.
+	 */
+	public int getBMobility() {
+		return Long.bitCount(bMoves);
+	}
+	
+	/**
+	 * isGameOver() returns whether neither player can make any more moves.
+	 * 
+	 * Since the legal moves of both players are kept up to date as moves are made,
+	 * this is a single check rather than a scan of the board.
+	 * 
+	 * @return true if neither player has a legal move, false otherwise.
+	 */
+	public boolean isGameOver() {
+		return (wMoves | bMoves) == 0;
+	}
+	
+	/**
+	 * makeMove(char, int) makes a move for the given player at the given position,
+	 * recording it so that it can be taken back with undoMove().
+	 * 
+	 * Tokens are placed and captured exactly as in setPosW(int, int) and
+	 * setPosB(int, int), except that the position is given as a square index (row * 8
+	 * + col, see Bitboards.square(int, int)) and must be empty. The move is pushed onto
+	 * the undo stack, and any moves that had been undone (and could have been redone)
+	 * are forgotten. Legality is not checked, as that is taken care of by the caller.
+	 * 
+	 * @param player is 'W' for a human-player move or 'B' for a computer move.
+	 * @param square is the square index of the (empty) position of the move.
+	 * @return a bitboard of the tokens captured by the move, so that the increase in
+	 * the player's score is one more than the number of bits set.
+	 * @throws IllegalStateException if the undo stack is full, which can only happen
+	 * if moves are made on occupied positions.
+	 */
+	public long makeMove(char player, int square) throws IllegalStateException {
+		if (undoTop == MAX_MOVES)
+			throw new IllegalStateException("Too many moves to record");
+		long flipped = push(player, square);
+		redoTop = undoTop;
+		return flipped;
+	}
+	
+	/**
+	 * undoMove() takes back the most recent move made with makeMove(char, int) (or
+	 * redone with redoMove()).
+	 * 
+	 * The captured tokens are given back to the opponent, the placed token is removed,
+	 * and the legal moves of both players and the hash of the board are restored from
+	 * the undo stack rather than being recomputed. The move can then be redone with redoMove().
+	 * 
+	 * @throws IllegalStateException if there is no move to undo.
+	 */
+	public void undoMove() throws IllegalStateException {
+		if (undoTop == 0)
+			throw new IllegalStateException("No move to undo");
+		int top = --undoTop;
+		long changed = undoFlips[top];
+		long placed = changed | (1L << undoSquares[top]);
+		if (undoPlayers[top] == 'W') {
+			wBoard ^= placed;
+			bBoard ^= changed;
+		} else {
+			bBoard ^= placed;
+			wBoard ^= changed;
+		}
+		wMoves = undoWMoves[top];
+		bMoves = undoBMoves[top];
+		hash = undoHashes[top];
+	}
+	
+	/**
+	 * redoMove() makes the most recently undone move again.
+	 * 
+	 * @throws IllegalStateException if there is no undone move to redo (either no
+	 * move was undone, or a new move has been made since).
+	 */
+	public void redoMove() throws IllegalStateException {
+		if (undoTop == redoTop)
+			throw new IllegalStateException("No move to redo");
+		push(undoPlayers[undoTop], undoSquares[undoTop]);
+	}
+	
+	/**
+	 * peekUndo() returns the player whose move would be taken back by undoMove().
+	 * 
+	 * @return 'W' or 'B' for the player of the most recent move, or '_' if there is
+	 * no move to undo.
+	 */
+	public char peekUndo() {
+		return undoTop == 0 ? '_' : undoPlayers[undoTop - 1];
+	}
+	
+	/**
+	 * peekRedo() returns the player whose move would be made again by redoMove().
+	 * 
+	 * @return 'W' or 'B' for the player of the most recently undone move, or '_' if
+	 * there is no move to redo.
+	 */
+	public char peekRedo() {
+		return undoTop == redoTop ? '_' : undoPlayers[undoTop];
+	}
+	
+	/**
+	 * getMoveCount() returns the number of moves recorded on the undo stack, which is
+	 * every move made since the model was set up (or last copied), minus any undone.
+	 * 
+	 * @return the number of moves that can be undone.
+	 */
+	public int getMoveCount() {
+		return undoTop;
+	}
+	
+	/**
+	 * getMoveAt(int) returns the square of a recorded move, so that the game so far
+	 * can be saved or replayed.
+	 * 
+	 * @param index is the number of the move, from 0 for the first move.
+	 * @return the square index of the move.
+	 * @throws IllegalArgumentException if there is no such move.
+	 */
+	public int getMoveAt(int index) throws IllegalArgumentException {
+		if (index < 0 || index >= undoTop)
+			throw new IllegalArgumentException("No move " + index);
+		return undoSquares[index];
+	}
+	
+	/**
+	 * getPlayerAt(int) returns the player who made a recorded move. Consecutive moves
+	 * by the same player mean that the other player passed in between.
+	 * 
+	 * @param index is the number of the move, from 0 for the first move.
+	 * @return 'W' or 'B'.
+	 * @throws IllegalArgumentException if there is no such move.
+	 */
+	public char getPlayerAt(int index) throws IllegalArgumentException {
+		if (index < 0 || index >= undoTop)
+			throw new IllegalArgumentException("No move " + index);
+		return undoPlayers[index];
+	}
+	
+	// Applies a move and records it at the top of the undo stack
+	private long push(char player, int square) {
+		int top = undoTop;
+		long move = 1L << square;
+		long flipped;
+		undoSquares[top] = square;
+		undoPlayers[top] = player;
+		undoWMoves[top] = wMoves;
+		undoBMoves[top] = bMoves;
+		undoHashes[top] = hash;
+		if (player == 'W') {
+			flipped = Bitboards.flips(wBoard, bBoard, move);
+			wBoard |= flipped | move;
+			bBoard &= ~flipped;
+		} else {
+			flipped = Bitboards.flips(bBoard, wBoard, move);
+			bBoard |= flipped | move;
+			wBoard &= ~flipped;
+		}
+		undoFlips[top] = flipped;
+		hash = Zobrist.flip(Zobrist.place(hash, player, square), flipped);
+		undoTop = top + 1;
+		updateMoves();
+		return flipped;
+	}
+	
+	// Forgets every recorded move (after the board is changed some other way)
+	private void clearHistory() {
+		undoTop = 0;
+		redoTop = 0;
+	}
+	
+	// Recomputes the stored legal moves of both players after the board changes
+	private void updateMoves() {
+		wMoves = Bitboards.legalMoves(wBoard, bBoard);
+		bMoves = Bitboards.legalMoves(bBoard, wBoard);
 	}
 	
 }
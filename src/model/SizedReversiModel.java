@@ -0,0 +1,416 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Model for Reversi on a square board of any even size from 4x4 to 26x26, for the
+ * 6x6, 10x10, 16x16 and other variants studied alongside the standard game.
+ * 
+ * ReversiModel, which the engines search, is built around the 8x8 board fitting in
+ * one long. Here the board is instead a bitset of size * size bits, square (row *
+ * size + col), stored in as few longs as it takes: a single one up to 8x8, two for
+ * 10x10, four for 16x16. Legal moves are generated for the whole board at once, as
+ * by Bitboards.legalMoves(long, long): each player's tokens are spread through the
+ * adjacent opposing tokens one step at a time in each of the eight directions, the
+ * bitset being shifted by 1 (a column), size (a row), or size plus or minus 1 (a
+ * diagonal), with plain shifts of a long up to 8x8 and the carries between longs
+ * beyond, and with the opposing tokens of the
+ * edge columns left out of sideways runs so that nothing wraps from one edge to the
+ * other. A step costs a few operations per long, so finding every legal move costs
+ * in proportion to the area of the board (times the longest possible run), not to
+ * the number of squares times the directions checked from each. Only the captures
+ * of a move actually made are found by walking out from its square.
+ * 
+ * As in ReversiModel, 'W' is the human player and moves first, the legal moves of
+ * both players are kept up to date, and moves made with makeMove(char, int) can be
+ * taken back with undoMove(), from a stack of preallocated arrays, so that a search
+ * on a large board does not allocate anything either.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class SizedReversiModel {
+	
+	public static final int MIN_SIZE = 4;
+	public static final int MAX_SIZE = 26; // Columns are lettered 'a' to 'z'
+	
+	private final int size;
+	private final int words;
+	private final long[] valid; // Every square of the board
+	private final long[] inner; // Every square except those of the leftmost and rightmost columns
+	private final int[] directions; // Distances between neighbouring squares, each taken both ways
+	private final long[] wBoard;
+	private final long[] bBoard;
+	private final long[] wMoves; // Legal moves of each player, kept up to date with the board
+	private final long[] bMoves;
+	private final long[] run; // Scratch space for move generation
+	private final long[] step;
+	private final long[] runOpp;
+	private final long[] flips; // Scratch space for hypothetical moves
+	
+	// Undo stack: the entries of move i start at i * words
+	private final int maxMoves;
+	private final int[] undoSquares;
+	private final char[] undoPlayers;
+	private final long[] undoFlips; // Captured tokens and the placed one
+	private final long[] undoWMoves;
+	private final long[] undoBMoves;
+	private int undoTop;
+	
+	// Constructor (reads in the size of the board, sets up the initial position)
+	public SizedReversiModel(int size) {
+		if (size < MIN_SIZE || size > MAX_SIZE || size % 2 != 0)
+			throw new IllegalArgumentException("The board size must be even, from " + MIN_SIZE + " to " + MAX_SIZE);
+		this.size = size;
+		directions = new int[] { 1, size, size + 1, size - 1 };
+		words = (size * size + 63) / 64;
+		valid = new long[words];
+		inner = new long[words];
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				set(valid, square(row, col));
+				if (col > 0 && col < size - 1)
+					set(inner, square(row, col));
+			}
+		}
+		wBoard = new long[words];
+		bBoard = new long[words];
+		wMoves = new long[words];
+		bMoves = new long[words];
+		run = new long[words];
+		step = new long[words];
+		runOpp = new long[words];
+		flips = new long[words];
+		maxMoves = size * size - 4;
+		undoSquares = new int[maxMoves];
+		undoPlayers = new char[maxMoves];
+		undoFlips = new long[maxMoves * words];
+		undoWMoves = new long[maxMoves * words];
+		undoBMoves = new long[maxMoves * words];
+		// As on the 8x8 board, 'W' on the two central squares of the main diagonal
+		int center = size / 2;
+		set(wBoard, square(center - 1, center - 1));
+		set(wBoard, square(center, center));
+		set(bBoard, square(center - 1, center));
+		set(bBoard, square(center, center - 1));
+		updateMoves();
+	}
+	
+	// Constructor, copies the board of another model (but not its undo stack)
+	public SizedReversiModel(SizedReversiModel other) {
+		this(other.size);
+		System.arraycopy(other.wBoard, 0, wBoard, 0, words);
+		System.arraycopy(other.bBoard, 0, bBoard, 0, words);
+		System.arraycopy(other.wMoves, 0, wMoves, 0, words);
+		System.arraycopy(other.bMoves, 0, bMoves, 0, words);
+	}
+	
+	/**
+	 * getSize() returns the number of rows (and of columns) of the board.
+	 * 
+	 * @return the size of the board.
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * square(int, int) converts row and column indices into a square index.
+	 * 
+	 * @param row is the row index of the position, from 0 (top) to getSize() - 1.
+	 * @param col is the column index of the position, from 0 (left) to getSize() - 1.
+	 * @return the square index, row * getSize() + col.
+	 */
+	public int square(int row, int col) {
+		return row * size + col;
+	}
+	
+	/**
+	 * getElementAt(int, int) returns the character representing the token at the
+	 * given indices of the game board.
+	 * 
+	 * @param row is the row index of the desired position.
+	 * @param col is the column index of the desired position.
+	 * @return the character at the given position in the game board ('W', 'B', or
+	 * '_').
+	 */
+	public char getElementAt(int row, int col) {
+		int square = square(row, col);
+		if (get(wBoard, square))
+			return 'W';
+		else if (get(bBoard, square))
+			return 'B';
+		else
+			return '_';
+	}
+	
+	/**
+	 * getWScore() is an accessor for the score of the human player.
+	 * 
+	 * @return the number of the human player's tokens on the board.
+	 */
+	public int getWScore() {
+		return count(wBoard);
+	}
+	
+	/**
+	 * getBScore() is an accessor for the score of the computer.
+	 * 
+	 * @return the number of the computer's tokens on the board.
+	 */
+	public int getBScore() {
+		return count(bBoard);
+	}
+	
+	/**
+	 * isLegal(char, int, int) returns whether the given player may place a token at
+	 * the given position.
+	 * 
+	 * @param player is 'W' or 'B'.
+	 * @param row is the row index of the position (any integer).
+	 * @param col is the column index of the position (any integer).
+	 * @return true if the position is on the board and a legal move, false otherwise.
+	 */
+	public boolean isLegal(char player, int row, int col) {
+		return row >= 0 && row < size && col >= 0 && col < size
+				&& get((player == 'W') ? wMoves : bMoves, square(row, col));
+	}
+	
+	/**
+	 * hypothetical(char, int, int) returns the increase in the given player's score
+	 * if they placed a token at the given position (see ReversiModel.hypotheticalW).
+	 * 
+	 * @param player is 'W' or 'B'.
+	 * @param row is the row index of the position.
+	 * @param col is the column index of the position.
+	 * @return the number of tokens captured plus the one placed, so 1 if the move
+	 * would capture nothing or the position is occupied.
+	 */
+	public int hypothetical(char player, int row, int col) {
+		int square = square(row, col);
+		if (get(wBoard, square) || get(bBoard, square))
+			return 1;
+		return (player == 'W') ? flipsOf(wBoard, bBoard, row, col, flips, 0)
+				: flipsOf(bBoard, wBoard, row, col, flips, 0);
+	}
+	
+	/**
+	 * getMobility(char) returns the number of legal moves of the given player.
+	 * 
+	 * @param player is 'W' or 'B'.
+	 * @return the number of positions at which the player could place a token.
+	 */
+	public int getMobility(char player) {
+		return count((player == 'W') ? wMoves : bMoves);
+	}
+	
+	/**
+	 * nextLegalMove(char, int) returns the first legal move of the given player at or
+	 * after a square, so that every legal move can be gone through in row-major order
+	 * without allocating anything.
+	 * 
+	 * @param player is 'W' or 'B'.
+	 * @param from is the square index to start from (0 for the first legal move, one
+	 * past the previous move for the next).
+	 * @return the square index of the legal move, or -1 if there is none from there.
+	 */
+	public int nextLegalMove(char player, int from) {
+		long[] moves = (player == 'W') ? wMoves : bMoves;
+		for (int word = from >>> 6; word < words; word++) {
+			long bits = moves[word];
+			if (word == from >>> 6)
+				bits &= -1L << (from & 63);
+			if (bits != 0)
+				return word * 64 + Long.numberOfTrailingZeros(bits);
+		}
+		return -1;
+	}
+	
+	/**
+	 * isGameOver() returns whether neither player has a legal move.
+	 * 
+	 * @return true if the game is over, false otherwise.
+	 */
+	public boolean isGameOver() {
+		for (int i = 0; i < words; i++)
+			if ((wMoves[i] | bMoves[i]) != 0)
+				return false;
+		return true;
+	}
+	
+	/**
+	 * makeMove(char, int) makes a move for the given player at the given position,
+	 * and records it so that it can be undone.
+	 * 
+	 * Legality is not checked, as that is taken care of by the caller, but the
+	 * position must be empty.
+	 * 
+	 * @param player is 'W' or 'B'.
+	 * @param square is the square index of the move (see square(int, int)).
+	 * @return the number of tokens captured.
+	 * @throws IllegalStateException if the position is not empty.
+	 */
+	public int makeMove(char player, int square) throws IllegalStateException {
+		if (get(wBoard, square) || get(bBoard, square))
+			throw new IllegalStateException("The position is not empty");
+		long[] own = (player == 'W') ? wBoard : bBoard;
+		long[] opp = (player == 'W') ? bBoard : wBoard;
+		int base = undoTop * words;
+		int placed = flipsOf(own, opp, square / size, square % size, undoFlips, base);
+		undoFlips[base + (square >>> 6)] |= 1L << square;
+		System.arraycopy(wMoves, 0, undoWMoves, base, words);
+		System.arraycopy(bMoves, 0, undoBMoves, base, words);
+		undoSquares[undoTop] = square;
+		undoPlayers[undoTop++] = player;
+		for (int i = 0; i < words; i++) {
+			own[i] |= undoFlips[base + i];
+			opp[i] &= ~undoFlips[base + i];
+		}
+		updateMoves();
+		return placed - 1;
+	}
+	
+	/**
+	 * undoMove() takes back the most recent move made with makeMove(char, int).
+	 * 
+	 * @throws IllegalStateException if there is no move to undo.
+	 */
+	public void undoMove() throws IllegalStateException {
+		if (undoTop == 0)
+			throw new IllegalStateException("No move to undo");
+		int base = --undoTop * words;
+		int square = undoSquares[undoTop];
+		long[] own = (undoPlayers[undoTop] == 'W') ? wBoard : bBoard;
+		long[] opp = (undoPlayers[undoTop] == 'W') ? bBoard : wBoard;
+		for (int i = 0; i < words; i++) {
+			long changed = undoFlips[base + i];
+			own[i] &= ~changed;
+			opp[i] |= (i == square >>> 6) ? changed & ~(1L << square) : changed;
+		}
+		System.arraycopy(undoWMoves, base, wMoves, 0, words);
+		System.arraycopy(undoBMoves, base, bMoves, 0, words);
+	}
+	
+	/**
+	 * getMoveCount() returns the number of moves on the undo stack.
+	 * 
+	 * @return the number of moves made and not undone.
+	 */
+	public int getMoveCount() {
+		return undoTop;
+	}
+	
+	// Finds the tokens captured by a move at (row, col), written from out[base]; returns how many, plus the placed one
+	private int flipsOf(long[] own, long[] opp, int row, int col, long[] out, int base) {
+		Arrays.fill(out, base, base + words, 0);
+		int placed = 1;
+		for (int dr = -1; dr <= 1; dr++) {
+			for (int dc = -1; dc <= 1; dc++) {
+				if (dr == 0 && dc == 0)
+					continue;
+				int r = row + dr;
+				int c = col + dc;
+				int length = 0;
+				while (r >= 0 && r < size && c >= 0 && c < size && get(opp, square(r, c))) {
+					r += dr;
+					c += dc;
+					length++;
+				}
+				if (length == 0 || r < 0 || r >= size || c < 0 || c >= size || !get(own, square(r, c)))
+					continue;
+				for (int i = 1; i <= length; i++) {
+					int captured = square(row + i * dr, col + i * dc);
+					out[base + (captured >>> 6)] |= 1L << captured;
+				}
+				placed += length;
+			}
+		}
+		return placed;
+	}
+	
+	// Recomputes the legal moves of both players
+	private void updateMoves() {
+		legalMoves(wBoard, bBoard, wMoves);
+		legalMoves(bBoard, wBoard, bMoves);
+	}
+	
+	// Spreads own tokens through runs of opposing ones in every direction; empty squares just past a run are legal
+	private void legalMoves(long[] own, long[] opp, long[] moves) {
+		if (words == 1) {
+			moves[0] = legalMoves(own[0], opp[0]);
+			return;
+		}
+		Arrays.fill(moves, 0);
+		for (int dir : directions) {
+			for (int sign = -1; sign <= 1; sign += 2) {
+				boolean sideways = dir != size;
+				for (int i = 0; i < words; i++)
+					runOpp[i] = sideways ? opp[i] & inner[i] : opp[i];
+				shift(own, sign * dir, run);
+				boolean any = false;
+				for (int i = 0; i < words; i++)
+					any |= (run[i] &= runOpp[i]) != 0;
+				for (int n = 0; n < size - 3 && any; n++) { // A run has at most size - 2 tokens
+					shift(run, sign * dir, step);
+					any = false;
+					for (int i = 0; i < words; i++) {
+						long grown = step[i] & runOpp[i] & ~run[i];
+						run[i] |= grown;
+						any |= grown != 0;
+					}
+				}
+				shift(run, sign * dir, step);
+				for (int i = 0; i < words; i++)
+					moves[i] |= step[i] & valid[i] & ~(own[i] | opp[i]);
+			}
+		}
+	}
+	
+	// The same for a board in a single long, with plain shifts
+	private long legalMoves(long own, long opp) {
+		long empty = valid[0] & ~(own | opp);
+		long innerOpp = opp & inner[0];
+		long moves = 0;
+		for (int dir : directions) {
+			long runOpp = (dir == size) ? opp : innerOpp;
+			long up = (own << dir) & runOpp;
+			long down = (own >>> dir) & runOpp;
+			for (int n = 0; n < size - 3; n++) {
+				up |= (up << dir) & runOpp;
+				down |= (down >>> dir) & runOpp;
+			}
+			moves |= ((up << dir) | (down >>> dir)) & empty;
+		}
+		return moves;
+	}
+	
+	// Shifts a bitset towards higher squares for a positive distance (less than 64), lower squares otherwise
+	private void shift(long[] from, int distance, long[] to) {
+		if (distance > 0) {
+			for (int i = words - 1; i > 0; i--)
+				to[i] = (from[i] << distance) | (from[i - 1] >>> (64 - distance));
+			to[0] = from[0] << distance;
+		} else {
+			distance = -distance;
+			for (int i = 0; i < words - 1; i++)
+				to[i] = (from[i] >>> distance) | (from[i + 1] << (64 - distance));
+			to[words - 1] = from[words - 1] >>> distance;
+		}
+	}
+	
+	private static boolean get(long[] bits, int square) {
+		return (bits[square >>> 6] & (1L << square)) != 0;
+	}
+	
+	private static void set(long[] bits, int square) {
+		bits[square >>> 6] |= 1L << square;
+	}
+	
+	private static int count(long[] bits) {
+		int count = 0;
+		for (long word : bits)
+			count += Long.bitCount(word);
+		return count;
+	}
+	
+}
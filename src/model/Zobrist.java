@@ -0,0 +1,81 @@
+package model;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist hashing of game boards, used to identify positions in a transposition table.
+ * 
+ * Every combination of player and position on the board has a fixed random 64-bit
+ * key, and the hash of a board is the exclusive or of the keys of every token on it.
+ * This means that placing or capturing a single token changes the hash by a single
+ * exclusive or, which is how ReversiModel keeps its hash up to date as moves are made.
+ * The keys are generated from a fixed seed so that hashes are the same in every run.
+ * 
+ * @author Jesse Liu
+ *
+ */
+public final class Zobrist {
+	
+	// Exclusive or of this into a hash marks the computer ('B') as the player to move
+	public static final long B_TO_MOVE;
+	
+	private static final long[] W_KEYS = new long[64];
+	private static final long[] B_KEYS = new long[64];
+	private static final long[] FLIP_KEYS = new long[64]; // Changes a token's colour
+	
+	static {
+		SplittableRandom random = new SplittableRandom(0x5eed_0f_4e7e75L);
+		for (int i = 0; i < 64; i++) {
+			W_KEYS[i] = random.nextLong();
+			B_KEYS[i] = random.nextLong();
+			FLIP_KEYS[i] = W_KEYS[i] ^ B_KEYS[i];
+		}
+		B_TO_MOVE = random.nextLong();
+	}
+	
+	// Utility class, not to be instantiated
+	private Zobrist() {
+	}
+	
+	/**
+	 * hash(long, long) computes the hash of a board from scratch.
+	 * 
+	 * @param wBoard is the bitboard of the human player's tokens.
+	 * @param bBoard is the bitboard of the computer's tokens.
+	 * @return the exclusive or of the keys of every token on the board.
+	 */
+	public static long hash(long wBoard, long bBoard) {
+		long hash = 0;
+		for (long w = wBoard; w != 0; w &= w - 1)
+			hash ^= W_KEYS[Long.numberOfTrailingZeros(w)];
+		for (long b = bBoard; b != 0; b &= b - 1)
+			hash ^= B_KEYS[Long.numberOfTrailingZeros(b)];
+		return hash;
+	}
+	
+	/**
+	 * place(long, char, int) updates a hash for a token placed on an empty position.
+	 * 
+	 * @param hash is the hash of the board before the token is placed.
+	 * @param player is 'W' or 'B', the player whose token is placed.
+	 * @param square is the square index of the position of the token.
+	 * @return the hash of the board with the token added.
+	 */
+	public static long place(long hash, char player, int square) {
+		return hash ^ ((player == 'W') ? W_KEYS[square] : B_KEYS[square]);
+	}
+	
+	/**
+	 * flip(long, long) updates a hash for tokens changing colour.
+	 * 
+	 * @param hash is the hash of the board before the tokens are captured.
+	 * @param flipped is the bitboard of the captured tokens.
+	 * @return the hash of the board with the colour of every captured token changed.
+	 */
+	public static long flip(long hash, long flipped) {
+		for (; flipped != 0; flipped &= flipped - 1)
+			hash ^= FLIP_KEYS[Long.numberOfTrailingZeros(flipped)];
+		return hash;
+	}
+	
+}
@@ -0,0 +1,962 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import controller.AlphaBetaEngine;
+import controller.BookEngine;
+import controller.EndgameSolver;
+import controller.EngineMetrics;
+import controller.Engines;
+import controller.GameArchive;
+import controller.GameArchiveWriter;
+import controller.GameClock;
+import controller.GreedyEngine;
+import controller.LatencyHistogram;
+import controller.LazySmpEngine;
+import controller.MetricsSnapshot;
+import controller.MoveJournal;
+import controller.OpeningBook;
+import controller.OpeningBookBuilder;
+import controller.PatternEvaluator;
+import controller.PonderingEngine;
+import controller.PooledEngine;
+import controller.ReversiController;
+import controller.Sprt;
+import controller.ThreadPools;
+import controller.Tournament;
+import controller.TournamentResult;
+import controller.TranspositionTable;
+import controller.WthorImporter;
+import model.Bitboards;
+import model.ReversiModel;
+import model.Zobrist;
+/**
+ * This class contains the test methods for the engines that choose the computer's
+ * moves in the Reversi game.
+ * 
+ * @author Jesse Liu
+ *
+ */
+class EngineTests {
+
+	/**
+	 * Test method for the greedy engine, which must match the original computer player.
+	 */
+	@Test
+	void testGreedyEngine() {
+		ReversiModel model = new ReversiModel();
+		GreedyEngine engine = new GreedyEngine();
+		model.makeMove('W', 29); // f4
+		assertEquals(engine.chooseMove(model, 'B'), 19); // d3, first of the best moves
+		assertEquals(model.getWScore(), 4);
+		model.setPosW(5, 2);
+		model.setPosW(2, 5);
+		assertEquals(engine.chooseMove(model, 'B'), -1);
+	}
+	
+	/**
+	 * Test method for the alpha-beta engine, which must find the exact result of the
+	 * game once it can search to the end, and leave the model unchanged.
+	 */
+	@Test
+	void testAlphaBetaEngine() {
+		ReversiModel model = new ReversiModel();
+		char player = playRandomly(model, 9, new Random(335));
+		long wBoard = model.getBoard('W');
+		long bBoard = model.getBoard('B');
+		
+		AlphaBetaEngine engine = new AlphaBetaEngine(12);
+		engine.setEndgameEmpties(0); // Search to the end rather than solving
+		int move = engine.chooseMove(model, player);
+		assertEquals(model.getBoard('W'), wBoard);
+		assertEquals(model.getBoard('B'), bBoard);
+		if (model.getLegalMoves(player) == 0) {
+			assertEquals(move, -1);
+			return;
+		}
+		assertTrue((model.getLegalMoves(player) & (1L << move)) != 0);
+		assertEquals(engine.getBestScore(), minimax(model, player) * 1000);
+		assertTrue(engine.getNodes() > 0);
+	}
+	
+	/**
+	 * Test method for the parallel engine, which must find the same exact result as
+	 * a single search near the end of the game.
+	 */
+	@Test
+	void testLazySmpEngine() {
+		ReversiModel model = new ReversiModel();
+		char player = playRandomly(model, 10, new Random(2024));
+		LazySmpEngine engine = new LazySmpEngine(12, 3);
+		engine.setEndgameEmpties(0);
+		assertThrows(IllegalArgumentException.class, () -> new LazySmpEngine(4, 0));
+		long wBoard = model.getBoard('W');
+		int move = engine.chooseMove(model, player);
+		assertEquals(model.getBoard('W'), wBoard);
+		assertEquals(engine.getThreads(), 3);
+		assertTrue(engine.getNodes() >= engine.getMainEngine().getNodes());
+		if (move >= 0) {
+			assertTrue((model.getLegalMoves(player) & (1L << move)) != 0);
+			assertEquals(engine.getMainEngine().getBestScore(), minimax(model, player) * 1000);
+		}
+		assertTrue(engine.getTable().getFillLevel() > 0);
+		
+		// An interrupted search is cut short, but must still wait for its helpers
+		Thread.currentThread().interrupt();
+		engine.chooseMove(model, player);
+		assertTrue(Thread.interrupted());
+		move = engine.chooseMove(model, player);
+		assertEquals(model.getBoard('W'), wBoard);
+		if (move >= 0)
+			assertEquals(engine.getMainEngine().getBestScore(), minimax(model, player) * 1000);
+		engine.shutdown();
+	}
+	
+	/**
+	 * Test method for the exact endgame solver, on its own and as part of the
+	 * alpha-beta engine, from positions with one to ten empty positions left.
+	 */
+	@Test
+	void testEndgameSolver() {
+		Random random = new Random(64);
+		EndgameSolver solver = new EndgameSolver();
+		AlphaBetaEngine engine = new AlphaBetaEngine(1);
+		assertThrows(IllegalArgumentException.class, () -> engine.setEndgameEmpties(65));
+		for (int empties = 1; empties <= 10; empties++) {
+			ReversiModel model = new ReversiModel();
+			char player = playRandomly(model, empties, random);
+			char opponent = (player == 'W') ? 'B' : 'W';
+			long own = model.getBoard(player);
+			int move = solver.solve(own, model.getBoard(opponent));
+			if (model.getLegalMoves(player) == 0) {
+				assertEquals(move, -1);
+				continue;
+			}
+			int exact = minimax(model, player);
+			assertEquals(solver.getBestScore(), exact);
+			model.makeMove(player, move);
+			assertEquals(-minimax(model, opponent), exact); // The move must achieve the score
+			model.undoMove();
+			assertEquals(model.getBoard(player), own);
+			
+			assertEquals(engine.chooseMove(model, player), move);
+			assertEquals(engine.getBestScore(), exact * 1000);
+			assertEquals(engine.getDepthReached(), 64 - model.getWScore() - model.getBScore());
+		}
+	}
+	
+	/**
+	 * Test method for building an opening book, and finding its positions again
+	 * (including symmetric versions of them) once it is written and mapped.
+	 */
+	@Test
+	void testOpeningBook(@TempDir Path directory) throws IOException {
+		OpeningBookBuilder builder = new OpeningBookBuilder(2);
+		Random random = new Random(8);
+		for (int i = 0; i < 5; i++)
+			builder.addSelfPlay(6, random);
+		builder.addGame(new int[] { 20, 21 }, 2); // e3, f3
+		assertThrows(IllegalArgumentException.class, () -> builder.addGame(new int[] { 0 }, 1));
+		Path file = directory.resolve("test.book");
+		builder.write(file);
+		OpeningBook book = new OpeningBook(file);
+		assertEquals(book.getSize(), builder.getSize());
+		assertTrue(book.getSize() > 5);
+		
+		ReversiModel model = new ReversiModel();
+		long entry = book.probe(model.getBoard('W'), model.getBoard('B'));
+		assertNotEquals(entry, 0);
+		assertTrue((model.getLegalMovesW() & (1L << OpeningBook.moveOf(entry))) != 0);
+		assertEquals(OpeningBook.depthOf(entry), 2);
+		model.makeMove('W', 20); // e3
+		long afterE3 = book.probe(model.getBoard('B'), model.getBoard('W'));
+		assertNotEquals(afterE3, 0);
+		model.undoMove();
+		model.makeMove('W', 43); // d6, the same position turned by 180 degrees
+		long afterD6 = book.probe(model.getBoard('B'), model.getBoard('W'));
+		assertEquals(OpeningBook.scoreOf(afterD6), OpeningBook.scoreOf(afterE3));
+		assertEquals(OpeningBook.moveOf(afterD6), 63 - OpeningBook.moveOf(afterE3));
+		assertEquals(book.probe(0x1234L, 0x5678L), 0);
+		
+		BookEngine engine = new BookEngine(book, new GreedyEngine());
+		assertEquals(engine.chooseMove(model, 'B'), OpeningBook.moveOf(afterD6));
+		assertEquals(engine.getBookMoves(), 1);
+		
+		OpeningBookBuilder grown = new OpeningBookBuilder(2);
+		grown.addAll(book);
+		grown.addGame(new int[] { 20, 21 }, 2);
+		assertEquals(grown.getSize(), book.getSize());
+		assertEquals(grown.getSearches(), 0);
+	}
+	
+	/**
+	 * Test method for the pattern evaluator: symmetric positions must score the same,
+	 * weights must survive being written and read back, and the alpha-beta engine
+	 * must play legal moves with it.
+	 */
+	@Test
+	void testPatternEvaluator(@TempDir Path directory) throws IOException {
+		PatternEvaluator evaluator = new PatternEvaluator();
+		ReversiModel model = new ReversiModel();
+		assertEquals(evaluator.evaluate(model.getBoard('W'), model.getBoard('B')), 0);
+		assertEquals(evaluator.getPhase(60), 0);
+		assertEquals(evaluator.getPhase(0), evaluator.getPhases() - 1);
+		assertTrue(evaluator.evaluate(1L, 2L) > evaluator.evaluate(2L, 1L)); // Corner beats C-square
+		
+		char player = playRandomly(model, 30, new Random(10));
+		long own = model.getBoard(player);
+		long opp = model.getBoard(player == 'W' ? 'B' : 'W');
+		int score = evaluator.evaluate(own, opp);
+		assertEquals(evaluator.evaluate(opp, own), -score);
+		for (int symmetry = 0; symmetry < Bitboards.SYMMETRIES; symmetry++)
+			assertEquals(evaluator.evaluate(Bitboards.symmetric(own, symmetry),
+					Bitboards.symmetric(opp, symmetry)), score);
+		
+		Path file = directory.resolve("test.weights");
+		evaluator.write(file);
+		PatternEvaluator loaded = new PatternEvaluator(file);
+		assertEquals(loaded.getPhases(), evaluator.getPhases());
+		assertEquals(loaded.evaluate(own, opp), score);
+		
+		AlphaBetaEngine engine = new AlphaBetaEngine(4);
+		engine.setEvaluator(loaded);
+		int move = engine.chooseMove(model, player);
+		assertTrue((model.getLegalMoves(player) & (1L << move)) != 0);
+		assertEquals(engine.getEvaluator(), loaded);
+	}
+	
+	/**
+	 * Test method for the tournament runner: a deterministic engine playing itself
+	 * from paired, colour-swapped openings must win and lose every opening once (or
+	 * draw it twice), and every move must be timed.
+	 */
+	@Test
+	void testTournament() {
+		Tournament tournament = new Tournament(Engines.fromDescription("greedy"), GreedyEngine::new);
+		tournament.setThreads(2);
+		tournament.setRandomMoves(6);
+		TournamentResult result = tournament.run(20);
+		assertEquals(result.getGames(), 20);
+		assertEquals(result.getWins(), result.getLosses());
+		assertEquals(result.getDiscDifference(), 0);
+		assertEquals(result.getScore(), 0.5);
+		assertEquals(result.getLatency(true).getCount(), result.getLatency(false).getCount());
+		assertTrue(result.getMoves() > 20 * 40);
+		
+		tournament = new Tournament(Engines.fromDescription("alphabeta:2:end=4:tt=1"),
+				Engines.fromDescription("greedy"));
+		tournament.setThreads(3);
+		tournament.setVirtualThreads(true);
+		result = tournament.run(7);
+		assertEquals(result.getGames(), 7);
+		assertTrue(result.getGamesPerSecond() > 0);
+		for (String description : new String[] { "random", "greedy:2", "alphabeta:0", "alphabeta:x",
+				"alphabeta:end=65", "alphabeta:tt=0" })
+			assertThrows(IllegalArgumentException.class, () -> Engines.fromDescription(description));
+		assertThrows(IllegalArgumentException.class, () -> new Tournament(GreedyEngine::new,
+				GreedyEngine::new).setThreads(0));
+		
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(histogram.getPercentile(0.5), 0);
+		for (long nanos = 1; nanos <= 100_000; nanos++)
+			histogram.record(nanos);
+		assertEquals(histogram.getCount(), 100_000);
+		assertEquals(histogram.getMax(), 100_000);
+		assertEquals(histogram.getMean(), 50_000.5, 1e-9);
+		assertEquals(histogram.getPercentile(0.00001), 1);
+		assertEquals(histogram.getPercentile(1), 100_000);
+		long median = histogram.getPercentile(0.5);
+		assertTrue(median >= 50_000 && median <= 50_000 * 17 / 16, "median " + median);
+		long p99 = histogram.getPercentile(0.99);
+		assertTrue(p99 >= 99_000 && p99 <= 100_000, "p99 " + p99);
+	}
+	
+	/**
+	 * Test method for the sequential probability ratio test: clear results must be
+	 * decided the right way, pairs must be matched up whatever order their games
+	 * arrive in, and a match must stop as soon as the test decides.
+	 */
+	@Test
+	void testSprt() {
+		Sprt sprt = new Sprt(0, 10, 0.05, 0.05);
+		assertEquals(sprt.getDecision(), Sprt.Decision.UNDECIDED);
+		sprt.gameFinished(1, 5);
+		assertEquals(sprt.getPairs(), 0);
+		sprt.gameFinished(0, 0);
+		assertEquals(sprt.getPairCounts()[3], 1); // A win and a draw
+		for (int game = 2; game < 400; game++)
+			sprt.gameFinished(game, (game % 4 == 3) ? -2 : 2); // 3 wins in 4 games
+		assertEquals(sprt.getDecision(), Sprt.Decision.ACCEPT_ELO1);
+		assertTrue(sprt.getElo() > 100 && sprt.getElo() < 300, "Elo " + sprt.getElo());
+		assertTrue(sprt.getLlr() >= sprt.getUpperBound());
+		
+		Sprt even = new Sprt(0, 10, 0.05, 0.05);
+		for (int game = 0; game < 4000 && even.getDecision() == Sprt.Decision.UNDECIDED; game++)
+			even.gameFinished(game, (game % 2 == 0) ? 4 : -4); // Every opening wins for one side
+		assertEquals(even.getDecision(), Sprt.Decision.ACCEPT_ELO0);
+		assertEquals(even.getElo(), 0, 1e-9);
+		assertThrows(IllegalArgumentException.class, () -> new Sprt(10, 0, 0.05, 0.05));
+		assertThrows(IllegalArgumentException.class, () -> new Sprt(0, 10, 0, 0.05));
+		
+		Sprt match = new Sprt(0, 200, 0.1, 0.1);
+		Tournament tournament = new Tournament(Engines.fromDescription("alphabeta:2:end=0"), GreedyEngine::new);
+		tournament.setThreads(2);
+		tournament.setListener((game, difference) -> {
+			match.gameFinished(game, difference);
+			if (match.getDecision() != Sprt.Decision.UNDECIDED)
+				tournament.stop();
+		});
+		TournamentResult result = tournament.run(1000);
+		assertEquals(match.getDecision(), Sprt.Decision.ACCEPT_ELO1);
+		assertTrue(result.getGames() < 1000);
+	}
+	
+	/**
+	 * Test method for the WTHOR importer: random games written in the WTHOR format
+	 * must be replayed move for move with the right results, on one thread or
+	 * several, and a game with an illegal move must be skipped.
+	 */
+	@Test
+	void testWthorImporter(@TempDir Path directory) throws IOException {
+		assertEquals(WthorImporter.toSquare(56), Bitboards.square(4, 2)); // f5 opens as c5 here
+		assertEquals(WthorImporter.fromSquare(Bitboards.square(4, 2)), 56);
+		assertEquals(WthorImporter.toSquare(90), -1);
+		
+		int games = 40;
+		ByteBuffer file = ByteBuffer.allocate(16 + (games + 1) * 68).order(ByteOrder.LITTLE_ENDIAN);
+		file.putInt(4, games + 1);
+		Random random = new Random(15);
+		long moves = 0;
+		long firstWins = 0;
+		for (int game = 0; game < games; game++) {
+			ReversiModel model = new ReversiModel();
+			char player = 'W';
+			int offset = 16 + game * 68;
+			for (int ply = 0; !model.isGameOver(); player = (player == 'W') ? 'B' : 'W') {
+				long legal = model.getLegalMoves(player);
+				if (legal == 0)
+					continue;
+				for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--)
+					legal &= legal - 1;
+				int square = Long.numberOfTrailingZeros(legal);
+				model.makeMove(player, square);
+				file.put(offset + 8 + ply++, (byte) WthorImporter.fromSquare(square));
+				moves++;
+			}
+			file.put(offset + 6, (byte) model.getWScore());
+			if (2 * model.getWScore() > 64)
+				firstWins++;
+		}
+		file.put(16 + games * 68 + 8, (byte) 11); // a1 is never a legal first move
+		Path path = directory.resolve("test.wtb");
+		Files.write(path, file.array());
+		
+		for (int threads = 1; threads <= 3; threads += 2) {
+			WthorImporter importer = new WthorImporter(path);
+			importer.setThreads(threads);
+			long[] counts = new long[3]; // Positions, illegal moves, first player's wins
+			importer.importGames(() -> (model, player, move, result) -> {
+				synchronized (counts) {
+					counts[0]++;
+					if ((model.getLegalMoves(player) & (1L << move)) == 0)
+						counts[1]++;
+					if (model.getWScore() + model.getBScore() == 4 && result > 0)
+						counts[2]++;
+				}
+			});
+			assertEquals(importer.getGames(), games + 1);
+			assertEquals(importer.getImported(), games);
+			assertEquals(importer.getSkipped(), 1);
+			assertEquals(importer.getPositions(), moves);
+			assertArrayEquals(counts, new long[] { moves, 0, firstWins });
+		}
+		Files.write(path, new byte[10]);
+		assertThrows(IOException.class, () -> new WthorImporter(path));
+	}
+	
+	/**
+	 * Test method for the game archive: games from a tournament, from the controller
+	 * and with passes must read back exactly, the archive must grow when reopened, and
+	 * a half-written game must be cut off. A controller playing game after game must
+	 * archive each one and keep its metrics.
+	 */
+	@Test
+	void testGameArchive(@TempDir Path directory) throws IOException {
+		Path games = directory.resolve("test.games");
+		Path index = directory.resolve("test.index");
+		Random random = new Random(16);
+		ReversiModel passing = new ReversiModel();
+		int passes = 0;
+		while (passes == 0) { // Random games until one has a pass
+			passing.copyFrom(new ReversiModel());
+			playRandomly(passing, 0, random);
+			for (int i = 1; i < passing.getMoveCount(); i++)
+				passes += (passing.getPlayerAt(i) == passing.getPlayerAt(i - 1)) ? 1 : 0;
+		}
+		try (GameArchiveWriter writer = new GameArchiveWriter(games, index)) {
+			Tournament tournament = new Tournament(GreedyEngine::new, Engines.fromDescription("alphabeta:1"));
+			tournament.setThreads(2);
+			tournament.setArchive(writer);
+			tournament.run(6);
+			assertEquals(writer.append(passing, 7, 8), 6);
+		}
+		try (GameArchiveWriter writer = new GameArchiveWriter(games, index)) {
+			assertEquals(writer.getSize(), 7);
+			ReversiModel model = new ReversiModel();
+			ReversiController controller = new ReversiController(model);
+			controller.setArchive(writer);
+			playToEnd(controller, model);
+			assertEquals(writer.getSize(), 8);
+		}
+		
+		GameArchive archive = new GameArchive(games, index);
+		assertEquals(archive.getSize(), 8);
+		ReversiModel model = new ReversiModel();
+		int firstEngineWhite = 0;
+		for (int game = 0; game < archive.getSize(); game++) {
+			archive.replay(game, model);
+			assertTrue(model.isGameOver());
+			assertEquals(archive.getResult(game), model.getWScore() - model.getBScore());
+			assertEquals(archive.getMoves(game).remaining(), archive.getMoveCount(game));
+			assertEquals(archive.getMoves(game).get(3), archive.getMove(game, 3));
+			assertTrue(Math.abs(archive.getTimestamp(game) - System.currentTimeMillis()) < 600_000);
+			if (game < 6)
+				firstEngineWhite += (archive.getFirstPlayer(game) == 1) ? 1 : 0;
+		}
+		assertEquals(firstEngineWhite, 3);
+		assertEquals(archive.getFirstPlayer(6), 7);
+		assertEquals(archive.getSecondPlayer(6), 8);
+		assertEquals(archive.getMoveCount(6), passing.getMoveCount() + passes);
+		archive.replay(6, model);
+		assertEquals(model.getBoard('W'), passing.getBoard('W'));
+		assertEquals(archive.getFirstPlayer(7), 0);
+		assertThrows(IllegalArgumentException.class, () -> archive.getMove(0, 200));
+		assertThrows(IllegalArgumentException.class, () -> archive.getResult(8));
+		
+		long length = Files.size(games);
+		Files.write(games, new byte[30], StandardOpenOption.APPEND); // A game cut short
+		Files.write(index, new byte[3], StandardOpenOption.APPEND);
+		try (GameArchiveWriter writer = new GameArchiveWriter(games, index)) {
+			assertEquals(writer.getSize(), 8);
+		}
+		assertEquals(Files.size(games), length);
+		assertEquals(new GameArchive(games, index).getSize(), 8);
+		assertThrows(IOException.class, () -> new GameArchive(index, games));
+		
+		try (GameArchiveWriter writer = new GameArchiveWriter(games, index)) { // One controller, game after game
+			ReversiModel first = new ReversiModel();
+			ReversiController controller = new ReversiController(first);
+			controller.setArchive(writer);
+			playToEnd(controller, first);
+			long moves = controller.getMetrics().snapshot().getMoves();
+			controller.setModel(new ReversiModel(first)); // The same game, loaded back
+			assertTrue(controller.isGameOver());
+			assertEquals(writer.getSize(), 9);
+			ReversiModel second = new ReversiModel();
+			controller.newGame(second);
+			playToEnd(controller, second);
+			assertEquals(writer.getSize(), 10);
+			assertEquals(controller.getMetrics().snapshot().getMoves(), moves + second.getMoveCount());
+		}
+	}
+	
+	/**
+	 * Test method for the move journal: games played by controllers, with undos and
+	 * redos, must be recovered exactly, ended games must not be, a torn record must be
+	 * cut off, compaction must keep only the games going, and commits must be shared.
+	 */
+	@Test
+	void testMoveJournal(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("moves.journal");
+		ReversiModel first = new ReversiModel();
+		ReversiModel second = new ReversiModel();
+		long length;
+		try (MoveJournal journal = new MoveJournal(file, 0)) {
+			assertTrue(journal.getRecovered().isEmpty());
+			ReversiController going = new ReversiController(first, new AlphaBetaEngine(2));
+			ReversiController ended = new ReversiController(second);
+			long goingId = journal.newGame();
+			long endedId = journal.newGame();
+			going.setJournal(journal, goingId);
+			ended.setJournal(journal, endedId);
+			for (int turn = 0; turn < 6; turn++) {
+				for (ReversiController controller : new ReversiController[] { going, ended }) {
+					ReversiModel model = (controller == going) ? first : second;
+					int square = Long.numberOfTrailingZeros(model.getLegalMovesW());
+					controller.humanTurn(square / 8, square % 8);
+					controller.computerTurn();
+				}
+			}
+			assertTrue(going.undoTurn());
+			assertTrue(going.undoTurn());
+			assertTrue(going.redoTurn());
+			journal.end(endedId);
+			journal.sync();
+			assertEquals(journal.getDurable(), journal.getAppended());
+			assertEquals(journal.getCommits(), 1);
+			length = Files.size(file);
+		}
+		
+		Files.write(file, new byte[7], StandardOpenOption.APPEND); // A record cut short
+		try (MoveJournal journal = new MoveJournal(file, 0)) {
+			assertEquals(Files.size(file), length);
+			assertEquals(journal.getRecovered().size(), 1);
+			ReversiModel recovered = journal.getRecovered().get(0L);
+			assertEquals(recovered.getBoard('W'), first.getBoard('W'));
+			assertEquals(recovered.getBoard('B'), first.getBoard('B'));
+			assertEquals(recovered.getMoveCount(), first.getMoveCount());
+			assertEquals(journal.newGame(), 1);
+			journal.compact();
+			assertEquals(journal.getCompactions(), 1);
+			assertEquals(Files.size(file), 16 + 16 * first.getMoveCount());
+		}
+		try (MoveJournal journal = new MoveJournal(file, 1_000_000)) {
+			assertEquals(journal.getRecovered().get(0L).getHash(), first.getHash());
+			for (int i = 0; i < 1000; i++)
+				journal.end(100 + i);
+			journal.sync();
+			assertTrue(journal.getCommits() < 100);
+		}
+		
+		Files.write(file, new byte[16], StandardOpenOption.APPEND); // A zero record fails its checksum
+		try (MoveJournal journal = new MoveJournal(file, 0)) {
+			assertEquals(journal.getRecovered().size(), 1);
+		}
+		Path other = Files.write(directory.resolve("other"), new byte[40]);
+		assertThrows(IOException.class, () -> new MoveJournal(other, 0));
+	}
+	
+	/**
+	 * Test method for pondering: once every reply has been pondered, the computer's
+	 * move must come from pondering and be the move the engine would search for, and a
+	 * position that was not pondered must be searched as a miss.
+	 */
+	@Test
+	void testPonderingEngine() throws InterruptedException {
+		PonderingEngine engine = new PonderingEngine(new AlphaBetaEngine(4));
+		ReversiModel model = new ReversiModel();
+		ReversiController controller = new ReversiController(model, engine);
+		Random random = new Random(335);
+		try {
+			for (int turn = 0; turn < 4; turn++) {
+				controller.ponder();
+				controller.ponder(); // Asking again must not start over
+				for (int wait = 0; wait < 1000 && engine.isPondering(); wait++)
+					Thread.sleep(10);
+				assertFalse(engine.isPondering());
+				long legal = model.getLegalMovesW();
+				for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--)
+					legal &= legal - 1;
+				int square = Long.numberOfTrailingZeros(legal);
+				controller.humanTurn(square / 8, square % 8);
+				int expected = new AlphaBetaEngine(4).chooseMove(model, 'B');
+				assertEquals(controller.computerTurn(), (char) ((expected & 7) + 'a') + "" + ((expected >> 3) + 1));
+			}
+			assertEquals(engine.getPonderHits(), 4);
+			assertEquals(engine.getPonderMisses(), 0);
+			
+			controller.ponder();
+			ReversiModel elsewhere = new ReversiModel(0x0000001818000000L, 0x0000002000000000L);
+			int move = engine.chooseMove(elsewhere, 'B');
+			assertTrue((elsewhere.getLegalMovesB() & (1L << move)) != 0);
+			assertEquals(engine.getPonderMisses(), 1);
+			assertEquals(engine.getPonderHitRate(), 0.8, 1e-9);
+			assertEquals(engine.chooseMove(elsewhere, 'B'), move); // No pondering since, so neither a hit nor a miss
+			assertEquals(engine.getPonderMisses(), 1);
+			
+			engine.ponder(new ReversiModel(), 'B');
+			Thread.currentThread().interrupt(); // Stopping the pondering must still wait for it
+			engine.chooseMove(elsewhere, 'B');
+			assertTrue(Thread.interrupted());
+			assertFalse(engine.isPondering());
+		} finally {
+			engine.shutdown();
+		}
+		new ReversiController(new ReversiModel()).ponder(); // Engines that do not ponder ignore it
+	}
+	
+	/**
+	 * Test method for searches with a deadline: a search far too deep for its budget
+	 * must return a legal move in time and count as cut short, one that finishes in
+	 * time must not, and a whole game on a clock must spend more on the midgame and
+	 * never run out of time.
+	 */
+	@Test
+	void testDeadline() {
+		ReversiModel model = new ReversiModel();
+		AlphaBetaEngine deep = new AlphaBetaEngine(40);
+		deep.setEndgameEmpties(0);
+		long begin = System.nanoTime();
+		int move = deep.chooseMove(model, 'W', begin + 50_000_000);
+		long elapsed = System.nanoTime() - begin;
+		assertTrue(elapsed < 500_000_000, "Deadline overrun: " + elapsed + " ns");
+		assertTrue(deep.wasStopped());
+		assertTrue((model.getLegalMovesW() & (1L << move)) != 0);
+		assertTrue(deep.getDepthReached() >= 1);
+		assertEquals(model.getHash(), new ReversiModel().getHash());
+		
+		ReversiController controller = new ReversiController(model, deep);
+		controller.humanTurn(2, 4);
+		assertNotNull(controller.computerTurn(Duration.ofMillis(20)));
+		assertEquals(controller.getTimedTurns(), 1);
+		assertEquals(controller.getCutShort(), 1);
+		ReversiController quick = new ReversiController(new ReversiModel(), new AlphaBetaEngine(1));
+		quick.humanTurn(2, 4);
+		assertNotNull(quick.computerTurn(Duration.ofSeconds(10)));
+		assertEquals(quick.getCutShort(), 0);
+		assertEquals(quick.getTurnTimes().getCount(), 1);
+		
+		GameClock clock = new GameClock(Duration.ofSeconds(2));
+		ReversiModel opening = new ReversiModel();
+		ReversiModel midgame = new ReversiModel(0x00003c3c3c3c0000L, 0x000000000000ff00L);
+		assertTrue(clock.budget(midgame) > 2 * clock.budget(opening));
+		assertThrows(IllegalArgumentException.class, () -> new GameClock(Duration.ZERO));
+		
+		ReversiModel game = new ReversiModel();
+		ReversiController timed = new ReversiController(game, deep);
+		while (!timed.isGameOver()) {
+			if (timed.humanCanMove()) {
+				int square = Long.numberOfTrailingZeros(game.getLegalMovesW());
+				timed.humanTurn(square / 8, square % 8);
+			}
+			timed.computerTurn(clock);
+		}
+		assertFalse(clock.isFlagged());
+		assertTrue(clock.getMoves() > 10);
+		assertTrue(timed.getCutShort() > 0);
+	}
+	
+	/**
+	 * Test method for the controller's asynchronous computer turn: it must play the
+	 * same move as a synchronous turn, leave the model alone while searching, and, when
+	 * cancelled, make no move and free its thread (and a PooledEngine's) at once. An
+	 * engine failing with an Error must fail the future rather than leave it pending.
+	 */
+	@Test
+	void testAsyncComputerTurn() throws Exception {
+		ExecutorService executor = ThreadPools.newFixedPool(1, "test-engine");
+		try {
+			ReversiModel model = new ReversiModel();
+			ReversiController controller = new ReversiController(model, new AlphaBetaEngine(3));
+			ReversiController sync = new ReversiController(new ReversiModel(), new AlphaBetaEngine(3));
+			controller.humanTurn(2, 4);
+			sync.humanTurn(2, 4);
+			CompletableFuture<String> move = controller.computerTurnAsync(executor);
+			assertEquals(move.get(10, TimeUnit.SECONDS), sync.computerTurn());
+			assertEquals(model.getBScore(), 3);
+			assertFalse(move.cancel(true));
+			
+			AlphaBetaEngine deep = new AlphaBetaEngine(40);
+			deep.setEndgameEmpties(0);
+			ReversiModel thinking = new ReversiModel();
+			ReversiController slow = new ReversiController(thinking, deep);
+			slow.humanTurn(2, 4);
+			long hash = thinking.getHash();
+			CompletableFuture<String> cancelled = slow.computerTurnAsync(executor);
+			Thread.sleep(50);
+			assertFalse(cancelled.isDone());
+			assertTrue(cancelled.cancel(true));
+			long begin = System.nanoTime();
+			executor.submit(() -> null).get(10, TimeUnit.SECONDS);
+			long freed = System.nanoTime() - begin;
+			assertTrue(freed < 500_000_000, "Cancelled search kept its thread: " + freed + " ns");
+			assertEquals(thinking.getHash(), hash);
+			assertTrue(cancelled.isCancelled());
+			
+			PooledEngine pooled = new PooledEngine(() -> {
+				AlphaBetaEngine engine = new AlphaBetaEngine(40);
+				engine.setEndgameEmpties(0);
+				return engine;
+			}, 1);
+			ReversiController served = new ReversiController(new ReversiModel(), pooled);
+			served.humanTurn(2, 4);
+			CompletableFuture<String> abandoned = served.computerTurnAsync(executor);
+			Thread.sleep(50);
+			abandoned.cancel(true);
+			ReversiModel next = new ReversiModel();
+			next.makeMove('W', 2 * 8 + 4);
+			begin = System.nanoTime();
+			assertTrue(pooled.chooseMove(next, 'B', System.nanoTime() + 20_000_000) >= 0);
+			freed = System.nanoTime() - begin;
+			assertTrue(freed < 500_000_000, "Cancelled search kept the pool's thread: " + freed + " ns");
+			pooled.shutdown();
+			
+			ReversiController failing = new ReversiController(new ReversiModel(), (position, player) -> {
+				throw new AssertionError("Broken engine");
+			});
+			failing.humanTurn(2, 4);
+			ExecutionException failure = assertThrows(ExecutionException.class,
+					() -> failing.computerTurnAsync(executor).get(10, TimeUnit.SECONDS));
+			assertTrue(failure.getCause() instanceof AssertionError);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Test method for the engine metrics: a controller's turns, moves, and searches
+	 * (including those run by a PooledEngine's threads, and a LazySmpEngine's counted
+	 * once per move) must be counted in its metrics and the process-wide ones,
+	 * snapshots must not change afterwards, and the metrics must be readable over JMX.
+	 */
+	@Test
+	void testEngineMetrics() throws Exception {
+		long globalMoves = EngineMetrics.global().getMoves();
+		ReversiModel model = new ReversiModel();
+		ReversiController controller = new ReversiController(model, new AlphaBetaEngine(3));
+		controller.humanTurn(2, 4);
+		assertNotNull(controller.computerTurn());
+		assertFalse(controller.isGameOver());
+		MetricsSnapshot snapshot = controller.getMetrics().snapshot();
+		assertEquals(snapshot.getMoves(), 2);
+		assertEquals(snapshot.getSearches(), 1);
+		assertTrue(snapshot.getNodes() > 0);
+		assertTrue(snapshot.getNodesPerSecond() > 0);
+		assertEquals(snapshot.getMaxDepth(), 3);
+		assertTrue(snapshot.getTableProbes() > 0);
+		assertTrue(snapshot.getTableHitRate() >= 0 && snapshot.getTableHitRate() <= 1);
+		assertEquals(snapshot.getComputerTurns().getCount(), 1);
+		assertEquals(snapshot.getHumanTurns().getCount(), 1);
+		assertEquals(snapshot.getGameOverChecks().getCount(), 1);
+		assertTrue(EngineMetrics.global().getMoves() >= globalMoves + 2);
+		
+		int square = Long.numberOfTrailingZeros(model.getLegalMovesW());
+		controller.humanTurn(square / 8, square % 8);
+		controller.computerTurn();
+		assertEquals(snapshot.getMoves(), 2);
+		assertEquals(controller.getMetrics().getMoves(), 4);
+		
+		PooledEngine pooled = new PooledEngine(() -> new AlphaBetaEngine(2), 1);
+		ReversiController served = new ReversiController(new ReversiModel(), pooled);
+		served.humanTurn(2, 4);
+		served.computerTurn();
+		assertEquals(served.getMetrics().getSearches(), 1);
+		assertTrue(served.getMetrics().getNodes() > 0);
+		pooled.shutdown();
+		
+		LazySmpEngine parallel = new LazySmpEngine(4, 4);
+		ReversiController shared = new ReversiController(new ReversiModel(), parallel);
+		shared.humanTurn(2, 4);
+		shared.computerTurn();
+		assertEquals(shared.getMetrics().getSearches(), 1); // One search for the move, not one per thread
+		assertEquals(shared.getMetrics().snapshot().getMaxDepth(), 4);
+		assertEquals(shared.getMetrics().getNodes(), parallel.getNodes());
+		parallel.shutdown();
+		
+		ObjectName name = controller.getMetrics().register("test-" + System.nanoTime());
+		try {
+			assertEquals(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Moves"), 4L);
+			assertThrows(IllegalStateException.class,
+					() -> controller.getMetrics().register(name.getKeyProperty("name").replace("\"", "")));
+			ManagementFactory.getPlatformMBeanServer().invoke(name, "reset", null, null);
+			assertEquals(controller.getMetrics().getMoves(), 0);
+		} finally {
+			EngineMetrics.unregister(name);
+		}
+	}
+	
+	/**
+	 * Test method for the flight recorder events: none must be recorded with the
+	 * default settings, and once enabled, every move, search, and check for the end of
+	 * the game must be, with its details.
+	 */
+	@Test
+	void testFlightRecorderEvents(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("default.jfr");
+		try (Recording recording = new Recording(Configuration.getConfiguration("default"))) {
+			recording.start();
+			playShortGame();
+			recording.stop();
+			recording.dump(file);
+		}
+		assertTrue(RecordingFile.readAllEvents(file).stream()
+				.noneMatch(e -> e.getEventType().getName().startsWith("reversi.")));
+		
+		file = dir.resolve("enabled.jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable("reversi.Move");
+			recording.enable("reversi.Search");
+			recording.enable("reversi.GameOverCheck");
+			recording.start();
+			playShortGame();
+			recording.stop();
+			recording.dump(file);
+		}
+		int moves = 0;
+		int searches = 0;
+		int checks = 0;
+		for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+			switch (event.getEventType().getName()) {
+			case "reversi.Move":
+				moves++;
+				if (event.getChar("player") == 'W' && event.getInt("square") == 2 * 8 + 4)
+					assertEquals(event.getInt("flipped"), 1);
+				break;
+			case "reversi.Search":
+				searches++;
+				assertEquals(event.getInt("depth"), 2);
+				assertTrue(event.getLong("nodes") > 0);
+				assertTrue(event.getInt("move") >= 0);
+				break;
+			case "reversi.GameOverCheck":
+				checks++;
+				assertFalse(event.getBoolean("over"));
+				break;
+			}
+		}
+		assertEquals(moves, 4);
+		assertEquals(searches, 2);
+		assertEquals(checks, 2);
+	}
+	
+	/**
+	 * Test method for a whole game played by the controller with an alpha-beta engine.
+	 */
+	@Test
+	void testControllerWithEngine() {
+		ReversiModel model = new ReversiModel();
+		ReversiController controller = new ReversiController(model, new AlphaBetaEngine(3));
+		GreedyEngine human = new GreedyEngine();
+		assertThrows(IllegalArgumentException.class, () -> new AlphaBetaEngine(0));
+		while (!controller.isGameOver()) {
+			int square = human.chooseMove(model, 'W');
+			if (square >= 0)
+				controller.humanTurn(square >> 3, square & 7);
+			controller.computerTurn();
+		}
+		assertEquals(model.getLegalMovesW() | model.getLegalMovesB(), 0);
+		assertNull(controller.computerTurn());
+	}
+	
+	/**
+	 * Test method for the model's incrementally updated Zobrist hash.
+	 */
+	@Test
+	void testZobristHash() {
+		ReversiModel model = new ReversiModel();
+		long start = model.getHash();
+		assertEquals(start, Zobrist.hash(model.getBoard('W'), model.getBoard('B')));
+		model.makeMove('W', 20);
+		model.makeMove('B', 19);
+		model.makeMove('W', 18);
+		assertEquals(model.getHash(), Zobrist.hash(model.getBoard('W'), model.getBoard('B')));
+		model.undoMove();
+		model.undoMove();
+		model.undoMove();
+		assertEquals(model.getHash(), start);
+		model.setPosB(3, 3); // Occupied position, so the hash is recomputed
+		assertEquals(model.getHash(), Zobrist.hash(model.getBoard('W'), model.getBoard('B')));
+	}
+	
+	/**
+	 * Test method for storing, finding, and replacing transposition table entries.
+	 */
+	@Test
+	void testTranspositionTable() {
+		TranspositionTable table = new TranspositionTable(1);
+		assertThrows(IllegalArgumentException.class, () -> new TranspositionTable(0));
+		assertEquals(table.getCapacity(), 1 << 16);
+		assertEquals(table.probe(12345), 0);
+		table.store(12345, 6, TranspositionTable.LOWER_BOUND, -1500, 63);
+		long entry = table.probe(12345);
+		assertEquals(TranspositionTable.scoreOf(entry), -1500);
+		assertEquals(TranspositionTable.moveOf(entry), 63);
+		assertEquals(TranspositionTable.depthOf(entry), 6);
+		assertEquals(TranspositionTable.typeOf(entry), TranspositionTable.LOWER_BOUND);
+		
+		long other = 12345 + (1L << 40); // Same bucket, different position
+		table.store(other, 2, TranspositionTable.EXACT, 7, -1);
+		assertEquals(TranspositionTable.depthOf(table.probe(12345)), 6); // Deeper entry kept
+		assertEquals(TranspositionTable.moveOf(table.probe(other)), -1);
+		table.store(other + (1L << 41), 1, TranspositionTable.EXACT, 8, 0);
+		assertEquals(table.probe(other), 0); // Always-replace entry overwritten
+		assertEquals(table.getProbes(), 5);
+		assertEquals(table.getHitRate(), 3 / 5.0, 1e-9);
+		assertEquals(table.getCollisionRate(), 1 / 5.0, 1e-9);
+		assertEquals(table.getFillLevel(), 2.0 / table.getCapacity(), 1e-9);
+		table.clear();
+		assertEquals(table.probe(12345), 0);
+		assertEquals(table.getFillLevel(), 0, 1e-9);
+	}
+	
+	// Plays random legal moves until the given number of empty positions is left
+	private static char playRandomly(ReversiModel model, int empties, Random random) {
+		char player = 'W';
+		while (64 - model.getWScore() - model.getBScore() > empties && !model.isGameOver()) {
+			long moves = model.getLegalMoves(player);
+			if (moves != 0) {
+				for (int skip = random.nextInt(Long.bitCount(moves)); skip > 0; skip--)
+					moves &= moves - 1;
+				model.makeMove(player, Long.numberOfTrailingZeros(moves));
+			}
+			player = (player == 'W') ? 'B' : 'W';
+		}
+		return player;
+	}
+	
+	// Exact final disc difference for player with perfect play, without any pruning
+	private static int minimax(ReversiModel model, char player) {
+		char opponent = (player == 'W') ? 'B' : 'W';
+		long moves = model.getLegalMoves(player);
+		if (moves == 0) {
+			if (model.getLegalMoves(opponent) == 0)
+				return Long.bitCount(model.getBoard(player)) - Long.bitCount(model.getBoard(opponent));
+			return -minimax(model, opponent);
+		}
+		int best = -64;
+		while (moves != 0) {
+			model.makeMove(player, Long.numberOfTrailingZeros(moves));
+			best = Math.max(best, -minimax(model, opponent));
+			model.undoMove();
+			moves &= moves - 1;
+		}
+		return best;
+	}
+	
+	// Plays two turns each with the controller, checking for the end of the game before each computer turn
+	private static void playShortGame() {
+		ReversiModel model = new ReversiModel();
+		ReversiController controller = new ReversiController(model, new AlphaBetaEngine(2));
+		controller.humanTurn(2, 4);
+		assertFalse(controller.isGameOver());
+		controller.computerTurn();
+		int square = Long.numberOfTrailingZeros(model.getLegalMovesW());
+		controller.humanTurn(square / 8, square % 8);
+		assertFalse(controller.isGameOver());
+		controller.computerTurn();
+	}
+	
+	// Plays a game out, the human always taking the first legal move
+	private static void playToEnd(ReversiController controller, ReversiModel model) {
+		while (!controller.isGameOver()) {
+			int square = Long.numberOfTrailingZeros(model.getLegalMovesW());
+			if (square < 64)
+				controller.humanTurn(square >> 3, square & 7);
+			controller.computerTurn();
+		}
+	}
+	
+}
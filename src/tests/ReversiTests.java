@@ -1,9 +1,31 @@
 package tests;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import controller.Coordinates;
+import controller.GreedyEngine;
+import controller.LatencyHistogram;
+import controller.Perft;
+import controller.PooledEngine;
 import controller.ReversiController;
+import controller.SessionStore;
+import controller.VariantController;
+import model.Bitboards;
 import model.ReversiModel;
+import model.SizedReversiModel;
+import view.GameServer;
+import view.LoadGenerator;
 /**
  * This class contains all of the test methods for the controller and model of the
  * Reversi game.
@@ -171,4 +193,384 @@ class ReversiTests {
 		assertNull(controller.computerTurn());
 	}
 	
+	/**
+	 * Test method for the whole-board legal move masks and the colour-symmetric
+	 * methods of the Reversi model.
+	 */
+	@Test
+	void testLegalMoveMasks() {
+		ReversiModel model = new ReversiModel();
+		ReversiController controller = new ReversiController(model);
+		
+		// e3, f4, c5 and d6 for the human, d3, c4, f5 and e6 for the computer
+		assertEquals(model.getLegalMovesW(), (1L << 20) | (1L << 29) | (1L << 34) | (1L << 43));
+		assertEquals(model.getLegalMovesB(), (1L << 19) | (1L << 26) | (1L << 37) | (1L << 44));
+		assertTrue(model.isLegalB(2, 3));
+		assertFalse(model.isLegalB(2, 4));
+		assertFalse(model.isLegalB(3, 3));
+		assertEquals(model.hypotheticalW(2, 4), 2);
+		assertEquals(model.hypotheticalW(2, 3), 1);
+		assertEquals(model.hypotheticalW(3, 3), 1);
+		
+		controller.humanTurn(2, 4);
+		for (int i = 0; i < 8; i++) {
+			for (int j = 0; j < 8; j++) {
+				long bit = 1L << (i * 8 + j);
+				assertEquals((model.getLegalMovesW() & bit) != 0, model.isLegalW(i, j));
+				assertEquals((model.getLegalMovesB() & bit) != 0, model.isLegalB(i, j));
+				assertEquals(model.isLegalB(i, j), model.hypotheticalB(i, j) > 1);
+			}
+		}
+		
+		ReversiModel copy = new ReversiModel(model.getBoard('W'), model.getBoard('B'));
+		assertEquals(copy.getLegalMovesW(), model.getLegalMovesW());
+		assertEquals(copy.getLegalMovesB(), model.getLegalMovesB());
+		assertEquals(copy.getHash(), model.getHash());
+		assertThrows(IllegalArgumentException.class, () -> new ReversiModel(1L, 3L));
+	}
+	
+	/**
+	 * Test method for making and taking back moves with the model's undo stack, and
+	 * the controller's undo and redo of whole turns.
+	 */
+	@Test
+	void testUndoStack() {
+		ReversiModel model = new ReversiModel();
+		ReversiController controller = new ReversiController(model);
+		
+		assertEquals(model.peekUndo(), '_');
+		assertThrows(IllegalStateException.class, () -> model.undoMove());
+		assertEquals(model.makeMove('W', 20), 1L << 28); // e3 captures e4
+		assertEquals(model.getWScore(), 4);
+		long wMoves = model.getLegalMovesW();
+		long bMoves = model.getLegalMovesB();
+		assertEquals(model.makeMove('B', 19), 1L << 27); // d3 captures d4
+		assertEquals(model.peekUndo(), 'B');
+		model.undoMove();
+		assertEquals(model.getElementAt(3, 3), 'W');
+		assertEquals(model.getElementAt(2, 3), '_');
+		assertEquals(model.getLegalMovesW(), wMoves);
+		assertEquals(model.getLegalMovesB(), bMoves);
+		assertEquals(model.peekRedo(), 'B');
+		model.redoMove();
+		assertEquals(model.getBScore(), 3);
+		assertThrows(IllegalStateException.class, () -> model.redoMove());
+		model.undoMove();
+		model.undoMove();
+		assertEquals(model.getWScore(), 2);
+		assertEquals(model.getBScore(), 2);
+		assertFalse(controller.undoTurn());
+		
+		controller.humanTurn(2, 4);
+		controller.computerTurn();
+		char[][] afterTurn = controller.reconstructBoard();
+		assertTrue(controller.undoTurn());
+		assertEquals(model.getWScore(), 2);
+		assertEquals(model.getBScore(), 2);
+		assertTrue(controller.redoTurn());
+		assertArrayEquals(controller.reconstructBoard(), afterTurn);
+		assertFalse(controller.redoTurn());
+		model.setPosW(0, 0); // Moves made this way clear the undo stack
+		assertEquals(model.peekUndo(), '_');
+	}
+	
+	/**
+	 * Test method for counting lines of play from the initial position (perft),
+	 * which must match the published counts.
+	 */
+	@Test
+	void testPerft() {
+		ReversiModel model = new ReversiModel();
+		long wBoard = model.getBoard('W');
+		long bBoard = model.getBoard('B');
+		for (int depth = 0; depth <= 8; depth++) {
+			assertEquals(Perft.count(wBoard, bBoard, depth), Perft.knownCount(depth));
+			assertEquals(Perft.count(model, 'W', depth), Perft.knownCount(depth));
+			assertEquals(Perft.countParallel(wBoard, bBoard, depth, 3), Perft.knownCount(depth));
+		}
+		assertEquals(model.getBoard('W'), wBoard);
+		assertEquals(model.peekUndo(), '_');
+		assertEquals(Perft.knownCount(15), -1);
+	}
+	
+	/**
+	 * Test method for the eight symmetries of the board.
+	 */
+	@Test
+	void testBoardSymmetries() {
+		ReversiModel model = new ReversiModel();
+		model.makeMove('W', 19); // d3
+		long wBoard = model.getBoard('W');
+		long bBoard = model.getBoard('B');
+		assertEquals(Bitboards.symmetric(wBoard, 0), wBoard);
+		assertEquals(Bitboards.symmetricSquare(1, 1), 57); // b1 turned upside down is b8
+		assertEquals(Bitboards.symmetricSquare(1, 2), 6); // b1 reflected is g1
+		assertEquals(Bitboards.symmetricSquare(1, 4), 8); // b1 reflected diagonally is a2
+		for (int symmetry = 0; symmetry < Bitboards.SYMMETRIES; symmetry++) {
+			int inverse = Bitboards.inverseSymmetry(symmetry);
+			assertEquals(Bitboards.symmetric(Bitboards.symmetric(wBoard, symmetry), inverse), wBoard);
+			for (int square = 0; square < 64; square++)
+				assertEquals(Bitboards.symmetric(1L << square, symmetry),
+						1L << Bitboards.symmetricSquare(square, symmetry));
+			long w = Bitboards.symmetric(wBoard, symmetry);
+			long b = Bitboards.symmetric(bBoard, symmetry);
+			assertEquals(Bitboards.legalMoves(b, w), Bitboards.symmetric(model.getLegalMovesB(), symmetry));
+		}
+	}
+	
+	/**
+	 * Test method for the game server: sessions playing at once must all get replies
+	 * matching their own copies of their games, and bad commands must be refused.
+	 */
+	@Test
+	void testGameServer() throws IOException, InterruptedException {
+		PooledEngine engine = new PooledEngine(GreedyEngine::new, 2);
+		try (GameServer server = new GameServer(0, engine)) {
+			server.start();
+			InetSocketAddress address = new InetSocketAddress("localhost", server.getPort());
+			LatencyHistogram latency = new LatencyHistogram();
+			long[] totals = LoadGenerator.run(address, 8, 3, 335, latency);
+			assertEquals(totals[0], 24);
+			assertEquals(totals[2], 0); // No mismatches
+			assertEquals(latency.getCount(), totals[1]);
+			assertEquals(server.getMoves(), totals[1]);
+			assertEquals(server.getTotalSessions(), 8);
+			
+			try (SocketChannel channel = SocketChannel.open(address)) {
+				BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+				Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8);
+				out.write("MOVE a1\nMOVE f4\nBOARD\nUNDO\nUNDO\nJUMP\nQUIT\n");
+				out.flush();
+				assertEquals(in.readLine(), "ERR illegal move");
+				assertTrue(in.readLine().matches("OK \\d+ \\d+ PLAY [a-h][1-8]"));
+				assertEquals(in.readLine().length(), 3 + 64);
+				assertEquals(in.readLine(), "OK 2 2 PLAY");
+				assertEquals(in.readLine(), "ERR nothing to undo");
+				assertEquals(in.readLine(), "ERR unknown command");
+				assertEquals(in.readLine(), "BYE");
+			}
+		} finally {
+			engine.shutdown();
+		}
+	}
+	
+	/**
+	 * Test method for the session store, alone and parking the games of a server.
+	 */
+	@Test
+	void testSessionStore(@TempDir Path directory) throws IOException, InterruptedException {
+		try (SessionStore store = new SessionStore(2, directory.resolve("store.spill"))) {
+			ReversiModel[] games = new ReversiModel[5];
+			long[] ids = new long[games.length];
+			for (int i = 0; i < games.length; i++) {
+				games[i] = new ReversiModel();
+				ids[i] = store.create();
+				for (int ply = 0; ply <= i * 3 && !games[i].isGameOver(); ply++) {
+					char player = (games[i].getLegalMovesW() != 0 && ply % 2 == 0) ? 'W' : 'B';
+					if (games[i].getLegalMoves(player) == 0)
+						player = (player == 'W') ? 'B' : 'W';
+					games[i].makeMove(player, Long.numberOfTrailingZeros(games[i].getLegalMoves(player)));
+				}
+				store.save(ids[i], games[i], 'W');
+			}
+			assertEquals(store.getSize(), 5);
+			assertEquals(store.getResident(), 2);
+			assertEquals(store.getSpills(), 3);
+			
+			ReversiModel loaded = new ReversiModel();
+			for (int i = 0; i < games.length; i++) { // The spilled games come back, moves and all
+				assertEquals(store.load(ids[i], loaded), 'W');
+				assertEquals(loaded.getBoard('W'), games[i].getBoard('W'));
+				assertEquals(loaded.getBoard('B'), games[i].getBoard('B'));
+				assertEquals(loaded.getHash(), games[i].getHash());
+				assertEquals(loaded.getMoveCount(), games[i].getMoveCount());
+				for (int ply = 0; ply < loaded.getMoveCount(); ply++) {
+					assertEquals(loaded.getMoveAt(ply), games[i].getMoveAt(ply));
+					assertEquals(loaded.getPlayerAt(ply), games[i].getPlayerAt(ply));
+				}
+			}
+			assertEquals(store.getResident(), 2);
+			assertTrue(store.getReloads() >= 3);
+			
+			assertTrue(store.remove(ids[0])); // Spilled
+			assertTrue(store.remove(ids[4])); // In memory
+			assertFalse(store.remove(ids[4]));
+			assertEquals(store.load(ids[0], loaded), '_');
+			assertEquals(store.load(ids[4], loaded), '_');
+			assertEquals(store.load(99, loaded), '_');
+			assertThrows(IllegalArgumentException.class, () -> store.save(ids[0], games[0], 'W'));
+			assertEquals(store.getSize(), 3);
+		}
+		
+		PooledEngine engine = new PooledEngine(GreedyEngine::new, 2);
+		try (GameServer server = new GameServer(0, engine);
+				SessionStore store = new SessionStore(3, directory.resolve("server.spill"))) {
+			server.setSessionStore(store);
+			server.start();
+			InetSocketAddress address = new InetSocketAddress("localhost", server.getPort());
+			long[] totals = LoadGenerator.run(address, 8, 2, 335, new LatencyHistogram());
+			assertEquals(totals[0], 16);
+			assertEquals(totals[2], 0); // No mismatches
+			assertTrue(store.getSpills() > 0);
+			
+			try (SocketChannel channel = SocketChannel.open(address)) { // Undo works across parked commands
+				BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+				Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8);
+				out.write("MOVE f4\nUNDO\nUNDO\nQUIT\n");
+				out.flush();
+				assertTrue(in.readLine().matches("OK \\d+ \\d+ PLAY [a-h][1-8]"));
+				assertEquals(in.readLine(), "OK 2 2 PLAY");
+				assertEquals(in.readLine(), "ERR nothing to undo");
+				assertEquals(in.readLine(), "BYE");
+			}
+		} finally {
+			engine.shutdown();
+		}
+	}
+	
+	/**
+	 * Test method for the model of other board sizes: on 8x8 it must agree with
+	 * ReversiModel move for move, and on 6x6, 10x10, and 16x16 every legal move and
+	 * capture must match a square-by-square check of the rules, with undo restoring the
+	 * board. Also checks the coordinates past 'h' and row 9, and a whole 10x10 game.
+	 */
+	@Test
+	void testSizedReversiModel() {
+		assertThrows(IllegalArgumentException.class, () -> new SizedReversiModel(7));
+		assertThrows(IllegalArgumentException.class, () -> new SizedReversiModel(28));
+		Random random = new Random(25);
+		
+		SizedReversiModel sized = new SizedReversiModel(8);
+		ReversiModel standard = new ReversiModel();
+		char player = 'W';
+		while (!standard.isGameOver()) {
+			long legal = 0;
+			for (int square = sized.nextLegalMove(player, 0); square >= 0; square = sized.nextLegalMove(player,
+					square + 1))
+				legal |= 1L << square;
+			assertEquals(legal, standard.getLegalMoves(player));
+			if (legal != 0) {
+				int square = randomSquare(legal, random);
+				assertEquals(sized.makeMove(player, square), Long.bitCount(standard.makeMove(player, square)));
+			}
+			assertEquals(sized.getWScore(), standard.getWScore());
+			assertEquals(sized.getBScore(), standard.getBScore());
+			player = (player == 'W') ? 'B' : 'W';
+		}
+		assertTrue(sized.isGameOver());
+		
+		for (int size : new int[] { 6, 10, 16 }) {
+			SizedReversiModel model = new SizedReversiModel(size);
+			char[][] board = new char[size][size];
+			for (char[] row : board)
+				Arrays.fill(row, '_');
+			board[size / 2 - 1][size / 2 - 1] = board[size / 2][size / 2] = 'W';
+			board[size / 2 - 1][size / 2] = board[size / 2][size / 2 - 1] = 'B';
+			player = 'W';
+			int passes = 0;
+			while (passes < 2) {
+				int count = 0;
+				for (int r = 0; r < size; r++) {
+					for (int c = 0; c < size; c++) {
+						assertEquals(model.getElementAt(r, c), board[r][c]);
+						boolean legal = captures(board, player, r, c) > 0;
+						assertEquals(model.isLegal(player, r, c), legal);
+						count += legal ? 1 : 0;
+					}
+				}
+				assertEquals(model.getMobility(player), count);
+				if (count == 0) {
+					passes++;
+				} else {
+					passes = 0;
+					int square = -1;
+					for (int pick = random.nextInt(count); pick >= 0; pick--)
+						square = model.nextLegalMove(player, square + 1);
+					int row = square / size;
+					int col = square % size;
+					assertEquals(model.makeMove(player, square), captures(board, player, row, col));
+					play(board, player, row, col);
+				}
+				player = (player == 'W') ? 'B' : 'W';
+			}
+			assertTrue(model.isGameOver());
+			while (model.getMoveCount() > 0)
+				model.undoMove();
+			assertEquals(model.getWScore(), 2);
+			assertEquals(model.getBScore(), 2);
+			assertEquals(model.getMobility('W'), 4);
+		}
+		
+		assertEquals(Coordinates.format(9, 9), "j10");
+		assertEquals(Coordinates.format(2, 3), "d3");
+		assertEquals(Coordinates.parseRow("p16"), 15);
+		assertEquals(Coordinates.parseColumn("P16"), 15);
+		assertEquals(Coordinates.parseRow("a0"), -1);
+		assertEquals(Coordinates.parseColumn("ab"), -1);
+		assertEquals(Coordinates.parseColumn("k"), -1);
+		
+		VariantController controller = new VariantController(new SizedReversiModel(10));
+		assertThrows(IllegalArgumentException.class, () -> controller.humanTurn(10, 0));
+		while (!controller.isGameOver()) {
+			char[][] current = controller.reconstructBoard();
+			assertEquals(current.length, 10);
+			if (controller.humanCanMove()) {
+				int square = 0;
+				while (captures(current, 'W', square / 10, square % 10) == 0)
+					square++;
+				controller.humanTurn(square / 10, square % 10);
+			}
+			String move = controller.computerTurn();
+			assertTrue(move == null || Coordinates.parseRow(move) >= 0);
+		}
+		assertTrue(controller.getWScore() + controller.getBScore() > 4);
+	}
+	
+	// Picks one of the squares of a bitboard at random
+	private static int randomSquare(long squares, Random random) {
+		for (int skip = random.nextInt(Long.bitCount(squares)); skip > 0; skip--)
+			squares &= squares - 1;
+		return Long.numberOfTrailingZeros(squares);
+	}
+	
+	// Tokens a move would capture, by walking out from the square in every direction
+	private static int captures(char[][] board, char player, int row, int col) {
+		if (board[row][col] != '_')
+			return 0;
+		int total = 0;
+		for (int dr = -1; dr <= 1; dr++)
+			for (int dc = -1; dc <= 1; dc++)
+				total += run(board, player, row, col, dr, dc);
+		return total;
+	}
+	
+	// Places a token and turns over the tokens it captures
+	private static void play(char[][] board, char player, int row, int col) {
+		for (int dr = -1; dr <= 1; dr++)
+			for (int dc = -1; dc <= 1; dc++)
+				for (int i = run(board, player, row, col, dr, dc); i > 0; i--)
+					board[row + i * dr][col + i * dc] = player;
+		board[row][col] = player;
+	}
+	
+	// Length of the run of opposing tokens from a square in one direction, if closed off by the player's own
+	private static int run(char[][] board, char player, int row, int col, int dr, int dc) {
+		if (dr == 0 && dc == 0)
+			return 0;
+		int length = 0;
+		int r = row + dr;
+		int c = col + dc;
+		while (inside(board, r, c) && board[r][c] != '_' && board[r][c] != player) {
+			r += dr;
+			c += dc;
+			length++;
+		}
+		return (length > 0 && inside(board, r, c) && board[r][c] == player) ? length : 0;
+	}
+	
+	private static boolean inside(char[][] board, int row, int col) {
+		return row >= 0 && row < board.length && col >= 0 && col < board.length;
+	}
+	
 }
+
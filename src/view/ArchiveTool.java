@@ -0,0 +1,85 @@
+package view;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Random;
+
+import controller.GameArchive;
+
+/**
+ * Command-line tool that reads a game archive (see GameArchive), made of the files
+ * archive.games and archive.index, as written by TournamentTool.
+ * 
+ * Given a game number, the tool prints that game: its players, when it was played,
+ * its result, and its moves, in the same coordinates as the game itself ("--" for a
+ * pass). Otherwise it prints how many games the archive holds and how they ended,
+ * with how fast the whole archive could be scanned and how fast games could be
+ * fetched in a random order.
+ * 
+ * Usage: ArchiveTool archive [game]
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class ArchiveTool {
+	
+	/**
+	 * main(String[]) prints one game of the archive, or a summary of all of them.
+	 * 
+	 * @param args are the archive path (without ".games" or ".index") and an
+	 * optional game number.
+	 * @throws IOException if the archive cannot be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: ArchiveTool archive [game]");
+			return;
+		}
+		GameArchive archive = new GameArchive(Paths.get(args[0] + ".games"), Paths.get(args[0] + ".index"));
+		if (args.length > 1) {
+			int game = Integer.parseInt(args[1]);
+			System.out.println("Game " + game + " of " + archive.getSize() + ", played "
+					+ Instant.ofEpochMilli(archive.getTimestamp(game)) + ": player "
+					+ archive.getFirstPlayer(game) + " (W) vs player " + archive.getSecondPlayer(game)
+					+ " (B), " + archive.getResult(game) + " discs for W");
+			StringBuilder moves = new StringBuilder();
+			for (int ply = 0; ply < archive.getMoveCount(game); ply++) {
+				int move = archive.getMove(game, ply);
+				moves.append(ply == 0 ? "" : (ply % 20 == 0) ? "\n" : " ");
+				if (move == GameArchive.PASS)
+					moves.append("--");
+				else
+					moves.append((char) ((move & 7) + 'a')).append((move >> 3) + 1);
+			}
+			System.out.println(moves);
+			return;
+		}
+		
+		long begin = System.nanoTime();
+		long moves = 0;
+		int wins = 0;
+		int draws = 0;
+		for (int game = 0; game < archive.getSize(); game++) {
+			moves += archive.getMoveCount(game);
+			wins += (archive.getResult(game) > 0) ? 1 : 0;
+			draws += (archive.getResult(game) == 0) ? 1 : 0;
+		}
+		double scanSeconds = Math.max((System.nanoTime() - begin) / 1e9, 1e-9);
+		int size = Math.max(archive.getSize(), 1);
+		Random random = new Random(335);
+		long checksum = 0;
+		begin = System.nanoTime();
+		for (int i = 0; i < archive.getSize(); i++) {
+			int game = random.nextInt(archive.getSize());
+			if (archive.getMoveCount(game) > 0)
+				checksum += archive.getMoves(game).get(0);
+		}
+		double fetchSeconds = Math.max((System.nanoTime() - begin) / 1e9, 1e-9);
+		System.out.printf("%d games, %.1f moves per game; W won %.1f%%, drew %.1f%%%n", archive.getSize(),
+				(double) moves / size, 100.0 * wins / size, 100.0 * draws / size);
+		System.out.printf("Scanned at %.0f games/s, fetched at random at %.0f games/s (checksum %d)%n",
+				archive.getSize() / scanSeconds, archive.getSize() / fetchSeconds, checksum);
+	}
+	
+}
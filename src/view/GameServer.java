@@ -0,0 +1,435 @@
+package view;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import controller.EngineMetrics;
+import controller.Engines;
+import controller.GameArchiveWriter;
+import controller.LatencyHistogram;
+import controller.MoveJournal;
+import controller.PooledEngine;
+import controller.ReversiController;
+import controller.SessionStore;
+import controller.ThreadPools;
+import model.ReversiModel;
+
+/**
+ * Network server hosting many games at once, each played by a remote client as the
+ * human player against the computer, over a simple line protocol.
+ * 
+ * Every connection is a session with its own model and controller, served on a
+ * thread of its own (a virtual thread where the Java runtime has them), which spends
+ * almost all its time waiting for the client. The computer's moves are all chosen by
+ * one PooledEngine, which runs at most a fixed number of searches at once, so however
+ * many games are being played, the searches cannot starve the connections.
+ * 
+ * The client sends one command per line and receives one line in reply. A session
+ * starts with a new game. Commands:
+ * 
+ * NEW starts a new game. MOVE e3 places the human player's token at e3 (column
+ * 'a'-'h', row '1'-'8', as printed by ReversiView); the computer then replies,
+ * moving again as long as the human has to pass. UNDO takes back the human's last
+ * turn. BOARD returns the board. QUIT ends the session. With a move journal (see
+ * MoveJournal), GAME returns the id of the game in the journal, and RESUME id takes
+ * up a game recovered from the journal after the server died, from where it was.
+ * 
+ * Replies: "OK w b state moves..." gives the number of tokens of each player, PLAY
+ * or OVER, and the computer's moves since the command, if any (none if it had to
+ * pass); BOARD is answered by "OK" and the 64 squares row by row ('W', 'B' or '_');
+ * GAME by "OK" and the id; QUIT by "BYE"; a command that cannot be carried out by
+ * "ERR" and the reason.
+ * 
+ * With a SessionStore, a session keeps no model between commands: its game is
+ * saved to the store after every command, with the player to move, and loaded back
+ * into the session's controller for the next one, so that idle clients cost a
+ * record in the store (or nothing, once spilled to disk) rather than a model.
+ * 
+ * With a move journal, every move of every session is appended to the journal, and
+ * a game is ended in the journal once its session starts another game or ends, so
+ * the games recovered on restart are those cut off by the server dying.
+ * 
+ * With a move budget, every computer move is searched until its deadline at most
+ * (see ReversiController.computerTurn(Duration)), counting the time spent waiting
+ * for a search thread, so the computer's replies keep to the budget under any load.
+ * 
+ * Usage: GameServer [port=3355] [engine=alphabeta:4] [engineThreads] [archive] [storedGames]
+ * [journal] [moveBudgetMs]
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class GameServer implements Closeable {
+	
+	private static final long JOURNAL_COMMIT_NANOS = 2_000_000; // Group commit interval of main's journal
+	
+	private final ServerSocketChannel server;
+	private final PooledEngine engine;
+	private final ExecutorService connections = ThreadPools.newPerTaskPool("reversi-session");
+	private final AtomicInteger activeSessions = new AtomicInteger();
+	private final AtomicLong totalSessions = new AtomicLong();
+	private final AtomicLong moves = new AtomicLong();
+	private final AtomicLong cutShort = new AtomicLong();
+	private GameArchiveWriter archive;
+	private SessionStore store;
+	private MoveJournal journal;
+	private Duration moveBudget; // Null for untimed computer moves
+	private final Map<Long, ReversiModel> recovered = new ConcurrentHashMap<>(); // Games not yet resumed
+	
+	// Constructor (reads in the port to listen on, 0 for any free one, and the engine)
+	public GameServer(int port, PooledEngine engine) throws IOException {
+		this.engine = engine;
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+	}
+	
+	/**
+	 * setArchive(GameArchiveWriter) sets the archive that every finished game is
+	 * added to (see ReversiController.setArchive(GameArchiveWriter)).
+	 * 
+	 * @param archive is the archive, or null to keep no record of games.
+	 */
+	public void setArchive(GameArchiveWriter archive) {
+		this.archive = archive;
+	}
+	
+	/**
+	 * setSessionStore(SessionStore) sets the store that sessions park their games in
+	 * between commands. It must be set before start().
+	 * 
+	 * @param store is the store, or null to keep every session's game in a model.
+	 */
+	public void setSessionStore(SessionStore store) {
+		this.store = store;
+	}
+	
+	/**
+	 * setJournal(MoveJournal) sets the journal that sessions append their moves to,
+	 * and makes the games recovered from it available to RESUME. It must be set before
+	 * start().
+	 * 
+	 * @param journal is the journal, or null to keep no journal.
+	 */
+	public void setJournal(MoveJournal journal) {
+		this.journal = journal;
+		recovered.clear();
+		if (journal != null)
+			recovered.putAll(journal.getRecovered());
+	}
+	
+	/**
+	 * setMoveBudget(Duration) sets the time each of the computer's moves may take.
+	 * 
+	 * @param moveBudget is the time per move, or null to let every search finish.
+	 */
+	public void setMoveBudget(Duration moveBudget) {
+		this.moveBudget = moveBudget;
+	}
+	
+	/**
+	 * start() starts accepting connections, on a thread of its own, and returns.
+	 */
+	public void start() {
+		Thread acceptor = new Thread(() -> {
+			try {
+				while (true) {
+					SocketChannel channel = server.accept();
+					connections.execute(() -> serve(channel));
+				}
+			} catch (ClosedChannelException e) {
+				// The server was closed
+			} catch (IOException e) {
+				System.out.println("Stopped accepting connections: " + e.getMessage());
+			}
+		}, "reversi-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+	
+	/**
+	 * getPort() returns the port the server listens on.
+	 * 
+	 * @return the port number, which was picked by the system if 0 was asked for.
+	 * @throws IOException if the server is closed.
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) server.getLocalAddress()).getPort();
+	}
+	
+	/**
+	 * getActiveSessions() returns the number of clients connected.
+	 * 
+	 * @return the number of open sessions.
+	 */
+	public int getActiveSessions() {
+		return activeSessions.get();
+	}
+	
+	/**
+	 * getTotalSessions() returns the number of clients served since the start.
+	 * 
+	 * @return the number of sessions opened.
+	 */
+	public long getTotalSessions() {
+		return totalSessions.get();
+	}
+	
+	/**
+	 * getMoves() returns the number of human moves played since the start.
+	 * 
+	 * @return the number of MOVE commands carried out.
+	 */
+	public long getMoves() {
+		return moves.get();
+	}
+	
+	/**
+	 * getCutShort() returns the number of computer moves that took their whole
+	 * budget, so that their searches were cut short.
+	 * 
+	 * @return the number of timed moves that reached their deadline.
+	 */
+	public long getCutShort() {
+		return cutShort.get();
+	}
+	
+	/**
+	 * getLatency() returns the time taken over each of the computer's moves.
+	 * 
+	 * @return the histogram of the engine's move times, including any wait for a
+	 * free search thread.
+	 */
+	public LatencyHistogram getLatency() {
+		return engine.getLatency();
+	}
+	
+	/**
+	 * close() stops accepting connections. Sessions already open carry on until their
+	 * clients leave.
+	 */
+	@Override
+	public void close() throws IOException {
+		server.close();
+		connections.shutdown();
+	}
+	
+	// Serves one client until it quits or disconnects
+	private void serve(SocketChannel channel) {
+		activeSessions.incrementAndGet();
+		totalSessions.incrementAndGet();
+		long session = -1;
+		long game = (journal != null) ? journal.newGame() : -1;
+		try (channel) {
+			channel.socket().setTcpNoDelay(true);
+			BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+			Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8);
+			ReversiModel model = new ReversiModel();
+			ReversiController controller = new ReversiController(model, engine);
+			controller.setArchive(archive);
+			controller.setJournal(journal, game);
+			if (store != null)
+				session = store.create();
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				if (store != null) { // Load the parked game
+					model = new ReversiModel();
+					if (store.load(session, model) == '_')
+						throw new IllegalStateException("The game of session " + session + " was lost");
+					controller.setModel(model);
+				}
+				String[] command = line.trim().split("\\s+");
+				String reply;
+				switch (command[0].toUpperCase()) {
+				case "NEW":
+					if (journal != null) {
+						journal.end(game);
+						game = journal.newGame();
+					}
+					model = new ReversiModel();
+					controller.newGame(model);
+					controller.setJournal(journal, game);
+					reply = state(controller, "");
+					break;
+				case "GAME":
+					reply = (journal != null) ? "OK " + game : "ERR no journal";
+					break;
+				case "RESUME":
+					ReversiModel resumed = null;
+					if (journal != null && command.length > 1 && command[1].matches("\\d{1,18}"))
+						resumed = recovered.remove(Long.parseLong(command[1]));
+					if (resumed == null) {
+						reply = "ERR no such game";
+						break;
+					}
+					journal.end(game);
+					game = Long.parseLong(command[1]);
+					model = resumed;
+					controller.newGame(model);
+					controller.setJournal(journal, game);
+					int last = model.getMoveCount() - 1;
+					boolean computerToMove = !controller.isGameOver()
+							&& ((last >= 0 && model.getPlayerAt(last) == 'W') || !controller.humanCanMove());
+					reply = state(controller, computerToMove ? computerReplies(controller) : "");
+					break;
+				case "MOVE":
+					reply = move(controller, (command.length > 1) ? command[1].toLowerCase() : "");
+					break;
+				case "UNDO":
+					reply = controller.undoTurn() ? state(controller, "") : "ERR nothing to undo";
+					break;
+				case "BOARD":
+					StringBuilder board = new StringBuilder("OK ");
+					for (char[] row : controller.reconstructBoard())
+						board.append(row);
+					reply = board.toString();
+					break;
+				case "QUIT":
+					reply = "BYE";
+					break;
+				default:
+					reply = "ERR unknown command";
+				}
+				if (store != null) { // Park the game until the next command
+					store.save(session, model, toMove(model));
+					model = null;
+					controller.setModel(null);
+				}
+				out.write(reply);
+				out.write('\n');
+				out.flush();
+				if (reply.equals("BYE"))
+					break;
+			}
+		} catch (IOException e) {
+			// The client went away, which ends the session like QUIT
+		} finally {
+			activeSessions.decrementAndGet();
+			try {
+				if (session >= 0)
+					store.remove(session);
+				if (game >= 0)
+					journal.end(game);
+			} catch (IOException e) {
+				System.out.println("Could not end session " + session + ", game " + game + ": " + e.getMessage());
+			}
+		}
+	}
+	
+	// Plays the human's move and the computer's replies, returns the reply line
+	private String move(ReversiController controller, String coordinates) {
+		if (controller.isGameOver())
+			return "ERR game over";
+		if (coordinates.length() != 2)
+			return "ERR illegal move";
+		try {
+			controller.humanTurn(coordinates.charAt(1) - '1', coordinates.charAt(0) - 'a');
+		} catch (IllegalArgumentException e) {
+			return "ERR illegal move";
+		}
+		moves.incrementAndGet();
+		return state(controller, computerReplies(controller));
+	}
+	
+	// Plays the computer's turns until the human can move or the game is over, returns its moves
+	private String computerReplies(ReversiController controller) {
+		StringBuilder replies = new StringBuilder();
+		long cutBefore = controller.getCutShort();
+		do {
+			String reply = (moveBudget != null) ? controller.computerTurn(moveBudget) : controller.computerTurn();
+			if (reply != null)
+				replies.append(' ').append(reply);
+		} while (!controller.isGameOver() && !controller.humanCanMove());
+		cutShort.addAndGet(controller.getCutShort() - cutBefore);
+		return replies.toString();
+	}
+	
+	// Player to move next: the opponent of the last player to move, unless that opponent has to pass
+	private static char toMove(ReversiModel model) {
+		int last = model.getMoveCount() - 1;
+		char next = (last >= 0 && model.getPlayerAt(last) == 'W') ? 'B' : 'W';
+		char other = (next == 'W') ? 'B' : 'W';
+		return (model.getLegalMoves(next) == 0 && model.getLegalMoves(other) != 0) ? other : next;
+	}
+	
+	// Reply line giving the scores, whether the game is over, and the computer's moves
+	private static String state(ReversiController controller, String replies) {
+		return "OK " + controller.getWScore() + " " + controller.getBScore() + " "
+				+ (controller.isGameOver() ? "OVER" : "PLAY") + replies;
+	}
+	
+	/**
+	 * main(String[]) runs the server until the program is stopped, printing how busy
+	 * it is every ten seconds. The process-wide engine metrics are also readable over
+	 * JMX, as Reversi:type=EngineMetrics,name="global".
+	 * 
+	 * @param args are the optional port, engine description (see Engines), number of
+	 * search threads (one per processor by default), game archive path (see
+	 * TournamentTool, "-" for none), and number of games kept in memory by a session
+	 * store (by default, every session keeps its own model, "-" for the default), move
+	 * journal path ("-" for none), and time budget per computer move in milliseconds.
+	 * @throws IOException if the server cannot listen on the port.
+	 * @throws InterruptedException if the main thread is interrupted.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : 3355;
+		String description = (args.length > 1) ? args[1] : "alphabeta:4";
+		int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		PooledEngine engine = new PooledEngine(Engines.fromDescription(description), threads);
+		GameServer server = new GameServer(port, engine);
+		if (args.length > 3 && !args[3].equals("-"))
+			server.setArchive(new GameArchiveWriter(Paths.get(args[3] + ".games"), Paths.get(args[3] + ".index")));
+		SessionStore store = null;
+		if (args.length > 4 && !args[4].equals("-")) {
+			Path spill = Files.createTempFile("reversi-sessions", ".spill");
+			spill.toFile().deleteOnExit();
+			store = new SessionStore(Integer.parseInt(args[4]), spill);
+			server.setSessionStore(store);
+		}
+		if (args.length > 5 && !args[5].equals("-")) {
+			MoveJournal journal = new MoveJournal(Paths.get(args[5]), JOURNAL_COMMIT_NANOS);
+			server.setJournal(journal);
+			System.out.println(journal.getRecovered().size() + " game(s) recovered from " + args[5]);
+		}
+		if (args.length > 6)
+			server.setMoveBudget(Duration.ofMillis(Long.parseLong(args[6])));
+		EngineMetrics metrics = EngineMetrics.global();
+		metrics.register("global");
+		server.start();
+		System.out.println("Serving " + description + " on port " + server.getPort() + " with " + threads
+				+ " search thread(s), " + (ThreadPools.hasVirtualThreads() ? "virtual" : "platform")
+				+ " threads per session");
+		long lastMoves = 0;
+		while (true) {
+			Thread.sleep(10_000);
+			long total = server.getMoves();
+			LatencyHistogram latency = server.getLatency();
+			System.out.printf("%d sessions open, %d served, %.1f moves/s, computer move p50 %.2f ms,"
+					+ " p99 %.2f ms%n", server.getActiveSessions(), server.getTotalSessions(),
+					(total - lastMoves) / 10.0, latency.getPercentile(0.5) / 1e6, latency.getPercentile(0.99) / 1e6);
+			lastMoves = total;
+			System.out.println(metrics.snapshot());
+			if (server.moveBudget != null)
+				System.out.println(server.getCutShort() + " computer moves cut short by the budget so far");
+			if (store != null)
+				System.out.printf("%d games stored, %d in memory, %d spilled and %d reloaded so far%n",
+						store.getSize(), store.getResident(), store.getSpills(), store.getReloads());
+		}
+	}
+	
+}
@@ -0,0 +1,179 @@
+package view;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import controller.Engines;
+import controller.LatencyHistogram;
+import controller.PooledEngine;
+import controller.ThreadPools;
+import model.ReversiModel;
+
+/**
+ * Load generator for GameServer: opens many sessions at once, each playing games
+ * with random legal moves, and measures how fast the server answers.
+ * 
+ * Every session runs on a thread of its own (a virtual thread where the Java
+ * runtime has them) and keeps its own copy of the game, so that it knows which moves
+ * are legal and can check every reply: a reply whose scores do not match the copy
+ * is counted as a mismatch. The time from sending each move to receiving the reply
+ * is recorded, and at the end the tool prints the sessions, games and moves per
+ * second, and the percentiles of the reply times.
+ * 
+ * With "local" as the host, a server is started in the same process (on a free port,
+ * with the given engine), so that the whole test needs nothing but this tool.
+ * 
+ * Usage: LoadGenerator host port [sessions=100] [games=10] [engine=alphabeta:4] [seed=335]
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class LoadGenerator {
+	
+	/**
+	 * main(String[]) plays the games and prints the results.
+	 * 
+	 * @param args are the server's host and port, and optionally the number of
+	 * sessions, the number of games per session, the engine of a local server, and the
+	 * random seed.
+	 * @throws Exception if the server cannot be reached or started.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: LoadGenerator host port [sessions] [games] [engine] [seed]");
+			return;
+		}
+		int sessions = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+		int games = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+		String engine = (args.length > 4) ? args[4] : "alphabeta:4";
+		long seed = (args.length > 5) ? Long.parseLong(args[5]) : 335;
+		GameServer local = null;
+		InetSocketAddress address;
+		if (args[0].equals("local")) {
+			local = new GameServer(Integer.parseInt(args[1]), new PooledEngine(Engines.fromDescription(engine),
+					Runtime.getRuntime().availableProcessors()));
+			local.start();
+			address = new InetSocketAddress("localhost", local.getPort());
+		} else {
+			address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+		}
+		System.out.println(sessions + " sessions of " + games + " games against " + address + "\n");
+		
+		long begin = System.nanoTime();
+		LatencyHistogram latency = new LatencyHistogram();
+		long[] totals = run(address, sessions, games, seed, latency);
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		System.out.printf("%d games, %d moves in %.1f s: %.1f games/s, %.0f moves/s, %d mismatches%n", totals[0],
+				totals[1], seconds, totals[0] / seconds, totals[1] / seconds, totals[2]);
+		System.out.printf("Reply time (ms): mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+				latency.getMean() / 1e6, latency.getPercentile(0.5) / 1e6, latency.getPercentile(0.9) / 1e6,
+				latency.getPercentile(0.99) / 1e6, latency.getPercentile(0.999) / 1e6, latency.getMax() / 1e6);
+		if (local != null)
+			local.close();
+	}
+	
+	/**
+	 * run(InetSocketAddress, int, int, long, LatencyHistogram) plays the given number
+	 * of games in each of the given number of sessions, all at once.
+	 * 
+	 * @param address is the server's address.
+	 * @param sessions is the number of sessions open at once.
+	 * @param games is the number of games each session plays.
+	 * @param seed is the seed of the sessions' random moves.
+	 * @param latency is the histogram the reply times are added to.
+	 * @return the numbers of games, moves, and replies not matching the game.
+	 * @throws IOException if a session cannot talk to the server.
+	 * @throws InterruptedException if interrupted while waiting for the sessions.
+	 */
+	public static long[] run(InetSocketAddress address, int sessions, int games, long seed,
+			LatencyHistogram latency) throws IOException, InterruptedException {
+		ExecutorService pool = ThreadPools.newPerTaskPool("reversi-load");
+		try {
+			List<Future<long[]>> results = new ArrayList<>();
+			for (int s = 0; s < sessions; s++) {
+				Random random = new Random(seed + s);
+				results.add(pool.submit(() -> playSession(address, games, random, latency)));
+			}
+			long[] totals = new long[3];
+			for (Future<long[]> result : results) {
+				long[] counts = result.get();
+				for (int i = 0; i < totals.length; i++)
+					totals[i] += counts[i];
+			}
+			return totals;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException("Session failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	// Plays the session's games, returns its numbers of games, moves and mismatches
+	private static long[] playSession(InetSocketAddress address, int games, Random random,
+			LatencyHistogram latency) throws IOException {
+		long[] counts = new long[3];
+		try (SocketChannel channel = SocketChannel.open(address)) {
+			channel.socket().setTcpNoDelay(true);
+			BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+			Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8);
+			ReversiModel model = new ReversiModel();
+			for (int game = 0; game < games; game++) {
+				send(out, "NEW");
+				in.readLine();
+				model.copyFrom(new ReversiModel());
+				while (!model.isGameOver()) {
+					long legal = model.getLegalMovesW();
+					for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--)
+						legal &= legal - 1;
+					int square = Long.numberOfTrailingZeros(legal);
+					long sent = System.nanoTime();
+					send(out, "MOVE " + (char) ((square & 7) + 'a') + ((square >> 3) + 1));
+					String reply = in.readLine();
+					latency.record(System.nanoTime() - sent);
+					counts[1]++;
+					if (reply == null)
+						throw new IOException("Server closed the session");
+					String[] fields = reply.split(" ");
+					if (!fields[0].equals("OK")) {
+						counts[2]++;
+						break;
+					}
+					model.makeMove('W', square);
+					for (int i = 4; i < fields.length; i++)
+						model.makeMove('B', (fields[i].charAt(1) - '1') * 8 + (fields[i].charAt(0) - 'a'));
+					if (Integer.parseInt(fields[1]) != model.getWScore()
+							|| Integer.parseInt(fields[2]) != model.getBScore()
+							|| fields[3].equals("OVER") != model.isGameOver()) {
+						counts[2]++;
+						break;
+					}
+				}
+				counts[0]++;
+			}
+			send(out, "QUIT");
+			in.readLine();
+		}
+		return counts;
+	}
+	
+	// Sends one command line
+	private static void send(Writer out, String command) throws IOException {
+		out.write(command);
+		out.write('\n');
+		out.flush();
+	}
+	
+}
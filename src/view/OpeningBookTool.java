@@ -0,0 +1,96 @@
+package view;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+import controller.OpeningBook;
+import controller.OpeningBookBuilder;
+
+/**
+ * Command-line tool that creates or grows an opening book (see OpeningBook).
+ * 
+ * Positions come either from games the engine plays against itself, or from a text
+ * file of games, one per line, written as the coordinates of their moves in the
+ * game's own notation ("e6f4..." with 'a'-'h' for the column and '1'-'8' for the
+ * row, the human player 'W' moving first, and passes left out). Lines starting with
+ * '#' are ignored. If the book file already exists, its positions are kept and the
+ * new ones are added to them.
+ * 
+ * Usage: OpeningBookTool book (selfplay games | import file) [plies] [depth] [seed]
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class OpeningBookTool {
+	
+	/**
+	 * main(String[]) builds the book as described by the arguments: the book file,
+	 * the source of the positions, the number of moves from the start of each game
+	 * to add (12 by default), the search depth (8 by default), and the random seed
+	 * of the self-played games (335 by default).
+	 * 
+	 * @param args are the arguments described above.
+	 * @throws IOException if a file cannot be read or written.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3 || !(args[1].equals("selfplay") || args[1].equals("import"))) {
+			System.out.println("Usage: OpeningBookTool book (selfplay games | import file)"
+					+ " [plies] [depth] [seed]");
+			return;
+		}
+		Path bookFile = Paths.get(args[0]);
+		int plies = (args.length > 3) ? Integer.parseInt(args[3]) : 12;
+		int depth = (args.length > 4) ? Integer.parseInt(args[4]) : 8;
+		long seed = (args.length > 5) ? Long.parseLong(args[5]) : 335;
+		OpeningBookBuilder builder = new OpeningBookBuilder(depth);
+		if (Files.exists(bookFile)) {
+			builder.addAll(new OpeningBook(bookFile));
+			System.out.println("Loaded " + builder.getSize() + " positions from " + bookFile);
+		}
+		
+		long start = System.nanoTime();
+		int games = 0;
+		if (args[1].equals("selfplay")) {
+			Random random = new Random(seed);
+			for (int count = Integer.parseInt(args[2]); games < count; games++)
+				builder.addSelfPlay(plies, random);
+		} else {
+			List<String> lines = Files.readAllLines(Paths.get(args[2]));
+			for (String line : lines) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				try {
+					builder.addGame(parseMoves(line), plies);
+					games++;
+				} catch (IllegalArgumentException e) {
+					System.out.println("Skipped game \"" + line + "\": " + e.getMessage());
+				}
+			}
+		}
+		builder.write(bookFile);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d games, %d positions searched in %.1f s, %d positions in %s%n", games,
+				builder.getSearches(), seconds, builder.getSize(), bookFile);
+	}
+	
+	// Converts a line of coordinates such as "e6f4" into square indices
+	private static int[] parseMoves(String line) throws IllegalArgumentException {
+		if (line.length() % 2 != 0)
+			throw new IllegalArgumentException("odd number of characters");
+		int[] moves = new int[line.length() / 2];
+		for (int i = 0; i < moves.length; i++) {
+			int col = Character.toLowerCase(line.charAt(2 * i)) - 'a';
+			int row = line.charAt(2 * i + 1) - '1';
+			if (col < 0 || col > 7 || row < 0 || row > 7)
+				throw new IllegalArgumentException("bad coordinates at move " + (i + 1));
+			moves[i] = row * 8 + col;
+		}
+		return moves;
+	}
+	
+}
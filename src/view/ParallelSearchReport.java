@@ -0,0 +1,90 @@
+package view;
+
+import java.util.Random;
+
+import controller.LazySmpEngine;
+import controller.TranspositionTable;
+import model.ReversiModel;
+
+/**
+ * Command-line report of how well the parallel search scales with threads.
+ * 
+ * A fixed set of midgame positions (reached by seeded random play, so every run uses
+ * the same ones) is searched to the same depth with 1, 2, 4, ... threads, each time
+ * starting from an empty transposition table. For each thread count, the time taken,
+ * the nodes searched, and the speedup over the single-threaded search are printed.
+ * 
+ * Usage: ParallelSearchReport [depth] [maxThreads] [positions]
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class ParallelSearchReport {
+	
+	/**
+	 * main(String[]) runs the report with the depth, maximum number of threads, and
+	 * number of positions given as arguments (10, every available processor, and 8
+	 * by default).
+	 * 
+	 * @param args are the optional depth, maximum thread count, and position count.
+	 */
+	public static void main(String[] args) {
+		int depth = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+		int maxThreads = (args.length > 1) ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		int count = (args.length > 2) ? Integer.parseInt(args[2]) : 8;
+		ReversiModel[] positions = new ReversiModel[count];
+		char[] players = new char[count];
+		Random random = new Random(335);
+		for (int i = 0; i < count; i++) {
+			positions[i] = new ReversiModel();
+			players[i] = playRandomly(positions[i], 20, random);
+		}
+		
+		LazySmpEngine warmUp = new LazySmpEngine(depth, 1); // So the first row isn't penalised
+		for (int i = 0; i < count; i++)
+			warmUp.chooseMove(positions[i], players[i]);
+		
+		System.out.println("Depth " + depth + ", " + count + " positions\n");
+		System.out.println("threads      ms           nodes       nps   speedup");
+		double baseline = 0;
+		for (int threads = 1; threads <= maxThreads; threads = nextThreads(threads, maxThreads)) {
+			TranspositionTable table = new TranspositionTable(64);
+			LazySmpEngine engine = new LazySmpEngine(depth, threads, table);
+			long nodes = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				table.clear();
+				engine.chooseMove(positions[i], players[i]);
+				nodes += engine.getNodes();
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			engine.shutdown();
+			if (threads == 1)
+				baseline = seconds;
+			System.out.printf("%7d %7.0f %15d %9.0f %8.2fx%n", threads, seconds * 1000, nodes,
+					nodes / seconds, baseline / seconds);
+		}
+	}
+	
+	// Thread count after the given one: doubling, but always running the largest, which is followed by more than it
+	private static int nextThreads(int threads, int maxThreads) {
+		return (threads == maxThreads) ? maxThreads + 1 : Math.min(threads * 2, maxThreads);
+	}
+	
+	// Plays random legal moves, returns the player to move afterwards
+	private static char playRandomly(ReversiModel model, int moves, Random random) {
+		char player = 'W';
+		for (int i = 0; i < moves && !model.isGameOver(); i++) {
+			long legal = model.getLegalMoves(player);
+			if (legal != 0) {
+				for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; skip--)
+					legal &= legal - 1;
+				model.makeMove(player, Long.numberOfTrailingZeros(legal));
+			}
+			player = (player == 'W') ? 'B' : 'W';
+		}
+		return (model.getLegalMoves(player) != 0) ? player : (player == 'W') ? 'B' : 'W';
+	}
+	
+}
@@ -0,0 +1,61 @@
+package view;
+
+import controller.Perft;
+import model.ReversiModel;
+
+/**
+ * Command-line perft (move generation test) from the initial position.
+ * 
+ * For every depth from 1 up to the maximum, the number of lines of play is counted
+ * (see Perft) and printed with the time taken, the number of positions counted per
+ * second, and whether the count matches the published one. With more than one
+ * thread, the count is shared out among the threads; with "model" as the third
+ * argument, moves are made and undone on a ReversiModel instead of on bare
+ * bitboards, so that the model's own bookkeeping is checked and timed (on one
+ * thread only).
+ * 
+ * Usage: PerftTool [maxDepth] [threads] [model]
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class PerftTool {
+	
+	/**
+	 * main(String[]) runs perft up to the maximum depth (11 by default) with the
+	 * given number of threads (1 by default).
+	 * 
+	 * @param args are the optional maximum depth, thread count, and "model".
+	 */
+	public static void main(String[] args) {
+		int maxDepth = (args.length > 0) ? Integer.parseInt(args[0]) : 11;
+		int threads = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+		boolean useModel = args.length > 2 && args[2].equals("model");
+		ReversiModel start = new ReversiModel();
+		long own = start.getBoard('W');
+		long opp = start.getBoard('B');
+		System.out.println("Perft from the initial position, " + threads + " thread(s)"
+				+ (useModel ? ", through ReversiModel" : "") + "\n");
+		System.out.println("depth           nodes          ms           nps  check");
+		boolean allMatch = true;
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			long begin = System.nanoTime();
+			long nodes;
+			if (useModel)
+				nodes = Perft.count(start, 'W', depth);
+			else if (threads > 1)
+				nodes = Perft.countParallel(own, opp, depth, threads);
+			else
+				nodes = Perft.count(own, opp, depth);
+			double seconds = (System.nanoTime() - begin) / 1e9;
+			long known = Perft.knownCount(depth);
+			String check = (known < 0) ? "unknown" : (known == nodes) ? "ok" : "MISMATCH (" + known + ")";
+			allMatch &= known < 0 || known == nodes;
+			System.out.printf("%5d %15d %11.0f %13.0f  %s%n", depth, nodes, seconds * 1000,
+					nodes / Math.max(seconds, 1e-9), check);
+		}
+		if (!allMatch)
+			System.exit(1);
+	}
+	
+}
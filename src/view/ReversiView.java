@@ -2,7 +2,8 @@ package view;
 
 import java.util.Scanner;
 
-import controller.ReversiController;
+import controller.Coordinates;
+import controller.GameController;
 
 /**
  * View for the Reversi game (handles user input and output).
@@ -12,16 +13,18 @@ import controller.ReversiController;
  * is over (and if so, who won). Contains the method which reads in user input
  * and maintains the game so long as it hasn't ended, as well as methods for
  * visually displaying the current state of the game board and the current score.
+ * The board can be of any size (see GameController), with coordinates going past
+ * 'h' and row 9 on boards larger than 8x8.
  * 
  * @author Jesse Liu
  *
  */
 public class ReversiView {
 	
-	private ReversiController controller;
+	private GameController controller;
 	
 	// Constructor (reads in controller object)
-	public ReversiView(ReversiController controller) {
+	public ReversiView(GameController controller) {
 		this.controller = controller;
 		System.out.println("Welcome to Reversi\n");
 		System.out.println("You are W.\n");
@@ -37,22 +40,20 @@ public class ReversiView {
 	 * are called to process both the turns of the user and the computer. Calls both
 	 * displayBoard() and displayScores() to visually show the game board and scores
 	 * after every turn. Additionally, IllegalArgumentExceptions can be caught here,
-	 * in which case the user is simply re-prompted. After the game ends, the victor
-	 * is printed.
+	 * in which case the user is simply re-prompted. While the user is deciding, the
+	 * computer may think ahead (see ReversiController.ponder()). After the game ends,
+	 * the victor is printed.
 	 */
 	public void playGame() {
 		Scanner userInput = new Scanner(System.in);
 		boolean stop = controller.isGameOver();
 		while (!stop) {
+			controller.ponder(); // The computer thinks ahead while the user is deciding
 			System.out.print("Where would you like to place your token? ");
 			String response = userInput.nextLine().toLowerCase();
 			System.out.println();
-			if (response.length() != 2) {
-				System.out.println("Illegal move. Try again.\n");
-				continue;
-			}
-			int row = (response.charAt(1) - '0') - 1;
-			int col = response.charAt(0) - 'a';
+			int row = Coordinates.parseRow(response);
+			int col = Coordinates.parseColumn(response);
 			try {
 				controller.humanTurn(row, col);
 			} catch (IllegalArgumentException e) {
@@ -88,15 +89,19 @@ public class ReversiView {
 	 */
 	public void displayBoard() {
 		char[][] board = controller.reconstructBoard();
+		String margin = (board.length > 9) ? "   " : "  "; // Room for two-digit row numbers
 		for (int i = 0; i < board.length; i++) {
-			System.out.print(i + 1);
-			System.out.print(' ');
+			String number = String.valueOf(i + 1);
+			System.out.print(number + margin.substring(number.length()));
 			for (int j = 0; j < board[i].length; j++) {
 				System.out.print(board[i][j] + " ");
 			}
 			System.out.println();
 		}
-		System.out.println("  a b c d e f g h\n");
+		System.out.print(margin);
+		for (int j = 0; j < board.length; j++)
+			System.out.print((char) ('a' + j) + " ");
+		System.out.println("\n");
 	}
 	
 	/**
@@ -0,0 +1,70 @@
+package view;
+
+import controller.Engines;
+import controller.Sprt;
+import controller.Tournament;
+import controller.TournamentResult;
+
+/**
+ * Command-line engine match that stops as soon as a sequential probability ratio
+ * test (see Sprt) decides whether the first engine is stronger than the second.
+ * 
+ * The engines are given as descriptions (see Engines) and play pairs of games from
+ * random openings with the sides swapped, on as many threads as there are
+ * processors, until the test decides between elo0 and elo1 or the maximum number of
+ * games is reached. Progress is printed every 100 games.
+ * 
+ * Usage: SprtTool engineA engineB [elo0=0] [elo1=10] [maxGames=100000] [threads]
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class SprtTool {
+	
+	private static final double ALPHA = 0.05;
+	private static final double BETA = 0.05;
+	private static final int REPORT_GAMES = 100;
+	
+	/**
+	 * main(String[]) plays the match and prints the decision with the estimated Elo
+	 * difference.
+	 * 
+	 * @param args are the two engine descriptions, and optionally the two Elo
+	 * differences tested, the maximum number of games and the number of threads.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: SprtTool engineA engineB [elo0=0] [elo1=10] [maxGames=100000] [threads]");
+			return;
+		}
+		double elo0 = (args.length > 2) ? Double.parseDouble(args[2]) : 0;
+		double elo1 = (args.length > 3) ? Double.parseDouble(args[3]) : 10;
+		int maxGames = (args.length > 4) ? Integer.parseInt(args[4]) : 100000;
+		int threads = (args.length > 5) ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+		Sprt sprt = new Sprt(elo0, elo1, ALPHA, BETA);
+		Tournament tournament = new Tournament(Engines.fromDescription(args[0]), Engines.fromDescription(args[1]));
+		tournament.setThreads(threads);
+		tournament.setListener((game, difference) -> {
+			sprt.gameFinished(game, difference);
+			if (sprt.getDecision() != Sprt.Decision.UNDECIDED)
+				tournament.stop();
+			if (game % REPORT_GAMES == REPORT_GAMES - 1)
+				System.out.printf("%7d games: LLR %6.2f (%.2f, %.2f), Elo %+.1f +- %.1f%n", sprt.getPairs() * 2,
+						sprt.getLlr(), sprt.getLowerBound(), sprt.getUpperBound(), sprt.getElo(),
+						sprt.getEloMargin());
+		});
+		System.out.println("SPRT " + args[0] + " vs " + args[1] + ", elo0 " + elo0 + ", elo1 " + elo1
+				+ ", alpha " + ALPHA + ", beta " + BETA + ", " + threads + " thread(s)\n");
+		
+		TournamentResult result = tournament.run(maxGames);
+		long[] pairs = sprt.getPairCounts();
+		System.out.printf("%nDecision: %s after %d games in %.1f s%n", sprt.getDecision(), result.getGames(),
+				result.getElapsedNanos() / 1e9);
+		System.out.printf("LLR %.2f (%.2f, %.2f), Elo %+.1f +- %.1f%n", sprt.getLlr(), sprt.getLowerBound(),
+				sprt.getUpperBound(), sprt.getElo(), sprt.getEloMargin());
+		System.out.printf("Wins %d, draws %d, losses %d; pairs scoring 0, 1/4, 1/2, 3/4, 1: %d %d %d %d %d%n",
+				result.getWins(), result.getDraws(), result.getLosses(), pairs[0], pairs[1], pairs[2], pairs[3],
+				pairs[4]);
+	}
+	
+}
@@ -0,0 +1,85 @@
+package view;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import controller.Engines;
+import controller.GameArchiveWriter;
+import controller.LatencyHistogram;
+import controller.Tournament;
+import controller.TournamentResult;
+
+/**
+ * Command-line self-play tournament between two engines, for checking whether a
+ * change to an engine makes it stronger or weaker.
+ * 
+ * The engines are given as descriptions (see Engines), and the games are played on
+ * as many threads as asked for (every processor by default), with the given number
+ * of random moves at the start of each game. Nothing is printed until every game is
+ * done; the report then gives the games and moves per second, the first engine's
+ * wins, draws and losses, and the percentiles of each engine's time per move. If an
+ * archive is named, every game is also added to the game archive made of the files
+ * archive.games and archive.index (see GameArchive), created if they do not exist.
+ * 
+ * Usage: TournamentTool [games] [threads] [engineA] [engineB] [randomMoves]
+ * [virtual|platform] [archive]
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class TournamentTool {
+	
+	/**
+	 * main(String[]) plays the tournament (1000 games of "alphabeta:4" against
+	 * "greedy" with 4 random moves by default) and prints its results.
+	 * 
+	 * @param args are the optional number of games, threads, the two engine
+	 * descriptions, the number of random moves, "virtual" to play on virtual threads
+	 * where the Java runtime has them, and the archive to add the games to.
+	 * @throws IOException if the archive cannot be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		String first = (args.length > 2) ? args[2] : "alphabeta:4";
+		String second = (args.length > 3) ? args[3] : "greedy";
+		int randomMoves = (args.length > 4) ? Integer.parseInt(args[4]) : 4;
+		Tournament tournament = new Tournament(Engines.fromDescription(first), Engines.fromDescription(second));
+		tournament.setThreads(threads);
+		tournament.setRandomMoves(randomMoves);
+		tournament.setVirtualThreads(args.length > 5 && args[5].equals("virtual"));
+		System.out.println(first + " vs " + second + ", " + games + " games on " + threads + " thread(s)\n");
+		
+		GameArchiveWriter archive = null;
+		if (args.length > 6) {
+			archive = new GameArchiveWriter(Paths.get(args[6] + ".games"), Paths.get(args[6] + ".index"));
+			tournament.setArchive(archive);
+		}
+		TournamentResult result = tournament.run(games);
+		if (archive != null) {
+			System.out.println("Archived as games " + (archive.getSize() - result.getGames()) + " to "
+					+ (archive.getSize() - 1) + " of " + args[6] + " (player 1 is " + first + ")");
+			archive.close();
+		}
+		double seconds = result.getElapsedNanos() / 1e9;
+		int played = Math.max(result.getGames(), 1);
+		System.out.printf("%d games in %.1f s: %.1f games/s, %.0f moves/s%n", result.getGames(), seconds,
+				result.getGamesPerSecond(), result.getMoves() / Math.max(seconds, 1e-9));
+		System.out.printf("%s: %d wins (%.1f%%), %d draws (%.1f%%), %d losses (%.1f%%), score %.3f, "
+				+ "%+.2f discs per game%n%n", first, result.getWins(), 100.0 * result.getWins() / played,
+				result.getDraws(), 100.0 * result.getDraws() / played, result.getLosses(),
+				100.0 * result.getLosses() / played, result.getScore(),
+				(double) result.getDiscDifference() / played);
+		System.out.println("Time per move (microseconds)    mean      p50      p90      p99    p99.9      max");
+		printLatency(first, result.getLatency(true));
+		printLatency(second, result.getLatency(false));
+	}
+	
+	// Prints one engine's latency percentiles on one line
+	private static void printLatency(String name, LatencyHistogram latency) {
+		System.out.printf("%-28s %8.1f %8.1f %8.1f %8.1f %8.1f %8.1f%n", name, latency.getMean() / 1e3,
+				latency.getPercentile(0.5) / 1e3, latency.getPercentile(0.9) / 1e3,
+				latency.getPercentile(0.99) / 1e3, latency.getPercentile(0.999) / 1e3, latency.getMax() / 1e3);
+	}
+	
+}
@@ -0,0 +1,94 @@
+package view;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import controller.PositionSink;
+import controller.WthorImporter;
+import model.ReversiModel;
+
+/**
+ * Command-line tool that replays WTHOR game databases (see WthorImporter) and
+ * reports how fast they were read.
+ * 
+ * Every position of every game is replayed through the model. As an example of
+ * what a PositionSink can gather, the tool also counts how often the player to move
+ * went on to win, for each number of empty squares, which shows how early in a game
+ * the result tends to be decided.
+ * 
+ * Usage: WthorTool threads file...
+ * 
+ * @author Jesse Liu
+ *
+ */
+public class WthorTool {
+	
+	/**
+	 * main(String[]) imports every file given after the number of threads.
+	 * 
+	 * @param args are the number of threads and the paths of the .wtb files.
+	 * @throws IOException if a file cannot be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: WthorTool threads file...");
+			return;
+		}
+		int threads = Integer.parseInt(args[0]);
+		List<WinCounter> counters = new ArrayList<>();
+		long games = 0;
+		long positions = 0;
+		long nanos = 0;
+		for (int i = 1; i < args.length; i++) {
+			WthorImporter importer = new WthorImporter(Paths.get(args[i]));
+			importer.setThreads(threads);
+			importer.importGames(() -> {
+				WinCounter counter = new WinCounter();
+				synchronized (counters) {
+					counters.add(counter);
+				}
+				return counter;
+			});
+			System.out.printf("%s: %d games (%d skipped), %d positions, %.0f games/s%n", args[i],
+					importer.getImported(), importer.getSkipped(), importer.getPositions(),
+					importer.getGamesPerSecond());
+			games += importer.getImported() + importer.getSkipped();
+			positions += importer.getPositions();
+			nanos += importer.getElapsedNanos();
+		}
+		double seconds = Math.max(nanos / 1e9, 1e-9);
+		System.out.printf("%nTotal: %d games, %d positions in %.2f s: %.0f games/s, %.0f positions/s%n%n", games,
+				positions, seconds, games / seconds, positions / seconds);
+		
+		System.out.println("empties  positions  mover wins");
+		for (int empties = 60; empties > 0; empties -= 5) {
+			long seen = 0;
+			long wins = 0;
+			for (WinCounter counter : counters) {
+				seen += counter.positions[empties];
+				wins += counter.wins[empties];
+			}
+			if (seen > 0)
+				System.out.printf("%7d %10d %10.1f%%%n", empties, seen, 100.0 * wins / seen);
+		}
+	}
+	
+	// Counts positions and wins for the player to move by number of empty squares
+	private static class WinCounter implements PositionSink {
+		
+		private final long[] positions = new long[65];
+		private final long[] wins = new long[65];
+		
+		@Override
+		public void position(ReversiModel model, char player, int move, int result) {
+			int empties = 64 - model.getWScore() - model.getBScore();
+			positions[empties]++;
+			if (result > 0)
+				wins[empties]++;
+		}
+		
+	}
+	
+}